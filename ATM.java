@@ -1,18 +1,35 @@
-import java.util.Scanner;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
 
 /**
  * Enhanced ATM Simulation System with Dual Login
  * Supports both customer and bank official operations
  * 
+ * By default one terminal runs on the console. With the "atm.server.port"
+ * system property set, terminals connect over TCP instead and each one
+ * gets its own AtmSession on a virtual thread, all sharing one Bank.
+ * "atm.line.port" additionally serves the compact LineProtocol used by
+ * headless terminals, on the loopback address unless "atm.line.host" names
+ * another one to listen on.
+ * 
+ * Withdrawals on every terminal are paid in notes from one CashVault,
+ * loaded from the "atm.cash" system property (for example
+ * "2000=200,500=1000,100=1000") or with 1000 notes of each denomination.
+ * 
+ * Operation metrics are published over JMX under the "ATM" domain, and
+ * printed on the error stream every "atm.metrics.interval" seconds if that
+ * property is set.
+ * 
  * @author Prabhu Bhalke
  * @version 2.0
  */
 public class ATM {
-    private static Scanner scanner = new Scanner(System.in);
     private static Bank bank = new Bank();
-    private static Account currentAccount = null;
-    private static BankOfficial currentOfficial = null;
-    private static boolean isOfficialMode = false;
+    private static CashVault vault;
     
     public static void main(String[] args) {
         System.out.println("╔══════════════════════════════════════════════════════════════╗");
@@ -21,18 +38,26 @@ public class ATM {
         System.out.println("║                        Welcome!                             ║");
         System.out.println("╚══════════════════════════════════════════════════════════════╝");
         
-        // Initialize with sample data
-        initializeSampleData();
+        // Restore from the journal if one is configured, otherwise use sample data
+        if (!openJournal()) {
+            initializeSampleData();
+        }
+        startMetrics();
+        loadCash();
         
-        while (true) {
-            if (currentAccount == null && currentOfficial == null) {
-                showMainLoginMenu();
-            } else if (isOfficialMode) {
-                showOfficialMenu();
-            } else {
-                showCustomerMenu();
-            }
+        Integer linePort = Integer.getInteger("atm.line.port");
+        if (linePort != null) {
+            startLineServer(linePort);
+        }
+        
+        Integer port = Integer.getInteger("atm.server.port");
+        if (port != null) {
+            runServer(port);
+        } else {
+            new AtmSession(bank, vault, System.in, System.out).run();
         }
+        closeJournal();
+        System.exit(0);
     }
     
     /**
@@ -56,762 +81,117 @@ public class ATM {
     }
     
     /**
-     * Display main login menu with options for customer and official
+     * Open the journal named by the "atm.journal" system property
+     * The durability mode comes from "atm.durability" (SYNC, GROUP or ASYNC,
+     * default GROUP) and the group-commit window from "atm.journal.latency"
+     * in microseconds. If "atm.snapshot" names a snapshot file it is loaded
+     * first, only the journal written after it is replayed, and a new snapshot
+     * is written every "atm.snapshot.interval" seconds (default 60).
+     * 
+     * @return true if existing state was restored, false otherwise
      */
-    private static void showMainLoginMenu() {
-        System.out.println("┌──────────────────────────────────────────────────────────────┐");
-        System.out.println("│                      MAIN LOGIN MENU                        │");
-        System.out.println("├──────────────────────────────────────────────────────────────┤");
-        System.out.println("│ 1. Customer Login                                            │");
-        System.out.println("│ 2. Bank Official Login                                       │");
-        System.out.println("│ 3. Exit                                                      │");
-        System.out.println("└──────────────────────────────────────────────────────────────┘");
-        System.out.print("Enter your choice (1-3): ");
-        
-        String choice = scanner.nextLine();
-        System.out.println();
-        
-        switch (choice) {
-            case "1":
-                showCustomerLoginMenu();
-                break;
-            case "2":
-                showOfficialLoginMenu();
-                break;
-            case "3":
-                exit();
-                break;
-            default:
-                System.out.println("✗ Invalid choice. Please enter 1, 2, or 3.");
+    private static boolean openJournal() {
+        String path = System.getProperty("atm.journal");
+        if (path == null) {
+            return false;
+        }
+        try {
+            Journal.Durability durability = Journal.Durability.valueOf(
+                    System.getProperty("atm.durability", "GROUP").toUpperCase());
+            String snapshot = System.getProperty("atm.snapshot");
+            Path snapshotPath = snapshot != null ? Paths.get(snapshot) : null;
+            long replayed = bank.recover(snapshotPath, Paths.get(path), durability,
+                                         Long.getLong("atm.journal.latency", 200L),
+                                         Runtime.getRuntime().availableProcessors());
+            boolean restored = replayed > 0 || bank.getTotalAccounts() > 0 || bank.getTotalOfficials() > 0;
+            if (restored) {
+                System.out.println("✓ Restored " + bank.getTotalAccounts() + " accounts (" + replayed
+                                   + " journal records replayed) from " + path);
                 System.out.println();
+            }
+            if (snapshotPath != null) {
+                Snapshot.schedule(bank, snapshotPath, Long.getLong("atm.snapshot.interval", 60L), TimeUnit.SECONDS);
+            }
+            return restored;
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("✗ Could not open journal " + path + ": " + e.getMessage());
+            System.exit(1);
+            return false;
         }
     }
     
     /**
-     * Display customer login menu
+     * Register the bank's metrics as MBeans and start the periodic dump if
+     * "atm.metrics.interval" is set
      */
-    private static void showCustomerLoginMenu() {
-        System.out.println("┌──────────────────────────────────────────────────────────────┐");
-        System.out.println("│                      CUSTOMER LOGIN                         │");
-        System.out.println("└──────────────────────────────────────────────────────────────┘");
-        System.out.print("Enter Account Number: ");
-        String accountNumber = scanner.nextLine();
-        
-        System.out.print("Enter PIN: ");
-        String pin = scanner.nextLine();
-        
-        if (bank.authenticate(accountNumber, pin)) {
-            currentAccount = bank.getAccount(accountNumber);
-            isOfficialMode = false;
-            System.out.println("✓ Login successful! Welcome, " + currentAccount.getAccountHolder() + "!");
-            System.out.println();
-        } else {
-            System.out.println("✗ Invalid account number or PIN. Please try again.");
-            System.out.println();
+    private static void startMetrics() {
+        try {
+            bank.getMetrics().registerMBeans(bank.getBankName());
+        } catch (JMException e) {
+            System.out.println("✗ Could not publish metrics over JMX: " + e.getMessage());
+        }
+        Long interval = Long.getLong("atm.metrics.interval");
+        if (interval != null && interval > 0) {
+            bank.getMetrics().scheduleDump(System.err, interval, TimeUnit.SECONDS);
         }
     }
     
     /**
-     * Display bank official login menu
+     * Load the cassettes from the "atm.cash" system property
      */
-    private static void showOfficialLoginMenu() {
-        System.out.println("┌──────────────────────────────────────────────────────────────┐");
-        System.out.println("│                    BANK OFFICIAL LOGIN                      │");
-        System.out.println("└──────────────────────────────────────────────────────────────┘");
-        System.out.print("Enter Official ID: ");
-        String officialId = scanner.nextLine();
-        
-        System.out.print("Enter Password: ");
-        String password = scanner.nextLine();
-        
-        if (bank.authenticateOfficial(officialId, password)) {
-            currentOfficial = bank.getOfficial(officialId);
-            isOfficialMode = true;
-            System.out.println("✓ Login successful! Welcome, " + currentOfficial.getName() + " (" + currentOfficial.getRole() + ")!");
-            System.out.println();
-        } else {
-            System.out.println("✗ Invalid official ID or password. Please try again.");
-            System.out.println();
+    private static void loadCash() {
+        String cash = System.getProperty("atm.cash");
+        try {
+            vault = cash != null ? CashVault.parse(cash) : new CashVault(CashVault.CASSETTE_CAPACITY / 2);
+        } catch (IllegalArgumentException e) {
+            System.out.println("✗ Could not load cassettes from " + cash + ": " + e.getMessage());
+            System.exit(1);
         }
     }
     
     /**
-     * Display customer menu
+     * Accept terminal connections until the process is stopped
+     * 
+     * @param port The TCP port to listen on; 0 picks a free port
      */
-    private static void showCustomerMenu() {
-        while (true) {
-            System.out.println("┌──────────────────────────────────────────────────────────────┐");
-            System.out.println("│                      CUSTOMER MENU                         │");
-            System.out.println("├──────────────────────────────────────────────────────────────┤");
-            System.out.println("│ 1. Check Balance                                             │");
-            System.out.println("│ 2. Withdraw Money                                            │");
-            System.out.println("│ 3. Deposit Money                                             │");
-            System.out.println("│ 4. Transfer Money                                            │");
-            System.out.println("│ 5. View Transaction History                                  │");
-            System.out.println("│ 6. Change PIN                                                │");
-            System.out.println("│ 7. Request Account Statement                                 │");
-            System.out.println("│ 8. Logout                                                    │");
-            System.out.println("│ 9. Exit                                                      │");
-            System.out.println("└──────────────────────────────────────────────────────────────┘");
-            System.out.print("Enter your choice (1-9): ");
-            
-            String choice = scanner.nextLine();
+    private static void runServer(int port) {
+        try (AtmServer server = new AtmServer(bank, vault, port)) {
+            Runtime.getRuntime().addShutdownHook(new Thread(ATM::closeJournal));
+            System.out.println("✓ Accepting ATM terminals on port " + server.getPort());
             System.out.println();
-            
-            switch (choice) {
-                case "1":
-                    checkBalance();
-                    break;
-                case "2":
-                    withdrawMoney();
-                    break;
-                case "3":
-                    depositMoney();
-                    break;
-                case "4":
-                    transferMoney();
-                    break;
-                case "5":
-                    viewTransactionHistory();
-                    break;
-                case "6":
-                    changePIN();
-                    break;
-                case "7":
-                    requestAccountStatement();
-                    break;
-                case "8":
-                    logout();
-                    return;
-                case "9":
-                    exit();
-                    return;
-                default:
-                    System.out.println("✗ Invalid choice. Please enter a number between 1-9.");
-                    System.out.println();
-            }
+            server.serve();
+        } catch (IOException e) {
+            System.out.println("✗ ATM server stopped: " + e.getMessage());
         }
     }
     
     /**
-     * Display bank official menu
+     * Serve the line protocol for headless terminals in the background
+     * 
+     * @param port The TCP port to listen on; 0 picks a free port
      */
-    private static void showOfficialMenu() {
-        while (true) {
-            System.out.println("┌──────────────────────────────────────────────────────────────┐");
-            System.out.println("│                    BANK OFFICIAL MENU                      │");
-            System.out.println("├──────────────────────────────────────────────────────────────┤");
-            System.out.println("│ 1. Create New Account                                        │");
-            System.out.println("│ 2. View All Accounts                                         │");
-            System.out.println("│ 3. Search Account                                            │");
-            System.out.println("│ 4. Block/Unblock Account                                     │");
-            System.out.println("│ 5. View Bank Statistics                                      │");
-            System.out.println("│ 6. Process Account Requests                                  │");
-            System.out.println("│ 7. View Transaction Logs                                     │");
-            System.out.println("│ 8. Manage Bank Officials                                     │");
-            System.out.println("│ 9. Logout                                                    │");
-            System.out.println("│ 10. Exit                                                     │");
-            System.out.println("└──────────────────────────────────────────────────────────────┘");
-            System.out.print("Enter your choice (1-10): ");
-            
-            String choice = scanner.nextLine();
-            System.out.println();
-            
-            switch (choice) {
-                case "1":
-                    createNewAccount();
-                    break;
-                case "2":
-                    viewAllAccounts();
-                    break;
-                case "3":
-                    searchAccount();
-                    break;
-                case "4":
-                    manageAccountStatus();
-                    break;
-                case "5":
-                    viewBankStatistics();
-                    break;
-                case "6":
-                    processAccountRequests();
-                    break;
-                case "7":
-                    viewTransactionLogs();
-                    break;
-                case "8":
-                    manageOfficials();
-                    break;
-                case "9":
-                    logout();
-                    return;
-                case "10":
-                    exit();
-                    return;
-                default:
-                    System.out.println("✗ Invalid choice. Please enter a number between 1-10.");
-                    System.out.println();
-            }
-        }
-    }
-    
-    // Customer Operations
-    private static void checkBalance() {
-        System.out.println("┌──────────────────────────────────────────────────────────────┐");
-        System.out.println("│                        BALANCE INQUIRY                      │");
-        System.out.println("└──────────────────────────────────────────────────────────────┘");
-        System.out.println("Account Holder: " + currentAccount.getAccountHolder());
-        System.out.println("Account Number: " + currentAccount.getAccountNumber());
-        System.out.println("Current Balance: ₹" + String.format("%.2f", currentAccount.getBalance()));
-        System.out.println();
-        
-        currentAccount.addTransaction("Balance Inquiry", 0.0, currentAccount.getBalance());
-    }
-    
-    private static void withdrawMoney() {
-        System.out.println("┌──────────────────────────────────────────────────────────────┐");
-        System.out.println("│                         WITHDRAWAL                          │");
-        System.out.println("└──────────────────────────────────────────────────────────────┘");
-        
-        System.out.println("Available denominations: ₹100, ₹200, ₹500, ₹1000, ₹2000");
-        System.out.print("Enter amount to withdraw: ₹");
-        
-        try {
-            double amount = Double.parseDouble(scanner.nextLine());
-            
-            if (amount <= 0) {
-                System.out.println("✗ Amount must be greater than zero.");
-                System.out.println();
-                return;
-            }
-            
-            if (amount > currentAccount.getBalance()) {
-                System.out.println("✗ Insufficient funds. Your balance is ₹" + 
-                                 String.format("%.2f", currentAccount.getBalance()));
-                System.out.println();
-                return;
-            }
-            
-            if (amount > 50000) {
-                System.out.println("✗ Maximum withdrawal limit is ₹50,000 per transaction.");
-                System.out.println();
-                return;
-            }
-            
-            if (amount > 10000) {
-                System.out.print("Enter PIN for verification: ");
-                String pin = scanner.nextLine();
-                if (!currentAccount.getPin().equals(pin)) {
-                    System.out.println("✗ Invalid PIN. Transaction cancelled.");
-                    System.out.println();
-                    return;
-                }
-            }
-            
-            currentAccount.withdraw(amount);
-            
-            System.out.println("✓ Withdrawal successful!");
-            System.out.println("Amount withdrawn: ₹" + String.format("%.2f", amount));
-            System.out.println("New balance: ₹" + String.format("%.2f", currentAccount.getBalance()));
-            System.out.println();
-            
-        } catch (NumberFormatException e) {
-            System.out.println("✗ Invalid amount format. Please enter a valid number.");
-            System.out.println();
-        }
-    }
-    
-    private static void depositMoney() {
-        System.out.println("┌──────────────────────────────────────────────────────────────┐");
-        System.out.println("│                          DEPOSIT                            │");
-        System.out.println("└──────────────────────────────────────────────────────────────┘");
-        
-        System.out.print("Enter amount to deposit: ₹");
-        
+    private static void startLineServer(int port) {
         try {
-            double amount = Double.parseDouble(scanner.nextLine());
-            
-            if (amount <= 0) {
-                System.out.println("✗ Amount must be greater than zero.");
-                System.out.println();
-                return;
-            }
-            
-            if (amount > 100000) {
-                System.out.println("✗ Maximum deposit limit is ₹1,00,000 per transaction.");
-                System.out.println();
-                return;
-            }
-            
-            currentAccount.deposit(amount);
-            
-            System.out.println("✓ Deposit successful!");
-            System.out.println("Amount deposited: ₹" + String.format("%.2f", amount));
-            System.out.println("New balance: ₹" + String.format("%.2f", currentAccount.getBalance()));
-            System.out.println();
-            
-        } catch (NumberFormatException e) {
-            System.out.println("✗ Invalid amount format. Please enter a valid number.");
-            System.out.println();
-        }
-    }
-    
-    private static void transferMoney() {
-        System.out.println("┌──────────────────────────────────────────────────────────────┐");
-        System.out.println("│                         MONEY TRANSFER                      │");
-        System.out.println("└──────────────────────────────────────────────────────────────┘");
-        
-        System.out.print("Enter recipient account number: ");
-        String recipientAccountNumber = scanner.nextLine();
-        
-        Account recipientAccount = bank.getAccount(recipientAccountNumber);
-        if (recipientAccount == null) {
-            System.out.println("✗ Recipient account not found.");
-            System.out.println();
-            return;
-        }
-        
-        if (recipientAccountNumber.equals(currentAccount.getAccountNumber())) {
-            System.out.println("✗ Cannot transfer to your own account.");
-            System.out.println();
-            return;
-        }
-        
-        System.out.print("Enter amount to transfer: ₹");
-        
-        try {
-            double amount = Double.parseDouble(scanner.nextLine());
-            
-            if (amount <= 0) {
-                System.out.println("✗ Amount must be greater than zero.");
-                System.out.println();
-                return;
-            }
-            
-            if (amount > currentAccount.getBalance()) {
-                System.out.println("✗ Insufficient funds. Your balance is ₹" + 
-                                 String.format("%.2f", currentAccount.getBalance()));
-                System.out.println();
-                return;
-            }
-            
-            if (amount > 25000) {
-                System.out.println("✗ Maximum transfer limit is ₹25,000 per transaction.");
-                System.out.println();
-                return;
-            }
-            
-            System.out.print("Enter PIN for verification: ");
-            String pin = scanner.nextLine();
-            if (!currentAccount.getPin().equals(pin)) {
-                System.out.println("✗ Invalid PIN. Transaction cancelled.");
-                System.out.println();
-                return;
-            }
-            
-            currentAccount.withdraw(amount);
-            recipientAccount.deposit(amount);
-            
-            System.out.println("✓ Transfer successful!");
-            System.out.println("Amount transferred: ₹" + String.format("%.2f", amount));
-            System.out.println("Recipient: " + recipientAccount.getAccountHolder());
-            System.out.println("Your new balance: ₹" + String.format("%.2f", currentAccount.getBalance()));
+            String host = System.getProperty("atm.line.host");
+            InetAddress address = host != null ? InetAddress.getByName(host) : InetAddress.getLoopbackAddress();
+            LineServer server = new LineServer(bank, vault, address, port, Runtime.getRuntime().availableProcessors());
+            server.start();
+            System.out.println("✓ Accepting line-protocol terminals on " + address.getHostAddress() + " port "
+                               + server.getPort());
             System.out.println();
-            
-        } catch (NumberFormatException e) {
-            System.out.println("✗ Invalid amount format. Please enter a valid number.");
-            System.out.println();
-        }
-    }
-    
-    private static void viewTransactionHistory() {
-        System.out.println("┌──────────────────────────────────────────────────────────────┐");
-        System.out.println("│                    TRANSACTION HISTORY                      │");
-        System.out.println("└──────────────────────────────────────────────────────────────┘");
-        
-        System.out.println("Account: " + currentAccount.getAccountNumber());
-        System.out.println("Holder: " + currentAccount.getAccountHolder());
-        System.out.println();
-        
-        if (currentAccount.getTransactions().isEmpty()) {
-            System.out.println("No transactions found.");
-        } else {
-            System.out.printf("%-20s %-15s %-15s %-15s%n", "Date & Time", "Type", "Amount", "Balance");
-            System.out.println("─────────────────────────────────────────────────────────────────");
-            
-            for (Transaction transaction : currentAccount.getTransactions()) {
-                System.out.printf("%-20s %-15s %-15s %-15s%n",
-                    transaction.getDateTime(),
-                    transaction.getType(),
-                    "₹" + String.format("%.2f", transaction.getAmount()),
-                    "₹" + String.format("%.2f", transaction.getBalance()));
-            }
-        }
-        System.out.println();
-    }
-    
-    private static void changePIN() {
-        System.out.println("┌──────────────────────────────────────────────────────────────┐");
-        System.out.println("│                          CHANGE PIN                          │");
-        System.out.println("└──────────────────────────────────────────────────────────────┘");
-        
-        System.out.print("Enter current PIN: ");
-        String currentPin = scanner.nextLine();
-        
-        if (!currentAccount.getPin().equals(currentPin)) {
-            System.out.println("✗ Current PIN is incorrect.");
-            System.out.println();
-            return;
-        }
-        
-        System.out.print("Enter new PIN (4 digits): ");
-        String newPin = scanner.nextLine();
-        
-        if (newPin.length() != 4 || !newPin.matches("\\d+")) {
-            System.out.println("✗ PIN must be exactly 4 digits.");
-            System.out.println();
-            return;
-        }
-        
-        System.out.print("Confirm new PIN: ");
-        String confirmPin = scanner.nextLine();
-        
-        if (!newPin.equals(confirmPin)) {
-            System.out.println("✗ PINs do not match.");
-            System.out.println();
-            return;
-        }
-        
-        currentAccount.setPin(newPin);
-        System.out.println("✓ PIN changed successfully!");
-        System.out.println();
-    }
-    
-    private static void requestAccountStatement() {
-        System.out.println("┌──────────────────────────────────────────────────────────────┐");
-        System.out.println("│                    ACCOUNT STATEMENT                        │");
-        System.out.println("└──────────────────────────────────────────────────────────────┘");
-        
-        System.out.println("Account Statement for: " + currentAccount.getAccountHolder());
-        System.out.println("Account Number: " + currentAccount.getAccountNumber());
-        System.out.println("Current Balance: ₹" + String.format("%.2f", currentAccount.getBalance()));
-        System.out.println("Statement Date: " + java.time.LocalDate.now());
-        System.out.println();
-        
-        System.out.println("Recent Transactions:");
-        System.out.println("────────────────────");
-        
-        if (currentAccount.getTransactions().isEmpty()) {
-            System.out.println("No transactions found.");
-        } else {
-            for (Transaction transaction : currentAccount.getTransactions()) {
-                System.out.println(transaction.getTransactionSummary());
-            }
+        } catch (IOException e) {
+            System.out.println("✗ Could not start line server: " + e.getMessage());
         }
-        System.out.println();
-        
-        currentAccount.addTransaction("Statement Requested", 0.0, currentAccount.getBalance());
     }
     
-    // Bank Official Operations
-    private static void createNewAccount() {
-        System.out.println("┌──────────────────────────────────────────────────────────────┐");
-        System.out.println("│                      CREATE NEW ACCOUNT                     │");
-        System.out.println("└──────────────────────────────────────────────────────────────┘");
-        
-        System.out.print("Enter Account Number: ");
-        String accountNumber = scanner.nextLine();
-        
-        if (bank.accountExists(accountNumber)) {
-            System.out.println("✗ Account number already exists.");
-            System.out.println();
-            return;
-        }
-        
-        System.out.print("Enter Account Holder Name: ");
-        String accountHolder = scanner.nextLine();
-        
-        System.out.print("Enter Initial PIN (4 digits): ");
-        String pin = scanner.nextLine();
-        
-        if (pin.length() != 4 || !pin.matches("\\d+")) {
-            System.out.println("✗ PIN must be exactly 4 digits.");
-            System.out.println();
-            return;
-        }
-        
-        System.out.print("Enter Initial Balance: ₹");
+    /**
+     * Flush and close the journal, if one is open
+     */
+    private static void closeJournal() {
         try {
-            double initialBalance = Double.parseDouble(scanner.nextLine());
-            
-            if (initialBalance < 0) {
-                System.out.println("✗ Initial balance cannot be negative.");
-                System.out.println();
-                return;
-            }
-            
-            Account newAccount = new Account(accountNumber, pin, accountHolder, initialBalance);
-            bank.addAccount(newAccount);
-            
-            System.out.println("✓ Account created successfully!");
-            System.out.println("Account Number: " + accountNumber);
-            System.out.println("Account Holder: " + accountHolder);
-            System.out.println("Initial Balance: ₹" + String.format("%.2f", initialBalance));
-            System.out.println();
-            
-        } catch (NumberFormatException e) {
-            System.out.println("✗ Invalid balance format. Please enter a valid number.");
-            System.out.println();
-        }
-    }
-    
-    private static void viewAllAccounts() {
-        System.out.println("┌──────────────────────────────────────────────────────────────┐");
-        System.out.println("│                        ALL ACCOUNTS                          │");
-        System.out.println("└──────────────────────────────────────────────────────────────┘");
-        
-        System.out.printf("%-15s %-20s %-15s %-10s%n", "Account No.", "Account Holder", "Balance", "Status");
-        System.out.println("─────────────────────────────────────────────────────────────────");
-        
-        for (Account account : bank.getAllAccounts()) {
-            System.out.printf("%-15s %-20s %-15s %-10s%n",
-                account.getAccountNumber(),
-                account.getAccountHolder(),
-                "₹" + String.format("%.2f", account.getBalance()),
-                account.isActive() ? "Active" : "Blocked");
-        }
-        System.out.println();
-    }
-    
-    private static void searchAccount() {
-        System.out.println("┌──────────────────────────────────────────────────────────────┐");
-        System.out.println("│                       SEARCH ACCOUNT                         │");
-        System.out.println("└──────────────────────────────────────────────────────────────┘");
-        
-        System.out.println("Search by:");
-        System.out.println("1. Account Number");
-        System.out.println("2. Account Holder Name");
-        System.out.print("Enter choice (1-2): ");
-        
-        String choice = scanner.nextLine();
-        System.out.println();
-        
-        switch (choice) {
-            case "1":
-                System.out.print("Enter Account Number: ");
-                String accountNumber = scanner.nextLine();
-                Account account = bank.getAccount(accountNumber);
-                if (account != null) {
-                    displayAccountDetails(account);
-                } else {
-                    System.out.println("✗ Account not found.");
-                }
-                break;
-            case "2":
-                System.out.print("Enter Account Holder Name: ");
-                String name = scanner.nextLine();
-                var accounts = bank.searchAccountsByName(name);
-                if (!accounts.isEmpty()) {
-                    System.out.println("Found " + accounts.size() + " account(s):");
-                    for (Account acc : accounts) {
-                        displayAccountDetails(acc);
-                    }
-                } else {
-                    System.out.println("✗ No accounts found with that name.");
-                }
-                break;
-            default:
-                System.out.println("✗ Invalid choice.");
-        }
-        System.out.println();
-    }
-    
-    private static void displayAccountDetails(Account account) {
-        System.out.println("┌──────────────────────────────────────────────────────────────┐");
-        System.out.println("│                      ACCOUNT DETAILS                         │");
-        System.out.println("└──────────────────────────────────────────────────────────────┘");
-        System.out.println("Account Number: " + account.getAccountNumber());
-        System.out.println("Account Holder: " + account.getAccountHolder());
-        System.out.println("Current Balance: ₹" + String.format("%.2f", account.getBalance()));
-        System.out.println("Status: " + (account.isActive() ? "Active" : "Blocked"));
-        System.out.println("Total Transactions: " + account.getTransactions().size());
-        System.out.println();
-    }
-    
-    private static void manageAccountStatus() {
-        System.out.println("┌──────────────────────────────────────────────────────────────┐");
-        System.out.println("│                    MANAGE ACCOUNT STATUS                    │");
-        System.out.println("└──────────────────────────────────────────────────────────────┘");
-        
-        System.out.print("Enter Account Number: ");
-        String accountNumber = scanner.nextLine();
-        
-        Account account = bank.getAccount(accountNumber);
-        if (account == null) {
-            System.out.println("✗ Account not found.");
-            System.out.println();
-            return;
-        }
-        
-        System.out.println("Current Status: " + (account.isActive() ? "Active" : "Blocked"));
-        System.out.println("1. Block Account");
-        System.out.println("2. Unblock Account");
-        System.out.print("Enter choice (1-2): ");
-        
-        String choice = scanner.nextLine();
-        
-        switch (choice) {
-            case "1":
-                account.setActive(false);
-                System.out.println("✓ Account blocked successfully.");
-                break;
-            case "2":
-                account.setActive(true);
-                System.out.println("✓ Account unblocked successfully.");
-                break;
-            default:
-                System.out.println("✗ Invalid choice.");
-        }
-        System.out.println();
-    }
-    
-    private static void viewBankStatistics() {
-        System.out.println("┌──────────────────────────────────────────────────────────────┐");
-        System.out.println("│                     BANK STATISTICS                          │");
-        System.out.println("└──────────────────────────────────────────────────────────────┘");
-        
-        System.out.println(bank.getBankStatistics());
-        
-        System.out.println("Account Distribution:");
-        System.out.println("High Balance Accounts (>₹10,000): " + bank.getAccountsAboveBalance(10000).size());
-        System.out.println("Low Balance Accounts (<₹1,000): " + bank.getAccountsBelowBalance(1000).size());
-        System.out.println();
-    }
-    
-    private static void processAccountRequests() {
-        System.out.println("┌──────────────────────────────────────────────────────────────┐");
-        System.out.println("│                   PROCESS ACCOUNT REQUESTS                  │");
-        System.out.println("└──────────────────────────────────────────────────────────────┘");
-        
-        System.out.println("No pending requests at this time.");
-        System.out.println("This feature would handle account opening requests,");
-        System.out.println("loan applications, and other customer requests.");
-        System.out.println();
-    }
-    
-    private static void viewTransactionLogs() {
-        System.out.println("┌──────────────────────────────────────────────────────────────┐");
-        System.out.println("│                    TRANSACTION LOGS                         │");
-        System.out.println("└──────────────────────────────────────────────────────────────┘");
-        
-        System.out.println("Recent Bank Transactions:");
-        System.out.println("─────────────────────────");
-        
-        // Get all transactions from all accounts
-        for (Account account : bank.getAllAccounts()) {
-            if (!account.getTransactions().isEmpty()) {
-                System.out.println("Account: " + account.getAccountNumber() + " (" + account.getAccountHolder() + ")");
-                for (Transaction transaction : account.getTransactions()) {
-                    System.out.println("  " + transaction.getTransactionSummary());
-                }
-                System.out.println();
-            }
-        }
-    }
-    
-    private static void manageOfficials() {
-        System.out.println("┌──────────────────────────────────────────────────────────────┐");
-        System.out.println("│                   MANAGE BANK OFFICIALS                     │");
-        System.out.println("└──────────────────────────────────────────────────────────────┘");
-        
-        System.out.println("Current Officials:");
-        System.out.printf("%-10s %-15s %-15s%n", "ID", "Name", "Role");
-        System.out.println("─────────────────────────────────────────");
-        
-        for (BankOfficial official : bank.getAllOfficials()) {
-            System.out.printf("%-10s %-15s %-15s%n", 
-                official.getOfficialId(), 
-                official.getName(), 
-                official.getRole());
-        }
-        System.out.println();
-        
-        System.out.println("1. Add New Official");
-        System.out.println("2. Remove Official");
-        System.out.println("3. Back to Main Menu");
-        System.out.print("Enter choice (1-3): ");
-        
-        String choice = scanner.nextLine();
-        
-        switch (choice) {
-            case "1":
-                addNewOfficial();
-                break;
-            case "2":
-                removeOfficial();
-                break;
-            case "3":
-                break;
-            default:
-                System.out.println("✗ Invalid choice.");
+            bank.closeJournal();
+        } catch (IOException e) {
+            System.out.println("✗ Could not flush journal: " + e.getMessage());
         }
-        System.out.println();
-    }
-    
-    private static void addNewOfficial() {
-        System.out.print("Enter Official ID: ");
-        String officialId = scanner.nextLine();
-        
-        if (bank.getOfficial(officialId) != null) {
-            System.out.println("✗ Official ID already exists.");
-            return;
-        }
-        
-        System.out.print("Enter Password: ");
-        String password = scanner.nextLine();
-        
-        System.out.print("Enter Role (Manager/Staff/Supervisor): ");
-        String role = scanner.nextLine();
-        
-        System.out.print("Enter Name: ");
-        String name = scanner.nextLine();
-        
-        BankOfficial newOfficial = new BankOfficial(officialId, password, role, name);
-        bank.addOfficial(newOfficial);
-        
-        System.out.println("✓ Official added successfully!");
-    }
-    
-    private static void removeOfficial() {
-        System.out.print("Enter Official ID to remove: ");
-        String officialId = scanner.nextLine();
-        
-        if (bank.removeOfficial(officialId)) {
-            System.out.println("✓ Official removed successfully!");
-        } else {
-            System.out.println("✗ Official not found.");
-        }
-    }
-    
-    private static void logout() {
-        if (isOfficialMode) {
-            System.out.println("✓ Logged out successfully. Thank you for using the banking system!");
-        } else {
-            System.out.println("✓ Logged out successfully. Thank you for using our ATM!");
-        }
-        System.out.println();
-        currentAccount = null;
-        currentOfficial = null;
-        isOfficialMode = false;
-    }
-    
-    private static void exit() {
-        System.out.println("╔══════════════════════════════════════════════════════════════╗");
-        System.out.println("║                    Thank you for using                      ║");
-        System.out.println("║                ENHANCED ATM SIMULATION SYSTEM              ║");
-        System.out.println("║                         Goodbye!                            ║");
-        System.out.println("╚══════════════════════════════════════════════════════════════╝");
-        scanner.close();
-        System.exit(0);
     }
 } 
\ No newline at end of file
@@ -1,20 +1,55 @@
-import java.util.ArrayList;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Account class representing a bank account
  * Manages account details, balance, and transaction history
  * 
+ * The balance is a long count of paise updated with compare-and-set, so
+ * deposits and withdrawals never block each other. The transaction history
+ * is appended under the account lock and carries its own running "posted"
+ * balance, which always matches the history order.
+ * 
+ * While the account belongs to a Bank with a journal, every change is
+ * logged under the account lock (so per-account journal order matches
+ * history order) and the call returns once the record is durable.
+ * 
  * @author Prabhu Bhalke
  * @version 1.0
  */
 public class Account {
+    private static final VarHandle BALANCE;
+    
+    static {
+        try {
+            BALANCE = MethodHandles.lookup().findVarHandle(Account.class, "balance", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    
     private String accountNumber;
-    private String pin;
+    private volatile String pin;
     private String accountHolder;
-    private double balance;
-    private List<Transaction> transactions;
-    private boolean isActive;
+    private volatile long balance;
+    private long postedBalance;
+    private TransactionLog history;
+    private volatile boolean isActive;
+    private volatile Bank bank;
+    private long lastLsn;
+    private BalanceIndex.Entry balanceEntry;
+    private long activityBucket = Long.MIN_VALUE;
+    // Sides of transfers between shards prepared on this account: transfer ID -> {signed amount, time prepared}
+    private Map<Long, long[]> preparedSides;
+    
+    // Guards postedBalance, history appends, lastLsn and balanceEntry; see lockBoth for the ordering rule.
+    // balanceEntry is set exactly while the account is counted in its bank's index, aggregates and feed.
+    private final ReentrantLock lock = new ReentrantLock();
     
     /**
      * Constructor to create a new account
@@ -28,12 +63,32 @@ public class Account {
         this.accountNumber = accountNumber;
         this.pin = pin;
         this.accountHolder = accountHolder;
-        this.balance = initialBalance;
-        this.transactions = new ArrayList<>();
+        this.history = new TransactionLog();
         this.isActive = true;
         
-        // Add initial balance transaction
-        addTransaction("Account Created", initialBalance, balance);
+        // Add initial balance transaction; the account is in no bank yet, so nothing is logged or counted
+        long initial = Money.toPaise(initialBalance);
+        this.balance = initial;
+        this.postedBalance = initial;
+        history.append(TransactionType.ACCOUNT_CREATED, initial, initial, System.currentTimeMillis(),
+                       TransactionIdGenerator.nextId());
+    }
+    
+    /**
+     * Constructor to restore an account from the journal
+     * The account starts with no history and a zero balance; the creation
+     * entry is replayed separately.
+     * 
+     * @param accountNumber The account number
+     * @param pin The PIN for the account
+     * @param accountHolder The name of the account holder
+     */
+    Account(String accountNumber, String pin, String accountHolder) {
+        this.accountNumber = accountNumber;
+        this.pin = pin;
+        this.accountHolder = accountHolder;
+        this.history = new TransactionLog();
+        this.isActive = true;
     }
     
     /**
@@ -60,8 +115,19 @@ public class Account {
      * @param pin The new PIN
      */
     public void setPin(String pin) {
-        this.pin = pin;
-        addTransaction("PIN Changed", 0.0, balance);
+        long lsn = 0L;
+        lock.lock();
+        try {
+            this.pin = pin;
+            int index = appendLocked(TransactionType.PIN_CHANGED, 0L);
+            Journal journal = journal();
+            if (journal != null) {
+                lsn = lastLsn = journal.logPinSet(accountNumber, pin, history.timestampAt(index), history.idAt(index));
+            }
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(lsn);
     }
     
     /**
@@ -76,19 +142,81 @@ public class Account {
     /**
      * Get the current balance
      * 
-     * @return The current balance
+     * @return The current balance in rupees
      */
     public double getBalance() {
+        return Money.toRupees(balance);
+    }
+    
+    /**
+     * Get the current balance in paise
+     * 
+     * @return The current balance in paise
+     */
+    public long getBalancePaise() {
         return balance;
     }
     
     /**
      * Get the transaction history
+     * The list is an immutable snapshot backed by the history log, so
+     * this does not copy; transactions added later are not included.
      * 
      * @return List of transactions
      */
     public List<Transaction> getTransactions() {
-        return new ArrayList<>(transactions);
+        return history.view(0, history.size());
+    }
+    
+    /**
+     * Get the number of transactions in the history
+     * 
+     * @return The number of transactions
+     */
+    public int transactionCount() {
+        return history.size();
+    }
+    
+    /**
+     * Get the most recent transactions, oldest first
+     * 
+     * @param n The maximum number of transactions to return
+     * @return List of at most n transactions
+     */
+    public List<Transaction> latest(int n) {
+        int count = history.size();
+        return history.view(count - Math.min(Math.max(n, 0), count), count);
+    }
+    
+    /**
+     * Get a page of the transaction history
+     * Positions start at 0 for the oldest transaction; pass the previous
+     * page's from + size() as the next from to continue where it ended.
+     * 
+     * @param from The position of the first transaction to return
+     * @param limit The maximum number of transactions to return
+     * @return List of at most limit transactions, empty past the end
+     */
+    public List<Transaction> page(int from, int limit) {
+        int count = history.size();
+        int start = Math.min(Math.max(from, 0), count);
+        return history.view(start, start + Math.min(Math.max(limit, 0), count - start));
+    }
+    
+    /**
+     * Get the balance at a point in time
+     * Every history entry records the balance after it, so each entry is a
+     * checkpoint and this is a binary search for the last entry at or
+     * before the time; the history is never walked.
+     * 
+     * @param timestampMillis The time in epoch milliseconds
+     * @return The balance in paise after the last transaction at or before that time,
+     *         or 0 if the account had no transactions yet
+     */
+    public long getBalancePaiseAsOf(long timestampMillis) {
+        int count = history.size();
+        int index = (timestampMillis == Long.MAX_VALUE ? count : history.countBefore(timestampMillis + 1L, count)) - 1;
+        return index >= 0 ? history.balanceAt(index) : 0L;
     }
     
     /**
@@ -98,27 +226,91 @@ public class Account {
      * @return true if successful, false otherwise
      */
     public boolean deposit(double amount) {
-        if (amount > 0) {
-            balance += amount;
-            addTransaction("Deposit", amount, balance);
-            return true;
+        return depositPaise(Money.isValid(amount) ? Money.toPaise(amount) : 0L);
+    }
+    
+    /**
+     * Deposit money into the account
+     * 
+     * @param amount The amount to deposit in paise
+     * @return true if successful, false otherwise
+     */
+    public boolean depositPaise(long amount) {
+        LedgerEvents.Deposit event = new LedgerEvents.Deposit();
+        event.begin();
+        Metrics.Operation metric = metric(false);
+        long start = metric != null ? metric.start() : Metrics.NOT_TIMED;
+        if (amount <= 0) {
+            return record(metric, start, event, amount, Metrics.Outcome.INVALID_AMOUNT);
         }
-        return false;
+        postCredit(TransactionType.DEPOSIT, amount);
+        return record(metric, start, event, amount, Metrics.Outcome.SUCCESS);
     }
     
     /**
      * Withdraw money from the account
+     * The funds check is folded into the compare-and-set of the balance,
+     * so concurrent withdrawals can never overdraw the account.
      * 
      * @param amount The amount to withdraw
      * @return true if successful, false otherwise
      */
     public boolean withdraw(double amount) {
-        if (amount > 0 && amount <= balance) {
-            balance -= amount;
-            addTransaction("Withdrawal", -amount, balance);
-            return true;
+        return withdrawPaise(Money.isValid(amount) ? Money.toPaise(amount) : 0L);
+    }
+    
+    /**
+     * Withdraw money from the account
+     * 
+     * @param amount The amount to withdraw in paise
+     * @return true if successful, false otherwise
+     */
+    public boolean withdrawPaise(long amount) {
+        LedgerEvents.Withdrawal event = new LedgerEvents.Withdrawal();
+        event.begin();
+        Metrics.Operation metric = metric(true);
+        long start = metric != null ? metric.start() : Metrics.NOT_TIMED;
+        if (amount <= 0) {
+            return record(metric, start, event, amount, Metrics.Outcome.INVALID_AMOUNT);
+        }
+        if (!debit(amount)) {
+            return record(metric, start, event, amount, Metrics.Outcome.INSUFFICIENT_FUNDS);
+        }
+        post(TransactionType.WITHDRAWAL, -amount);
+        return record(metric, start, event, amount, Metrics.Outcome.SUCCESS);
+    }
+    
+    /**
+     * Get the deposit or withdrawal metrics of the bank this account belongs to
+     * 
+     * @param withdrawal true for withdrawals, false for deposits
+     * @return The metrics, or null if the account is in no bank
+     */
+    private Metrics.Operation metric(boolean withdrawal) {
+        Bank owner = bank;
+        if (owner == null) {
+            return null;
+        }
+        return withdrawal ? owner.getMetrics().getWithdrawal() : owner.getMetrics().getDeposit();
+    }
+    
+    /**
+     * Count a deposit or withdrawal in its metrics, if any, and end its event
+     * 
+     * @param metric The metrics from metric, or null
+     * @param start The value metric.start returned
+     * @param event The operation's Flight Recorder event
+     * @param amount The amount in paise
+     * @param outcome How the operation ended
+     * @return true if the operation succeeded
+     */
+    private boolean record(Metrics.Operation metric, long start, LedgerEvents.AccountEvent event, long amount,
+                           Metrics.Outcome outcome) {
+        if (metric != null) {
+            metric.record(outcome, start);
         }
-        return false;
+        event.finish(accountNumber, amount, outcome);
+        return outcome == Metrics.Outcome.SUCCESS;
     }
     
     /**
@@ -126,37 +318,717 @@ public class Account {
      * 
      * @param type The type of transaction
      * @param amount The amount involved
-     * @param balance The balance after transaction
+     * @param balance Ignored; see addTransaction(String, double)
      */
     public void addTransaction(String type, double amount, double balance) {
-        transactions.add(new Transaction(type, amount, balance));
+        addTransaction(type, amount);
+    }
+    
+    /**
+     * Add an entry that records an event but moves no money to the history
+     * The entry records the posted balance, like every other entry, so the
+     * balance as of its time and statements are unaffected by it; the
+     * available balance can differ while a hold or another posting is in
+     * flight.
+     * 
+     * @param type The type of transaction
+     * @param amount The amount involved
+     */
+    public void addTransaction(String type, double amount) {
+        long lsn = 0L;
+        lock.lock();
+        try {
+            long amountPaise = Money.toPaise(amount);
+            long balancePaise = postedBalance;
+            int index = recordLocked(TransactionType.codeOf(type), amountPaise, balancePaise,
+                                     System.currentTimeMillis(), TransactionIdGenerator.nextId());
+            Journal journal = journal();
+            if (journal != null) {
+                lsn = lastLsn = journal.logNote(accountNumber, type, amountPaise, balancePaise,
+                                                history.timestampAt(index), history.idAt(index));
+            }
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(lsn);
     }
     
     /**
      * Transfer money to another account
+     * The money leaves this account with a single compare-and-set, and the
+     * history entries on both sides are posted together.
      * 
      * @param recipient The recipient account
      * @param amount The amount to transfer
      * @return true if successful, false otherwise
      */
     public boolean transfer(Account recipient, double amount) {
-        if (withdraw(amount)) {
-            recipient.deposit(amount);
-            addTransaction("Transfer Out", -amount, balance);
-            recipient.addTransaction("Transfer In", amount, recipient.getBalance());
+        return Money.isValid(amount) && transferPaise(recipient, Money.toPaise(amount));
+    }
+    
+    /**
+     * Transfer money to another account
+     * 
+     * @param recipient The recipient account
+     * @param amount The amount to transfer in paise
+     * @return true if successful, false otherwise
+     */
+    public boolean transferPaise(Account recipient, long amount) {
+        if (recipient == null || recipient == this || amount <= 0 || !debit(amount)) {
+            return false;
+        }
+        long lsn;
+        lockBoth(this, recipient);
+        try {
+            lsn = postTransferLocked(recipient, amount, System.currentTimeMillis());
+            // Spendable only once the journal holds the record, see postCredit
+            recipient.credit(amount);
+            reindexLocked();
+            recipient.reindexLocked();
+        } finally {
+            unlockBoth(this, recipient);
+        }
+        awaitDurable(lsn);
+        return true;
+    }
+    
+    /**
+     * Record both sides of a transfer whose money has already moved
+     * The caller holds the locks of both accounts, moves both in the balance
+     * index (see reindexLocked) and waits for the LSN.
+     * 
+     * @param recipient The recipient account
+     * @param amount The amount transferred in paise
+     * @param timestamp The time of the transfer in epoch milliseconds
+     * @return The LSN of the journal record, or 0 if nothing was logged
+     */
+    long postTransferLocked(Account recipient, long amount, long timestamp) {
+        int out = appendLocked(TransactionType.TRANSFER_OUT, -amount, timestamp);
+        int in = recipient.appendLocked(TransactionType.TRANSFER_IN, amount, timestamp);
+        Journal journal = journal();
+        if (journal == null) {
+            return 0L;
+        }
+        long lsn = journal.logTransfer(accountNumber, recipient.accountNumber, amount,
+                                       history.timestampAt(out), history.idAt(out), recipient.history.idAt(in));
+        lastLsn = lsn;
+        recipient.lastLsn = lsn;
+        return lsn;
+    }
+    
+    /**
+     * Atomically take money out of the balance if it is available
+     * 
+     * @param amount The amount in paise, must be positive
+     * @return true if the balance covered the amount, false otherwise
+     */
+    boolean debit(long amount) {
+        long current;
+        do {
+            current = balance;
+            if (current < amount) {
+                return false;
+            }
+        } while (!BALANCE.weakCompareAndSet(this, current, current - amount));
+        return true;
+    }
+    
+    /**
+     * Atomically add money to the balance
+     * 
+     * @param amount The amount in paise, must be positive
+     */
+    void credit(long amount) {
+        BALANCE.getAndAdd(this, amount);
+    }
+    
+    /**
+     * Record a movement in the history under the account lock
+     * The balance must already have moved, so this is for money going out.
+     * 
+     * @param type The transaction type code
+     * @param amount The signed amount in paise
+     */
+    void post(byte type, long amount) {
+        awaitDurable(log(type, amount, false));
+    }
+    
+    /**
+     * Record money coming in, and only then add it to the balance
+     * Once money is in the balance a withdrawal can spend it and be
+     * journaled; logging the credit first gives it the lower LSN, so the
+     * withdrawal can never be durable without the credit it spent.
+     * 
+     * @param type The transaction type code
+     * @param amount The amount in paise, must be positive
+     */
+    void postCredit(byte type, long amount) {
+        awaitDurable(log(type, amount, true));
+    }
+    
+    /**
+     * Prepare one side of a transfer between shards and journal it
+     * A paying side takes the amount out of the balance at once, so it
+     * cannot be spent while the transfer waits for its decision; the
+     * history and posted balance only change when it is resolved.
+     * 
+     * @param tx The transfer ID
+     * @param amount The signed amount in paise: negative to pay, positive to receive
+     * @param timestamp The time the transfer was prepared
+     * @return true if prepared, false if the balance does not cover a payment
+     */
+    boolean prepareTransfer(long tx, long amount, long timestamp) {
+        long lsn = 0L;
+        lock.lock();
+        try {
+            if (amount < 0 && !debit(-amount)) {
+                return false;
+            }
+            Journal journal = journal();
+            if (journal != null) {
+                lsn = lastLsn = journal.logPrepared(accountNumber, amount, timestamp, tx);
+            }
+            preparedSidesLocked().put(tx, new long[] {amount, timestamp});
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(lsn);
+        return true;
+    }
+    
+    /**
+     * Commit or abort a side of a transfer that prepareTransfer prepared
+     * A commit posts the movement; an abort releases a payment's hold.
+     * Either way the balance only grows once the journal has the record,
+     * as in postCredit.
+     * 
+     * @param tx The transfer ID
+     * @param amount The signed amount given to prepareTransfer
+     * @param commit true to commit, false to abort
+     */
+    void resolveTransfer(long tx, long amount, boolean commit) {
+        long lsn = 0L;
+        lock.lock();
+        try {
+            byte type = amount < 0 ? TransactionType.TRANSFER_OUT : TransactionType.TRANSFER_IN;
+            long timestamp = 0L;
+            long id = 0L;
+            if (commit) {
+                int index = appendLocked(type, amount);
+                timestamp = history.timestampAt(index);
+                id = history.idAt(index);
+            }
+            Bank owner = bank;
+            if (owner != null) {
+                // Before the record, so a snapshot that misses the outcome also misses the record
+                owner.recordTransferOutcome(tx, commit);
+            }
+            Journal journal = journal();
+            if (journal != null) {
+                lsn = lastLsn = journal.logResolved(accountNumber, TransactionType.nameOf(type), amount, timestamp,
+                                                    id, tx, commit);
+            }
+            preparedSidesLocked().remove(tx);
+            if (commit ? amount > 0 : amount < 0) {
+                credit(Math.abs(amount));
+            }
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(lsn);
+    }
+    
+    /**
+     * Get the sides of transfers between shards prepared on this account
+     * 
+     * @return The transfer ID, signed amount and time prepared of each side, one after the other
+     */
+    long[] getPreparedTransfers() {
+        lock.lock();
+        try {
+            return preparedTransfersLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private long[] preparedTransfersLocked() {
+        if (preparedSides == null) {
+            return new long[0];
+        }
+        long[] sides = new long[3 * preparedSides.size()];
+        int at = 0;
+        for (Map.Entry<Long, long[]> side : preparedSides.entrySet()) {
+            sides[at++] = side.getKey();
+            sides[at++] = side.getValue()[0];
+            sides[at++] = side.getValue()[1];
+        }
+        return sides;
+    }
+    
+    private Map<Long, long[]> preparedSidesLocked() {
+        if (preparedSides == null) {
+            preparedSides = new HashMap<>();
+        }
+        return preparedSides;
+    }
+    
+    /**
+     * Append a movement to the history and the journal
+     * 
+     * @param credit true to add the amount to the balance once it is logged
+     * @return The LSN of the journal record, or 0 if nothing was logged
+     */
+    private long log(byte type, long amount, boolean credit) {
+        long lsn = 0L;
+        lock.lock();
+        try {
+            int index = appendLocked(type, amount);
+            Journal journal = journal();
+            if (journal != null) {
+                lsn = lastLsn = journal.logPost(accountNumber, TransactionType.nameOf(type), amount,
+                                                history.timestampAt(index), history.idAt(index));
+            }
+            if (credit) {
+                credit(amount);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return lsn;
+    }
+    
+    /**
+     * Record a movement in the history; the caller holds the account lock
+     * 
+     * @param type The transaction type code
+     * @param amount The signed amount in paise
+     * @return The index of the new history entry
+     */
+    private int appendLocked(byte type, long amount) {
+        int index = appendLocked(type, amount, System.currentTimeMillis());
+        reindexLocked();
+        return index;
+    }
+    
+    /**
+     * Record a movement with a given time; the caller holds the account lock
+     * The account keeps its place in the balance index until reindexLocked.
+     * 
+     * @param type The transaction type code
+     * @param amount The signed amount in paise
+     * @param timestamp The time of the movement in epoch milliseconds
+     * @return The index of the new history entry
+     */
+    private int appendLocked(byte type, long amount, long timestamp) {
+        postedBalance += amount;
+        return recordLocked(type, amount, postedBalance, timestamp, TransactionIdGenerator.nextId());
+    }
+    
+    /**
+     * Append a history entry and count it in the bank's aggregates and feed
+     * The caller holds the account lock.
+     * 
+     * @return The index of the new history entry
+     */
+    private int recordLocked(byte type, long amount, long balance, long timestamp, long id) {
+        int index = history.append(type, amount, balance, timestamp, id);
+        if (balanceEntry != null) {
+            bank.getAggregates().transactionRecorded(type, amount);
+            noteActivityLocked(history.timestampAt(index));
+        }
+        return index;
+    }
+    
+    /**
+     * Register this account in its bank's transaction feed for the bucket of a time
+     * The caller holds the account lock and attaches entries in time order.
+     */
+    private void noteActivityLocked(long timestamp) {
+        long bucket = TransactionFeed.bucketOf(timestamp);
+        if (bucket != activityBucket) {
+            activityBucket = bucket;
+            bank.getTransactionFeed().recordActivity(this, bucket);
+        }
+    }
+    
+    /**
+     * Change the active status and the bank's active count with it
+     * The caller holds the account lock.
+     */
+    private void setActiveLocked(boolean active) {
+        if (balanceEntry != null && active != isActive) {
+            bank.getAggregates().statusChanged(active);
+        }
+        this.isActive = active;
+    }
+    
+    /**
+     * Move this account in its bank's balance index and total to the posted balance
+     * The caller holds the account lock. A batch posting many movements to
+     * one account calls this once at the end.
+     */
+    final void reindexLocked() {
+        if (balanceEntry != null && balanceEntry.balance != postedBalance) {
+            bank.getAggregates().balanceChanged(postedBalance - balanceEntry.balance);
+            balanceEntry = bank.getBalanceIndex().move(balanceEntry, postedBalance);
+        }
+    }
+    
+    /**
+     * Get the journal of the bank this account belongs to
+     * 
+     * @return The journal, or null if changes are not being logged
+     */
+    private Journal journal() {
+        Bank owner = bank;
+        return owner == null ? null : owner.getJournal();
+    }
+    
+    /**
+     * Wait for a journal record to become durable
+     * 
+     * @param lsn The LSN of the record, or 0 if nothing was logged
+     */
+    private void awaitDurable(long lsn) {
+        Journal journal = journal();
+        if (lsn > 0 && journal != null) {
+            journal.awaitDurable(lsn);
+        }
+    }
+    
+    /**
+     * Join a bank, logging the account's creation to the bank's journal
+     * 
+     * @param owner The bank the account now belongs to
+     */
+    void attach(Bank owner) {
+        lock.lock();
+        try {
+            this.bank = owner;
+            balanceEntry = owner.getBalanceIndex().add(this, postedBalance);
+            BankAggregates aggregates = owner.getAggregates();
+            aggregates.accountAdded(postedBalance, isActive);
+            activityBucket = Long.MIN_VALUE;
+            for (int i = 0; i < history.size(); i++) {
+                aggregates.transactionRecorded(history.typeAt(i), history.amountAt(i));
+                noteActivityLocked(history.timestampAt(i));
+            }
+            Journal journal = journal();
+            if (journal != null && history.size() > 0) {
+                lastLsn = journal.logAccountCreated(accountNumber, pin, accountHolder, history.amountAt(0),
+                                                    history.timestampAt(0), history.idAt(0));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Leave the bank, logging the removal to the bank's journal
+     */
+    void detach() {
+        lock.lock();
+        try {
+            Journal journal = journal();
+            if (journal != null) {
+                lastLsn = journal.logAccountRemoved(accountNumber);
+            }
+            if (balanceEntry != null) {
+                BankAggregates aggregates = bank.getAggregates();
+                aggregates.accountRemoved(balanceEntry.balance, isActive);
+                for (int i = 0; i < history.size(); i++) {
+                    aggregates.transactionRemoved(history.typeAt(i), history.amountAt(i));
+                }
+                bank.getBalanceIndex().remove(balanceEntry);
+                balanceEntry = null;
+            }
+            this.bank = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Get the LSN of the last journal record for this account
+     * 
+     * @return The LSN, or 0 if nothing has been logged
+     */
+    long getLastLsn() {
+        lock.lock();
+        try {
+            return lastLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Re-apply a balance movement read back from the journal
+     * 
+     * @param lsn The LSN of the journal record
+     * @param type The transaction type code
+     * @param amount The signed amount in paise
+     * @param timestamp The original time of the transaction
+     * @param id The original transaction ID
+     */
+    void replayPost(long lsn, byte type, long amount, long timestamp, long id) {
+        lock.lock();
+        try {
+            BALANCE.getAndAdd(this, amount);
+            postedBalance += amount;
+            reindexLocked();
+            recordLocked(type, amount, postedBalance, timestamp, id);
+            lastLsn = lsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Re-apply a prepared side of a transfer read back from the journal
+     * 
+     * @param lsn The LSN of the journal record
+     * @param tx The transfer ID
+     * @param amount The signed amount prepared; a payment is held out of the balance again
+     * @param timestamp The time the transfer was prepared
+     */
+    void replayPrepared(long lsn, long tx, long amount, long timestamp) {
+        lock.lock();
+        try {
+            if (amount < 0) {
+                BALANCE.getAndAdd(this, amount);
+            }
+            preparedSidesLocked().put(tx, new long[] {amount, timestamp});
+            lastLsn = lsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Re-apply the commit or abort of a side of a transfer read back from the journal
+     * 
+     * @param lsn The LSN of the journal record
+     * @param type The transaction type code
+     * @param amount The signed amount prepared
+     * @param timestamp The original time of the commit
+     * @param id The original transaction ID
+     * @param tx The transfer ID
+     * @param commit true if the side was committed, false if aborted
+     */
+    void replayResolved(long lsn, byte type, long amount, long timestamp, long id, long tx, boolean commit) {
+        lock.lock();
+        try {
+            preparedSidesLocked().remove(tx);
+            if (commit) {
+                postedBalance += amount;
+                reindexLocked();
+                recordLocked(type, amount, postedBalance, timestamp, id);
+            }
+            if (commit ? amount > 0 : amount < 0) {
+                BALANCE.getAndAdd(this, Math.abs(amount));
+            }
+            lastLsn = lsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Re-apply a history-only entry read back from the journal
+     * 
+     * @param lsn The LSN of the journal record
+     * @param type The transaction type code
+     * @param amount The recorded amount in paise
+     * @param balance The recorded balance in paise
+     * @param timestamp The original time of the transaction
+     * @param id The original transaction ID
+     */
+    void replayNote(long lsn, byte type, long amount, long balance, long timestamp, long id) {
+        lock.lock();
+        try {
+            recordLocked(type, amount, balance, timestamp, id);
+            lastLsn = lsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Re-apply a PIN change read back from the journal
+     * 
+     * @param lsn The LSN of the journal record
+     * @param pin The new PIN
+     * @param timestamp The original time of the change
+     * @param id The original transaction ID
+     */
+    void replayPin(long lsn, String pin, long timestamp, long id) {
+        lock.lock();
+        try {
+            this.pin = pin;
+            recordLocked(TransactionType.PIN_CHANGED, 0L, postedBalance, timestamp, id);
+            lastLsn = lsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Re-apply a status change read back from the journal
+     * 
+     * @param lsn The LSN of the journal record
+     * @param active The active status
+     */
+    void replayActive(long lsn, boolean active) {
+        lock.lock();
+        try {
+            setActiveLocked(active);
+            lastLsn = lsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Copy the state a snapshot needs, consistent with the last LSN
+     * History entries below the captured size can be read without the lock.
+     * 
+     * @param state Receives the PIN, status, posted balance, last LSN, history size and prepared transfers
+     * @return true if captured, false if the account has left its bank
+     */
+    boolean captureState(Snapshot.AccountState state) {
+        lock.lock();
+        try {
+            if (bank == null) {
+                return false;
+            }
+            state.account = this;
+            state.pin = pin;
+            state.active = isActive;
+            state.balance = postedBalance;
+            state.lastLsn = lastLsn;
+            state.historySize = history.size();
+            state.prepared = preparedTransfersLocked();
             return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Set the state of an account restored from a snapshot
+     * The history is restored separately through getHistory().
+     * 
+     * @param active The active status
+     * @param balance The posted balance in paise
+     * @param lsn The LSN of the last journal record included
+     * @param prepared The prepared transfers as getPreparedTransfers returns them; payments are held again
+     */
+    void restoreState(boolean active, long balance, long lsn, long[] prepared) {
+        lock.lock();
+        try {
+            setActiveLocked(active);
+            long held = 0L;
+            for (int at = 0; at < prepared.length; at += 3) {
+                preparedSidesLocked().put(prepared[at], new long[] {prepared[at + 1], prepared[at + 2]});
+                held += Math.min(prepared[at + 1], 0L);
+            }
+            this.balance = balance + held;
+            this.postedBalance = balance;
+            reindexLocked();
+            this.lastLsn = lsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Get the posted balance, the one the bank's totals count
+     * 
+     * @return The posted balance in paise
+     */
+    long getPostedBalancePaise() {
+        lock.lock();
+        try {
+            return postedBalance;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Get the underlying history log
+     * 
+     * @return The transaction log
+     */
+    TransactionLog getHistory() {
+        return history;
+    }
+    
+    /**
+     * Lock two accounts in the global lock order (ascending account number).
+     * Every code path that holds more than one account lock must go through
+     * here or lockAll, which is what keeps A-to-B and B-to-A transfers from
+     * deadlocking.
+     * 
+     * @param first One of the accounts
+     * @param second The other account
+     */
+    static void lockBoth(Account first, Account second) {
+        if (first.accountNumber.compareTo(second.accountNumber) <= 0) {
+            first.lock.lock();
+            second.lock.lock();
+        } else {
+            second.lock.lock();
+            first.lock.lock();
+        }
+    }
+    
+    /**
+     * Release two accounts locked with lockBoth
+     * 
+     * @param first One of the accounts
+     * @param second The other account
+     */
+    static void unlockBoth(Account first, Account second) {
+        first.lock.unlock();
+        second.lock.unlock();
+    }
+    
+    /**
+     * Lock any number of distinct accounts in the global lock order
+     * 
+     * @param accounts The accounts, sorted into lock order by this call
+     */
+    static void lockAll(Account[] accounts) {
+        Arrays.sort(accounts, (a, b) -> a.accountNumber.compareTo(b.accountNumber));
+        for (Account account : accounts) {
+            account.lock.lock();
+        }
+    }
+    
+    /**
+     * Release accounts locked with lockAll
+     * 
+     * @param accounts The same array passed to lockAll
+     */
+    static void unlockAll(Account[] accounts) {
+        for (int i = accounts.length - 1; i >= 0; i--) {
+            accounts[i].lock.unlock();
         }
-        return false;
     }
     
     /**
      * Check if the account has sufficient funds
+     * This is only a snapshot; use the boolean result of withdraw or
+     * transfer to decide whether money actually moved.
      * 
      * @param amount The amount to check
      * @return true if sufficient funds, false otherwise
      */
     public boolean hasSufficientFunds(double amount) {
-        return balance >= amount;
+        return Money.isValid(amount) && balance >= Money.toPaise(amount);
     }
     
     /**
@@ -174,7 +1046,18 @@ public class Account {
      * @param active The active status
      */
     public void setActive(boolean active) {
-        this.isActive = active;
+        long lsn = 0L;
+        lock.lock();
+        try {
+            setActiveLocked(active);
+            Journal journal = journal();
+            if (journal != null) {
+                lsn = lastLsn = journal.logActiveSet(accountNumber, active);
+            }
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(lsn);
     }
     
     /**
@@ -183,8 +1066,8 @@ public class Account {
      * @return String representation of account summary
      */
     public String getAccountSummary() {
-        return String.format("Account: %s | Holder: %s | Balance: ₹%.2f", 
-                           accountNumber, accountHolder, balance);
+        return "Account: " + accountNumber + " | Holder: " + accountHolder
+                + " | Balance: ₹" + Money.format(balance);
     }
     
     @Override
@@ -0,0 +1,143 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AtmServer class accepting ATM terminal connections over TCP
+ * Every connection runs its own AtmSession on a virtual thread, so
+ * thousands of mostly idle terminals cost little more than their socket
+ * and session buffers. All sessions share the same Bank, and the same
+ * CashVault if one is given.
+ * 
+ * The server listens on the loopback interface only; terminals on other
+ * machines are expected to reach it through a tunnel or proxy.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class AtmServer implements Closeable {
+    private static final int ACCEPT_BACKLOG = 1024;
+    
+    private final Bank bank;
+    private final CashVault vault;
+    private final ServerSocket serverSocket;
+    private final ThreadFactory sessionThreads = Thread.ofVirtual().name("atm-session-", 0).factory();
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    
+    /**
+     * Constructor to create a server listening on a local port
+     * 
+     * @param bank The bank shared by all sessions
+     * @param port The TCP port; 0 picks a free port
+     * @throws IOException if the port cannot be bound
+     */
+    public AtmServer(Bank bank, int port) throws IOException {
+        this(bank, null, port);
+    }
+    
+    /**
+     * Constructor to create a server whose terminals pay withdrawals from shared cassettes
+     * 
+     * @param bank The bank shared by all sessions
+     * @param vault The cassettes shared by all sessions, or null to pay without counting notes
+     * @param port The TCP port; 0 picks a free port
+     * @throws IOException if the port cannot be bound
+     */
+    public AtmServer(Bank bank, CashVault vault, int port) throws IOException {
+        this.bank = bank;
+        this.vault = vault;
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), ACCEPT_BACKLOG);
+    }
+    
+    /**
+     * Get the port the server is listening on
+     * 
+     * @return The local port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+    
+    /**
+     * Get the number of connected terminals
+     * 
+     * @return The number of running sessions
+     */
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+    
+    /**
+     * Accept connections on the calling thread until the server is closed
+     * 
+     * @throws IOException if accepting fails for a reason other than close
+     */
+    public void serve() throws IOException {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                throw e;
+            }
+            socket.setTcpNoDelay(true);
+            activeSessions.incrementAndGet();
+            sessionThreads.newThread(() -> runSession(socket)).start();
+        }
+    }
+    
+    /**
+     * Start accepting connections on a background thread
+     * 
+     * @return The accepting thread
+     */
+    public Thread start() {
+        Thread acceptor = new Thread(() -> {
+            try {
+                serve();
+            } catch (IOException e) {
+                System.err.println("ATM server stopped: " + e.getMessage());
+            }
+        }, "atm-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return acceptor;
+    }
+    
+    /**
+     * Run one terminal's session and close its connection afterwards
+     * 
+     * @param socket The terminal connection
+     */
+    private void runSession(Socket socket) {
+        try (socket) {
+            AtmSession session = new AtmSession(bank, vault, socket.getInputStream(), socket.getOutputStream());
+            session.showWelcome();
+            session.run();
+        } catch (IOException e) {
+            // The connection failed before or while closing; the session is over either way
+        } finally {
+            activeSessions.decrementAndGet();
+        }
+    }
+    
+    /**
+     * Stop accepting connections; sessions already running continue
+     * 
+     * @throws IOException if the listening socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+}
@@ -0,0 +1,1184 @@
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * AtmSession class running the ATM menus for one terminal
+ * Each session has its own logged-in customer or official and its own
+ * input and output streams, so any number of sessions can run at once
+ * against a shared Bank: the console terminal started by ATM, or one per
+ * connection accepted by AtmServer.
+ * 
+ * Output is collected in a StringBuilder and written whenever the session
+ * waits for input, so a waiting session keeps only a few hundred bytes of
+ * buffers instead of the tens of kilobytes a PrintStream and Scanner carry.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class AtmSession implements Runnable {
+    /** Largest withdrawal per transaction, in rupees */
+    public static final double MAX_WITHDRAWAL = 50000;
+    /** Withdrawals above this amount, in rupees, need the PIN again */
+    public static final double PIN_CHECK_WITHDRAWAL = 10000;
+    /** Largest deposit per transaction, in rupees */
+    public static final double MAX_DEPOSIT = 100000;
+    /** Largest transfer per transaction, in rupees */
+    public static final double MAX_TRANSFER = 25000;
+    /** Most accounts listed by a name search */
+    public static final int MAX_SEARCH_RESULTS = 20;
+    /** Bank-wide transactions shown per page of the transaction logs */
+    public static final int TRANSACTION_LOG_PAGE = 50;
+    /** Most bank-wide transactions the transaction logs page through */
+    public static final int MAX_TRANSACTION_LOG = 200;
+    /** Days covered by a statement when no dates are given */
+    public static final int STATEMENT_DAYS = 30;
+    /** Longest input line in bytes; a terminal sending a longer one is disconnected */
+    public static final int MAX_LINE_BYTES = 256;
+    
+    private static final int INPUT_BUFFER = 256;
+    private static final int OUTPUT_FLUSH = 8 * 1024;
+    private static final DateTimeFormatter STATEMENT_DATE = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    
+    private final Bank bank;
+    private final CashVault vault;
+    private final InputStream input;
+    private final OutputStream output;
+    private final StringBuilder pending = new StringBuilder();
+    private final LoginGuard.Terminal terminal = new LoginGuard.Terminal();
+    private final byte[] lineBuffer = new byte[MAX_LINE_BYTES];
+    private Account currentAccount = null;
+    private BankOfficial currentOfficial = null;
+    private boolean isOfficialMode = false;
+    private boolean running = true;
+    
+    /**
+     * Constructor to create a session for one terminal
+     * 
+     * @param bank The bank shared by all sessions
+     * @param input The terminal's input stream
+     * @param output The terminal's output stream
+     */
+    public AtmSession(Bank bank, InputStream input, OutputStream output) {
+        this(bank, null, input, output);
+    }
+    
+    /**
+     * Constructor to create a session for one terminal that pays withdrawals in notes
+     * 
+     * @param bank The bank shared by all sessions
+     * @param vault The cassettes withdrawals are paid from, or null to pay without counting notes
+     * @param input The terminal's input stream
+     * @param output The terminal's output stream
+     */
+    public AtmSession(Bank bank, CashVault vault, InputStream input, OutputStream output) {
+        this.bank = bank;
+        this.vault = vault;
+        this.input = new BufferedInputStream(input, INPUT_BUFFER);
+        this.output = output;
+    }
+    
+    /**
+     * Show the welcome banner, for terminals that did not see the console one
+     */
+    public void showWelcome() {
+        println("╔══════════════════════════════════════════════════════════════╗");
+        println("║                ENHANCED ATM SIMULATION SYSTEM              ║");
+        println("║                    Official Banking System                 ║");
+        println("║                        Welcome!                             ║");
+        println("╚══════════════════════════════════════════════════════════════╝");
+    }
+    
+    /**
+     * Show the menus until the user exits or the terminal disconnects
+     */
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                if (currentAccount == null && currentOfficial == null) {
+                    showMainLoginMenu();
+                } else if (isOfficialMode) {
+                    showOfficialMenu();
+                } else {
+                    showCustomerMenu();
+                }
+            }
+            flush();
+        } catch (UncheckedIOException e) {
+            // The terminal went away; nothing is left to report to it
+            running = false;
+        }
+    }
+    
+    /**
+     * Check if the session is still running
+     * 
+     * @return true until the user exits or the terminal disconnects
+     */
+    public boolean isRunning() {
+        return running;
+    }
+    
+    /**
+     * Display main login menu with options for customer and official
+     */
+    private void showMainLoginMenu() {
+        println("┌──────────────────────────────────────────────────────────────┐");
+        println("│                      MAIN LOGIN MENU                        │");
+        println("├──────────────────────────────────────────────────────────────┤");
+        println("│ 1. Customer Login                                            │");
+        println("│ 2. Bank Official Login                                       │");
+        println("│ 3. Exit                                                      │");
+        println("└──────────────────────────────────────────────────────────────┘");
+        print("Enter your choice (1-3): ");
+        
+        String choice = readLine();
+        println();
+        
+        switch (choice) {
+            case "1":
+                showCustomerLoginMenu();
+                break;
+            case "2":
+                showOfficialLoginMenu();
+                break;
+            case "3":
+                exit();
+                break;
+            default:
+                println("✗ Invalid choice. Please enter 1, 2, or 3.");
+                println();
+        }
+    }
+    
+    /**
+     * Display customer login menu
+     */
+    private void showCustomerLoginMenu() {
+        println("┌──────────────────────────────────────────────────────────────┐");
+        println("│                      CUSTOMER LOGIN                         │");
+        println("└──────────────────────────────────────────────────────────────┘");
+        print("Enter Account Number: ");
+        String accountNumber = readLine();
+        
+        print("Enter PIN: ");
+        String pin = readLine();
+        
+        switch (bank.login(accountNumber, pin, terminal)) {
+            case OK:
+                currentAccount = bank.getAccount(accountNumber);
+                isOfficialMode = false;
+                println("✓ Login successful! Welcome, " + currentAccount.getAccountHolder() + "!");
+                break;
+            case RATE_LIMITED:
+                println("✗ Too many login attempts. Please wait a moment and try again.");
+                break;
+            case LOCKED_OUT:
+                println("✗ Too many incorrect PINs. This account is locked for "
+                        + LoginGuard.LOCKOUT_MILLIS / 60_000L + " minutes.");
+                break;
+            default:
+                println("✗ Invalid account number or PIN. Please try again.");
+        }
+        println();
+    }
+    
+    /**
+     * Display bank official login menu
+     */
+    private void showOfficialLoginMenu() {
+        println("┌──────────────────────────────────────────────────────────────┐");
+        println("│                    BANK OFFICIAL LOGIN                      │");
+        println("└──────────────────────────────────────────────────────────────┘");
+        print("Enter Official ID: ");
+        String officialId = readLine();
+        
+        print("Enter Password: ");
+        String password = readLine();
+        
+        if (bank.authenticateOfficial(officialId, password)) {
+            currentOfficial = bank.getOfficial(officialId);
+            isOfficialMode = true;
+            println("✓ Login successful! Welcome, " + currentOfficial.getName() + " (" + currentOfficial.getRole() + ")!");
+            println();
+        } else {
+            println("✗ Invalid official ID or password. Please try again.");
+            println();
+        }
+    }
+    
+    /**
+     * Display customer menu
+     */
+    private void showCustomerMenu() {
+        while (true) {
+            println("┌──────────────────────────────────────────────────────────────┐");
+            println("│                      CUSTOMER MENU                         │");
+            println("├──────────────────────────────────────────────────────────────┤");
+            println("│ 1. Check Balance                                             │");
+            println("│ 2. Withdraw Money                                            │");
+            println("│ 3. Deposit Money                                             │");
+            println("│ 4. Transfer Money                                            │");
+            println("│ 5. View Transaction History                                  │");
+            println("│ 6. Change PIN                                                │");
+            println("│ 7. Request Account Statement                                 │");
+            println("│ 8. Logout                                                    │");
+            println("│ 9. Exit                                                      │");
+            println("└──────────────────────────────────────────────────────────────┘");
+            print("Enter your choice (1-9): ");
+            
+            String choice = readLine();
+            println();
+            
+            switch (choice) {
+                case "1":
+                    checkBalance();
+                    break;
+                case "2":
+                    withdrawMoney();
+                    break;
+                case "3":
+                    depositMoney();
+                    break;
+                case "4":
+                    transferMoney();
+                    break;
+                case "5":
+                    viewTransactionHistory();
+                    break;
+                case "6":
+                    changePIN();
+                    break;
+                case "7":
+                    requestAccountStatement();
+                    break;
+                case "8":
+                    logout();
+                    return;
+                case "9":
+                    exit();
+                    return;
+                default:
+                    println("✗ Invalid choice. Please enter a number between 1-9.");
+                    println();
+            }
+        }
+    }
+    
+    /**
+     * Display bank official menu
+     */
+    private void showOfficialMenu() {
+        while (true) {
+            println("┌──────────────────────────────────────────────────────────────┐");
+            println("│                    BANK OFFICIAL MENU                      │");
+            println("├──────────────────────────────────────────────────────────────┤");
+            println("│ 1. Create New Account                                        │");
+            println("│ 2. View All Accounts                                         │");
+            println("│ 3. Search Account                                            │");
+            println("│ 4. Block/Unblock Account                                     │");
+            println("│ 5. View Bank Statistics                                      │");
+            println("│ 6. Process Account Requests                                  │");
+            println("│ 7. View Transaction Logs                                     │");
+            println("│ 8. Manage Bank Officials                                     │");
+            println("│ 9. Logout                                                    │");
+            println("│ 10. Exit                                                     │");
+            println("└──────────────────────────────────────────────────────────────┘");
+            print("Enter your choice (1-10): ");
+            
+            String choice = readLine();
+            println();
+            
+            switch (choice) {
+                case "1":
+                    createNewAccount();
+                    break;
+                case "2":
+                    viewAllAccounts();
+                    break;
+                case "3":
+                    searchAccount();
+                    break;
+                case "4":
+                    manageAccountStatus();
+                    break;
+                case "5":
+                    viewBankStatistics();
+                    break;
+                case "6":
+                    processAccountRequests();
+                    break;
+                case "7":
+                    viewTransactionLogs();
+                    break;
+                case "8":
+                    manageOfficials();
+                    break;
+                case "9":
+                    logout();
+                    return;
+                case "10":
+                    exit();
+                    return;
+                default:
+                    println("✗ Invalid choice. Please enter a number between 1-10.");
+                    println();
+            }
+        }
+    }
+    
+    // Customer Operations
+    private void checkBalance() {
+        println("┌──────────────────────────────────────────────────────────────┐");
+        println("│                        BALANCE INQUIRY                      │");
+        println("└──────────────────────────────────────────────────────────────┘");
+        println("Account Holder: " + currentAccount.getAccountHolder());
+        println("Account Number: " + currentAccount.getAccountNumber());
+        println("Current Balance: ₹" + String.format("%.2f", currentAccount.getBalance()));
+        println();
+        
+        currentAccount.addTransaction("Balance Inquiry", 0.0);
+    }
+    
+    private void withdrawMoney() {
+        println("┌──────────────────────────────────────────────────────────────┐");
+        println("│                         WITHDRAWAL                          │");
+        println("└──────────────────────────────────────────────────────────────┘");
+        
+        println("Available denominations: ₹100, ₹200, ₹500, ₹1000, ₹2000");
+        print("Enter amount to withdraw: ₹");
+        
+        Metrics.Operation metric = bank.getMetrics().getAtmWithdrawal();
+        String entry = readLine();
+        // Timed from the customer's last entry, so time spent typing is left out
+        long start = metric.start();
+        try {
+            double amount = Double.parseDouble(entry);
+            
+            if (amount <= 0) {
+                println("✗ Amount must be greater than zero.");
+                println();
+                metric.record(Metrics.Outcome.INVALID_AMOUNT, start);
+                return;
+            }
+            
+            if (amount > currentAccount.getBalance()) {
+                println("✗ Insufficient funds. Your balance is ₹" + 
+                                 String.format("%.2f", currentAccount.getBalance()));
+                println();
+                metric.record(Metrics.Outcome.INSUFFICIENT_FUNDS, start);
+                return;
+            }
+            
+            if (amount > MAX_WITHDRAWAL) {
+                println("✗ Maximum withdrawal limit is ₹50,000 per transaction.");
+                println();
+                metric.record(Metrics.Outcome.LIMIT_EXCEEDED, start);
+                return;
+            }
+            
+            if (vault != null && !vault.isDispensable(amount)) {
+                println("✗ Amount must be a multiple of ₹100.");
+                println();
+                metric.record(Metrics.Outcome.INVALID_AMOUNT, start);
+                return;
+            }
+            
+            if (amount > PIN_CHECK_WITHDRAWAL) {
+                print("Enter PIN for verification: ");
+                String pin = readLine();
+                start = metric.start();
+                switch (verifyPin(pin, "✗ Invalid PIN. Transaction cancelled.")) {
+                    case OK:
+                        break;
+                    case RATE_LIMITED:
+                        metric.record(Metrics.Outcome.RATE_LIMITED, start);
+                        return;
+                    case LOCKED_OUT:
+                        metric.record(Metrics.Outcome.LOCKED_OUT, start);
+                        return;
+                    default:
+                        metric.record(Metrics.Outcome.INVALID_PIN, start);
+                        return;
+                }
+            }
+            
+            // The notes are set aside before the account is debited and put back if the debit fails
+            long notes = vault != null ? vault.take(amount) : 0L;
+            if (notes == DispensePlanner.NO_PLAN) {
+                println("✗ This ATM cannot pay ₹" + String.format("%.2f", amount)
+                        + " with the notes it has left. Please try a different amount.");
+                println();
+                metric.record(Metrics.Outcome.CANNOT_DISPENSE, start);
+                return;
+            }
+            
+            if (!currentAccount.withdraw(amount)) {
+                if (vault != null) {
+                    vault.putBack(notes);
+                }
+                println("✗ Insufficient funds. Your balance is ₹" + 
+                                 String.format("%.2f", currentAccount.getBalance()));
+                println();
+                metric.record(Metrics.Outcome.INSUFFICIENT_FUNDS, start);
+                return;
+            }
+            
+            println("✓ Withdrawal successful!");
+            println("Amount withdrawn: ₹" + String.format("%.2f", amount));
+            if (vault != null) {
+                println("Notes dispensed: " + DispensePlanner.describe(notes));
+            }
+            println("New balance: ₹" + String.format("%.2f", currentAccount.getBalance()));
+            println();
+            metric.record(Metrics.Outcome.SUCCESS, start);
+            
+        } catch (NumberFormatException e) {
+            println("✗ Invalid amount format. Please enter a valid number.");
+            println();
+            metric.record(Metrics.Outcome.INVALID_AMOUNT, start);
+        }
+    }
+    
+    private void depositMoney() {
+        println("┌──────────────────────────────────────────────────────────────┐");
+        println("│                          DEPOSIT                            │");
+        println("└──────────────────────────────────────────────────────────────┘");
+        
+        print("Enter amount to deposit: ₹");
+        
+        Metrics.Operation metric = bank.getMetrics().getAtmDeposit();
+        String entry = readLine();
+        long start = metric.start();
+        try {
+            double amount = Double.parseDouble(entry);
+            
+            if (amount <= 0) {
+                println("✗ Amount must be greater than zero.");
+                println();
+                metric.record(Metrics.Outcome.INVALID_AMOUNT, start);
+                return;
+            }
+            
+            if (amount > MAX_DEPOSIT) {
+                println("✗ Maximum deposit limit is ₹1,00,000 per transaction.");
+                println();
+                metric.record(Metrics.Outcome.LIMIT_EXCEEDED, start);
+                return;
+            }
+            
+            if (!currentAccount.deposit(amount)) {
+                println("✗ Invalid amount. Please enter a valid number.");
+                println();
+                metric.record(Metrics.Outcome.INVALID_AMOUNT, start);
+                return;
+            }
+            
+            println("✓ Deposit successful!");
+            println("Amount deposited: ₹" + String.format("%.2f", amount));
+            println("New balance: ₹" + String.format("%.2f", currentAccount.getBalance()));
+            println();
+            metric.record(Metrics.Outcome.SUCCESS, start);
+            
+        } catch (NumberFormatException e) {
+            println("✗ Invalid amount format. Please enter a valid number.");
+            println();
+            metric.record(Metrics.Outcome.INVALID_AMOUNT, start);
+        }
+    }
+    
+    private void transferMoney() {
+        println("┌──────────────────────────────────────────────────────────────┐");
+        println("│                         MONEY TRANSFER                      │");
+        println("└──────────────────────────────────────────────────────────────┘");
+        
+        print("Enter recipient account number: ");
+        String recipientAccountNumber = readLine();
+        
+        Account recipientAccount = bank.getAccount(recipientAccountNumber);
+        if (recipientAccount == null) {
+            println("✗ Recipient account not found.");
+            println();
+            return;
+        }
+        
+        if (recipientAccountNumber.equals(currentAccount.getAccountNumber())) {
+            println("✗ Cannot transfer to your own account.");
+            println();
+            return;
+        }
+        
+        print("Enter amount to transfer: ₹");
+        
+        try {
+            double amount = Double.parseDouble(readLine());
+            
+            if (amount <= 0) {
+                println("✗ Amount must be greater than zero.");
+                println();
+                return;
+            }
+            
+            if (amount > currentAccount.getBalance()) {
+                println("✗ Insufficient funds. Your balance is ₹" + 
+                                 String.format("%.2f", currentAccount.getBalance()));
+                println();
+                return;
+            }
+            
+            if (amount > MAX_TRANSFER) {
+                println("✗ Maximum transfer limit is ₹25,000 per transaction.");
+                println();
+                return;
+            }
+            
+            print("Enter PIN for verification: ");
+            String pin = readLine();
+            if (verifyPin(pin, "✗ Invalid PIN. Transaction cancelled.") != LoginGuard.Result.OK) {
+                return;
+            }
+            
+            if (!bank.transferMoney(currentAccount.getAccountNumber(), recipientAccountNumber, amount)) {
+                println("✗ Insufficient funds. Your balance is ₹" + 
+                                 String.format("%.2f", currentAccount.getBalance()));
+                println();
+                return;
+            }
+            
+            println("✓ Transfer successful!");
+            println("Amount transferred: ₹" + String.format("%.2f", amount));
+            println("Recipient: " + recipientAccount.getAccountHolder());
+            println("Your new balance: ₹" + String.format("%.2f", currentAccount.getBalance()));
+            println();
+            
+        } catch (NumberFormatException e) {
+            println("✗ Invalid amount format. Please enter a valid number.");
+            println();
+        }
+    }
+    
+    private void viewTransactionHistory() {
+        println("┌──────────────────────────────────────────────────────────────┐");
+        println("│                    TRANSACTION HISTORY                      │");
+        println("└──────────────────────────────────────────────────────────────┘");
+        
+        println("Account: " + currentAccount.getAccountNumber());
+        println("Holder: " + currentAccount.getAccountHolder());
+        println();
+        
+        List<Transaction> transactions = currentAccount.getTransactions();
+        if (transactions.isEmpty()) {
+            println("No transactions found.");
+        } else {
+            printf("%-20s %-15s %-15s %-15s%n", "Date & Time", "Type", "Amount", "Balance");
+            println("─────────────────────────────────────────────────────────────────");
+            
+            StringBuilder row = new StringBuilder(80);
+            for (Transaction transaction : transactions) {
+                row.setLength(0);
+                TimestampFormat.appendDateTime(row, transaction.getTimestampMillis());
+                padColumn(row, 21);
+                row.append(transaction.getType());
+                padColumn(row, 37);
+                Money.appendTo(row.append('₹'), transaction.getAmountPaise());
+                padColumn(row, 53);
+                Money.appendTo(row.append('₹'), transaction.getBalancePaise());
+                println(row);
+            }
+        }
+        println();
+    }
+    
+    /**
+     * Pad a table row with spaces so the next column starts at the given
+     * position, always leaving at least one space like "%-Ns " does
+     * 
+     * @param row The row being built
+     * @param column The position where the next column starts
+     */
+    private void padColumn(StringBuilder row, int column) {
+        do {
+            row.append(' ');
+        } while (row.length() < column);
+    }
+    
+    private void changePIN() {
+        println("┌──────────────────────────────────────────────────────────────┐");
+        println("│                          CHANGE PIN                          │");
+        println("└──────────────────────────────────────────────────────────────┘");
+        
+        print("Enter current PIN: ");
+        String currentPin = readLine();
+        
+        if (verifyPin(currentPin, "✗ Current PIN is incorrect.") != LoginGuard.Result.OK) {
+            return;
+        }
+        
+        print("Enter new PIN (4 digits): ");
+        String newPin = readLine();
+        
+        if (newPin.length() != 4 || !newPin.matches("\\d+")) {
+            println("✗ PIN must be exactly 4 digits.");
+            println();
+            return;
+        }
+        
+        print("Confirm new PIN: ");
+        String confirmPin = readLine();
+        
+        if (!newPin.equals(confirmPin)) {
+            println("✗ PINs do not match.");
+            println();
+            return;
+        }
+        
+        currentAccount.setPin(newPin);
+        println("✓ PIN changed successfully!");
+        println();
+    }
+    
+    private void requestAccountStatement() {
+        println("┌──────────────────────────────────────────────────────────────┐");
+        println("│                    ACCOUNT STATEMENT                        │");
+        println("└──────────────────────────────────────────────────────────────┘");
+        
+        LocalDate today = LocalDate.now();
+        print("Enter start date (dd/MM/yyyy), or press Enter for the last " + STATEMENT_DAYS + " days: ");
+        String start = readLine().trim();
+        LocalDate from;
+        LocalDate to;
+        try {
+            if (start.isEmpty()) {
+                from = today.minusDays(STATEMENT_DAYS - 1);
+                to = today;
+            } else {
+                from = LocalDate.parse(start, STATEMENT_DATE);
+                print("Enter end date (dd/MM/yyyy), or press Enter for today: ");
+                String end = readLine().trim();
+                to = end.isEmpty() ? today : LocalDate.parse(end, STATEMENT_DATE);
+            }
+        } catch (DateTimeParseException e) {
+            println("✗ Invalid date. Please use dd/MM/yyyy.");
+            println();
+            return;
+        }
+        if (to.isBefore(from)) {
+            println("✗ End date cannot be before start date.");
+            println();
+            return;
+        }
+        println();
+        
+        ZoneId zone = ZoneId.systemDefault();
+        long fromMillis = from.atStartOfDay(zone).toInstant().toEpochMilli();
+        long toMillis = to.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        // The statement streams straight to the terminal instead of through the pending output
+        flush();
+        try {
+            new StatementGenerator().write(currentAccount, fromMillis, toMillis, output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        println();
+        
+        currentAccount.addTransaction("Statement Requested", 0.0);
+    }
+    
+    // Bank Official Operations
+    private void createNewAccount() {
+        println("┌──────────────────────────────────────────────────────────────┐");
+        println("│                      CREATE NEW ACCOUNT                     │");
+        println("└──────────────────────────────────────────────────────────────┘");
+        
+        print("Enter Account Number: ");
+        String accountNumber = readLine();
+        
+        if (bank.accountExists(accountNumber)) {
+            println("✗ Account number already exists.");
+            println();
+            return;
+        }
+        
+        print("Enter Account Holder Name: ");
+        String accountHolder = readLine();
+        
+        print("Enter Initial PIN (4 digits): ");
+        String pin = readLine();
+        
+        if (pin.length() != 4 || !pin.matches("\\d+")) {
+            println("✗ PIN must be exactly 4 digits.");
+            println();
+            return;
+        }
+        
+        print("Enter Initial Balance: ₹");
+        try {
+            double initialBalance = Double.parseDouble(readLine());
+            
+            if (initialBalance < 0) {
+                println("✗ Initial balance cannot be negative.");
+                println();
+                return;
+            }
+            
+            if (!Money.isValid(initialBalance)) {
+                println("✗ Invalid balance. Please enter a valid number.");
+                println();
+                return;
+            }
+            
+            LedgerEvents.OfficialAction event = beginOfficialAction();
+            Account newAccount = new Account(accountNumber, pin, accountHolder, initialBalance);
+            boolean added = bank.addAccount(newAccount);
+            finishOfficialAction(event, "create account", accountNumber, true, added);
+            
+            if (!added) {
+                println("✗ Account number already exists.");
+                println();
+                return;
+            }
+            
+            println("✓ Account created successfully!");
+            println("Account Number: " + accountNumber);
+            println("Account Holder: " + accountHolder);
+            println("Initial Balance: ₹" + String.format("%.2f", initialBalance));
+            println();
+            
+        } catch (NumberFormatException e) {
+            println("✗ Invalid balance format. Please enter a valid number.");
+            println();
+        }
+    }
+    
+    private void viewAllAccounts() {
+        println("┌──────────────────────────────────────────────────────────────┐");
+        println("│                        ALL ACCOUNTS                          │");
+        println("└──────────────────────────────────────────────────────────────┘");
+        
+        printf("%-15s %-20s %-15s %-10s%n", "Account No.", "Account Holder", "Balance", "Status");
+        println("─────────────────────────────────────────────────────────────────");
+        
+        for (Account account : bank.getAllAccounts()) {
+            printf("%-15s %-20s %-15s %-10s%n",
+                account.getAccountNumber(),
+                account.getAccountHolder(),
+                "₹" + String.format("%.2f", account.getBalance()),
+                account.isActive() ? "Active" : "Blocked");
+        }
+        println();
+    }
+    
+    private void searchAccount() {
+        println("┌──────────────────────────────────────────────────────────────┐");
+        println("│                       SEARCH ACCOUNT                         │");
+        println("└──────────────────────────────────────────────────────────────┘");
+        
+        println("Search by:");
+        println("1. Account Number");
+        println("2. Account Holder Name");
+        print("Enter choice (1-2): ");
+        
+        String choice = readLine();
+        println();
+        
+        switch (choice) {
+            case "1":
+                print("Enter Account Number: ");
+                String accountNumber = readLine();
+                Account account = bank.getAccount(accountNumber);
+                if (account != null) {
+                    displayAccountDetails(account);
+                } else {
+                    println("✗ Account not found.");
+                }
+                break;
+            case "2":
+                print("Enter Account Holder Name: ");
+                String name = readLine();
+                var accounts = bank.searchAccountsByName(name, MAX_SEARCH_RESULTS + 1);
+                if (!accounts.isEmpty()) {
+                    if (accounts.size() > MAX_SEARCH_RESULTS) {
+                        println("Showing the best " + MAX_SEARCH_RESULTS
+                                + " matches; enter more of the name to narrow the search.");
+                        accounts = accounts.subList(0, MAX_SEARCH_RESULTS);
+                    } else {
+                        println("Found " + accounts.size() + " account(s):");
+                    }
+                    for (Account acc : accounts) {
+                        displayAccountDetails(acc);
+                    }
+                } else {
+                    println("✗ No accounts found with that name.");
+                }
+                break;
+            default:
+                println("✗ Invalid choice.");
+        }
+        println();
+    }
+    
+    private void displayAccountDetails(Account account) {
+        println("┌──────────────────────────────────────────────────────────────┐");
+        println("│                      ACCOUNT DETAILS                         │");
+        println("└──────────────────────────────────────────────────────────────┘");
+        println("Account Number: " + account.getAccountNumber());
+        println("Account Holder: " + account.getAccountHolder());
+        println("Current Balance: ₹" + String.format("%.2f", account.getBalance()));
+        println("Status: " + (account.isActive() ? "Active" : "Blocked"));
+        println("Total Transactions: " + account.transactionCount());
+        println();
+    }
+    
+    private void manageAccountStatus() {
+        println("┌──────────────────────────────────────────────────────────────┐");
+        println("│                    MANAGE ACCOUNT STATUS                    │");
+        println("└──────────────────────────────────────────────────────────────┘");
+        
+        print("Enter Account Number: ");
+        String accountNumber = readLine();
+        
+        Account account = bank.getAccount(accountNumber);
+        if (account == null) {
+            println("✗ Account not found.");
+            println();
+            return;
+        }
+        
+        println("Current Status: " + (account.isActive() ? "Active" : "Blocked")
+                + (bank.getLoginGuard().isLockedOut(accountNumber) ? " (locked out after incorrect PINs)" : ""));
+        println("1. Block Account");
+        println("2. Unblock Account");
+        print("Enter choice (1-2): ");
+        
+        String choice = readLine();
+        
+        LedgerEvents.OfficialAction event = beginOfficialAction();
+        switch (choice) {
+            case "1":
+                account.setActive(false);
+                finishOfficialAction(event, "block account", accountNumber, true, true);
+                println("✓ Account blocked successfully.");
+                break;
+            case "2":
+                account.setActive(true);
+                bank.getLoginGuard().clearLockout(accountNumber);
+                finishOfficialAction(event, "unblock account", accountNumber, true, true);
+                println("✓ Account unblocked successfully.");
+                break;
+            default:
+                println("✗ Invalid choice.");
+        }
+        println();
+    }
+    
+    private void viewBankStatistics() {
+        println("┌──────────────────────────────────────────────────────────────┐");
+        println("│                     BANK STATISTICS                          │");
+        println("└──────────────────────────────────────────────────────────────┘");
+        
+        println(bank.getBankStatistics());
+        
+        println("Account Distribution:");
+        println("High Balance Accounts (>₹10,000): " + bank.countAccountsAboveBalance(10000));
+        println("Low Balance Accounts (<₹1,000): " + bank.countAccountsBelowBalance(1000));
+        println();
+    }
+    
+    private void processAccountRequests() {
+        println("┌──────────────────────────────────────────────────────────────┐");
+        println("│                   PROCESS ACCOUNT REQUESTS                  │");
+        println("└──────────────────────────────────────────────────────────────┘");
+        
+        println("No pending requests at this time.");
+        println("This feature would handle account opening requests,");
+        println("loan applications, and other customer requests.");
+        println();
+    }
+    
+    private void viewTransactionLogs() {
+        println("┌──────────────────────────────────────────────────────────────┐");
+        println("│                    TRANSACTION LOGS                         │");
+        println("└──────────────────────────────────────────────────────────────┘");
+        
+        println("Recent Bank Transactions (newest first):");
+        println("─────────────────────────────────────────");
+        
+        // Page through the bank-wide feed instead of dumping every account
+        TransactionFeed feed = bank.getTransactionFeed();
+        StringBuilder line = new StringBuilder(80);
+        TransactionFeed.Entry last = null;
+        int shown = 0;
+        while (shown < MAX_TRANSACTION_LOG) {
+            List<TransactionFeed.Entry> page = feed.page(Long.MIN_VALUE, Long.MAX_VALUE, last,
+                                                         Math.min(TRANSACTION_LOG_PAGE, MAX_TRANSACTION_LOG - shown));
+            if (page.isEmpty()) {
+                if (shown == 0) {
+                    println("No transactions found.");
+                }
+                break;
+            }
+            for (TransactionFeed.Entry entry : page) {
+                line.setLength(0);
+                line.append(entry.getAccount().getAccountNumber()).append("  ");
+                println(entry.getTransaction().appendSummaryTo(line));
+            }
+            shown += page.size();
+            last = page.get(page.size() - 1);
+            if (page.size() < TRANSACTION_LOG_PAGE || shown >= MAX_TRANSACTION_LOG) {
+                break;
+            }
+            print("Press Enter for older transactions, or Q to return: ");
+            if (readLine().equalsIgnoreCase("q")) {
+                break;
+            }
+        }
+        println();
+    }
+    
+    private void manageOfficials() {
+        println("┌──────────────────────────────────────────────────────────────┐");
+        println("│                   MANAGE BANK OFFICIALS                     │");
+        println("└──────────────────────────────────────────────────────────────┘");
+        
+        println("Current Officials:");
+        printf("%-10s %-15s %-15s%n", "ID", "Name", "Role");
+        println("─────────────────────────────────────────");
+        
+        for (BankOfficial official : bank.getAllOfficials()) {
+            printf("%-10s %-15s %-15s%n", 
+                official.getOfficialId(), 
+                official.getName(), 
+                official.getRole());
+        }
+        println();
+        
+        println("1. Add New Official");
+        println("2. Remove Official");
+        println("3. Back to Main Menu");
+        print("Enter choice (1-3): ");
+        
+        String choice = readLine();
+        
+        switch (choice) {
+            case "1":
+                addNewOfficial();
+                break;
+            case "2":
+                removeOfficial();
+                break;
+            case "3":
+                break;
+            default:
+                println("✗ Invalid choice.");
+        }
+        println();
+    }
+    
+    private void addNewOfficial() {
+        print("Enter Official ID: ");
+        String officialId = readLine();
+        
+        if (bank.getOfficial(officialId) != null) {
+            println("✗ Official ID already exists.");
+            return;
+        }
+        
+        print("Enter Password: ");
+        String password = readLine();
+        
+        print("Enter Role (Manager/Staff/Supervisor): ");
+        String role = readLine();
+        
+        print("Enter Name: ");
+        String name = readLine();
+        
+        LedgerEvents.OfficialAction event = beginOfficialAction();
+        BankOfficial newOfficial = new BankOfficial(officialId, password, role, name);
+        boolean added = bank.addOfficial(newOfficial);
+        finishOfficialAction(event, "add official", officialId, false, added);
+        
+        if (added) {
+            println("✓ Official added successfully!");
+        } else {
+            println("✗ Official ID already exists.");
+        }
+    }
+    
+    private void removeOfficial() {
+        print("Enter Official ID to remove: ");
+        String officialId = readLine();
+        
+        LedgerEvents.OfficialAction event = beginOfficialAction();
+        boolean removed = bank.removeOfficial(officialId);
+        finishOfficialAction(event, "remove official", officialId, false, removed);
+        if (removed) {
+            println("✓ Official removed successfully!");
+        } else {
+            println("✗ Official not found.");
+        }
+    }
+    
+    /**
+     * Start the Flight Recorder event of an official's action
+     * 
+     * @return The event, to pass to finishOfficialAction
+     */
+    private LedgerEvents.OfficialAction beginOfficialAction() {
+        LedgerEvents.OfficialAction event = new LedgerEvents.OfficialAction();
+        event.begin();
+        return event;
+    }
+    
+    /**
+     * End the Flight Recorder event of an official's action
+     * 
+     * @param event The event from beginOfficialAction
+     * @param action What was done
+     * @param target The account number or official ID acted on
+     * @param onAccount true if the target is an account number
+     * @param succeeded false if the bank refused the change
+     */
+    private void finishOfficialAction(LedgerEvents.OfficialAction event, String action, String target,
+                                      boolean onAccount, boolean succeeded) {
+        event.finish(currentOfficial.getOfficialId(), action, target, onAccount,
+                     succeeded ? Metrics.Outcome.SUCCESS : Metrics.Outcome.INVALID_ACCOUNT);
+    }
+    
+    /**
+     * Check a PIN asked again during the session, telling the customer if it is refused
+     * Wrong PINs count towards the same lockout as failed logins.
+     * 
+     * @param pin The PIN entered
+     * @param refusal The message for a PIN that does not match
+     * @return The outcome of the check
+     */
+    private LoginGuard.Result verifyPin(String pin, String refusal) {
+        LoginGuard.Result result = bank.verifyPin(currentAccount, pin, terminal);
+        switch (result) {
+            case OK:
+                return result;
+            case RATE_LIMITED:
+                println("✗ Too many PIN attempts. Please wait a moment and try again.");
+                break;
+            case LOCKED_OUT:
+                println("✗ Too many incorrect PINs. This account is locked for "
+                        + LoginGuard.LOCKOUT_MILLIS / 60_000L + " minutes.");
+                break;
+            default:
+                println(refusal);
+        }
+        println();
+        return result;
+    }
+    
+    private void logout() {
+        if (isOfficialMode) {
+            println("✓ Logged out successfully. Thank you for using the banking system!");
+        } else {
+            println("✓ Logged out successfully. Thank you for using our ATM!");
+        }
+        println();
+        currentAccount = null;
+        currentOfficial = null;
+        isOfficialMode = false;
+    }
+    
+    private void exit() {
+        println("╔══════════════════════════════════════════════════════════════╗");
+        println("║                    Thank you for using                      ║");
+        println("║                ENHANCED ATM SIMULATION SYSTEM              ║");
+        println("║                         Goodbye!                            ║");
+        println("╚══════════════════════════════════════════════════════════════╝");
+        currentAccount = null;
+        currentOfficial = null;
+        isOfficialMode = false;
+        running = false;
+    }
+    
+    // Terminal I/O
+    
+    /**
+     * Write pending output and read one line from the terminal
+     * 
+     * @return The line without its line terminator
+     * @throws UncheckedIOException if the terminal disconnects or sends a line over MAX_LINE_BYTES
+     */
+    private String readLine() {
+        flush();
+        try {
+            int length = 0;
+            int b;
+            while ((b = input.read()) != '\n') {
+                if (b < 0) {
+                    if (length == 0) {
+                        throw new EOFException("Terminal disconnected");
+                    }
+                    break;
+                }
+                if (length == lineBuffer.length) {
+                    // No menu input comes close; end the session rather than buffer without limit
+                    throw new IOException("Input line longer than " + MAX_LINE_BYTES + " bytes");
+                }
+                lineBuffer[length++] = (byte) b;
+            }
+            if (length > 0 && lineBuffer[length - 1] == '\r') {
+                length--;
+            }
+            return new String(lineBuffer, 0, length, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private void print(CharSequence text) {
+        pending.append(text);
+        if (pending.length() >= OUTPUT_FLUSH) {
+            flush();
+        }
+    }
+    
+    private void println(CharSequence text) {
+        pending.append(text).append(System.lineSeparator());
+        if (pending.length() >= OUTPUT_FLUSH) {
+            flush();
+        }
+    }
+    
+    private void println() {
+        pending.append(System.lineSeparator());
+    }
+    
+    private void printf(String format, Object... args) {
+        print(String.format(format, args));
+    }
+    
+    /**
+     * Write pending output to the terminal
+     * 
+     * @throws UncheckedIOException if the terminal disconnects
+     */
+    private void flush() {
+        if (pending.length() == 0) {
+            return;
+        }
+        try {
+            output.write(pending.toString().getBytes(StandardCharsets.UTF_8));
+            output.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // Idle sessions are the common case, so do not keep a grown buffer
+        pending.setLength(0);
+        pending.trimToSize();
+    }
+}
@@ -0,0 +1,295 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BalanceIndex class keeping a bank's accounts grouped by balance
+ * Balances fall into buckets of the balances that share their two leading
+ * digits (₹10,000.00 to ₹10,999.99, for example). Each account in a bank
+ * has one entry in a concurrent skip list, ordered by bucket and then by a
+ * number the index gives the account when it is added, and the entry holds
+ * the account's posted balance. A posting that leaves the balance in its
+ * bucket, which is nearly every posting, only updates that balance; the
+ * entry moves, under the account lock, only when the balance crosses into
+ * another bucket. Keeping the skip list ordered by exact balance instead
+ * cost a remove and an insert on every posting, most of a deposit's time.
+ * 
+ * Counts avoid walking entries: the index also keeps the number of accounts
+ * in each bucket. A count adds up the buckets that lie wholly inside the
+ * range and only walks the one or two buckets cut by its ends, which a
+ * round threshold such as ₹10,000 does not cut at all. Listings and pages
+ * read the buckets the range touches and sort what they find by balance
+ * and then account number, so they cost O(log n + m log m) for the m
+ * accounts in those buckets; a page stops at the first bucket that fills it.
+ * 
+ * The posted balance is the one the history shows; it trails the available
+ * balance only while a withdrawal or transfer is being recorded. Readers
+ * never block writers, and a range read while balances change may see an
+ * account at its old or new balance, or, during a move, not at all.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class BalanceIndex {
+    private static final long[] POWERS_OF_TEN = new long[19];
+    
+    static {
+        POWERS_OF_TEN[0] = 1L;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10L;
+        }
+    }
+    
+    // Balances up to 9 paise (and any below zero) get a bucket each, then 90 per power of ten
+    private static final int BUCKETS = bucketOf(Long.MAX_VALUE) + 1;
+    
+    private final ConcurrentSkipListSet<Entry> entries = new ConcurrentSkipListSet<>();
+    private final AtomicIntegerArray bucketCounts = new AtomicIntegerArray(BUCKETS);
+    private final AtomicLong nextSequence = new AtomicLong();
+    
+    /**
+     * The position of one account in the index
+     */
+    static final class Entry implements Comparable<Entry> {
+        final int bucket;
+        final long sequence;
+        final Account account;
+        // Changed under the account lock, and always within the bucket
+        volatile long balance;
+        
+        Entry(int bucket, long sequence, Account account, long balance) {
+            this.bucket = bucket;
+            this.sequence = sequence;
+            this.account = account;
+            this.balance = balance;
+        }
+        
+        @Override
+        public int compareTo(Entry other) {
+            int byBucket = Integer.compare(bucket, other.bucket);
+            return byBucket != 0 ? byBucket : Long.compare(sequence, other.sequence);
+        }
+    }
+    
+    /**
+     * An account found by a read, at the balance it had when it was found
+     */
+    private static final class Hit implements Comparable<Hit> {
+        final long balance;
+        final String accountNumber;
+        final Account account;
+        
+        Hit(long balance, String accountNumber, Account account) {
+            this.balance = balance;
+            this.accountNumber = accountNumber;
+            this.account = account;
+        }
+        
+        @Override
+        public int compareTo(Hit other) {
+            int byBalance = Long.compare(balance, other.balance);
+            return byBalance != 0 ? byBalance : accountNumber.compareTo(other.accountNumber);
+        }
+    }
+    
+    /**
+     * Add an account at its balance; the caller holds the account lock
+     * 
+     * @param account The account
+     * @param balance The posted balance in paise
+     * @return The account's entry, to pass to move and remove later
+     */
+    Entry add(Account account, long balance) {
+        Entry entry = new Entry(bucketOf(balance), nextSequence.getAndIncrement(), account, balance);
+        entries.add(entry);
+        bucketCounts.incrementAndGet(entry.bucket);
+        return entry;
+    }
+    
+    /**
+     * Move an account to a new balance; the caller holds the account lock
+     * 
+     * @param entry The account's current entry
+     * @param balance The new posted balance in paise
+     * @return The account's entry, a new one only if the balance changed bucket
+     */
+    Entry move(Entry entry, long balance) {
+        int to = bucketOf(balance);
+        if (to == entry.bucket) {
+            entry.balance = balance;
+            return entry;
+        }
+        Entry moved = new Entry(to, entry.sequence, entry.account, balance);
+        entries.remove(entry);
+        entries.add(moved);
+        bucketCounts.decrementAndGet(entry.bucket);
+        bucketCounts.incrementAndGet(to);
+        return moved;
+    }
+    
+    /**
+     * Remove an account; the caller holds the account lock
+     * 
+     * @param entry The account's current entry
+     */
+    void remove(Entry entry) {
+        entries.remove(entry);
+        bucketCounts.decrementAndGet(entry.bucket);
+    }
+    
+    /**
+     * Get the accounts whose balance lies in a range, lowest balance first
+     * 
+     * @param minPaise The lowest balance included, in paise
+     * @param maxPaise The highest balance included, in paise
+     * @return The accounts in balance order
+     */
+    public List<Account> range(long minPaise, long maxPaise) {
+        List<Hit> hits = new ArrayList<>();
+        if (minPaise <= maxPaise) {
+            collect(bucketOf(minPaise), bucketOf(maxPaise), minPaise, maxPaise, null, hits);
+        }
+        return sorted(hits, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Count the accounts whose balance lies in a range
+     * 
+     * @param minPaise The lowest balance included, in paise
+     * @param maxPaise The highest balance included, in paise
+     * @return The number of accounts in the range
+     */
+    public int count(long minPaise, long maxPaise) {
+        if (minPaise > maxPaise) {
+            return 0;
+        }
+        int first = bucketOf(minPaise);
+        int last = bucketOf(maxPaise);
+        if (first == last) {
+            return minPaise == lowestOf(first) && maxPaise == highestOf(last)
+                    ? bucketCounts.get(first) : walk(first, minPaise, maxPaise);
+        }
+        int count = minPaise == lowestOf(first) ? bucketCounts.get(first) : walk(first, minPaise, maxPaise);
+        for (int bucket = first + 1; bucket < last; bucket++) {
+            count += bucketCounts.get(bucket);
+        }
+        count += maxPaise == highestOf(last) ? bucketCounts.get(last) : walk(last, minPaise, maxPaise);
+        return count;
+    }
+    
+    /**
+     * Get one page of the accounts in a range, lowest balance first
+     * To get the next page, pass the balance and account number of the last
+     * account on this page, as that balance was when the page was read.
+     * 
+     * @param minPaise The lowest balance included, in paise
+     * @param maxPaise The highest balance included, in paise
+     * @param afterBalance The balance of the last account already seen, in paise
+     * @param afterAccountNumber The last account already seen, or null for the first page
+     * @param limit The most accounts to return
+     * @return Up to limit accounts following the given one, in balance order
+     */
+    public List<Account> page(long minPaise, long maxPaise, long afterBalance, String afterAccountNumber, int limit) {
+        Hit after = afterAccountNumber != null ? new Hit(afterBalance, afterAccountNumber, null) : null;
+        long from = after != null ? Math.max(minPaise, afterBalance) : minPaise;
+        List<Hit> hits = new ArrayList<>();
+        if (limit > 0 && from <= maxPaise) {
+            // Buckets hold ascending balances, so the first buckets that fill the page hold all of it
+            for (int bucket = bucketOf(from), last = bucketOf(maxPaise); bucket <= last && hits.size() < limit;
+                 bucket++) {
+                if (bucketCounts.get(bucket) > 0) {
+                    collect(bucket, bucket, minPaise, maxPaise, after, hits);
+                }
+            }
+        }
+        return sorted(hits, limit);
+    }
+    
+    /**
+     * Gather the accounts of some buckets whose balance lies in a range and follows a given account
+     */
+    private void collect(int first, int last, long minPaise, long maxPaise, Hit after, List<Hit> hits) {
+        for (Entry entry : view(first, last)) {
+            long balance = entry.balance;
+            if (balance >= minPaise && balance <= maxPaise) {
+                Hit hit = new Hit(balance, entry.account.getAccountNumber(), entry.account);
+                if (after == null || hit.compareTo(after) > 0) {
+                    hits.add(hit);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Get up to limit of the accounts found, in balance order
+     */
+    private static List<Account> sorted(List<Hit> hits, int limit) {
+        Collections.sort(hits);
+        List<Account> accounts = new ArrayList<>(Math.min(hits.size(), limit));
+        for (int i = 0; i < hits.size() && i < limit; i++) {
+            accounts.add(hits.get(i).account);
+        }
+        return accounts;
+    }
+    
+    /**
+     * Count the entries of one bucket between two balances by visiting each one
+     */
+    private int walk(int bucket, long minPaise, long maxPaise) {
+        int count = 0;
+        for (Entry entry : view(bucket, bucket)) {
+            long balance = entry.balance;
+            if (balance >= minPaise && balance <= maxPaise) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Get the bucket of a balance
+     */
+    private static int bucketOf(long paise) {
+        if (paise < 10L) {
+            return (int) Math.max(paise, 0L);
+        }
+        int exponent = 0;
+        while (exponent + 2 < POWERS_OF_TEN.length && paise >= POWERS_OF_TEN[exponent + 2]) {
+            exponent++;
+        }
+        int leading = (int) (paise / POWERS_OF_TEN[exponent]);
+        return 10 + exponent * 90 + (leading - 10);
+    }
+    
+    /**
+     * Get the lowest balance in a bucket
+     */
+    private static long lowestOf(int bucket) {
+        if (bucket < 10) {
+            return bucket == 0 ? Long.MIN_VALUE : bucket;
+        }
+        return (10 + (bucket - 10) % 90) * POWERS_OF_TEN[(bucket - 10) / 90];
+    }
+    
+    /**
+     * Get the highest balance in a bucket
+     */
+    private static long highestOf(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowestOf(bucket + 1) - 1L;
+    }
+    
+    /**
+     * Get the entries of the buckets from first to last, both included
+     */
+    private NavigableSet<Entry> view(int first, int last) {
+        Entry from = new Entry(first, Long.MIN_VALUE, null, 0L);
+        if (last == BUCKETS - 1) {
+            return entries.tailSet(from, true);
+        }
+        return entries.subSet(from, true, new Entry(last + 1, Long.MIN_VALUE, null, 0L), false);
+    }
+}
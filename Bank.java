@@ -1,11 +1,27 @@
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Bank class representing a banking system
  * Manages multiple accounts and provides authentication
+ * Accounts and officials live in concurrent maps, so one Bank can be
+ * shared by any number of terminals running on separate threads.
+ * 
+ * With a journal open (see openJournal) every account and official change
+ * is written ahead to disk before the call returns, and reopening the same
+ * journal rebuilds the bank after a restart or crash.
  * 
  * @author Prabhu Bhalke
  * @version 1.0
@@ -13,14 +29,35 @@ import java.util.ArrayList;
 public class Bank {
     private Map<String, Account> accounts;
     private Map<String, BankOfficial> officials;
+    private NameIndex nameIndex;
+    private BalanceIndex balanceIndex;
+    private BankAggregates aggregates;
+    private TransactionFeed transactionFeed;
+    private LoginGuard loginGuard;
+    private Metrics metrics;
     private String bankName;
+    private volatile Journal journal;
+    /** Transfers between shards whose outcome a bank remembers */
+    static final int MAX_TRANSFER_OUTCOMES = 1 << 20;
+    
+    // Transfers between shards left prepared by the snapshot and journal, by transfer ID; see takePreparedTransfers
+    private final Map<Long, Journal.Entry> preparedTransfers = new ConcurrentHashMap<>();
+    // Outcomes of the latest transfers between shards, true if committed; IDs grow with time
+    private final ConcurrentSkipListMap<Long, Boolean> transferOutcomes = new ConcurrentSkipListMap<>();
+    private final AtomicInteger transferOutcomeCount = new AtomicInteger();
     
     /**
      * Constructor to create a new bank
      */
     public Bank() {
-        this.accounts = new HashMap<>();
-        this.officials = new HashMap<>();
+        this.accounts = new ConcurrentHashMap<>();
+        this.officials = new ConcurrentHashMap<>();
+        this.nameIndex = new NameIndex();
+        this.balanceIndex = new BalanceIndex();
+        this.aggregates = new BankAggregates();
+        this.transactionFeed = new TransactionFeed(accounts);
+        this.loginGuard = new LoginGuard();
+        this.metrics = new Metrics();
         this.bankName = "ATM Simulation Bank";
     }
     
@@ -30,8 +67,14 @@ public class Bank {
      * @param bankName The name of the bank
      */
     public Bank(String bankName) {
-        this.accounts = new HashMap<>();
-        this.officials = new HashMap<>();
+        this.accounts = new ConcurrentHashMap<>();
+        this.officials = new ConcurrentHashMap<>();
+        this.nameIndex = new NameIndex();
+        this.balanceIndex = new BalanceIndex();
+        this.aggregates = new BankAggregates();
+        this.transactionFeed = new TransactionFeed(accounts);
+        this.loginGuard = new LoginGuard();
+        this.metrics = new Metrics();
         this.bankName = bankName;
     }
     
@@ -51,11 +94,21 @@ public class Bank {
      * @return true if successful, false if account already exists
      */
     public boolean addAccount(Account account) {
-        if (account != null && !accounts.containsKey(account.getAccountNumber())) {
-            accounts.put(account.getAccountNumber(), account);
-            return true;
+        if (account == null) {
+            return false;
         }
-        return false;
+        // Attaching inside computeIfAbsent logs the creation before anyone can look the account up,
+        // and indexing there keeps a concurrent removeAccount from running before the index knows it
+        Account existing = accounts.computeIfAbsent(account.getAccountNumber(), key -> {
+            account.attach(this);
+            nameIndex.add(account);
+            return account;
+        });
+        if (existing != account) {
+            return false;
+        }
+        awaitDurable(account.getLastLsn());
+        return true;
     }
     
     /**
@@ -65,11 +118,14 @@ public class Bank {
      * @return true if successful, false if account doesn't exist
      */
     public boolean removeAccount(String accountNumber) {
-        if (accounts.containsKey(accountNumber)) {
-            accounts.remove(accountNumber);
-            return true;
+        Account removed = accountNumber == null ? null : accounts.remove(accountNumber);
+        if (removed == null) {
+            return false;
         }
-        return false;
+        removed.detach();
+        nameIndex.remove(removed);
+        awaitDurable(removed.getLastLsn());
+        return true;
     }
     
     /**
@@ -79,7 +135,7 @@ public class Bank {
      * @return The account if found, null otherwise
      */
     public Account getAccount(String accountNumber) {
-        return accounts.get(accountNumber);
+        return accountNumber == null ? null : accounts.get(accountNumber);
     }
     
     /**
@@ -89,7 +145,7 @@ public class Bank {
      * @return true if account exists, false otherwise
      */
     public boolean accountExists(String accountNumber) {
-        return accounts.containsKey(accountNumber);
+        return accountNumber != null && accounts.containsKey(accountNumber);
     }
     
     /**
@@ -100,11 +156,75 @@ public class Bank {
      * @return true if authentication successful, false otherwise
      */
     public boolean authenticate(String accountNumber, String pin) {
-        Account account = accounts.get(accountNumber);
-        if (account != null) {
-            return account.getPin().equals(pin);
+        return login(accountNumber, pin, null) == LoginGuard.Result.OK;
+    }
+    
+    /**
+     * Authenticate a customer from a terminal, within the login limits
+     * Attempts beyond the terminal's or account's rate are refused without
+     * checking the PIN, and an account is locked out for a while after
+     * LoginGuard.MAX_FAILED_PINS failed PINs in a row.
+     * 
+     * @param accountNumber The account number
+     * @param pin The PIN
+     * @param terminal The terminal's login bucket, or null to apply only the account limits
+     * @return The outcome of the attempt
+     */
+    public LoginGuard.Result login(String accountNumber, String pin, LoginGuard.Terminal terminal) {
+        LedgerEvents.Authentication event = new LedgerEvents.Authentication();
+        event.begin();
+        long start = metrics.getLogin().start();
+        LoginGuard.Result result = loginGuard.authenticate(getAccount(accountNumber), pin, terminal);
+        Metrics.Outcome outcome;
+        switch (result) {
+            case OK:
+                outcome = Metrics.Outcome.SUCCESS;
+                break;
+            case RATE_LIMITED:
+                outcome = Metrics.Outcome.RATE_LIMITED;
+                break;
+            case LOCKED_OUT:
+                outcome = Metrics.Outcome.LOCKED_OUT;
+                break;
+            default:
+                outcome = Metrics.Outcome.INVALID_PIN;
         }
-        return false;
+        metrics.getLogin().record(outcome, start);
+        event.finish(accountNumber, 0L, outcome);
+        return result;
+    }
+    
+    /**
+     * Check the PIN of a customer already logged in, within the login limits
+     * For a PIN asked again during a session, as for a large withdrawal, a
+     * transfer or a PIN change; a wrong PIN counts towards the same lockout
+     * as a failed login.
+     * 
+     * @param account The account logged in
+     * @param pin The PIN entered
+     * @param terminal The terminal's login bucket, or null to apply only the account limits
+     * @return The outcome of the check
+     */
+    public LoginGuard.Result verifyPin(Account account, String pin, LoginGuard.Terminal terminal) {
+        return loginGuard.authenticate(account, pin, terminal);
+    }
+    
+    /**
+     * Get the login limits and lockouts
+     * 
+     * @return The login guard
+     */
+    public LoginGuard getLoginGuard() {
+        return loginGuard;
+    }
+    
+    /**
+     * Get the counts and latencies of the bank's operations
+     * 
+     * @return The metrics
+     */
+    public Metrics getMetrics() {
+        return metrics;
     }
     
     /**
@@ -128,18 +248,89 @@ public class Bank {
     /**
      * Get total balance of all accounts
      * 
-     * @return The total balance
+     * @return The total balance in rupees
      */
     public double getTotalBalance() {
-        double total = 0.0;
+        return Money.toRupees(getTotalBalancePaise());
+    }
+    
+    /**
+     * Get total balance of all accounts in paise
+     * Read from the running aggregates; exact whenever no operation is in flight.
+     * 
+     * @return The total posted balance in paise
+     */
+    public long getTotalBalancePaise() {
+        return aggregates.getTotalBalancePaise();
+    }
+    
+    /**
+     * Get the balance of an account at a point in time, as for a dispute
+     * 
+     * @param accountNumber The account number
+     * @param timestampMillis The time in epoch milliseconds
+     * @return The balance in paise after the account's last transaction at or before that time
+     * @throws IllegalArgumentException if the account does not exist
+     */
+    public long getBalancePaiseAsOf(String accountNumber, long timestampMillis) {
+        Account account = getAccount(accountNumber);
+        if (account == null) {
+            throw new IllegalArgumentException("Unknown account: " + accountNumber);
+        }
+        return account.getBalancePaiseAsOf(timestampMillis);
+    }
+    
+    /**
+     * Get the total balance of the bank's accounts at a point in time, for reconciliation
+     * Only the accounts the transaction feed's activity register shows
+     * with transactions since that time can differ from their posted
+     * balance, so the running total is corrected for those alone. When
+     * the time is so far back that the register holds more slots than
+     * there are accounts, or no longer reaches back to it, every account is
+     * looked up instead. Accounts that have since left the bank are not
+     * included.
+     * 
+     * @param timestampMillis The time in epoch milliseconds
+     * @return The total balance in paise; exact whenever no operation is in flight
+     */
+    public long getTotalBalancePaiseAsOf(long timestampMillis) {
+        Set<Account> changed = new HashSet<>();
+        if (transactionFeed.collectActiveSince(timestampMillis, changed, accounts.size())) {
+            long total = aggregates.getTotalBalancePaise();
+            for (Account account : changed) {
+                total -= account.getPostedBalancePaise() - account.getBalancePaiseAsOf(timestampMillis);
+            }
+            return total;
+        }
+        long total = 0L;
         for (Account account : accounts.values()) {
-            total += account.getBalance();
+            total += account.getBalancePaiseAsOf(timestampMillis);
         }
         return total;
     }
     
+    /**
+     * Get the feed of transactions across all accounts, newest first
+     * 
+     * @return The transaction feed
+     */
+    public TransactionFeed getTransactionFeed() {
+        return transactionFeed;
+    }
+    
+    /**
+     * Get the running bank-wide totals
+     * 
+     * @return The aggregates
+     */
+    public BankAggregates getAggregates() {
+        return aggregates;
+    }
+    
     /**
      * Transfer money between accounts
+     * The funds check is part of the atomic debit in Account.transferPaise,
+     * so a concurrent withdrawal cannot slip in between.
      * 
      * @param fromAccountNumber The source account number
      * @param toAccountNumber The destination account number
@@ -147,13 +338,152 @@ public class Bank {
      * @return true if successful, false otherwise
      */
     public boolean transferMoney(String fromAccountNumber, String toAccountNumber, double amount) {
-        Account fromAccount = accounts.get(fromAccountNumber);
-        Account toAccount = accounts.get(toAccountNumber);
+        LedgerEvents.Transfer event = new LedgerEvents.Transfer();
+        event.begin();
+        long start = metrics.getTransfer().start();
+        Account fromAccount = getAccount(fromAccountNumber);
+        Account toAccount = getAccount(toAccountNumber);
         
-        if (fromAccount != null && toAccount != null && fromAccount.hasSufficientFunds(amount)) {
-            return fromAccount.transfer(toAccount, amount);
+        Metrics.Outcome outcome;
+        if (fromAccount == null || toAccount == null || fromAccount == toAccount) {
+            outcome = Metrics.Outcome.INVALID_ACCOUNT;
+        } else if (!Money.isValid(amount) || Money.toPaise(amount) <= 0) {
+            outcome = Metrics.Outcome.INVALID_AMOUNT;
+        } else if (fromAccount.transferPaise(toAccount, Money.toPaise(amount))) {
+            outcome = Metrics.Outcome.SUCCESS;
+        } else {
+            outcome = Metrics.Outcome.INSUFFICIENT_FUNDS;
         }
-        return false;
+        metrics.getTransfer().record(outcome, start);
+        event.finish(fromAccountNumber, toAccountNumber, Money.isValid(amount) ? Money.toPaise(amount) : 0L, outcome);
+        return outcome == Metrics.Outcome.SUCCESS;
+    }
+    
+    /**
+     * Execute a batch of transfers, such as a salary or vendor-payment file
+     * Instructions are checked in order against the balances as they evolve
+     * through the batch, exactly as a loop of transferMoney calls would, but
+     * every touched account is looked up and locked once, money moves as one
+     * net debit or credit per account, and the batch waits for the journal
+     * once. Each successful instruction still gets its own history entries.
+     * 
+     * @param instructions The transfers to execute, in order
+     * @return One result per instruction, in the same order
+     */
+    public List<TransferInstruction.Result> transferBatch(List<TransferInstruction> instructions) {
+        int count = instructions.size();
+        TransferInstruction.Result[] results = new TransferInstruction.Result[count];
+        Map<String, Integer> slots = new HashMap<>();
+        List<Account> touched = new ArrayList<>();
+        int[] from = new int[count];
+        int[] to = new int[count];
+        long[] amounts = new long[count];
+        
+        for (int i = 0; i < count; i++) {
+            TransferInstruction instruction = instructions.get(i);
+            amounts[i] = instruction.getAmountPaise();
+            from[i] = slotOf(instruction.getFromAccountNumber(), slots, touched);
+            to[i] = slotOf(instruction.getToAccountNumber(), slots, touched);
+            if (from[i] < 0 || to[i] < 0) {
+                results[i] = TransferInstruction.Result.UNKNOWN_ACCOUNT;
+            } else if (amounts[i] <= 0) {
+                results[i] = TransferInstruction.Result.INVALID_AMOUNT;
+            } else if (from[i] == to[i]) {
+                results[i] = TransferInstruction.Result.SAME_ACCOUNT;
+            }
+        }
+        
+        Account[] locked = touched.toArray(new Account[0]);
+        long lsn = 0L;
+        long timestamp = System.currentTimeMillis();
+        Account.lockAll(locked);
+        try {
+            long[] net = new long[locked.length];
+            // Withdrawals do not take the lock, so retry if one drains an account meanwhile
+            while (!settle(touched, from, to, amounts, results, net)) {
+                Arrays.fill(net, 0L);
+            }
+            for (int i = 0; i < count; i++) {
+                if (results[i] == TransferInstruction.Result.OK) {
+                    Account payer = touched.get(from[i]);
+                    lsn = Math.max(lsn, payer.postTransferLocked(touched.get(to[i]), amounts[i], timestamp));
+                }
+            }
+            // Credits become spendable only once their records are logged, see Account.postCredit
+            for (int s = 0; s < net.length; s++) {
+                if (net[s] > 0) {
+                    touched.get(s).credit(net[s]);
+                }
+            }
+            for (Account account : locked) {
+                account.reindexLocked();
+            }
+        } finally {
+            Account.unlockAll(locked);
+        }
+        awaitDurable(lsn);
+        return Arrays.asList(results);
+    }
+    
+    /**
+     * Get the batch slot of an account, looking it up on first use
+     * 
+     * @return The slot, or -1 if the account does not exist
+     */
+    private int slotOf(String accountNumber, Map<String, Integer> slots, List<Account> touched) {
+        Integer slot = slots.get(accountNumber);
+        if (slot != null) {
+            return slot;
+        }
+        Account account = accountNumber == null ? null : accounts.get(accountNumber);
+        if (account == null) {
+            return -1;
+        }
+        touched.add(account);
+        slots.put(accountNumber, touched.size() - 1);
+        return touched.size() - 1;
+    }
+    
+    /**
+     * Decide which instructions succeed and take out the net debits
+     * The caller holds every touched account's lock and adds the net
+     * credits once the transfers are logged.
+     * 
+     * @return false if a concurrent withdrawal made a net debit fail; nothing has moved then
+     */
+    private static boolean settle(List<Account> touched, int[] from, int[] to, long[] amounts,
+                                  TransferInstruction.Result[] results, long[] net) {
+        long[] available = new long[touched.size()];
+        for (int s = 0; s < available.length; s++) {
+            available[s] = touched.get(s).getBalancePaise();
+        }
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] != null && results[i] != TransferInstruction.Result.OK
+                    && results[i] != TransferInstruction.Result.INSUFFICIENT_FUNDS) {
+                continue;
+            }
+            if (available[from[i]] < amounts[i]) {
+                results[i] = TransferInstruction.Result.INSUFFICIENT_FUNDS;
+                continue;
+            }
+            results[i] = TransferInstruction.Result.OK;
+            available[from[i]] -= amounts[i];
+            available[to[i]] += amounts[i];
+            net[from[i]] -= amounts[i];
+            net[to[i]] += amounts[i];
+        }
+        
+        for (int s = 0; s < net.length; s++) {
+            if (net[s] < 0 && !touched.get(s).debit(-net[s])) {
+                for (int undo = 0; undo < s; undo++) {
+                    if (net[undo] < 0) {
+                        touched.get(undo).credit(-net[undo]);
+                    }
+                }
+                return false;
+            }
+        }
+        return true;
     }
     
     /**
@@ -164,65 +494,96 @@ public class Bank {
     public String getBankStatistics() {
         StringBuilder stats = new StringBuilder();
         stats.append("Bank Statistics:\n");
-        stats.append("Total Accounts: ").append(getTotalAccounts()).append("\n");
-        stats.append("Total Balance: ₹").append(String.format("%.2f", getTotalBalance())).append("\n");
-        stats.append("Average Balance: ₹").append(String.format("%.2f", getTotalBalance() / getTotalAccounts())).append("\n");
+        long totalAccounts = aggregates.getAccountCount();
+        long totalBalance = aggregates.getTotalBalancePaise();
+        stats.append("Total Accounts: ").append(totalAccounts).append("\n");
+        stats.append("Active Accounts: ").append(aggregates.getActiveAccounts()).append("\n");
+        stats.append("Blocked Accounts: ").append(aggregates.getBlockedAccounts()).append("\n");
+        Money.appendTo(stats.append("Total Balance: ₹"), totalBalance).append("\n");
+        Money.appendTo(stats.append("Average Balance: ₹"), totalAccounts == 0 ? 0L : totalBalance / totalAccounts).append("\n");
+        stats.append("Transactions: ").append(aggregates.getTransactionCount()).append("\n");
+        int types = TransactionType.count();
+        for (int i = 0; i < types; i++) {
+            byte type = (byte) i;
+            long count = aggregates.getTransactionCount(type);
+            if (count > 0) {
+                stats.append("  ").append(TransactionType.nameOf(type)).append(": ").append(count);
+                Money.appendTo(stats.append(" (₹"), aggregates.getTransactionVolumePaise(type)).append(")\n");
+            }
+        }
         return stats.toString();
     }
     
     /**
      * Search accounts by account holder name
+     * Uses the trigram name index; see NameIndex for the ranking.
      * 
-     * @param name The name to search for
-     * @return List of accounts matching the name
+     * @param name The name, or part of it, to search for (case is ignored)
+     * @return List of accounts matching the name, best match first
      */
     public List<Account> searchAccountsByName(String name) {
-        List<Account> matchingAccounts = new ArrayList<>();
-        String searchName = name.toLowerCase();
-        
-        for (Account account : accounts.values()) {
-            if (account.getAccountHolder().toLowerCase().contains(searchName)) {
-                matchingAccounts.add(account);
-            }
-        }
-        
-        return matchingAccounts;
+        return nameIndex.search(name, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Search accounts by account holder name, keeping only the best matches
+     * 
+     * @param name The name, or part of it, to search for (case is ignored)
+     * @param limit The most accounts to return
+     * @return List of at most limit accounts matching the name, best match first
+     */
+    public List<Account> searchAccountsByName(String name, int limit) {
+        return nameIndex.search(name, limit);
+    }
+    
+    /**
+     * Get the index of accounts ordered by balance
+     * Use it for range counts and paged listings; see BalanceIndex.
+     * 
+     * @return The balance index
+     */
+    public BalanceIndex getBalanceIndex() {
+        return balanceIndex;
     }
     
     /**
      * Get accounts with balance above a certain amount
      * 
      * @param minBalance The minimum balance threshold
-     * @return List of accounts with balance above the threshold
+     * @return List of accounts with balance at or above the threshold, lowest balance first
      */
     public List<Account> getAccountsAboveBalance(double minBalance) {
-        List<Account> highBalanceAccounts = new ArrayList<>();
-        
-        for (Account account : accounts.values()) {
-            if (account.getBalance() >= minBalance) {
-                highBalanceAccounts.add(account);
-            }
-        }
-        
-        return highBalanceAccounts;
+        return balanceIndex.range(Money.toPaise(minBalance), Long.MAX_VALUE);
     }
     
     /**
      * Get accounts with balance below a certain amount
      * 
      * @param maxBalance The maximum balance threshold
-     * @return List of accounts with balance below the threshold
+     * @return List of accounts with balance at or below the threshold, lowest balance first
      */
     public List<Account> getAccountsBelowBalance(double maxBalance) {
-        List<Account> lowBalanceAccounts = new ArrayList<>();
-        
-        for (Account account : accounts.values()) {
-            if (account.getBalance() <= maxBalance) {
-                lowBalanceAccounts.add(account);
-            }
-        }
-        
-        return lowBalanceAccounts;
+        return balanceIndex.range(Long.MIN_VALUE, Money.toPaise(maxBalance));
+    }
+    
+    /**
+     * Count accounts with balance above a certain amount
+     * 
+     * @param minBalance The minimum balance threshold
+     * @return The number of accounts with balance at or above the threshold
+     */
+    public int countAccountsAboveBalance(double minBalance) {
+        return balanceIndex.count(Money.toPaise(minBalance), Long.MAX_VALUE);
+    }
+    
+    /**
+     * Count accounts with balance below a certain amount
+     * 
+     * @param maxBalance The maximum balance threshold
+     * @return The number of accounts with balance at or below the threshold
+     */
+    public int countAccountsBelowBalance(double maxBalance) {
+        return balanceIndex.count(Long.MIN_VALUE, Money.toPaise(maxBalance));
     }
     
     // Bank Official Management Methods
@@ -234,11 +595,15 @@ public class Bank {
      * @return true if successful, false if official already exists
      */
     public boolean addOfficial(BankOfficial official) {
-        if (official != null && !officials.containsKey(official.getOfficialId())) {
-            officials.put(official.getOfficialId(), official);
-            return true;
+        if (official == null || officials.putIfAbsent(official.getOfficialId(), official) != null) {
+            return false;
         }
-        return false;
+        Journal current = journal;
+        if (current != null) {
+            current.awaitDurable(current.logOfficialAdded(official.getOfficialId(), official.getPassword(),
+                                                          official.getRole(), official.getName()));
+        }
+        return true;
     }
     
     /**
@@ -248,11 +613,14 @@ public class Bank {
      * @return true if successful, false if official doesn't exist
      */
     public boolean removeOfficial(String officialId) {
-        if (officials.containsKey(officialId)) {
-            officials.remove(officialId);
-            return true;
+        if (officialId == null || officials.remove(officialId) == null) {
+            return false;
         }
-        return false;
+        Journal current = journal;
+        if (current != null) {
+            current.awaitDurable(current.logOfficialRemoved(officialId));
+        }
+        return true;
     }
     
     /**
@@ -308,6 +676,265 @@ public class Bank {
         return officials.size();
     }
     
+    // Journal Methods
+    
+    /**
+     * Replay a journal file into this bank and keep logging to it
+     * Call this on an empty bank before any terminal starts using it.
+     * 
+     * @param path The journal file, created if it does not exist
+     * @param durability How long each change waits for the disk
+     * @param maxLatencyMicros The group-commit window, or the flush interval in ASYNC mode
+     * @return The number of records replayed
+     * @throws IOException if the journal cannot be read or opened
+     */
+    public long openJournal(Path path, Journal.Durability durability, long maxLatencyMicros) throws IOException {
+        return recover(null, path, durability, maxLatencyMicros, 1);
+    }
+    
+    /**
+     * Load a snapshot, replay the journal written after it and keep logging
+     * Call this on an empty bank before any terminal starts using it.
+     * 
+     * @param snapshot The snapshot file, or null (or a missing file) to replay the whole journal
+     * @param path The journal file, created if it does not exist
+     * @param durability How long each change waits for the disk
+     * @param maxLatencyMicros The group-commit window, or the flush interval in ASYNC mode
+     * @param threads The number of threads loading the snapshot and replaying the journal
+     * @return The number of journal records replayed
+     * @throws IOException if the snapshot or journal cannot be read or opened
+     */
+    public long recover(Path snapshot, Path path, Journal.Durability durability, long maxLatencyMicros,
+                        int threads) throws IOException {
+        if (journal != null) {
+            throw new IllegalStateException("Journal already open");
+        }
+        Journal.Position from = new Journal.Position(0L, 0L);
+        if (snapshot != null && Files.exists(snapshot)) {
+            from = Snapshot.load(this, snapshot, threads);
+        }
+        long[] replayed = new long[1];
+        Journal.Position end = JournalReplay.replayAfter(this, path, from, threads, replayed);
+        // Opening at the position the replay reached, so the journal is not read a second time
+        journal = Journal.open(path, durability, maxLatencyMicros, end);
+        return replayed[0];
+    }
+    
+    /**
+     * Flush and close the journal; later changes are no longer logged
+     * 
+     * @throws IOException if the final flush fails
+     */
+    public void closeJournal() throws IOException {
+        Journal current = journal;
+        journal = null;
+        if (current != null) {
+            current.close();
+        }
+    }
+    
+    /**
+     * Get the journal changes are logged to
+     * 
+     * @return The journal, or null if none is open
+     */
+    Journal getJournal() {
+        return journal;
+    }
+    
+    /**
+     * Remember that a transfer between shards was committed or aborted here
+     * Only the latest MAX_TRANSFER_OUTCOMES are kept; snapshots carry them.
+     * 
+     * @param tx The transfer ID
+     * @param committed true if committed, false if aborted
+     */
+    void recordTransferOutcome(long tx, boolean committed) {
+        if (transferOutcomes.put(tx, committed) == null
+            && transferOutcomeCount.incrementAndGet() > MAX_TRANSFER_OUTCOMES
+            && transferOutcomes.pollFirstEntry() != null) {
+            transferOutcomeCount.decrementAndGet();
+        }
+    }
+    
+    /**
+     * Get the outcome of a transfer between shards
+     * 
+     * @param tx The transfer ID
+     * @return true if committed here, false if aborted here, null if not resolved here or long forgotten
+     */
+    Boolean getTransferOutcome(long tx) {
+        return transferOutcomes.get(tx);
+    }
+    
+    /**
+     * Get the remembered outcomes of transfers between shards, oldest first
+     * 
+     * @return A copy of the outcomes by transfer ID
+     */
+    Map<Long, Boolean> getTransferOutcomes() {
+        return new TreeMap<>(transferOutcomes);
+    }
+    
+    /**
+     * Take the transfers between shards that recovery left prepared
+     * BankShard takes them over when it starts, holds and all.
+     * 
+     * @return The PREPARED records by transfer ID
+     */
+    Map<Long, Journal.Entry> takePreparedTransfers() {
+        Map<Long, Journal.Entry> taken = new HashMap<>(preparedTransfers);
+        preparedTransfers.clear();
+        return taken;
+    }
+    
+    /**
+     * Wait for a journal record to become durable
+     * 
+     * @param lsn The LSN of the record, or 0 if nothing was logged
+     */
+    private void awaitDurable(long lsn) {
+        Journal current = journal;
+        if (lsn > 0 && current != null) {
+            current.awaitDurable(lsn);
+        }
+    }
+    
+    /**
+     * Apply one journal record during replay
+     * Records that refer to an account that no longer exists are skipped.
+     * 
+     * @param entry The record read from the journal
+     */
+    void apply(Journal.Entry entry) {
+        switch (entry.kind) {
+            case Journal.OFFICIAL_ADDED:
+                officials.put(entry.key, new BankOfficial(entry.key, entry.text, entry.text2, entry.text3));
+                break;
+            case Journal.OFFICIAL_REMOVED:
+                officials.remove(entry.key);
+                break;
+            case Journal.CHECKPOINT:
+                break;
+            case Journal.TRANSFER:
+                applyToAccount(entry, false);
+                applyToAccount(entry, true);
+                break;
+            default:
+                applyToAccount(entry, false);
+        }
+    }
+    
+    /**
+     * Apply the part of an account record that concerns one account
+     * Records at or below the account's last LSN are already reflected in
+     * its state (for example when it was restored from a snapshot) and are
+     * skipped, so each account can be replayed on its own thread.
+     * 
+     * @param entry The record read from the journal
+     * @param recipient true to apply the receiving side of a transfer
+     */
+    void applyToAccount(Journal.Entry entry, boolean recipient) {
+        String key = recipient ? entry.key2 : entry.key;
+        Account account = accounts.get(key);
+        if (entry.kind == Journal.RESOLVED) {
+            // Even if the account's snapshot already includes it, the outcome may be newer than the snapshot's
+            recordTransferOutcome(entry.id2, entry.flag);
+            preparedTransfers.remove(entry.id2);
+        }
+        if (account != null && entry.lsn <= account.getLastLsn()) {
+            return;
+        }
+        switch (entry.kind) {
+            case Journal.ACCOUNT_CREATED:
+                if (account == null) {
+                    Account created = new Account(entry.key, entry.text, entry.text2);
+                    created.replayPost(entry.lsn, TransactionType.ACCOUNT_CREATED, entry.amount,
+                                       entry.timestamp, entry.id);
+                    addAccount(created);
+                }
+                break;
+            case Journal.ACCOUNT_REMOVED:
+                removeAccount(key);
+                break;
+            case Journal.POST:
+                if (account != null) {
+                    account.replayPost(entry.lsn, TransactionType.codeOf(entry.text), entry.amount,
+                                       entry.timestamp, entry.id);
+                }
+                break;
+            case Journal.NOTE:
+                if (account != null) {
+                    account.replayNote(entry.lsn, TransactionType.codeOf(entry.text), entry.amount,
+                                       entry.balance, entry.timestamp, entry.id);
+                }
+                break;
+            case Journal.TRANSFER:
+                if (account != null && recipient) {
+                    account.replayPost(entry.lsn, TransactionType.TRANSFER_IN, entry.amount,
+                                       entry.timestamp, entry.id2);
+                } else if (account != null) {
+                    account.replayPost(entry.lsn, TransactionType.TRANSFER_OUT, -entry.amount,
+                                       entry.timestamp, entry.id);
+                }
+                break;
+            case Journal.PIN_SET:
+                if (account != null) {
+                    account.replayPin(entry.lsn, entry.text, entry.timestamp, entry.id);
+                }
+                break;
+            case Journal.ACTIVE_SET:
+                if (account != null) {
+                    account.replayActive(entry.lsn, entry.flag);
+                }
+                break;
+            case Journal.PREPARED:
+                if (account != null) {
+                    account.replayPrepared(entry.lsn, entry.id, entry.amount, entry.timestamp);
+                    preparedTransfers.put(entry.id, entry.copy());
+                }
+                break;
+            case Journal.RESOLVED:
+                if (account != null) {
+                    account.replayResolved(entry.lsn, TransactionType.codeOf(entry.text), entry.amount,
+                                           entry.timestamp, entry.id, entry.id2, entry.flag);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal record kind: " + entry.kind);
+        }
+    }
+    
+    /**
+     * Put an account restored from a snapshot into the bank without logging it
+     * 
+     * @param account The restored account
+     */
+    void restoreAccount(Account account) {
+        account.attach(this);
+        accounts.put(account.getAccountNumber(), account);
+        nameIndex.add(account);
+        long[] prepared = account.getPreparedTransfers();
+        for (int at = 0; at < prepared.length; at += 3) {
+            Journal.Entry entry = new Journal.Entry();
+            entry.kind = Journal.PREPARED;
+            entry.key = account.getAccountNumber();
+            entry.id = prepared[at];
+            entry.amount = prepared[at + 1];
+            entry.timestamp = prepared[at + 2];
+            preparedTransfers.put(entry.id, entry);
+        }
+    }
+    
+    /**
+     * Put an official restored from a snapshot into the bank without logging it
+     * 
+     * @param official The restored official
+     */
+    void restoreOfficial(BankOfficial official) {
+        officials.put(official.getOfficialId(), official);
+    }
+    
     @Override
     public String toString() {
         return bankName + " - " + getTotalAccounts() + " accounts, " + getTotalOfficials() + " officials";
@@ -0,0 +1,176 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * BankAggregates class keeping running bank-wide totals
+ * Accounts report every change that affects a total while they hold their
+ * own lock: joining or leaving the bank, a posted balance change, a status
+ * change and each history entry. The totals are LongAdders, which spread
+ * concurrent updates over separate cells, so terminals on different
+ * accounts never contend on them, and reading any total costs the same
+ * whatever the size of the bank.
+ * 
+ * Totals read while accounts change may be a few operations behind; with
+ * no operation in flight they match a pass over every account exactly.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class BankAggregates {
+    private final LongAdder accounts = new LongAdder();
+    private final LongAdder activeAccounts = new LongAdder();
+    private final LongAdder totalBalance = new LongAdder();
+    private final LongAdder[] transactionCounts = new LongAdder[TransactionType.MAX_TYPES];
+    private final LongAdder[] transactionVolumes = new LongAdder[TransactionType.MAX_TYPES];
+    
+    /**
+     * Constructor to create empty totals
+     */
+    public BankAggregates() {
+        for (int i = 0; i < TransactionType.MAX_TYPES; i++) {
+            transactionCounts[i] = new LongAdder();
+            transactionVolumes[i] = new LongAdder();
+        }
+    }
+    
+    /**
+     * Count an account that joined the bank; its history is reported separately
+     * 
+     * @param balance The posted balance in paise
+     * @param active The active status
+     */
+    void accountAdded(long balance, boolean active) {
+        accounts.increment();
+        if (active) {
+            activeAccounts.increment();
+        }
+        totalBalance.add(balance);
+    }
+    
+    /**
+     * Stop counting an account that left the bank; its history is reported separately
+     * 
+     * @param balance The posted balance in paise
+     * @param active The active status
+     */
+    void accountRemoved(long balance, boolean active) {
+        accounts.decrement();
+        if (active) {
+            activeAccounts.decrement();
+        }
+        totalBalance.add(-balance);
+    }
+    
+    /**
+     * Apply a change in an account's posted balance
+     * 
+     * @param delta The change in paise
+     */
+    void balanceChanged(long delta) {
+        totalBalance.add(delta);
+    }
+    
+    /**
+     * Apply a change in an account's active status
+     * 
+     * @param active The new status
+     */
+    void statusChanged(boolean active) {
+        if (active) {
+            activeAccounts.increment();
+        } else {
+            activeAccounts.decrement();
+        }
+    }
+    
+    /**
+     * Count one history entry
+     * 
+     * @param type The transaction type code
+     * @param amount The signed amount in paise
+     */
+    void transactionRecorded(byte type, long amount) {
+        transactionCounts[type].increment();
+        transactionVolumes[type].add(Math.abs(amount));
+    }
+    
+    /**
+     * Stop counting one history entry
+     * 
+     * @param type The transaction type code
+     * @param amount The signed amount in paise
+     */
+    void transactionRemoved(byte type, long amount) {
+        transactionCounts[type].decrement();
+        transactionVolumes[type].add(-Math.abs(amount));
+    }
+    
+    /**
+     * Get the number of accounts
+     * 
+     * @return The number of accounts in the bank
+     */
+    public long getAccountCount() {
+        return accounts.sum();
+    }
+    
+    /**
+     * Get the number of active accounts
+     * 
+     * @return The number of active accounts
+     */
+    public long getActiveAccounts() {
+        return activeAccounts.sum();
+    }
+    
+    /**
+     * Get the number of blocked accounts
+     * 
+     * @return The number of blocked accounts
+     */
+    public long getBlockedAccounts() {
+        return accounts.sum() - activeAccounts.sum();
+    }
+    
+    /**
+     * Get the total posted balance of all accounts
+     * 
+     * @return The total balance in paise
+     */
+    public long getTotalBalancePaise() {
+        return totalBalance.sum();
+    }
+    
+    /**
+     * Get the number of history entries of one type
+     * 
+     * @param type The transaction type code
+     * @return The number of entries
+     */
+    public long getTransactionCount(byte type) {
+        return transactionCounts[type].sum();
+    }
+    
+    /**
+     * Get the total amount moved by history entries of one type
+     * 
+     * @param type The transaction type code
+     * @return The sum of the absolute amounts in paise
+     */
+    public long getTransactionVolumePaise(byte type) {
+        return transactionVolumes[type].sum();
+    }
+    
+    /**
+     * Get the number of history entries of every type
+     * 
+     * @return The number of entries
+     */
+    public long getTransactionCount() {
+        long total = 0L;
+        int types = TransactionType.count();
+        for (int i = 0; i < types; i++) {
+            total += transactionCounts[i].sum();
+        }
+        return total;
+    }
+}
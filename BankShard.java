@@ -0,0 +1,241 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * BankShard class running one shard of a ShardedBank in this JVM
+ * The shard is an ordinary Bank driven by a single thread of its own: every
+ * request is queued to that thread, so requests for the shard's accounts
+ * never contend with other shards, and the two-phase commit state below
+ * needs no locks because only that thread touches it.
+ * 
+ * A prepared debit takes the amount out of the account's balance at once,
+ * so it cannot be spent twice while the transfer waits for its decision,
+ * but nothing is posted to the history until COMMIT. Both the prepare and
+ * the commit or abort are journaled before the shard answers, so a shard
+ * whose bank recovered from its snapshot and journal starts with the same
+ * transfers prepared, the same money held and the same outcomes for the
+ * transfers it settled, which its bank remembers for STATUS and to answer
+ * a repeated COMMIT or ABORT. Prepares the shard refused, and aborts that
+ * arrived before their prepare, are never journaled; the last MAX_OUTCOMES
+ * of them are kept in memory so a late prepare is still refused.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class BankShard implements Shard {
+    /** Refused or early-aborted transfers a shard remembers */
+    public static final int MAX_OUTCOMES = 1 << 20;
+    
+    /**
+     * One side of a transfer waiting for its decision
+     */
+    private static final class Prepared {
+        final Account account;
+        final long amount;
+        final boolean debit;
+        final long preparedAt;
+        
+        Prepared(Account account, long amount, boolean debit, long preparedAt) {
+            this.account = account;
+            this.amount = amount;
+            this.debit = debit;
+            this.preparedAt = preparedAt;
+        }
+    }
+    
+    private final Bank bank;
+    private final ExecutorService executor;
+    // Both are only touched on the shard's thread
+    private final TreeMap<Long, Prepared> prepared = new TreeMap<>();
+    private final Set<Long> refused = Collections.newSetFromMap(new LinkedHashMap<Long, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > MAX_OUTCOMES;
+        }
+    });
+    
+    /**
+     * Constructor to create a shard with an empty bank
+     * 
+     * @param name The shard's name, used for its bank and thread
+     */
+    public BankShard(String name) {
+        this(new Bank(name), name);
+    }
+    
+    /**
+     * Constructor to create a shard around an existing bank
+     * The bank should not be changed other than through the shard. Transfers
+     * its journal left prepared stay prepared, waiting for a decision.
+     * 
+     * @param bank The bank holding the shard's accounts
+     * @param name The shard's name, used for its thread
+     */
+    public BankShard(Bank bank, String name) {
+        this.bank = bank;
+        for (Journal.Entry entry : bank.takePreparedTransfers().values()) {
+            Account account = bank.getAccount(entry.key);
+            if (account != null) {
+                prepared.put(entry.id, new Prepared(account, Math.abs(entry.amount), entry.amount < 0,
+                                                    entry.timestamp));
+            }
+        }
+        this.executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "shard-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Get the bank holding the shard's accounts
+     * 
+     * @return The bank
+     */
+    public Bank getBank() {
+        return bank;
+    }
+    
+    @Override
+    public CompletableFuture<Long> submit(byte op, long tx, long amount, String a, String b, String c) {
+        try {
+            return CompletableFuture.supplyAsync(() -> execute(op, tx, amount, a, b, c), executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+    
+    /**
+     * Stop the shard's thread once the requests already queued are done
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+    
+    /**
+     * Execute one request on the shard's thread
+     */
+    private long execute(byte op, long tx, long amount, String a, String b, String c) {
+        switch (op) {
+            case OPEN:
+                return Money.isValid(Money.toRupees(amount)) && amount >= 0
+                       && bank.addAccount(new Account(a, b, c, Money.toRupees(amount))) ? 1L : 0L;
+            case BALANCE: {
+                Account account = bank.getAccount(a);
+                return account != null ? account.getBalancePaise() : -1L;
+            }
+            case AUTHENTICATE:
+                return bank.authenticate(a, b) ? 1L : 0L;
+            case DEPOSIT: {
+                Account account = bank.getAccount(a);
+                return account != null && account.isActive() && account.depositPaise(amount) ? 1L : 0L;
+            }
+            case WITHDRAW: {
+                Account account = bank.getAccount(a);
+                return account != null && account.isActive() && account.withdrawPaise(amount) ? 1L : 0L;
+            }
+            case TRANSFER:
+                return amount > 0 && bank.transferMoney(a, b, Money.toRupees(amount)) ? 1L : 0L;
+            case PREPARE_DEBIT:
+            case PREPARE_CREDIT:
+                return prepare(tx, a, amount, op == PREPARE_DEBIT) ? 1L : 0L;
+            case COMMIT:
+                return commit(tx);
+            case ABORT:
+                return abort(tx);
+            case STATUS:
+                return status(tx);
+            case NEXT_IN_DOUBT: {
+                long cutoff = System.currentTimeMillis() - amount;
+                for (Map.Entry<Long, Prepared> entry : prepared.tailMap(tx, false).entrySet()) {
+                    if (entry.getValue().preparedAt <= cutoff) {
+                        return entry.getKey();
+                    }
+                }
+                return 0L;
+            }
+            case TOTAL:
+                return bank.getTotalBalancePaise();
+            default:
+                throw new IllegalArgumentException("Unknown shard operation: " + op);
+        }
+    }
+    
+    /**
+     * Vote on one side of a transfer, holding the amount for a debit
+     */
+    private boolean prepare(long tx, String accountNumber, long amount, boolean debit) {
+        Account account = bank.getAccount(accountNumber);
+        long status = status(tx);
+        if (status != STATUS_UNKNOWN) {
+            // A repeated prepare must not hold the money twice
+            return status == STATUS_PREPARED;
+        }
+        long preparedAt = System.currentTimeMillis();
+        if (account == null || !account.isActive() || amount <= 0
+            || !account.prepareTransfer(tx, debit ? -amount : amount, preparedAt)) {
+            refused.add(tx);
+            return false;
+        }
+        prepared.put(tx, new Prepared(account, amount, debit, preparedAt));
+        return true;
+    }
+    
+    /**
+     * Commit a prepared transfer
+     * 
+     * @return The transfer's status here afterwards
+     */
+    private long commit(long tx) {
+        Prepared side = prepared.remove(tx);
+        if (side == null) {
+            // Already settled here, or never prepared here
+            return status(tx);
+        }
+        side.account.resolveTransfer(tx, side.debit ? -side.amount : side.amount, true);
+        return STATUS_COMMITTED;
+    }
+    
+    /**
+     * Abort a transfer, releasing its hold if it was prepared
+     * 
+     * @return The transfer's status here afterwards, or STATUS_UNKNOWN if it was never prepared here
+     */
+    private long abort(long tx) {
+        Prepared side = prepared.remove(tx);
+        if (side != null) {
+            side.account.resolveTransfer(tx, side.debit ? -side.amount : side.amount, false);
+            return STATUS_ABORTED;
+        }
+        long status = status(tx);
+        if (status == STATUS_UNKNOWN) {
+            // Refuse the prepare if it arrives after the abort
+            refused.add(tx);
+        }
+        return status;
+    }
+    
+    /**
+     * Get what this shard knows of a transfer
+     * 
+     * @return One of the STATUS_ values
+     */
+    private long status(long tx) {
+        if (prepared.containsKey(tx)) {
+            return STATUS_PREPARED;
+        }
+        Boolean committed = bank.getTransferOutcome(tx);
+        if (committed != null) {
+            return committed ? STATUS_COMMITTED : STATUS_ABORTED;
+        }
+        return refused.contains(tx) ? STATUS_ABORTED : STATUS_UNKNOWN;
+    }
+}
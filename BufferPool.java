@@ -0,0 +1,59 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * BufferPool class recycling fixed-size direct byte buffers
+ * Direct buffers are expensive to allocate and free, so connections borrow
+ * one only while they have unread input or unwritten output and hand it
+ * back afterwards. A pool belongs to a single thread and is not locked.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class BufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+    
+    /**
+     * Constructor to create an empty pool
+     * 
+     * @param bufferSize The capacity of each buffer in bytes
+     * @param maxPooled The most idle buffers kept for reuse
+     */
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+    
+    /**
+     * Borrow a cleared buffer, allocating one if none is idle
+     * 
+     * @return A buffer ready for writing
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.pollFirst();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferSize);
+    }
+    
+    /**
+     * Return a buffer to the pool
+     * 
+     * @param buffer A buffer obtained from acquire
+     */
+    public void release(ByteBuffer buffer) {
+        if (free.size() < maxPooled) {
+            buffer.clear();
+            free.addFirst(buffer);
+        }
+    }
+    
+    /**
+     * Get the capacity of the pooled buffers
+     * 
+     * @return The buffer size in bytes
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+}
@@ -0,0 +1,748 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * CashForecast class forecasting when the ATMs of a fleet run out of notes
+ * Replays each terminal's withdrawals in time order against its cassettes,
+ * paying every withdrawal with the same DispensePlanner the ATMs use, and
+ * keeps an exponentially weighted moving average of the notes of each
+ * denomination paid per day. At the end of every day a terminal whose
+ * notes of some denomination will not last the replenishment lead time
+ * plus a day at that rate books a cash-in-transit visit, which fills every
+ * cassette on the day it arrives. The replay reports how many visits the
+ * policy needed and how many withdrawals still found the notes gone; after
+ * the history ends the same forecast projects the coming visits.
+ * 
+ * Terminals are independent, so they are replayed as a parallel stream and
+ * each holds only a few hundred bytes of state: a year of history for a
+ * fleet is bounded by the planner, about 200 ns a withdrawal per core.
+ * 
+ * Withdrawals come from a History: either the "Withdrawal" entries of a
+ * bank's transaction logs, spread over the fleet by account, or a
+ * generated year of fleet history.
+ * 
+ * Usage: java CashForecast [terminals] [days] [withdrawalsPerDay] [leadDays] [smoothing]
+ *        java -Datm.snapshot=bank.snapshot -Datm.journal=bank.journal CashForecast [terminals]
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class CashForecast {
+    /** Weight of the latest day in the daily demand average */
+    public static final double DEFAULT_SMOOTHING = 0.2;
+    /** Days between booking a visit and the cash arriving */
+    public static final int DEFAULT_LEAD_DAYS = 2;
+    /** Days of forecast demand a cassette must hold beyond the lead time */
+    public static final int SAFETY_DAYS = 1;
+    /** Share of withdrawals, in percent, a customer makes away from their usual terminal */
+    public static final int ROAMING_PERCENT = 20;
+    
+    private static final long DAY_MILLIS = 86_400_000L;
+    private static final int DENOMINATIONS = DispensePlanner.DENOMINATIONS.length;
+    private static final DispensePlanner PLANNER = new DispensePlanner(AtmSession.MAX_WITHDRAWAL);
+    private static final long FULL;
+    
+    static {
+        long full = 0L;
+        for (int d = 0; d < DENOMINATIONS; d++) {
+            full += DispensePlanner.pack(d, CashVault.CASSETTE_CAPACITY);
+        }
+        FULL = full;
+    }
+    
+    /**
+     * Receives one terminal's withdrawals in time order
+     */
+    @FunctionalInterface
+    public interface Sink {
+        /**
+         * Receive one withdrawal
+         * 
+         * @param timestampMillis The time of the withdrawal in epoch milliseconds
+         * @param amountPaise The amount in paise
+         */
+        void withdraw(long timestampMillis, long amountPaise);
+    }
+    
+    /**
+     * The withdrawal history of a fleet of terminals
+     */
+    public interface History {
+        /**
+         * Get the number of terminals
+         * 
+         * @return The number of terminals, numbered from 0
+         */
+        int getTerminals();
+        
+        /**
+         * Get the start of the first day of history
+         * 
+         * @return The first day
+         */
+        LocalDate getFirstDay();
+        
+        /**
+         * Get the number of days of history
+         * 
+         * @return The number of days
+         */
+        int getDays();
+        
+        /**
+         * Send one terminal's withdrawals to a sink in time order
+         * Called for different terminals from several threads at once.
+         * 
+         * @param terminal The terminal
+         * @param sink Receives the withdrawals
+         */
+        void replay(int terminal, Sink sink);
+    }
+    
+    /**
+     * A visit that fills a terminal's cassettes
+     */
+    public static final class Visit {
+        private final int terminal;
+        private final LocalDate day;
+        private final long loaded;
+        
+        Visit(int terminal, LocalDate day, long loaded) {
+            this.terminal = terminal;
+            this.day = day;
+            this.loaded = loaded;
+        }
+        
+        /**
+         * Get the terminal visited
+         * 
+         * @return The terminal number
+         */
+        public int getTerminal() {
+            return terminal;
+        }
+        
+        /**
+         * Get the day of the visit
+         * 
+         * @return The day the cash arrives
+         */
+        public LocalDate getDay() {
+            return day;
+        }
+        
+        /**
+         * Get the notes to load
+         * 
+         * @return The notes per denomination, packed as DispensePlanner describes
+         */
+        public long getLoaded() {
+            return loaded;
+        }
+        
+        /**
+         * Get the value of the notes to load
+         * 
+         * @return The cash in rupees
+         */
+        public long getCash() {
+            return DispensePlanner.value(loaded);
+        }
+    }
+    
+    /**
+     * The replay and forecast of one terminal
+     */
+    public static final class Terminal implements Sink {
+        private final int terminal;
+        private final LocalDate firstDay;
+        private final double smoothing;
+        private final int leadDays;
+        private final long firstMillis;
+        private final double[] demand = new double[DENOMINATIONS];
+        private final int[] paidToday = new int[DENOMINATIONS];
+        private long notes = FULL;
+        private int day;
+        private int visitDay = -1;
+        private boolean warm;
+        private long withdrawals;
+        private long paidPaise;
+        private long stockouts;
+        private long undispensable;
+        private int visits;
+        private long cashLoaded;
+        
+        Terminal(int terminal, LocalDate firstDay, double smoothing, int leadDays) {
+            this.terminal = terminal;
+            this.firstDay = firstDay;
+            this.smoothing = smoothing;
+            this.leadDays = leadDays;
+            this.firstMillis = firstDay.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+        
+        @Override
+        public void withdraw(long timestampMillis, long amountPaise) {
+            int today = (int) Math.floorDiv(timestampMillis - firstMillis, DAY_MILLIS);
+            while (day < today) {
+                endDay();
+                startDay();
+            }
+            if (!PLANNER.isDispensable(amountPaise)) {
+                // Not a whole number of notes, or over the ATM limit: not an ATM withdrawal
+                undispensable++;
+                return;
+            }
+            long mix = PLANNER.plan(amountPaise, notes, CashVault.SCARCE_BELOW);
+            if (mix == DispensePlanner.NO_PLAN) {
+                stockouts++;
+                return;
+            }
+            notes -= mix;
+            for (int d = 0; d < DENOMINATIONS; d++) {
+                paidToday[d] += DispensePlanner.count(mix, d);
+            }
+            withdrawals++;
+            paidPaise += amountPaise;
+        }
+        
+        /**
+         * Close the current day: update the demand forecast and book a visit if one is needed
+         */
+        private void endDay() {
+            for (int d = 0; d < DENOMINATIONS; d++) {
+                // The first day seeds the average instead of being averaged with nothing
+                demand[d] = warm ? smoothing * paidToday[d] + (1.0 - smoothing) * demand[d] : paidToday[d];
+                paidToday[d] = 0;
+            }
+            warm = true;
+            day++;
+            if (visitDay < 0 && runsShort(notes)) {
+                visitDay = day + leadDays;
+            }
+        }
+        
+        /**
+         * Open the current day, filling the cassettes if a visit arrives this morning
+         */
+        private void startDay() {
+            if (day == visitDay) {
+                cashLoaded += DispensePlanner.value(FULL - notes);
+                notes = FULL;
+                visits++;
+                visitDay = -1;
+            }
+        }
+        
+        /**
+         * Check if some denomination will not last the lead time and the safety days
+         */
+        private boolean runsShort(long left) {
+            for (int d = 0; d < DENOMINATIONS; d++) {
+                if (demand[d] > 0 && DispensePlanner.count(left, d) < demand[d] * (leadDays + SAFETY_DAYS)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        /**
+         * Close the days up to the end of the history
+         * A visit arriving the morning after is left to schedule.
+         */
+        void finish(int days) {
+            while (day < days) {
+                endDay();
+                if (day < days) {
+                    startDay();
+                }
+            }
+        }
+        
+        /**
+         * Project the visits needed over the coming days at the forecast demand
+         * 
+         * @param horizonDays The number of days after the history to plan
+         * @param schedule Receives the visits
+         */
+        void schedule(int horizonDays, List<Visit> schedule) {
+            double[] left = new double[DENOMINATIONS];
+            for (int d = 0; d < DENOMINATIONS; d++) {
+                left[d] = DispensePlanner.count(notes, d);
+            }
+            int booked = visitDay;
+            for (int future = day; future < day + horizonDays; future++) {
+                if (future == booked) {
+                    long loaded = 0L;
+                    for (int d = 0; d < DENOMINATIONS; d++) {
+                        loaded += DispensePlanner.pack(d, CashVault.CASSETTE_CAPACITY - (int) Math.ceil(left[d]));
+                        left[d] = CashVault.CASSETTE_CAPACITY;
+                    }
+                    schedule.add(new Visit(terminal, firstDay.plusDays(future), loaded));
+                    booked = -1;
+                }
+                long rounded = 0L;
+                for (int d = 0; d < DENOMINATIONS; d++) {
+                    left[d] = Math.max(0.0, left[d] - demand[d]);
+                    rounded += DispensePlanner.pack(d, (int) left[d]);
+                }
+                if (booked < 0 && runsShort(rounded)) {
+                    booked = future + 1 + leadDays;
+                }
+            }
+        }
+        
+        /**
+         * Get the terminal number
+         * 
+         * @return The terminal
+         */
+        public int getTerminal() {
+            return terminal;
+        }
+        
+        /**
+         * Get the number of withdrawals paid
+         * 
+         * @return The withdrawals paid in full
+         */
+        public long getWithdrawals() {
+            return withdrawals;
+        }
+        
+        /**
+         * Get the cash paid out
+         * 
+         * @return The cash in paise
+         */
+        public long getPaidPaise() {
+            return paidPaise;
+        }
+        
+        /**
+         * Get the number of withdrawals refused because the notes had run out
+         * 
+         * @return The number of stock-outs
+         */
+        public long getStockouts() {
+            return stockouts;
+        }
+        
+        /**
+         * Get the number of history entries that were not whole numbers of notes within the ATM limit
+         * 
+         * @return The number of entries skipped
+         */
+        public long getUndispensable() {
+            return undispensable;
+        }
+        
+        /**
+         * Get the number of visits made during the replay
+         * 
+         * @return The number of visits
+         */
+        public int getVisits() {
+            return visits;
+        }
+        
+        /**
+         * Get the cash loaded by the visits made during the replay
+         * 
+         * @return The cash in rupees
+         */
+        public long getCashLoaded() {
+            return cashLoaded;
+        }
+        
+        /**
+         * Get the notes left at the end of the history
+         * 
+         * @param index The position of the denomination in DispensePlanner.DENOMINATIONS
+         * @return The number of notes
+         */
+        public int getNotesLeft(int index) {
+            return DispensePlanner.count(notes, index);
+        }
+        
+        /**
+         * Get the forecast daily demand for a denomination
+         * 
+         * @param index The position of the denomination in DispensePlanner.DENOMINATIONS
+         * @return The notes expected to be paid per day
+         */
+        public double getDailyDemand(int index) {
+            return demand[index];
+        }
+        
+        /**
+         * Get the days until the first cassette runs dry at the forecast demand
+         * 
+         * @return The days, or Double.POSITIVE_INFINITY if nothing is being paid
+         */
+        public double getDaysLeft() {
+            double least = Double.POSITIVE_INFINITY;
+            for (int d = 0; d < DENOMINATIONS; d++) {
+                if (demand[d] > 0) {
+                    least = Math.min(least, DispensePlanner.count(notes, d) / demand[d]);
+                }
+            }
+            return least;
+        }
+    }
+    
+    private final double smoothing;
+    private final int leadDays;
+    
+    /**
+     * Constructor to create a forecast with the given policy
+     * 
+     * @param smoothing The weight of the latest day in the demand average, above 0 and at most 1
+     * @param leadDays The days between booking a visit and the cash arriving, at least 0
+     */
+    public CashForecast(double smoothing, int leadDays) {
+        if (!(smoothing > 0 && smoothing <= 1) || leadDays < 0) {
+            throw new IllegalArgumentException("Invalid forecast policy: smoothing " + smoothing
+                                               + ", lead days " + leadDays);
+        }
+        this.smoothing = smoothing;
+        this.leadDays = leadDays;
+    }
+    
+    /**
+     * Replay a history, one terminal per task of a parallel stream
+     * 
+     * @param history The withdrawals of the fleet
+     * @return Every terminal's replay and forecast, in terminal order
+     */
+    public List<Terminal> replay(History history) {
+        return IntStream.range(0, history.getTerminals()).parallel().mapToObj(t -> {
+            Terminal terminal = new Terminal(t, history.getFirstDay(), smoothing, leadDays);
+            history.replay(t, terminal);
+            terminal.finish(history.getDays());
+            return terminal;
+        }).collect(Collectors.toList());
+    }
+    
+    /**
+     * Plan the visits needed after the history at the forecast demand
+     * 
+     * @param terminals The replayed terminals
+     * @param horizonDays The number of days to plan
+     * @return The visits, by day and then by terminal
+     */
+    public static List<Visit> schedule(List<Terminal> terminals, int horizonDays) {
+        List<Visit> schedule = terminals.parallelStream().flatMap(terminal -> {
+            List<Visit> visits = new ArrayList<>();
+            terminal.schedule(horizonDays, visits);
+            return visits.stream();
+        }).collect(Collectors.toList());
+        schedule.sort(Comparator.comparing(Visit::getDay).thenComparingInt(Visit::getTerminal));
+        return schedule;
+    }
+    
+    /**
+     * Get the history held in a bank's transaction logs
+     * A transaction log does not say which terminal a withdrawal was made
+     * at, so each account is given a usual terminal by its number, and
+     * ROAMING_PERCENT of its withdrawals, picked by transaction ID, go to
+     * another terminal. The withdrawals are sorted into per-terminal arrays
+     * once, in parallel; the bank's accounts can keep changing meanwhile.
+     * 
+     * @param bank The bank
+     * @param terminals The number of terminals in the fleet
+     * @return The history
+     */
+    public static History fromBank(Bank bank, int terminals) {
+        return new BankHistory(bank.getAllAccounts(), terminals);
+    }
+    
+    /**
+     * Get a generated history
+     * Each terminal gets its own level of use, busier at the start of a month
+     * and on weekends, and withdrawals are mostly round amounts. The same seed
+     * always gives the same history, and nothing is kept in memory: each
+     * terminal's withdrawals are generated as they are replayed.
+     * 
+     * @param terminals The number of terminals
+     * @param firstDay The first day of history
+     * @param days The number of days
+     * @param withdrawalsPerDay The average withdrawals per terminal per day
+     * @param seed The random seed
+     * @return The history
+     */
+    public static History generated(int terminals, LocalDate firstDay, int days, double withdrawalsPerDay,
+                                    long seed) {
+        return new GeneratedHistory(terminals, firstDay, days, withdrawalsPerDay, seed);
+    }
+    
+    /**
+     * The "Withdrawal" entries of a bank's transaction logs, by terminal
+     */
+    private static final class BankHistory implements History {
+        // Packed as the time since the first day in the high bits and the amount in paise in the low bits
+        private static final int AMOUNT_BITS = 24;
+        private static final long AMOUNT_MASK = (1L << AMOUNT_BITS) - 1L;
+        
+        private final int terminals;
+        private final LocalDate firstDay;
+        private final long firstMillis;
+        private final int days;
+        private final long[][] withdrawals;
+        
+        BankHistory(List<Account> accounts, int terminals) {
+            this.terminals = terminals;
+            // Each log's size is read once, so entries appended while the passes run are left out of all of them
+            Account[] held = accounts.toArray(new Account[0]);
+            int[] sizes = new int[held.length];
+            long[] range = IntStream.range(0, held.length).parallel().mapToObj(a -> {
+                TransactionLog log = held[a].getHistory();
+                long[] span = {Long.MAX_VALUE, Long.MIN_VALUE};
+                sizes[a] = log.size();
+                for (int i = 0; i < sizes[a]; i++) {
+                    if (log.typeAt(i) == TransactionType.WITHDRAWAL) {
+                        span[0] = Math.min(span[0], log.timestampAt(i));
+                        span[1] = Math.max(span[1], log.timestampAt(i));
+                    }
+                }
+                return span;
+            }).reduce(new long[] {Long.MAX_VALUE, Long.MIN_VALUE},
+                      (a, b) -> new long[] {Math.min(a[0], b[0]), Math.max(a[1], b[1])});
+            ZoneId zone = ZoneId.systemDefault();
+            this.firstDay = range[0] == Long.MAX_VALUE ? LocalDate.now(zone)
+                            : LocalDate.ofInstant(Instant.ofEpochMilli(range[0]), zone);
+            this.firstMillis = firstDay.atStartOfDay(zone).toInstant().toEpochMilli();
+            this.days = range[0] == Long.MAX_VALUE ? 0 : (int) ((range[1] - firstMillis) / DAY_MILLIS) + 1;
+            
+            // Count, then fill, then sort each terminal's withdrawals by time
+            AtomicIntegerArray counts = new AtomicIntegerArray(terminals);
+            IntStream.range(0, held.length).parallel().forEach(a -> {
+                forEachWithdrawal(held[a], sizes[a], (t, packed) -> counts.incrementAndGet(t));
+            });
+            this.withdrawals = new long[terminals][];
+            for (int t = 0; t < terminals; t++) {
+                withdrawals[t] = new long[counts.get(t)];
+            }
+            AtomicIntegerArray filled = new AtomicIntegerArray(terminals);
+            IntStream.range(0, held.length).parallel().forEach(a -> {
+                forEachWithdrawal(held[a], sizes[a], (t, packed) -> {
+                    withdrawals[t][filled.getAndIncrement(t)] = packed;
+                });
+            });
+            IntStream.range(0, terminals).parallel().forEach(t -> Arrays.sort(withdrawals[t]));
+        }
+        
+        /**
+         * Receives one withdrawal, packed, and the terminal it goes to
+         */
+        private interface Assigned {
+            void accept(int terminal, long packed);
+        }
+        
+        private void forEachWithdrawal(Account account, int size, Assigned sink) {
+            TransactionLog log = account.getHistory();
+            int usual = Math.floorMod(account.getAccountNumber().hashCode(), terminals);
+            for (int i = 0; i < size; i++) {
+                long amount = Math.abs(log.amountAt(i));
+                if (log.typeAt(i) != TransactionType.WITHDRAWAL || amount > AMOUNT_MASK) {
+                    continue;
+                }
+                long id = log.idAt(i) * 0x9E3779B97F4A7C15L;
+                int terminal = Math.floorMod(id >>> 33, 100L) < ROAMING_PERCENT
+                               ? (int) Math.floorMod(id >>> 1, (long) terminals) : usual;
+                sink.accept(terminal, (log.timestampAt(i) - firstMillis) << AMOUNT_BITS | amount);
+            }
+        }
+        
+        @Override
+        public int getTerminals() {
+            return terminals;
+        }
+        
+        @Override
+        public LocalDate getFirstDay() {
+            return firstDay;
+        }
+        
+        @Override
+        public int getDays() {
+            return days;
+        }
+        
+        @Override
+        public void replay(int terminal, Sink sink) {
+            for (long packed : withdrawals[terminal]) {
+                sink.withdraw(firstMillis + (packed >>> AMOUNT_BITS), packed & AMOUNT_MASK);
+            }
+        }
+    }
+    
+    /**
+     * A fleet history generated as it is replayed
+     */
+    private static final class GeneratedHistory implements History {
+        // Rupee amounts customers mostly ask for, and how often, out of 100
+        private static final int[] ROUND_AMOUNTS = {500, 1000, 2000, 3000, 5000, 10000, 20000};
+        private static final int[] ROUND_WEIGHTS = {14, 20, 18, 8, 14, 8, 3};
+        private static final int ROUND_PERCENT = 85;
+        
+        private final int terminals;
+        private final LocalDate firstDay;
+        private final int days;
+        private final double withdrawalsPerDay;
+        private final long seed;
+        
+        GeneratedHistory(int terminals, LocalDate firstDay, int days, double withdrawalsPerDay, long seed) {
+            this.terminals = terminals;
+            this.firstDay = firstDay;
+            this.days = days;
+            this.withdrawalsPerDay = withdrawalsPerDay;
+            this.seed = seed;
+        }
+        
+        @Override
+        public int getTerminals() {
+            return terminals;
+        }
+        
+        @Override
+        public LocalDate getFirstDay() {
+            return firstDay;
+        }
+        
+        @Override
+        public int getDays() {
+            return days;
+        }
+        
+        @Override
+        public void replay(int terminal, Sink sink) {
+            SplittableRandom random = new SplittableRandom(seed + terminal * 0x9E3779B97F4A7C15L);
+            // Busy terminals see several times the average, quiet ones a fraction
+            double level = withdrawalsPerDay * Math.exp(random.nextGaussian() * 0.6 - 0.18);
+            long dayMillis = firstDay.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            LocalDate date = firstDay;
+            for (int d = 0; d < days; d++, date = date.plusDays(1), dayMillis += DAY_MILLIS) {
+                double expected = level * (date.getDayOfMonth() <= 5 ? 1.5 : 1.0)
+                                  * (date.getDayOfWeek().getValue() >= 6 ? 1.2 : 1.0);
+                int count = (int) Math.max(0L, Math.round(expected + random.nextGaussian() * Math.sqrt(expected)));
+                // Spread over the hours from 6 in the morning to 10 at night
+                long step = count > 0 ? 16 * 3_600_000L / count : 0L;
+                for (int i = 0; i < count; i++) {
+                    sink.withdraw(dayMillis + 6 * 3_600_000L + i * step, Money.toPaise(amount(random)));
+                }
+            }
+        }
+        
+        private static int amount(SplittableRandom random) {
+            if (random.nextInt(100) >= ROUND_PERCENT) {
+                return 100 * (1 + random.nextInt(100));
+            }
+            int pick = random.nextInt(ROUND_PERCENT);
+            for (int i = 0; i < ROUND_AMOUNTS.length; i++) {
+                pick -= ROUND_WEIGHTS[i];
+                if (pick < 0) {
+                    return ROUND_AMOUNTS[i];
+                }
+            }
+            return ROUND_AMOUNTS[0];
+        }
+    }
+    
+    public static void main(String[] args) throws IOException {
+        int terminals = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int days = args.length > 1 ? Integer.parseInt(args[1]) : 365;
+        double perDay = args.length > 2 ? Double.parseDouble(args[2]) : 150;
+        int leadDays = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_LEAD_DAYS;
+        double smoothing = args.length > 4 ? Double.parseDouble(args[4]) : DEFAULT_SMOOTHING;
+        
+        History history;
+        String snapshot = System.getProperty("atm.snapshot");
+        String journal = System.getProperty("atm.journal");
+        if (snapshot != null || journal != null) {
+            Bank bank = new Bank();
+            int threads = Runtime.getRuntime().availableProcessors();
+            Journal.Position from = snapshot != null ? Snapshot.load(bank, Paths.get(snapshot), threads)
+                                                     : new Journal.Position(0L, 0L);
+            if (journal != null) {
+                JournalReplay.replayAfter(bank, Paths.get(journal), from, threads, new long[1]);
+            }
+            long start = System.nanoTime();
+            history = fromBank(bank, terminals);
+            System.out.printf("Sorted the withdrawals of %d accounts onto %d terminals in %.1f s%n",
+                              bank.getTotalAccounts(), terminals, (System.nanoTime() - start) / 1e9);
+        } else {
+            history = generated(terminals, LocalDate.of(2024, 1, 1), days, perDay, 42L);
+        }
+        
+        CashForecast forecast = new CashForecast(smoothing, leadDays);
+        long start = System.nanoTime();
+        List<Terminal> replayed = forecast.replay(history);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        
+        long withdrawals = 0L;
+        long stockouts = 0L;
+        long undispensable = 0L;
+        long visits = 0L;
+        long paid = 0L;
+        for (Terminal terminal : replayed) {
+            withdrawals += terminal.getWithdrawals();
+            stockouts += terminal.getStockouts();
+            undispensable += terminal.getUndispensable();
+            visits += terminal.getVisits();
+            paid += terminal.getPaidPaise();
+        }
+        long events = withdrawals + stockouts + undispensable;
+        System.out.printf("Replayed %,d withdrawals on %d terminals over %d days from %s in %.1f s (%,.0f per second)%n",
+                          events, history.getTerminals(), history.getDays(), history.getFirstDay(), seconds,
+                          events / Math.max(seconds, 1e-9));
+        System.out.printf("Paid %,d (₹%s), refused %,d for lack of notes (%.3f%%), skipped %,d not payable in notes%n",
+                          withdrawals, Money.format(paid), stockouts, 100.0 * stockouts / Math.max(1L, events),
+                          undispensable);
+        System.out.printf("%,d visits with %d lead days and smoothing %.2f, %.1f per terminal%n%n", visits, leadDays,
+                          smoothing, (double) visits / Math.max(1, replayed.size()));
+        
+        List<Visit> schedule = schedule(replayed, 7);
+        System.out.println("Visits over the next 7 days");
+        System.out.printf("%-12s %8s %16s%n", "Day", "Visits", "Cash to load");
+        LocalDate end = history.getFirstDay().plusDays(history.getDays());
+        for (LocalDate day = end; day.isBefore(end.plusDays(7)); day = day.plusDays(1)) {
+            long count = 0L;
+            long cash = 0L;
+            for (Visit visit : schedule) {
+                if (visit.getDay().equals(day)) {
+                    count++;
+                    cash += visit.getCash();
+                }
+            }
+            System.out.printf("%-12s %8d %16s%n", day, count, "₹" + String.format("%,d", cash));
+        }
+        
+        System.out.println();
+        System.out.println("Terminals closest to running dry");
+        StringBuilder header = new StringBuilder(String.format("%-9s %9s", "Terminal", "Days left"));
+        for (int denomination : DispensePlanner.DENOMINATIONS) {
+            header.append(String.format(" %12s", "₹" + denomination + " left/day"));
+        }
+        System.out.println(header);
+        replayed.stream().sorted(Comparator.comparingDouble(Terminal::getDaysLeft)).limit(10).forEach(terminal -> {
+            StringBuilder row = new StringBuilder(String.format("%-9d %9.1f", terminal.getTerminal(),
+                                                                terminal.getDaysLeft()));
+            for (int d = 0; d < DENOMINATIONS; d++) {
+                row.append(String.format(" %12s", terminal.getNotesLeft(d) + "/"
+                                                  + Math.round(terminal.getDailyDemand(d))));
+            }
+            System.out.println(row);
+        });
+    }
+}
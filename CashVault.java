@@ -0,0 +1,175 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CashVault class holding the note cassettes of an ATM
+ * One cassette per denomination in DispensePlanner.DENOMINATIONS, each
+ * with a count of notes. All the counts are packed into one AtomicLong,
+ * so a withdrawal takes its whole mix of notes with a single
+ * compare-and-set: terminals sharing a vault never lock, never see a
+ * half-taken mix, and two terminals can never be promised the same notes.
+ * A terminal that loses the race plans again against the new counts.
+ * 
+ * Notes are taken before the account is debited and put back if the
+ * debit fails, so an amount the cassettes cannot pay is refused without
+ * touching the account.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public final class CashVault {
+    /** Most notes a cassette holds */
+    public static final int CASSETTE_CAPACITY = 2000;
+    /** A denomination with fewer notes left than this is kept for amounts nothing else can pay */
+    public static final int SCARCE_BELOW = 50;
+    
+    private static final DispensePlanner PLANNER = new DispensePlanner(AtmSession.MAX_WITHDRAWAL);
+    
+    private final AtomicLong notes = new AtomicLong();
+    
+    /**
+     * Constructor to create a vault with empty cassettes
+     */
+    public CashVault() {
+    }
+    
+    /**
+     * Constructor to create a vault with every cassette holding the same number of notes
+     * 
+     * @param notesPerCassette The notes to load into each cassette
+     */
+    public CashVault(int notesPerCassette) {
+        for (int denomination : DispensePlanner.DENOMINATIONS) {
+            load(denomination, notesPerCassette);
+        }
+    }
+    
+    /**
+     * Create a vault from a description such as "2000=100,500=400,100=1000"
+     * Denominations left out start empty.
+     * 
+     * @param cassettes Comma-separated denomination=notes pairs
+     * @return The loaded vault
+     * @throws IllegalArgumentException if the description cannot be parsed or a count is out of range
+     */
+    public static CashVault parse(String cassettes) {
+        CashVault vault = new CashVault();
+        for (String cassette : cassettes.split(",")) {
+            String[] parts = cassette.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected denomination=notes: " + cassette);
+            }
+            try {
+                vault.load(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Expected denomination=notes: " + cassette);
+            }
+        }
+        return vault;
+    }
+    
+    /**
+     * Add notes to a cassette
+     * 
+     * @param denomination The note value in rupees
+     * @param count The number of notes to add
+     * @throws IllegalArgumentException if there is no such cassette or it would overflow
+     */
+    public void load(int denomination, int count) {
+        int index = indexOf(denomination);
+        if (count < 0) {
+            throw new IllegalArgumentException("Note count must not be negative: " + count);
+        }
+        long current;
+        do {
+            current = notes.get();
+            if (DispensePlanner.count(current, index) + count > CASSETTE_CAPACITY) {
+                throw new IllegalArgumentException("The ₹" + denomination + " cassette holds at most "
+                                                   + CASSETTE_CAPACITY + " notes");
+            }
+        } while (!notes.compareAndSet(current, current + DispensePlanner.pack(index, count)));
+    }
+    
+    /**
+     * Get the notes left in a cassette
+     * 
+     * @param denomination The note value in rupees
+     * @return The number of notes
+     * @throws IllegalArgumentException if there is no such cassette
+     */
+    public int getNotes(int denomination) {
+        return DispensePlanner.count(notes.get(), indexOf(denomination));
+    }
+    
+    /**
+     * Get the value of all notes left
+     * 
+     * @return The cash in rupees
+     */
+    public long getCash() {
+        return DispensePlanner.value(notes.get());
+    }
+    
+    /**
+     * Check if an amount is a whole number of the smallest note and within the withdrawal limit
+     * It says nothing about the notes left; take decides that.
+     * 
+     * @param amount The amount in rupees
+     * @return true if a full vault could pay it
+     */
+    public boolean isDispensable(double amount) {
+        return Money.isValid(amount) && PLANNER.isDispensable(Money.toPaise(amount));
+    }
+    
+    /**
+     * Take the notes to pay an amount out of the cassettes
+     * 
+     * @param amount The amount in rupees
+     * @return The notes taken, packed as DispensePlanner describes, or DispensePlanner.NO_PLAN
+     *         if the notes left cannot pay the amount
+     */
+    public long take(double amount) {
+        if (!Money.isValid(amount)) {
+            return DispensePlanner.NO_PLAN;
+        }
+        long amountPaise = Money.toPaise(amount);
+        while (true) {
+            long current = notes.get();
+            long mix = PLANNER.plan(amountPaise, current, SCARCE_BELOW);
+            if (mix == DispensePlanner.NO_PLAN || notes.compareAndSet(current, current - mix)) {
+                return mix;
+            }
+        }
+    }
+    
+    /**
+     * Put back notes taken for a withdrawal that did not go through
+     * 
+     * @param mix The notes returned by take
+     */
+    public void putBack(long mix) {
+        if (mix != DispensePlanner.NO_PLAN) {
+            // Cannot carry into the next cassette: a count stays below CASSETTE_CAPACITY plus one withdrawal
+            notes.addAndGet(mix);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        long current = notes.get();
+        StringBuilder text = new StringBuilder();
+        for (int d = 0; d < DispensePlanner.DENOMINATIONS.length; d++) {
+            text.append(d > 0 ? ", " : "").append('₹').append(DispensePlanner.DENOMINATIONS[d]).append(": ")
+                .append(DispensePlanner.count(current, d));
+        }
+        return text.toString();
+    }
+    
+    private static int indexOf(int denomination) {
+        for (int d = 0; d < DispensePlanner.DENOMINATIONS.length; d++) {
+            if (DispensePlanner.DENOMINATIONS[d] == denomination) {
+                return d;
+            }
+        }
+        throw new IllegalArgumentException("No cassette for ₹" + denomination + " notes");
+    }
+}
@@ -0,0 +1,320 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * DispensePlanner class choosing the notes that make up a withdrawal
+ * For every amount up to the limit the planner works out, once, the
+ * fewest-notes mix using each combination of denominations: all five,
+ * every four, every three and so on, 31 combinations in all, of which
+ * only the distinct mixes are kept. Planning a withdrawal is then a
+ * lookup of at most 31 candidates plus two greedy mixes built from the
+ * notes actually left, however large the amount. Only when none of those
+ * can be paid, which happens when a cassette is nearly empty, does the
+ * planner run a change-making pass over the notes left to settle whether
+ * the amount can be paid at all.
+ * 
+ * Of the candidates the vault can pay, the planner picks the one using
+ * the fewest scarce notes (a denomination is scarce when fewer than a
+ * set number of notes are left in its cassette), and of those the one
+ * with the fewest notes. A machine low on ₹2000 notes therefore pays
+ * ₹4000 as four ₹1000 notes and keeps its last ₹2000 notes for amounts
+ * nothing else can pay.
+ * 
+ * Mixes and note counts are packed into a long, NOTE_BITS bits per
+ * denomination in the order of DENOMINATIONS, the same layout CashVault
+ * keeps its cassettes in.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class DispensePlanner {
+    /** Note values in rupees, largest first */
+    public static final int[] DENOMINATIONS = {2000, 1000, 500, 200, 100};
+    /** Bits per denomination in a packed mix */
+    public static final int NOTE_BITS = 12;
+    /** Most notes of one denomination a packed mix can hold */
+    public static final int MAX_NOTES = (1 << NOTE_BITS) - 1;
+    /** What plan returns when the notes left cannot pay the amount */
+    public static final long NO_PLAN = -1L;
+    
+    private static final int UNIT = DENOMINATIONS[DENOMINATIONS.length - 1];
+    private static final long FIELD = MAX_NOTES;
+    // Ranks a mix by scarce notes first, then by all notes
+    private static final int SCARCE_WEIGHT = 1 << 16;
+    
+    private final int maxUnits;
+    // candidates[first[u]] .. candidates[first[u + 1] - 1] are the mixes for u units, fewest notes first
+    private final int[] first;
+    private final long[] candidates;
+    
+    /**
+     * Constructor to build the tables for amounts up to a limit
+     * 
+     * @param maxAmount The largest amount to plan, in rupees, at most MAX_NOTES of the smallest note
+     */
+    public DispensePlanner(double maxAmount) {
+        if (maxAmount < 0 || maxAmount > (double) MAX_NOTES * UNIT) {
+            throw new IllegalArgumentException("Amount limit out of range: " + maxAmount);
+        }
+        this.maxUnits = (int) (maxAmount / UNIT);
+        this.first = new int[maxUnits + 2];
+        // One change-making table per combination of denominations covers every amount
+        int[][] lastNote = new int[1 << DENOMINATIONS.length][];
+        for (int allowed = 1; allowed < lastNote.length; allowed++) {
+            lastNote[allowed] = fewestNotes(maxUnits, allowed);
+        }
+        List<Long> all = new ArrayList<>();
+        for (int units = 0; units <= maxUnits; units++) {
+            first[units] = all.size();
+            Set<Long> plans = new LinkedHashSet<>();
+            for (int allowed = 1; allowed < lastNote.length; allowed++) {
+                long mix = mixFor(units, lastNote[allowed]);
+                if (mix != NO_PLAN) {
+                    plans.add(mix);
+                }
+            }
+            List<Long> sorted = new ArrayList<>(plans);
+            sorted.sort((a, b) -> Integer.compare(notes(a), notes(b)));
+            all.addAll(sorted);
+        }
+        first[maxUnits + 1] = all.size();
+        this.candidates = new long[all.size()];
+        for (int i = 0; i < candidates.length; i++) {
+            candidates[i] = all.get(i);
+        }
+    }
+    
+    /**
+     * Get the largest amount the tables cover
+     * 
+     * @return The amount in rupees
+     */
+    public double getMaxAmount() {
+        return (double) maxUnits * UNIT;
+    }
+    
+    /**
+     * Check if an amount is a whole number of the smallest note and within the limit
+     * 
+     * @param amountPaise The amount in paise
+     * @return true if some mix of notes could pay it
+     */
+    public boolean isDispensable(long amountPaise) {
+        long unitPaise = Money.toPaise(UNIT);
+        return amountPaise > 0 && amountPaise % unitPaise == 0 && amountPaise / unitPaise <= maxUnits;
+    }
+    
+    /**
+     * Choose the notes to pay an amount from the notes available
+     * 
+     * @param amountPaise The amount in paise
+     * @param available The notes left, packed
+     * @param scarceBelow A denomination with fewer notes left than this is scarce
+     * @return The notes to pay, packed, or NO_PLAN if the available notes cannot pay the amount
+     */
+    public long plan(long amountPaise, long available, int scarceBelow) {
+        if (!isDispensable(amountPaise)) {
+            return NO_PLAN;
+        }
+        int units = (int) (amountPaise / Money.toPaise(UNIT));
+        long scarce = 0L;
+        for (int d = 0; d < DENOMINATIONS.length; d++) {
+            if (count(available, d) < scarceBelow) {
+                scarce |= FIELD << shift(d);
+            }
+        }
+        
+        long best = NO_PLAN;
+        int bestScore = Integer.MAX_VALUE;
+        for (int i = first[units]; i < first[units + 1]; i++) {
+            long mix = candidates[i];
+            if (fits(mix, available)) {
+                int score = score(mix, scarce);
+                if (score < bestScore) {
+                    best = mix;
+                    bestScore = score;
+                }
+            }
+        }
+        // The tables assume unlimited notes; two mixes built from the notes left cover amounts only
+        // a capped mix can pay, the first keeping to plentiful notes as far as it can
+        long sparing = greedy(units, greedy(units, 0L, available & ~scarce), available);
+        if (value(sparing) == (long) units * UNIT && score(sparing, scarce) < bestScore) {
+            best = sparing;
+            bestScore = score(sparing, scarce);
+        }
+        long largest = greedy(units, 0L, available);
+        if (value(largest) == (long) units * UNIT && score(largest, scarce) < bestScore) {
+            best = largest;
+        }
+        return best != NO_PLAN ? best : anyMix(units, available);
+    }
+    
+    /**
+     * Get the notes of one denomination in a packed mix
+     * 
+     * @param mix The packed mix
+     * @param index The position of the denomination in DENOMINATIONS
+     * @return The number of notes
+     */
+    public static int count(long mix, int index) {
+        return (int) ((mix >>> shift(index)) & FIELD);
+    }
+    
+    /**
+     * Pack a number of notes of one denomination
+     * 
+     * @param index The position of the denomination in DENOMINATIONS
+     * @param notes The number of notes, at most MAX_NOTES
+     * @return The notes, packed
+     */
+    public static long pack(int index, int notes) {
+        return (long) notes << shift(index);
+    }
+    
+    /**
+     * Get the total number of notes in a packed mix
+     * 
+     * @param mix The packed mix
+     * @return The number of notes
+     */
+    public static int notes(long mix) {
+        int notes = 0;
+        for (int d = 0; d < DENOMINATIONS.length; d++) {
+            notes += count(mix, d);
+        }
+        return notes;
+    }
+    
+    /**
+     * Get the value of a packed mix
+     * 
+     * @param mix The packed mix
+     * @return The value in rupees
+     */
+    public static long value(long mix) {
+        long value = 0L;
+        for (int d = 0; d < DENOMINATIONS.length; d++) {
+            value += (long) count(mix, d) * DENOMINATIONS[d];
+        }
+        return value;
+    }
+    
+    /**
+     * Describe a packed mix, for example "2 × ₹2000, 1 x ₹500"
+     * 
+     * @param mix The packed mix
+     * @return The notes, largest first
+     */
+    public static String describe(long mix) {
+        StringBuilder text = new StringBuilder();
+        for (int d = 0; d < DENOMINATIONS.length; d++) {
+            int notes = count(mix, d);
+            if (notes > 0) {
+                text.append(text.length() > 0 ? ", " : "").append(notes).append(" × ₹").append(DENOMINATIONS[d]);
+            }
+        }
+        return text.toString();
+    }
+    
+    /**
+     * Check if every denomination of a mix has enough notes available
+     */
+    static boolean fits(long mix, long available) {
+        for (int d = 0; d < DENOMINATIONS.length; d++) {
+            if (count(mix, d) > count(available, d)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static int score(long mix, long scarce) {
+        return notes(mix & scarce) * SCARCE_WEIGHT + notes(mix);
+    }
+    
+    private static int shift(int index) {
+        return index * NOTE_BITS;
+    }
+    
+    /**
+     * Add to a mix as many notes from a pool as fit in what is left to pay, largest first
+     */
+    private static long greedy(int units, long mix, long pool) {
+        long left = units - value(mix) / UNIT;
+        for (int d = 0; d < DENOMINATIONS.length && left > 0; d++) {
+            int value = DENOMINATIONS[d] / UNIT;
+            long notes = Math.min(left / value, count(pool, d) - count(mix, d));
+            if (notes > 0) {
+                mix += pack(d, (int) notes);
+                left -= notes * value;
+            }
+        }
+        return mix;
+    }
+    
+    /**
+     * Find any mix of the notes left that pays an amount, largest notes first
+     * Each amount up to the one asked for is marked payable the first time a
+     * note completes it, counting how many notes of that denomination the
+     * path to it uses so no cassette is overdrawn.
+     */
+    private static long anyMix(int units, long available) {
+        int[] lastNote = new int[units + 1];
+        int[] used = new int[units + 1];
+        Arrays.fill(lastNote, -1);
+        for (int d = 0; d < DENOMINATIONS.length && lastNote[units] < 0; d++) {
+            int value = DENOMINATIONS[d] / UNIT;
+            int limit = count(available, d);
+            Arrays.fill(used, 0);
+            for (int u = value; u <= units; u++) {
+                boolean reachable = u == value || lastNote[u - value] >= 0;
+                if (lastNote[u] < 0 && reachable && used[u - value] < limit) {
+                    lastNote[u] = d;
+                    used[u] = used[u - value] + 1;
+                }
+            }
+        }
+        return lastNote[units] < 0 ? NO_PLAN : mixFor(units, lastNote);
+    }
+    
+    /**
+     * Build a change-making table for amounts up to a limit using only some denominations
+     * 
+     * @return For each amount in units, the denomination of the last note of a fewest-notes mix, or -1
+     */
+    private static int[] fewestNotes(int maxUnits, int allowed) {
+        int[] least = new int[maxUnits + 1];
+        int[] last = new int[maxUnits + 1];
+        for (int u = 1; u <= maxUnits; u++) {
+            least[u] = Integer.MAX_VALUE;
+            last[u] = -1;
+            for (int d = 0; d < DENOMINATIONS.length; d++) {
+                int value = DENOMINATIONS[d] / UNIT;
+                if ((allowed & (1 << d)) != 0 && value <= u && least[u - value] != Integer.MAX_VALUE
+                    && least[u - value] + 1 < least[u]) {
+                    least[u] = least[u - value] + 1;
+                    last[u] = d;
+                }
+            }
+        }
+        return last;
+    }
+    
+    /**
+     * Follow a change-making table back from an amount to its mix
+     */
+    private static long mixFor(int units, int[] last) {
+        if (units == 0 || last[units] < 0) {
+            return NO_PLAN;
+        }
+        long mix = 0L;
+        for (int u = units; u > 0; u -= DENOMINATIONS[last[u]] / UNIT) {
+            mix += pack(last[u], 1);
+        }
+        return mix;
+    }
+}
@@ -0,0 +1,166 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * JfrSummary class summarizing the ledger events of a Flight Recorder recording
+ * Reads a recording made with atm.jfc (see LedgerEvents) one event at a
+ * time and prints, for each ledger event type, how many operations were
+ * over the threshold, their p50, p99 and longest durations and their
+ * outcomes. It then lists the slowest operations, each with the time
+ * garbage collection pauses and lock waits on the same thread overlapped
+ * it, which tells a slow ledger from a stalled JVM.
+ * 
+ * Usage: java JfrSummary recording.jfr [slowest]
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class JfrSummary {
+    private static final String PREFIX = "atm.";
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss.SSS")
+            .withZone(ZoneId.systemDefault());
+    
+    /**
+     * A span of time in nanoseconds since the epoch
+     */
+    private record Span(long start, long end) {
+        static Span of(RecordedEvent event) {
+            Instant start = event.getStartTime();
+            Instant end = event.getEndTime();
+            return new Span(start.getEpochSecond() * 1_000_000_000L + start.getNano(),
+                            end.getEpochSecond() * 1_000_000_000L + end.getNano());
+        }
+        
+        long overlap(Span other) {
+            return Math.max(0L, Math.min(end, other.end) - Math.max(start, other.start));
+        }
+    }
+    
+    /**
+     * The durations and outcomes of one ledger event type
+     */
+    private static final class Summary {
+        final LatencyHistogram durations = new LatencyHistogram();
+        final Map<String, Long> outcomes = new TreeMap<>();
+    }
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java JfrSummary recording.jfr [slowest]");
+            return;
+        }
+        Path path = Paths.get(args[0]);
+        int slowest = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        
+        Map<String, Summary> summaries = new TreeMap<>();
+        PriorityQueue<RecordedEvent> slow = new PriorityQueue<>(Comparator.comparing(RecordedEvent::getDuration));
+        List<Span> pauses = new ArrayList<>();
+        Map<Long, List<Span>> waits = new HashMap<>();
+        int collections = 0;
+        long pauseNanos = 0L;
+        long waitNanos = 0L;
+        try (RecordingFile recording = new RecordingFile(path)) {
+            while (recording.hasMoreEvents()) {
+                RecordedEvent event = recording.readEvent();
+                String name = event.getEventType().getName();
+                if (name.startsWith(PREFIX)) {
+                    Summary summary = summaries.computeIfAbsent(name, key -> new Summary());
+                    summary.durations.record(event.getDuration().toNanos());
+                    String outcome = event.hasField("outcome") ? event.getString("outcome") : null;
+                    if (outcome != null) {
+                        summary.outcomes.merge(outcome, 1L, Long::sum);
+                    }
+                    slow.add(event);
+                    if (slow.size() > slowest) {
+                        slow.poll();
+                    }
+                } else if (name.equals("jdk.GarbageCollection")) {
+                    collections++;
+                } else if (name.equals("jdk.GCPhasePause")) {
+                    // The pauses, not the whole collection, which may run alongside the application
+                    pauses.add(Span.of(event));
+                    pauseNanos += event.getDuration().toNanos();
+                } else if (name.equals("jdk.ThreadPark") || name.equals("jdk.JavaMonitorEnter")) {
+                    RecordedThread thread = event.getThread();
+                    if (thread != null) {
+                        waits.computeIfAbsent(thread.getId(), key -> new ArrayList<>()).add(Span.of(event));
+                        waitNanos += event.getDuration().toNanos();
+                    }
+                }
+            }
+        }
+        
+        long total = 0L;
+        for (Summary summary : summaries.values()) {
+            total += summary.durations.getCount();
+        }
+        System.out.printf("%s: %d slow ledger operations, %d garbage collections (%.1f ms paused), "
+                          + "%d lock waits (%.1f ms)%n%n", path, total, collections, pauseNanos / 1e6,
+                          waits.values().stream().mapToInt(List::size).sum(), waitNanos / 1e6);
+        if (total == 0) {
+            System.out.println("No ledger events; was the recording made with atm.jfc?");
+            return;
+        }
+        
+        System.out.printf("%-20s %8s %10s %10s %10s  %s%n", "Event", "Count", "p50 ms", "p99 ms", "max ms",
+                          "Outcomes");
+        for (Map.Entry<String, Summary> entry : summaries.entrySet()) {
+            LatencyHistogram durations = entry.getValue().durations;
+            StringBuilder outcomes = new StringBuilder();
+            for (Map.Entry<String, Long> outcome : entry.getValue().outcomes.entrySet()) {
+                outcomes.append(outcomes.length() > 0 ? ", " : "").append(outcome.getKey()).append(' ')
+                        .append(outcome.getValue());
+            }
+            System.out.printf("%-20s %8d %10.2f %10.2f %10.2f  %s%n", entry.getKey(), durations.getCount(),
+                              durations.getValueAtPercentile(50) / 1e6, durations.getValueAtPercentile(99) / 1e6,
+                              durations.getMax() / 1e6, outcomes);
+        }
+        
+        List<RecordedEvent> slowestFirst = new ArrayList<>(slow);
+        slowestFirst.sort(Comparator.comparing((RecordedEvent event) -> event.getDuration()).reversed());
+        System.out.printf("%nSlowest operations%n%-12s %-20s %9s %-12s %12s %-20s %8s %10s%n", "Time", "Event",
+                          "ms", "Account", "Amount", "Outcome", "GC ms", "Lock ms");
+        for (RecordedEvent event : slowestFirst) {
+            Span span = Span.of(event);
+            long paused = 0L;
+            for (Span pause : pauses) {
+                paused += span.overlap(pause);
+            }
+            long waited = 0L;
+            RecordedThread thread = event.getThread();
+            if (thread != null) {
+                for (Span wait : waits.getOrDefault(thread.getId(), List.of())) {
+                    waited += span.overlap(wait);
+                }
+            }
+            System.out.printf("%-12s %-20s %9.2f %-12s %12s %-20s %8.2f %10.2f%n", TIME.format(event.getStartTime()),
+                              event.getEventType().getName(), event.getDuration().toNanos() / 1e6, target(event),
+                              event.hasField("amount") ? String.format("%.2f", event.getDouble("amount")) : "",
+                              event.hasField("outcome") ? event.getString("outcome") : "", paused / 1e6,
+                              waited / 1e6);
+        }
+    }
+    
+    /**
+     * Get the masked account number, or the target of an official's action
+     */
+    private static String target(RecordedEvent event) {
+        String target = event.hasField("account") ? event.getString("account")
+                        : event.hasField("target") ? event.getString("target") : null;
+        return target != null ? target : "";
+    }
+}
@@ -0,0 +1,931 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Journal class implementing an append-only write-ahead log for the bank
+ * Every ledger mutation is encoded into an in-memory buffer and given a
+ * log sequence number (LSN); the caller then waits until its LSN is on
+ * disk before reporting success. How long that wait is depends on the
+ * durability mode:
+ * 
+ * SYNC   - the calling thread writes and forces the log itself
+ * GROUP  - a flusher thread writes everything pending with one force,
+ *          so concurrent writers share a single fsync
+ * ASYNC  - the caller does not wait; the flusher forces the log every
+ *          max-latency interval, so a crash can lose that window
+ * 
+ * Each record is [int length][long lsn][byte kind][fields...][int crc32].
+ * A torn or corrupt record at the end of the file marks the end of the
+ * log and is cut off when the journal is reopened.
+ * 
+ * The file does not grow forever: roll moves everything written so far
+ * to the rolled file (see rolledPath) and starts an empty one, and once
+ * a snapshot covering the rolled records is durable, deleteRolled removes
+ * them. Recovery then reads only what was written after the snapshot.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class Journal implements Closeable {
+    /**
+     * How long a mutation waits for its record to reach the disk
+     */
+    public enum Durability {
+        SYNC, GROUP, ASYNC
+    }
+    
+    // Record kinds
+    static final byte ACCOUNT_CREATED = 1;
+    static final byte ACCOUNT_REMOVED = 2;
+    static final byte POST = 3;
+    static final byte NOTE = 4;
+    static final byte TRANSFER = 5;
+    static final byte PIN_SET = 6;
+    static final byte ACTIVE_SET = 7;
+    static final byte OFFICIAL_ADDED = 8;
+    static final byte OFFICIAL_REMOVED = 9;
+    static final byte CHECKPOINT = 10;
+    // Two-phase transfers on a BankShard: id is the transfer ID
+    static final byte PREPARED = 11;
+    static final byte RESOLVED = 12;
+    // A ShardedBank's decision log: id is the transfer ID, amount and balance the two shards
+    static final byte DECIDED = 13;
+    static final byte FORGOTTEN = 14;
+    
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + 1;
+    private static final int INITIAL_BUFFER = 64 * 1024;
+    private static final int GROUP_BATCH_BYTES = 256 * 1024;
+    private static final long DEFAULT_ASYNC_LATENCY_MICROS = 10_000L;
+    
+    /**
+     * One decoded journal record
+     * Which fields are used depends on the kind; unused fields are null or 0.
+     */
+    public static final class Entry {
+        public byte kind;
+        public long lsn;
+        public String key;
+        public String key2;
+        public String text;
+        public String text2;
+        public String text3;
+        public long amount;
+        public long balance;
+        public long timestamp;
+        public long id;
+        public long id2;
+        public boolean flag;
+        
+        /**
+         * Copy this record, for consumers that keep it past the callback
+         * 
+         * @return A new Entry with the same fields
+         */
+        public Entry copy() {
+            Entry copy = new Entry();
+            copy.kind = kind;
+            copy.lsn = lsn;
+            copy.key = key;
+            copy.key2 = key2;
+            copy.text = text;
+            copy.text2 = text2;
+            copy.text3 = text3;
+            copy.amount = amount;
+            copy.balance = balance;
+            copy.timestamp = timestamp;
+            copy.id = id;
+            copy.id2 = id2;
+            copy.flag = flag;
+            return copy;
+        }
+    }
+    
+    /**
+     * A point in the journal: every record up to lsn ends before offset
+     */
+    public static final class Position {
+        public final long lsn;
+        public final long offset;
+        
+        Position(long lsn, long offset) {
+            this.lsn = lsn;
+            this.offset = offset;
+        }
+    }
+    
+    private final Path path;
+    // Replaced by roll; only used while holding ioLock
+    private FileChannel channel;
+    private final Durability durability;
+    private final long maxLatencyNanos;
+    
+    // Guards pending, spare, lastLsn and durableLsn
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final Condition batchFull = lock.newCondition();
+    private final Condition durable = lock.newCondition();
+    // Serializes writes to the channel
+    private final ReentrantLock ioLock = new ReentrantLock();
+    
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER);
+    private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER);
+    private long lastLsn;
+    private long durableLsn;
+    private IOException failure;
+    private volatile boolean closed;
+    // Set if the flusher was interrupted and quit; writers then force the log themselves
+    private volatile boolean flusherStopped;
+    private final Thread flusher;
+    
+    /**
+     * Constructor to open a journal for appending
+     * 
+     * @param path The journal file
+     * @param channel The channel positioned at the end of the valid log
+     * @param durability The durability mode
+     * @param maxLatencyMicros The longest a record may wait before being forced
+     * @param lastLsn The LSN of the last record already in the log
+     */
+    private Journal(Path path, FileChannel channel, Durability durability, long maxLatencyMicros, long lastLsn) {
+        this.path = path;
+        this.channel = channel;
+        this.durability = durability;
+        this.maxLatencyNanos = TimeUnit.MICROSECONDS.toNanos(
+                durability == Durability.ASYNC && maxLatencyMicros <= 0 ? DEFAULT_ASYNC_LATENCY_MICROS : maxLatencyMicros);
+        this.lastLsn = lastLsn;
+        this.durableLsn = lastLsn;
+        if (durability == Durability.SYNC) {
+            this.flusher = null;
+        } else {
+            this.flusher = new Thread(this::runFlusher, "journal-flusher");
+            this.flusher.setDaemon(true);
+            this.flusher.start();
+        }
+    }
+    
+    /**
+     * Open a journal file for appending, cutting off any torn tail
+     * The whole file is read to find its end; after a recovery that has
+     * just read it, use the overload taking the position it reached.
+     * 
+     * @param path The journal file
+     * @param durability The durability mode
+     * @param maxLatencyMicros The longest a record may wait before being forced
+     * @return The open journal
+     * @throws IOException if the file cannot be opened
+     */
+    public static Journal open(Path path, Durability durability, long maxLatencyMicros) throws IOException {
+        long[] lastLsn = new long[1];
+        read(rolledPath(path), entry -> lastLsn[0] = entry.lsn);
+        long end = read(path, entry -> lastLsn[0] = entry.lsn);
+        return open(path, durability, maxLatencyMicros, new Position(lastLsn[0], end));
+    }
+    
+    /**
+     * Open a journal file for appending at a known end
+     * 
+     * @param path The journal file
+     * @param durability The durability mode
+     * @param maxLatencyMicros The longest a record may wait before being forced
+     * @param end The LSN of the last record and the offset just past the last valid record,
+     *            as JournalReplay.replayAfter returns them; anything beyond is cut off
+     * @return The open journal
+     * @throws IOException if the file cannot be opened
+     */
+    public static Journal open(Path path, Durability durability, long maxLatencyMicros, Position end)
+            throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                                               StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.truncate(end.offset);
+        channel.position(end.offset);
+        return new Journal(path, channel, durability, maxLatencyMicros, end.lsn);
+    }
+    
+    /**
+     * Get the file roll moves a journal's older records to
+     * 
+     * @param path The journal file
+     * @return The rolled file next to it
+     */
+    public static Path rolledPath(Path path) {
+        return path.resolveSibling(path.getFileName() + ".rolled");
+    }
+    
+    /**
+     * Read every valid record of a journal file in order
+     * 
+     * @param path The journal file
+     * @param consumer Receives each record; the Entry object is reused
+     * @return The file position just past the last valid record
+     * @throws IOException if the file cannot be read
+     */
+    public static long read(Path path, Consumer<Entry> consumer) throws IOException {
+        return read(path, 0L, consumer);
+    }
+    
+    /**
+     * Read every valid record of a journal file from a given offset
+     * 
+     * @param path The journal file
+     * @param from The file offset of the first record to read
+     * @param consumer Receives each record; the Entry object is reused
+     * @return The file position just past the last valid record
+     * @throws IOException if the file cannot be read
+     */
+    public static long read(Path path, long from, Consumer<Entry> consumer) throws IOException {
+        if (!Files.exists(path)) {
+            return 0L;
+        }
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER);
+            CRC32 check = new CRC32();
+            Entry entry = new Entry();
+            long position = Math.min(from, in.size());
+            in.position(position);
+            buffer.limit(0);
+            while (true) {
+                if (!fill(in, buffer, Integer.BYTES)) {
+                    return position;
+                }
+                int length = buffer.getInt(buffer.position());
+                if (length < HEADER_BYTES + Integer.BYTES || length > (64 << 20)) {
+                    return position;
+                }
+                if (length > buffer.capacity()) {
+                    ByteBuffer larger = ByteBuffer.allocate(length);
+                    larger.put(buffer).flip();
+                    buffer = larger;
+                }
+                if (!fill(in, buffer, length)) {
+                    return position;
+                }
+                int start = buffer.position();
+                check.reset();
+                check.update(buffer.array(), start + Integer.BYTES, length - 2 * Integer.BYTES);
+                if ((int) check.getValue() != buffer.getInt(start + length - Integer.BYTES)) {
+                    return position;
+                }
+                buffer.position(start + Integer.BYTES);
+                decode(buffer, entry);
+                buffer.position(start + length);
+                position += length;
+                consumer.accept(entry);
+            }
+        }
+    }
+    
+    /**
+     * Make sure the buffer holds at least the given number of unread bytes
+     * 
+     * @return false if the file ends first
+     */
+    private static boolean fill(FileChannel in, ByteBuffer buffer, int needed) throws IOException {
+        if (buffer.remaining() >= needed) {
+            return true;
+        }
+        buffer.compact();
+        while (buffer.position() < needed) {
+            if (in.read(buffer) < 0) {
+                buffer.flip();
+                return false;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+    
+    private static void decode(ByteBuffer buffer, Entry entry) {
+        entry.lsn = buffer.getLong();
+        entry.kind = buffer.get();
+        entry.key = null;
+        entry.key2 = null;
+        entry.text = null;
+        entry.text2 = null;
+        entry.text3 = null;
+        entry.amount = 0L;
+        entry.balance = 0L;
+        entry.timestamp = 0L;
+        entry.id = 0L;
+        entry.id2 = 0L;
+        entry.flag = false;
+        switch (entry.kind) {
+            case ACCOUNT_CREATED:
+                entry.key = getString(buffer);
+                entry.text = getString(buffer);
+                entry.text2 = getString(buffer);
+                entry.amount = buffer.getLong();
+                entry.timestamp = buffer.getLong();
+                entry.id = buffer.getLong();
+                break;
+            case ACCOUNT_REMOVED:
+            case OFFICIAL_REMOVED:
+                entry.key = getString(buffer);
+                break;
+            case POST:
+                entry.key = getString(buffer);
+                entry.text = getString(buffer);
+                entry.amount = buffer.getLong();
+                entry.timestamp = buffer.getLong();
+                entry.id = buffer.getLong();
+                break;
+            case NOTE:
+                entry.key = getString(buffer);
+                entry.text = getString(buffer);
+                entry.amount = buffer.getLong();
+                entry.balance = buffer.getLong();
+                entry.timestamp = buffer.getLong();
+                entry.id = buffer.getLong();
+                break;
+            case TRANSFER:
+                entry.key = getString(buffer);
+                entry.key2 = getString(buffer);
+                entry.amount = buffer.getLong();
+                entry.timestamp = buffer.getLong();
+                entry.id = buffer.getLong();
+                entry.id2 = buffer.getLong();
+                break;
+            case PIN_SET:
+                entry.key = getString(buffer);
+                entry.text = getString(buffer);
+                entry.timestamp = buffer.getLong();
+                entry.id = buffer.getLong();
+                break;
+            case ACTIVE_SET:
+                entry.key = getString(buffer);
+                entry.flag = buffer.get() != 0;
+                break;
+            case OFFICIAL_ADDED:
+                entry.key = getString(buffer);
+                entry.text = getString(buffer);
+                entry.text2 = getString(buffer);
+                entry.text3 = getString(buffer);
+                break;
+            case CHECKPOINT:
+                break;
+            case PREPARED:
+                entry.key = getString(buffer);
+                entry.amount = buffer.getLong();
+                entry.timestamp = buffer.getLong();
+                entry.id = buffer.getLong();
+                break;
+            case RESOLVED:
+                entry.key = getString(buffer);
+                entry.text = getString(buffer);
+                entry.amount = buffer.getLong();
+                entry.timestamp = buffer.getLong();
+                entry.id = buffer.getLong();
+                entry.id2 = buffer.getLong();
+                entry.flag = buffer.get() != 0;
+                break;
+            case DECIDED:
+                entry.id = buffer.getLong();
+                entry.flag = buffer.get() != 0;
+                entry.amount = buffer.getInt();
+                entry.balance = buffer.getInt();
+                break;
+            case FORGOTTEN:
+                entry.id = buffer.getLong();
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal record kind: " + entry.kind);
+        }
+    }
+    
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+    
+    // Appending records; each returns the LSN to pass to awaitDurable
+    
+    long logAccountCreated(String accountNumber, String pin, String holder, long initial,
+                           long timestamp, long id) {
+        byte[] key = utf8(accountNumber);
+        byte[] pinBytes = utf8(pin);
+        byte[] holderBytes = utf8(holder);
+        lock.lock();
+        try {
+            int start = begin(ACCOUNT_CREATED, key.length + pinBytes.length + holderBytes.length + 6 + 24);
+            putString(key);
+            putString(pinBytes);
+            putString(holderBytes);
+            pending.putLong(initial).putLong(timestamp).putLong(id);
+            return end(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    long logAccountRemoved(String accountNumber) {
+        return logKey(ACCOUNT_REMOVED, accountNumber);
+    }
+    
+    long logOfficialRemoved(String officialId) {
+        return logKey(OFFICIAL_REMOVED, officialId);
+    }
+    
+    long logPost(String accountNumber, String type, long amount, long timestamp, long id) {
+        byte[] key = utf8(accountNumber);
+        byte[] typeBytes = utf8(type);
+        lock.lock();
+        try {
+            int start = begin(POST, key.length + typeBytes.length + 4 + 24);
+            putString(key);
+            putString(typeBytes);
+            pending.putLong(amount).putLong(timestamp).putLong(id);
+            return end(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    long logNote(String accountNumber, String type, long amount, long balance, long timestamp, long id) {
+        byte[] key = utf8(accountNumber);
+        byte[] typeBytes = utf8(type);
+        lock.lock();
+        try {
+            int start = begin(NOTE, key.length + typeBytes.length + 4 + 32);
+            putString(key);
+            putString(typeBytes);
+            pending.putLong(amount).putLong(balance).putLong(timestamp).putLong(id);
+            return end(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    long logTransfer(String from, String to, long amount, long timestamp, long outId, long inId) {
+        byte[] fromBytes = utf8(from);
+        byte[] toBytes = utf8(to);
+        lock.lock();
+        try {
+            int start = begin(TRANSFER, fromBytes.length + toBytes.length + 4 + 32);
+            putString(fromBytes);
+            putString(toBytes);
+            pending.putLong(amount).putLong(timestamp).putLong(outId).putLong(inId);
+            return end(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    long logPinSet(String accountNumber, String pin, long timestamp, long id) {
+        byte[] key = utf8(accountNumber);
+        byte[] pinBytes = utf8(pin);
+        lock.lock();
+        try {
+            int start = begin(PIN_SET, key.length + pinBytes.length + 4 + 16);
+            putString(key);
+            putString(pinBytes);
+            pending.putLong(timestamp).putLong(id);
+            return end(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    long logActiveSet(String accountNumber, boolean active) {
+        byte[] key = utf8(accountNumber);
+        lock.lock();
+        try {
+            int start = begin(ACTIVE_SET, key.length + 2 + 1);
+            putString(key);
+            pending.put(active ? (byte) 1 : (byte) 0);
+            return end(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    long logOfficialAdded(String officialId, String password, String role, String name) {
+        byte[] key = utf8(officialId);
+        byte[] passwordBytes = utf8(password);
+        byte[] roleBytes = utf8(role);
+        byte[] nameBytes = utf8(name);
+        lock.lock();
+        try {
+            int start = begin(OFFICIAL_ADDED,
+                              key.length + passwordBytes.length + roleBytes.length + nameBytes.length + 8);
+            putString(key);
+            putString(passwordBytes);
+            putString(roleBytes);
+            putString(nameBytes);
+            return end(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    long logPrepared(String accountNumber, long amount, long timestamp, long tx) {
+        byte[] key = utf8(accountNumber);
+        lock.lock();
+        try {
+            int start = begin(PREPARED, key.length + 2 + 24);
+            putString(key);
+            pending.putLong(amount).putLong(timestamp).putLong(tx);
+            return end(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    long logResolved(String accountNumber, String type, long amount, long timestamp, long id, long tx,
+                     boolean committed) {
+        byte[] key = utf8(accountNumber);
+        byte[] typeBytes = utf8(type);
+        lock.lock();
+        try {
+            int start = begin(RESOLVED, key.length + typeBytes.length + 4 + 32 + 1);
+            putString(key);
+            putString(typeBytes);
+            pending.putLong(amount).putLong(timestamp).putLong(id).putLong(tx);
+            pending.put(committed ? (byte) 1 : (byte) 0);
+            return end(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    long logDecided(long tx, boolean commit, int from, int to) {
+        lock.lock();
+        try {
+            int start = begin(DECIDED, 8 + 1 + 8);
+            pending.putLong(tx).put(commit ? (byte) 1 : (byte) 0).putInt(from).putInt(to);
+            return end(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    long logForgotten(long tx) {
+        lock.lock();
+        try {
+            int start = begin(FORGOTTEN, 8);
+            pending.putLong(tx);
+            return end(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private long logKey(byte kind, String value) {
+        byte[] key = utf8(value);
+        lock.lock();
+        try {
+            int start = begin(kind, key.length + 2);
+            putString(key);
+            return end(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private static byte[] utf8(String value) {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Value too long for the journal");
+        }
+        return bytes;
+    }
+    
+    /**
+     * Start a record in the pending buffer; the caller holds the lock
+     * 
+     * @return The buffer position where the record starts
+     */
+    private int begin(byte kind, int bodyBytes) {
+        if (closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+        int needed = HEADER_BYTES + bodyBytes + Integer.BYTES;
+        if (pending.remaining() < needed) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + needed));
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+        int start = pending.position();
+        pending.putInt(0).putLong(++lastLsn).put(kind);
+        return start;
+    }
+    
+    private void putString(byte[] bytes) {
+        pending.putShort((short) bytes.length).put(bytes);
+    }
+    
+    /**
+     * Finish a record: fill in its length and checksum, wake the flusher
+     * 
+     * @return The LSN of the record
+     */
+    private long end(int start) {
+        int length = pending.position() - start + Integer.BYTES;
+        pending.putInt(start, length);
+        crc.reset();
+        crc.update(pending.array(), start + Integer.BYTES, length - 2 * Integer.BYTES);
+        pending.putInt((int) crc.getValue());
+        if (durability == Durability.GROUP) {
+            if (start == 0) {
+                workAvailable.signal();
+            }
+            if (pending.position() >= GROUP_BATCH_BYTES) {
+                batchFull.signal();
+            }
+        }
+        return lastLsn;
+    }
+    
+    /**
+     * Wait until the record with the given LSN is durable
+     * In ASYNC mode this returns immediately.
+     * 
+     * @param lsn The LSN returned when the record was logged
+     * @throws UncheckedIOException if the journal could not be written
+     */
+    public void awaitDurable(long lsn) {
+        if (durability == Durability.ASYNC) {
+            return;
+        }
+        if (durability == Durability.GROUP && !flusherStopped) {
+            lock.lock();
+            try {
+                while (durableLsn < lsn && !flusherStopped) {
+                    if (failure != null) {
+                        throw new UncheckedIOException(failure);
+                    }
+                    durable.awaitUninterruptibly();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        try {
+            while (getDurableLsn() < lsn) {
+                flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    /**
+     * Get the LSN of the last record known to be on disk
+     * 
+     * @return The durable LSN
+     */
+    public long getDurableLsn() {
+        lock.lock();
+        try {
+            return durableLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Get the LSN of the last record appended
+     * 
+     * @return The last LSN
+     */
+    public long getLastLsn() {
+        lock.lock();
+        try {
+            return lastLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Flush the journal and report how far the file now reaches
+     * A snapshot taken after this call contains every record up to the
+     * returned LSN, so recovery only has to read from the returned offset.
+     * 
+     * @return The durable LSN and the file offset just past it
+     * @throws IOException if the flush fails
+     */
+    public Position checkpoint() throws IOException {
+        ioLock.lock();
+        try {
+            flush();
+            return new Position(getDurableLsn(), channel.position());
+        } finally {
+            ioLock.unlock();
+        }
+    }
+    
+    /**
+     * Start a new journal file, moving everything written so far aside
+     * The records written before the returned position are in the rolled
+     * file, which recovery still reads until deleteRolled removes it. If an
+     * earlier roll was never followed by deleteRolled, its file is kept and
+     * this is a plain checkpoint.
+     * 
+     * @return The durable LSN and the offset just past it in the new file
+     * @throws IOException if the flush or the rename fails
+     */
+    public Position roll() throws IOException {
+        ioLock.lock();
+        try {
+            flush();
+            Path rolled = rolledPath(path);
+            if (!Files.exists(rolled)) {
+                channel.close();
+                try {
+                    Files.move(path, rolled, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    // On failure keep appending to the old file
+                    channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                                               StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    channel.position(channel.size());
+                }
+                // The new file starts with a record, so its LSNs carry on even if read alone
+                lock.lock();
+                try {
+                    end(begin(CHECKPOINT, 0));
+                } finally {
+                    lock.unlock();
+                }
+                flush();
+            }
+            return new Position(getDurableLsn(), channel.position());
+        } finally {
+            ioLock.unlock();
+        }
+    }
+    
+    /**
+     * Delete the records moved aside by roll
+     * Call this only once a snapshot taken after the roll is durable.
+     * 
+     * @throws IOException if the file cannot be deleted
+     */
+    public void deleteRolled() throws IOException {
+        Files.deleteIfExists(rolledPath(path));
+    }
+    
+    /**
+     * Get the durability mode
+     * 
+     * @return The durability mode
+     */
+    public Durability getDurability() {
+        return durability;
+    }
+    
+    /**
+     * Write everything pending to the file and force it to disk
+     * 
+     * @throws IOException if the write fails
+     */
+    public void flush() throws IOException {
+        ioLock.lock();
+        try {
+            ByteBuffer batch;
+            long upTo;
+            lock.lock();
+            try {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (pending.position() == 0) {
+                    return;
+                }
+                batch = pending;
+                pending = spare != null ? spare : ByteBuffer.allocate(INITIAL_BUFFER);
+                spare = null;
+                upTo = lastLsn;
+            } finally {
+                lock.unlock();
+            }
+            
+            batch.flip();
+            try {
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                lock.lock();
+                try {
+                    failure = e;
+                    durable.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                throw e;
+            }
+            batch.clear();
+            
+            lock.lock();
+            try {
+                spare = batch;
+                durableLsn = upTo;
+                durable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            ioLock.unlock();
+        }
+    }
+    
+    /**
+     * Flusher thread body for GROUP and ASYNC modes
+     * In GROUP mode it waits for work, then gives other writers up to the
+     * max latency (or until the batch is large) to join before forcing;
+     * writers that arrive during a force are picked up by the next one.
+     * In ASYNC mode it flushes once per max-latency interval. An interrupt
+     * stops the thread after a final flush instead of leaving it spinning;
+     * from then on GROUP writers force the log themselves, as in SYNC mode,
+     * and ASYNC records wait for the next GROUP or SYNC flush or close.
+     */
+    private void runFlusher() {
+        boolean interrupted = false;
+        while (true) {
+            lock.lock();
+            try {
+                if (durability == Durability.GROUP) {
+                    while (pending.position() == 0 && !closed) {
+                        workAvailable.await();
+                    }
+                    if (maxLatencyNanos > 0 && !closed && pending.position() < GROUP_BATCH_BYTES) {
+                        batchFull.awaitNanos(maxLatencyNanos);
+                    }
+                } else if (!closed) {
+                    workAvailable.awaitNanos(maxLatencyNanos);
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } finally {
+                lock.unlock();
+            }
+            // Clear an interrupt that came after the wait, or the force below would close the channel
+            if (Thread.interrupted() || interrupted) {
+                // Quit after one last flush; GROUP writers waiting for it then force the log themselves
+                interrupted = true;
+                lock.lock();
+                try {
+                    flusherStopped = true;
+                    durable.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            try {
+                flush();
+            } catch (IOException e) {
+                return;
+            }
+            if (closed || interrupted) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Flush and close the journal
+     * 
+     * @throws IOException if the final flush fails
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        ioLock.lock();
+        try {
+            flush();
+        } finally {
+            channel.close();
+            ioLock.unlock();
+        }
+    }
+}
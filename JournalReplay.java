@@ -0,0 +1,219 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * JournalReplay class applying a journal to a bank on several threads
+ * Accounts are split into shards by account number. The reader thread
+ * decodes records and hands each one to the shard of the account it
+ * touches (a transfer goes to both shards, one side each), so every
+ * account still sees its own records in log order while different
+ * accounts are rebuilt in parallel. Official records are applied by the
+ * reader thread itself.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public final class JournalReplay {
+    private static final int BATCH_SIZE = 256;
+    private static final int QUEUE_BATCHES = 64;
+    
+    /**
+     * A run of records for one shard
+     */
+    private static final class Batch {
+        final Journal.Entry[] entries = new Journal.Entry[BATCH_SIZE];
+        final boolean[] recipient = new boolean[BATCH_SIZE];
+        int size;
+    }
+    
+    private static final Batch END = new Batch();
+    
+    private JournalReplay() {
+    }
+    
+    /**
+     * Replay a journal file into a bank from a given offset
+     * 
+     * @param bank The bank to apply the records to
+     * @param path The journal file
+     * @param from The file offset of the first record to replay
+     * @param threads The number of shards; 1 replays on the calling thread
+     * @return The number of records replayed
+     * @throws IOException if the journal cannot be read
+     */
+    public static long replay(Bank bank, Path path, long from, int threads) throws IOException {
+        long[] counts = new long[2];
+        replay(bank, path, from, 0L, threads, counts);
+        return counts[0];
+    }
+    
+    /**
+     * Replay everything a journal holds beyond a snapshot
+     * If the journal was rolled and the rolled file has not been deleted
+     * yet, the snapshot may be older or newer than the roll, so both files
+     * are read in full and the records the snapshot covers are skipped by
+     * LSN. Otherwise only the journal file is read, from the snapshot's
+     * offset.
+     * 
+     * @param bank The bank to apply the records to, already holding the snapshot
+     * @param path The journal file
+     * @param from The position the snapshot covers, or LSN 0 and offset 0 for none
+     * @param threads The number of shards; 1 replays on the calling thread
+     * @param replayed Receives the number of records replayed in its first element
+     * @return The LSN of the last record and the offset just past the last valid record of the
+     *         journal file, for Journal.open
+     * @throws IOException if the journal cannot be read
+     */
+    public static Journal.Position replayAfter(Bank bank, Path path, Journal.Position from, int threads,
+                                               long[] replayed) throws IOException {
+        long[] counts = {0L, from.lsn};
+        long end;
+        Path rolled = Journal.rolledPath(path);
+        if (Files.exists(rolled)) {
+            replay(bank, rolled, 0L, from.lsn, threads, counts);
+            end = replay(bank, path, 0L, from.lsn, threads, counts);
+        } else {
+            end = replay(bank, path, from.offset, from.lsn, threads, counts);
+        }
+        replayed[0] = counts[0];
+        return new Journal.Position(counts[1], end);
+    }
+    
+    /**
+     * Replay one journal file, skipping records up to an LSN
+     * 
+     * @param counts Records replayed and the highest LSN read, both updated
+     * @return The file position just past the last valid record
+     */
+    private static long replay(Bank bank, Path path, long from, long afterLsn, int threads, long[] counts)
+            throws IOException {
+        if (threads <= 1) {
+            return Journal.read(path, from, entry -> {
+                counts[1] = Math.max(counts[1], entry.lsn);
+                if (entry.lsn > afterLsn && entry.kind != Journal.CHECKPOINT) {
+                    bank.apply(entry);
+                    counts[0]++;
+                }
+            });
+        }
+        
+        List<BlockingQueue<Batch>> queues = new ArrayList<>(threads);
+        Batch[] open = new Batch[threads];
+        Thread[] workers = new Thread[threads];
+        RuntimeException[] failure = new RuntimeException[1];
+        for (int s = 0; s < threads; s++) {
+            BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+            queues.add(queue);
+            open[s] = new Batch();
+            workers[s] = new Thread(() -> {
+                try {
+                    for (Batch batch = queue.take(); batch != END; batch = queue.take()) {
+                        for (int i = 0; i < batch.size; i++) {
+                            bank.applyToAccount(batch.entries[i], batch.recipient[i]);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    synchronized (failure) {
+                        failure[0] = e;
+                    }
+                    // Keep draining so the reader never blocks on a full queue
+                    queue.clear();
+                    while (true) {
+                        try {
+                            if (queue.take() == END) {
+                                break;
+                            }
+                        } catch (InterruptedException interrupted) {
+                            break;
+                        }
+                    }
+                }
+            }, "journal-replay-" + s);
+            workers[s].start();
+        }
+        
+        long end;
+        try {
+            end = Journal.read(path, from, entry -> {
+                counts[1] = Math.max(counts[1], entry.lsn);
+                if (entry.lsn <= afterLsn || entry.kind == Journal.CHECKPOINT) {
+                    return;
+                }
+                counts[0]++;
+                switch (entry.kind) {
+                    case Journal.OFFICIAL_ADDED:
+                    case Journal.OFFICIAL_REMOVED:
+                        bank.apply(entry);
+                        break;
+                    case Journal.TRANSFER:
+                        Journal.Entry copy = entry.copy();
+                        dispatch(queues, open, shard(copy.key, threads), copy, false);
+                        dispatch(queues, open, shard(copy.key2, threads), copy, true);
+                        break;
+                    default:
+                        Journal.Entry record = entry.copy();
+                        dispatch(queues, open, shard(record.key, threads), record, false);
+                }
+            });
+        } finally {
+            for (int s = 0; s < threads; s++) {
+                put(queues.get(s), open[s]);
+                put(queues.get(s), END);
+            }
+            for (Thread worker : workers) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while replaying journal", e);
+                }
+            }
+        }
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+        return end;
+    }
+    
+    /**
+     * Get the shard an account belongs to
+     */
+    private static int shard(String accountNumber, int threads) {
+        return (accountNumber.hashCode() & 0x7fffffff) % threads;
+    }
+    
+    /**
+     * Add a record to a shard's open batch, handing the batch over when full
+     */
+    private static void dispatch(List<BlockingQueue<Batch>> queues, Batch[] open, int shard,
+                                 Journal.Entry entry, boolean recipient) {
+        Batch batch = open[shard];
+        batch.entries[batch.size] = entry;
+        batch.recipient[batch.size] = recipient;
+        if (++batch.size == BATCH_SIZE) {
+            put(queues.get(shard), batch);
+            open[shard] = new Batch();
+        }
+    }
+    
+    /**
+     * Hand a batch to a shard, waiting while its queue is full
+     */
+    private static void put(BlockingQueue<Batch> queue, Batch batch) {
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while replaying journal", e);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * LatencyHistogram class counting latencies in logarithmic buckets
+ * Each power of two is split into 32 equal buckets, so a recorded value is
+ * known to within about 3% however large it is, and the whole histogram is
+ * one fixed array of counts: recording a value is an index calculation and
+ * an increment, with no allocation, and histograms kept by several threads
+ * are added together bucket by bucket. Values below 64 are kept exactly.
+ * 
+ * A histogram is not thread safe; give each thread its own and add them
+ * together when the threads are done.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Enough buckets for Long.MAX_VALUE
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private long max;
+    
+    /**
+     * Record one value
+     * 
+     * @param value The value, usually in nanoseconds; negative values are recorded as 0
+     */
+    public void record(long value) {
+        value = Math.max(value, 0L);
+        counts[indexOf(value)]++;
+        count++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+    
+    /**
+     * Add the values recorded by another histogram to this one
+     * 
+     * @param other The other histogram
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+    
+    /**
+     * Add bucket counts kept elsewhere, as Metrics does for its stripes
+     * 
+     * @param buckets An array holding counts laid out as indexOf numbers them
+     * @param from The position of bucket 0 in the array
+     * @param sum The sum of the values counted
+     * @param max The largest value counted
+     */
+    void add(long[] buckets, int from, long sum, long max) {
+        for (int i = 0; i < Math.min(BUCKETS, buckets.length - from); i++) {
+            counts[i] += buckets[from + i];
+            count += buckets[from + i];
+        }
+        this.sum += sum;
+        this.max = Math.max(this.max, max);
+    }
+    
+    /**
+     * Get the number of values recorded
+     * 
+     * @return The number of values
+     */
+    public long getCount() {
+        return count;
+    }
+    
+    /**
+     * Get the largest value recorded
+     * 
+     * @return The largest value, exactly, or 0 if none were recorded
+     */
+    public long getMax() {
+        return max;
+    }
+    
+    /**
+     * Get the mean of the values recorded
+     * 
+     * @return The mean, or 0 if none were recorded
+     */
+    public double getMean() {
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+    
+    /**
+     * Get the value below which a given percentage of the recorded values fall
+     * The value returned is the top of the bucket holding that value, so it
+     * may be up to about 3% above the value actually recorded.
+     * 
+     * @param percentile The percentage, from 0 to 100
+     * @return The value at the percentile, or 0 if none were recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, Math.min(count, (long) Math.ceil(percentile / 100.0 * count)));
+        long seen = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), max);
+            }
+        }
+        return max;
+    }
+    
+    /**
+     * Get the bucket of a value
+     * Below 64 every value has its own bucket; above, the bucket is the
+     * value's top SUB_BUCKET_BITS + 1 bits together with its magnitude.
+     * 
+     * @param value The value, not negative
+     * @return The bucket number
+     */
+    static int indexOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+    
+    /**
+     * Get the largest value that falls in a bucket
+     */
+    private static long highestValueIn(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (index - shift * SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1L;
+    }
+}
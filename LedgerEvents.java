@@ -0,0 +1,232 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timestamp;
+
+/**
+ * LedgerEvents class defining the Flight Recorder events of the ledger
+ * Logins, deposits, withdrawals, transfers, statements and officials'
+ * actions each emit an event, so a recording shows them on the same
+ * timeline as garbage collections and lock contention. Every event type
+ * has a threshold and only operations that take longer are recorded; the
+ * defaults below match atm.jfc, which is the profile to record with:
+ * 
+ *     java -XX:StartFlightRecording:settings=default,settings=atm.jfc,filename=atm.jfr ATM
+ * 
+ * Account numbers are masked to their last four digits. An event costs
+ * next to nothing while its type is not being recorded, and only an
+ * operation over the threshold pays for masking and filling in the fields.
+ * JfrSummary summarizes a recording offline.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class LedgerEvents {
+    /** Digits of an account number left visible in events */
+    public static final int VISIBLE_DIGITS = 4;
+    
+    /**
+     * The fields shared by events about one account and an amount
+     */
+    @Category({"ATM", "Ledger"})
+    @StackTrace(false)
+    abstract static class AccountEvent extends Event {
+        @Label("Account")
+        @Description("Account number, masked")
+        String account;
+        
+        @Label("Amount")
+        @Description("Amount in rupees")
+        double amount;
+        
+        @Label("Outcome")
+        @Description("success, or the reason the operation failed")
+        String outcome;
+        
+        /**
+         * End the event and record it if it was slow enough
+         * 
+         * @param accountNumber The account number, unmasked
+         * @param amountPaise The amount in paise
+         * @param result The outcome of the operation
+         */
+        void finish(String accountNumber, long amountPaise, Metrics.Outcome result) {
+            end();
+            if (shouldCommit()) {
+                fill(accountNumber, amountPaise, result);
+                commit();
+            }
+        }
+        
+        void fill(String accountNumber, long amountPaise, Metrics.Outcome result) {
+            account = mask(accountNumber);
+            amount = Money.toRupees(amountPaise);
+            outcome = result.getLabel();
+        }
+    }
+    
+    /**
+     * A customer login through Bank.login or Bank.authenticate
+     */
+    @Name("atm.Authentication")
+    @Label("Authentication")
+    @Threshold("1 ms")
+    public static final class Authentication extends AccountEvent {
+    }
+    
+    /**
+     * A deposit through Account.deposit or depositPaise
+     */
+    @Name("atm.Deposit")
+    @Label("Deposit")
+    @Threshold("1 ms")
+    public static final class Deposit extends AccountEvent {
+    }
+    
+    /**
+     * A withdrawal through Account.withdraw or withdrawPaise
+     */
+    @Name("atm.Withdrawal")
+    @Label("Withdrawal")
+    @Threshold("1 ms")
+    public static final class Withdrawal extends AccountEvent {
+    }
+    
+    /**
+     * A transfer through Bank.transferMoney
+     */
+    @Name("atm.Transfer")
+    @Label("Transfer")
+    @Threshold("1 ms")
+    public static final class Transfer extends AccountEvent {
+        @Label("To Account")
+        @Description("Receiving account number, masked")
+        String toAccount;
+        
+        /**
+         * End the event and record it if it was slow enough
+         * 
+         * @param fromAccountNumber The paying account number, unmasked
+         * @param toAccountNumber The receiving account number, unmasked
+         * @param amountPaise The amount in paise
+         * @param result The outcome of the transfer
+         */
+        void finish(String fromAccountNumber, String toAccountNumber, long amountPaise, Metrics.Outcome result) {
+            end();
+            if (shouldCommit()) {
+                fill(fromAccountNumber, amountPaise, result);
+                toAccount = mask(toAccountNumber);
+                commit();
+            }
+        }
+    }
+    
+    /**
+     * One statement written by StatementGenerator
+     */
+    @Name("atm.Statement")
+    @Label("Statement")
+    @Category({"ATM", "Ledger"})
+    @StackTrace(false)
+    @Threshold("50 ms")
+    public static final class Statement extends Event {
+        @Label("Account")
+        @Description("Account number, masked")
+        String account;
+        
+        @Label("Period Start")
+        @Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+        long periodStart;
+        
+        @Label("Period End")
+        @Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+        long periodEnd;
+        
+        @Label("Transactions")
+        int transactions;
+        
+        /**
+         * End the event and record it if it was slow enough
+         * 
+         * @param accountNumber The account number, unmasked
+         * @param fromMillis The start of the period
+         * @param toMillis The end of the period
+         * @param count The number of transactions written
+         */
+        void finish(String accountNumber, long fromMillis, long toMillis, int count) {
+            end();
+            if (shouldCommit()) {
+                account = mask(accountNumber);
+                periodStart = fromMillis;
+                periodEnd = toMillis;
+                transactions = count;
+                commit();
+            }
+        }
+    }
+    
+    /**
+     * A change an official made from the ATM's official menu
+     */
+    @Name("atm.OfficialAction")
+    @Label("Official Action")
+    @Category({"ATM", "Officials"})
+    @StackTrace(false)
+    @Threshold("1 ms")
+    public static final class OfficialAction extends Event {
+        @Label("Official")
+        String official;
+        
+        @Label("Action")
+        String action;
+        
+        @Label("Target")
+        @Description("Account number, masked, or official ID the action applies to")
+        String target;
+        
+        @Label("Outcome")
+        @Description("success, or the reason the action failed")
+        String outcome;
+        
+        /**
+         * End the event and record it if it was slow enough
+         * 
+         * @param officialId The official who acted
+         * @param actionName What was done, for example "block account"
+         * @param targetName The account number (masked here) or official ID acted on
+         * @param onAccount true if targetName is an account number
+         * @param result The outcome of the action
+         */
+        void finish(String officialId, String actionName, String targetName, boolean onAccount,
+                    Metrics.Outcome result) {
+            end();
+            if (shouldCommit()) {
+                official = officialId;
+                action = actionName;
+                target = onAccount ? mask(targetName) : targetName;
+                outcome = result.getLabel();
+                commit();
+            }
+        }
+    }
+    
+    /**
+     * Mask all but the last few digits of an account number
+     * 
+     * @param accountNumber The account number, or null
+     * @return The masked number, for example "*****6789", or null
+     */
+    public static String mask(String accountNumber) {
+        if (accountNumber == null) {
+            return null;
+        }
+        // A number too short to show any digits is hidden entirely
+        int hidden = accountNumber.length() > VISIBLE_DIGITS ? accountNumber.length() - VISIBLE_DIGITS
+                     : accountNumber.length();
+        return "*".repeat(hidden) + accountNumber.substring(hidden);
+    }
+}
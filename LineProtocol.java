@@ -0,0 +1,293 @@
+import java.util.List;
+
+/**
+ * LineProtocol class executing the compact text protocol for headless terminals
+ * One instance holds the state of one connection. Every request is a single
+ * line and every response starts with "OK" or "ERR":
+ * 
+ * LOGIN account pin          -> OK holder-name
+ * BAL                        -> OK balance
+ * DEP amount                 -> OK new-balance
+ * WDR amount [pin]           -> OK new-balance (pin needed above the PIN-check limit)
+ * XFER account amount pin    -> OK new-balance
+ * HIST [count]               -> OK n, then n lines of time, type, amount and balance
+ *                               separated by tabs, most recent last
+ * LOGOUT                     -> OK
+ * QUIT                       -> OK, then the connection is closed
+ * 
+ * Amounts are in rupees with up to two decimals, and the per-transaction
+ * limits are the same ones the ATM menus apply. When the terminal pays
+ * withdrawals from a CashVault, WDR also answers with the notes paid,
+ * "OK new-balance 2x2000,1x500", and refuses amounts the notes left
+ * cannot make up.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class LineProtocol {
+    /** Most history entries a single HIST returns */
+    public static final int MAX_HISTORY = 100;
+    
+    private static final int MAX_TOKENS = 4;
+    
+    private final Bank bank;
+    private final CashVault vault;
+    private final String[] tokens = new String[MAX_TOKENS];
+    private final LoginGuard.Terminal terminal = new LoginGuard.Terminal();
+    private Account account = null;
+    private boolean closed = false;
+    
+    /**
+     * Constructor to create the state of one connection
+     * 
+     * @param bank The bank the requests act on
+     */
+    public LineProtocol(Bank bank) {
+        this(bank, null);
+    }
+    
+    /**
+     * Constructor to create the state of one connection that pays withdrawals in notes
+     * 
+     * @param bank The bank the requests act on
+     * @param vault The cassettes withdrawals are paid from, or null to pay without counting notes
+     */
+    public LineProtocol(Bank bank, CashVault vault) {
+        this.bank = bank;
+        this.vault = vault;
+    }
+    
+    /**
+     * Check if the client asked to close the connection
+     * 
+     * @return true after QUIT
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+    
+    /**
+     * Execute one request line and append its response
+     * 
+     * @param line The request without its line terminator
+     * @param response Receives the response lines, each ending in '\n'
+     */
+    public void execute(CharSequence line, StringBuilder response) {
+        int count = tokenize(line);
+        if (count == 0) {
+            error(response, "empty request");
+            return;
+        }
+        String command = tokens[0];
+        if (command.equalsIgnoreCase("LOGIN")) {
+            login(count, response);
+        } else if (command.equalsIgnoreCase("QUIT")) {
+            account = null;
+            closed = true;
+            response.append("OK\n");
+        } else if (account == null) {
+            error(response, "not logged in");
+        } else if (command.equalsIgnoreCase("BAL")) {
+            balance(response);
+        } else if (command.equalsIgnoreCase("DEP")) {
+            deposit(count, response);
+        } else if (command.equalsIgnoreCase("WDR")) {
+            withdraw(count, response);
+        } else if (command.equalsIgnoreCase("XFER")) {
+            transfer(count, response);
+        } else if (command.equalsIgnoreCase("HIST")) {
+            history(count, response);
+        } else if (command.equalsIgnoreCase("LOGOUT")) {
+            account = null;
+            response.append("OK\n");
+        } else {
+            error(response, "unknown command");
+        }
+    }
+    
+    private void login(int count, StringBuilder response) {
+        if (count != 3) {
+            error(response, "usage: LOGIN account pin");
+            return;
+        }
+        account = null;
+        switch (bank.login(tokens[1], tokens[2], terminal)) {
+            case OK:
+                account = bank.getAccount(tokens[1]);
+                response.append("OK ").append(account.getAccountHolder()).append('\n');
+                break;
+            case RATE_LIMITED:
+                error(response, "too many attempts, try again later");
+                break;
+            case LOCKED_OUT:
+                error(response, "account locked after incorrect PINs");
+                break;
+            default:
+                error(response, "invalid account number or PIN");
+        }
+    }
+    
+    private void balance(StringBuilder response) {
+        Money.appendTo(response.append("OK "), account.getBalancePaise()).append('\n');
+    }
+    
+    private void deposit(int count, StringBuilder response) {
+        double amount = count == 2 ? parseAmount(tokens[1]) : -1;
+        if (amount <= 0) {
+            error(response, "usage: DEP amount");
+        } else if (amount > AtmSession.MAX_DEPOSIT) {
+            error(response, "deposit limit exceeded");
+        } else if (account.deposit(amount)) {
+            balance(response);
+        } else {
+            error(response, "invalid amount");
+        }
+    }
+    
+    private void withdraw(int count, StringBuilder response) {
+        double amount = count == 2 || count == 3 ? parseAmount(tokens[1]) : -1;
+        if (amount <= 0) {
+            error(response, "usage: WDR amount [pin]");
+        } else if (amount > AtmSession.MAX_WITHDRAWAL) {
+            error(response, "withdrawal limit exceeded");
+        } else if (amount > AtmSession.PIN_CHECK_WITHDRAWAL && count != 3) {
+            error(response, "PIN required");
+        } else if (amount > AtmSession.PIN_CHECK_WITHDRAWAL && !verifyPin(tokens[2], response)) {
+            return;
+        } else if (vault == null) {
+            if (account.withdraw(amount)) {
+                balance(response);
+            } else {
+                error(response, "insufficient funds");
+            }
+        } else if (!vault.isDispensable(amount)) {
+            error(response, "amount must be a multiple of 100");
+        } else {
+            long notes = vault.take(amount);
+            if (notes == DispensePlanner.NO_PLAN) {
+                error(response, "cannot dispense");
+            } else if (account.withdraw(amount)) {
+                Money.appendTo(response.append("OK "), account.getBalancePaise());
+                char separator = ' ';
+                for (int d = 0; d < DispensePlanner.DENOMINATIONS.length; d++) {
+                    int paid = DispensePlanner.count(notes, d);
+                    if (paid > 0) {
+                        response.append(separator).append(paid).append('x').append(DispensePlanner.DENOMINATIONS[d]);
+                        separator = ',';
+                    }
+                }
+                response.append('\n');
+            } else {
+                vault.putBack(notes);
+                error(response, "insufficient funds");
+            }
+        }
+    }
+    
+    private void transfer(int count, StringBuilder response) {
+        double amount = count == 4 ? parseAmount(tokens[2]) : -1;
+        if (amount <= 0) {
+            error(response, "usage: XFER account amount pin");
+        } else if (amount > AtmSession.MAX_TRANSFER) {
+            error(response, "transfer limit exceeded");
+        } else if (!verifyPin(tokens[3], response)) {
+            return;
+        } else if (tokens[1].equals(account.getAccountNumber())) {
+            error(response, "cannot transfer to own account");
+        } else if (!bank.accountExists(tokens[1])) {
+            error(response, "unknown account");
+        } else if (bank.transferMoney(account.getAccountNumber(), tokens[1], amount)) {
+            balance(response);
+        } else {
+            error(response, "insufficient funds");
+        }
+    }
+    
+    /**
+     * Check a PIN sent with a command, within the login limits, answering with the error if it is refused
+     */
+    private boolean verifyPin(String pin, StringBuilder response) {
+        switch (bank.verifyPin(account, pin, terminal)) {
+            case OK:
+                return true;
+            case RATE_LIMITED:
+                error(response, "too many attempts, try again later");
+                return false;
+            case LOCKED_OUT:
+                error(response, "account locked after incorrect PINs");
+                return false;
+            default:
+                error(response, "invalid PIN");
+                return false;
+        }
+    }
+    
+    private void history(int count, StringBuilder response) {
+        int limit = MAX_HISTORY;
+        if (count == 2) {
+            try {
+                limit = Math.min(Integer.parseInt(tokens[1]), MAX_HISTORY);
+            } catch (NumberFormatException e) {
+                limit = -1;
+            }
+        }
+        if (count > 2 || limit < 0) {
+            error(response, "usage: HIST [count]");
+            return;
+        }
+        List<Transaction> latest = account.latest(limit);
+        response.append("OK ").append(latest.size()).append('\n');
+        for (Transaction transaction : latest) {
+            TimestampFormat.appendDateTime(response, transaction.getTimestampMillis()).append('\t');
+            response.append(transaction.getType()).append('\t');
+            Money.appendTo(response, transaction.getAmountPaise()).append('\t');
+            Money.appendTo(response, transaction.getBalancePaise()).append('\n');
+        }
+    }
+    
+    private static void error(StringBuilder response, String message) {
+        response.append("ERR ").append(message).append('\n');
+    }
+    
+    /**
+     * Parse an amount in rupees
+     * 
+     * @return The amount, or -1 if it is not a valid positive amount
+     */
+    private static double parseAmount(String text) {
+        try {
+            double amount = Double.parseDouble(text);
+            return Money.isValid(amount) ? amount : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    /**
+     * Split a request into at most MAX_TOKENS space-separated tokens
+     * 
+     * @return The number of tokens, or MAX_TOKENS + 1 if there are more
+     */
+    private int tokenize(CharSequence line) {
+        int count = 0;
+        int length = line.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && line.charAt(i) == ' ') {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            int start = i;
+            while (i < length && line.charAt(i) != ' ') {
+                i++;
+            }
+            if (count == MAX_TOKENS) {
+                return MAX_TOKENS + 1;
+            }
+            tokens[count++] = line.subSequence(start, i).toString();
+        }
+        return count;
+    }
+}
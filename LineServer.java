@@ -0,0 +1,439 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * LineServer class serving the LineProtocol with non-blocking I/O
+ * An acceptor thread hands new connections round-robin to a few event
+ * loops, each running its own Selector. A loop reads whatever a client
+ * has sent, executes every complete request line in it (so pipelined
+ * requests cost one read) and writes all the responses with one write.
+ * 
+ * Each loop reads into and writes from two direct buffers of its own, so
+ * a client sending one request and waiting for the answer costs one read,
+ * one write and no buffer handling. Only when a connection is left with a
+ * partial request or output the socket did not take does it borrow a
+ * buffer from the loop's BufferPool, until that is consumed, so idle
+ * connections hold no buffers at all. When a client reads its responses
+ * too slowly, the loop stops executing its requests until the output has
+ * drained.
+ * 
+ * Requests run on the event loop, so with a SYNC or GROUP journal each
+ * loop waits for the disk; use several loops in that case.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class LineServer implements Closeable {
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int OUTPUT_RESERVE = 4 * 1024;
+    private static final int POOLED_BUFFERS = 256;
+    
+    private final Bank bank;
+    private final CashVault vault;
+    private final ServerSocketChannel serverChannel;
+    private final EventLoop[] loops;
+    private volatile boolean running = true;
+    
+    /**
+     * State of one client connection
+     */
+    private static final class Connection {
+        final SocketChannel channel;
+        final LineProtocol protocol;
+        ByteBuffer in;
+        ByteBuffer out;
+        CharBuffer spill;
+        boolean blocked;
+        
+        Connection(SocketChannel channel, LineProtocol protocol) {
+            this.channel = channel;
+            this.protocol = protocol;
+        }
+    }
+    
+    /**
+     * Constructor to create a server listening on a local port
+     * 
+     * @param bank The bank the requests act on
+     * @param port The TCP port; 0 picks a free port
+     * @param threads The number of event loops
+     * @throws IOException if the port cannot be bound
+     */
+    public LineServer(Bank bank, int port, int threads) throws IOException {
+        this(bank, null, port, threads);
+    }
+    
+    /**
+     * Constructor to create a server whose terminals pay withdrawals from shared cassettes
+     * 
+     * @param bank The bank the requests act on
+     * @param vault The cassettes shared by all connections, or null to pay without counting notes
+     * @param port The TCP port; 0 picks a free port
+     * @param threads The number of event loops
+     * @throws IOException if the port cannot be bound
+     */
+    public LineServer(Bank bank, CashVault vault, int port, int threads) throws IOException {
+        this(bank, vault, InetAddress.getLoopbackAddress(), port, threads);
+    }
+    
+    /**
+     * Constructor to create a server listening on a given address
+     * Terminals on other machines can only connect when the address is not
+     * the loopback address.
+     * 
+     * @param bank The bank the requests act on
+     * @param vault The cassettes shared by all connections, or null to pay without counting notes
+     * @param host The local address to listen on
+     * @param port The TCP port; 0 picks a free port
+     * @param threads The number of event loops
+     * @throws IOException if the address and port cannot be bound
+     */
+    public LineServer(Bank bank, CashVault vault, InetAddress host, int port, int threads) throws IOException {
+        this.bank = bank;
+        this.vault = vault;
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(host, port), 1024);
+        this.loops = new EventLoop[Math.max(1, threads)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(i);
+        }
+    }
+    
+    /**
+     * Get the port the server is listening on
+     * 
+     * @return The local port
+     * @throws IOException if the server is closed
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+    
+    /**
+     * Start the event loops and the acceptor thread
+     */
+    public void start() {
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+        Thread acceptor = new Thread(this::accept, "line-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+    
+    /**
+     * Stop accepting, close every connection and stop the event loops
+     * 
+     * @throws IOException if the listening channel cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverChannel.close();
+        for (EventLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+    }
+    
+    /**
+     * Accept connections and hand them to the event loops in turn
+     */
+    private void accept() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                loops[next].add(channel);
+                next = (next + 1) % loops.length;
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Line server accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    /**
+     * One selector thread serving its share of the connections
+     */
+    private final class EventLoop implements Runnable {
+        final Selector selector;
+        final Thread thread;
+        final BufferPool pool = new BufferPool(BUFFER_SIZE, POOLED_BUFFERS);
+        // Shared by every connection of the loop while one of them is being served
+        final ByteBuffer input = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final ByteBuffer output = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final Queue<SocketChannel> incoming = new ConcurrentLinkedQueue<>();
+        final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        final StringBuilder line = new StringBuilder(128);
+        final StringBuilder response = new StringBuilder(1024);
+        
+        EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "line-loop-" + index);
+            thread.setDaemon(true);
+        }
+        
+        void add(SocketChannel channel) {
+            incoming.add(channel);
+            selector.wakeup();
+        }
+        
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    for (SocketChannel channel = incoming.poll(); channel != null; channel = incoming.poll()) {
+                        try {
+                            channel.register(selector, SelectionKey.OP_READ,
+                                             new Connection(channel, new LineProtocol(bank, vault)));
+                        } catch (ClosedChannelException e) {
+                            // The client hung up before the loop got to it
+                        }
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isWritable()) {
+                            flush(key, connection);
+                        } else if (key.isReadable()) {
+                            read(key, connection);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Line server loop stopped: " + e.getMessage());
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    closeQuietly(key);
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // Nothing left to release
+                }
+            }
+        }
+        
+        private void read(SelectionKey key, Connection connection) {
+            // A partial request already waiting has to be completed in its own buffer
+            ByteBuffer in = connection.in != null ? connection.in : input;
+            try {
+                if (connection.channel.read(in) < 0) {
+                    input.clear();
+                    close(key, connection);
+                    return;
+                }
+            } catch (IOException e) {
+                input.clear();
+                close(key, connection);
+                return;
+            }
+            process(key, connection, in);
+        }
+        
+        /**
+         * Execute every complete request in the input buffer, then write the responses
+         * Whatever is left in the loop's own buffers afterwards, a partial
+         * request or output the socket did not take, moves to buffers
+         * borrowed for the connection.
+         */
+        private void process(SelectionKey key, Connection connection, ByteBuffer in) {
+            ByteBuffer out = connection.out != null ? connection.out : output;
+            in.flip();
+            while (!connection.protocol.isClosed()) {
+                if (connection.spill != null || out.remaining() < OUTPUT_RESERVE) {
+                    connection.blocked = true;
+                    break;
+                }
+                int end = indexOf(in, (byte) '\n');
+                if (end < 0) {
+                    break;
+                }
+                // Requests are plain ASCII
+                line.setLength(0);
+                for (int i = in.position(); i < end; i++) {
+                    line.append((char) (in.get(i) & 0xff));
+                }
+                if (line.length() > 0 && line.charAt(line.length() - 1) == '\r') {
+                    line.setLength(line.length() - 1);
+                }
+                in.position(end + 1);
+                
+                response.setLength(0);
+                connection.protocol.execute(line, response);
+                encode(connection, out);
+            }
+            in.compact();
+            if (in.position() == 0) {
+                if (in != input) {
+                    pool.release(in);
+                    connection.in = null;
+                }
+            } else if (!in.hasRemaining()) {
+                // A single request filled the whole buffer
+                input.clear();
+                output.clear();
+                close(key, connection);
+                return;
+            } else if (in == input) {
+                connection.in = pool.acquire();
+                input.flip();
+                connection.in.put(input);
+                input.clear();
+            }
+            
+            if (out == output) {
+                // Usually the socket takes all of it and nothing needs to be kept
+                output.flip();
+                try {
+                    connection.channel.write(output);
+                } catch (IOException e) {
+                    output.clear();
+                    close(key, connection);
+                    return;
+                }
+                if (output.hasRemaining() || connection.spill != null) {
+                    connection.out = pool.acquire();
+                    connection.out.put(output);
+                }
+                output.clear();
+            }
+            flush(key, connection);
+        }
+        
+        /**
+         * Append a response to the output buffer
+         * Responses are nearly always ASCII and are copied byte for byte;
+         * anything else goes through the encoder, and what does not fit is
+         * kept as the connection's spill.
+         */
+        private void encode(Connection connection, ByteBuffer out) {
+            int length = response.length();
+            if (length <= out.remaining()) {
+                int start = out.position();
+                int i = 0;
+                while (i < length && response.charAt(i) < 0x80) {
+                    out.put((byte) response.charAt(i++));
+                }
+                if (i == length) {
+                    return;
+                }
+                out.position(start);
+            }
+            CharBuffer chars = CharBuffer.wrap(response);
+            encoder.reset();
+            encoder.encode(chars, out, true);
+            if (chars.hasRemaining()) {
+                connection.spill = CharBuffer.wrap(chars.toString());
+            }
+        }
+        
+        /**
+         * Write the connection's pending output; wait for OP_WRITE if the socket is full
+         */
+        private void flush(SelectionKey key, Connection connection) {
+            ByteBuffer out = connection.out;
+            while (out != null) {
+                out.flip();
+                try {
+                    connection.channel.write(out);
+                } catch (IOException e) {
+                    close(key, connection);
+                    return;
+                }
+                boolean written = !out.hasRemaining();
+                out.compact();
+                if (!written) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+                if (connection.spill != null) {
+                    encoder.reset();
+                    encoder.encode(connection.spill, out, true);
+                    if (!connection.spill.hasRemaining()) {
+                        connection.spill = null;
+                    }
+                    continue;
+                }
+                pool.release(out);
+                connection.out = null;
+                out = null;
+            }
+            if (connection.protocol.isClosed()) {
+                close(key, connection);
+                return;
+            }
+            if (key.interestOps() != SelectionKey.OP_READ) {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+            if (connection.blocked) {
+                // Output has drained; carry on with the requests already read
+                connection.blocked = false;
+                if (connection.in != null) {
+                    process(key, connection, connection.in);
+                }
+            }
+        }
+        
+        private void close(SelectionKey key, Connection connection) {
+            if (connection.in != null) {
+                pool.release(connection.in);
+                connection.in = null;
+            }
+            if (connection.out != null) {
+                pool.release(connection.out);
+                connection.out = null;
+            }
+            closeQuietly(key);
+        }
+        
+        private void closeQuietly(SelectionKey key) {
+            key.cancel();
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                // The connection is gone either way
+            }
+        }
+    }
+    
+    /**
+     * Find a byte between a buffer's position and limit
+     * 
+     * @return The absolute index, or -1 if not found
+     */
+    private static int indexOf(ByteBuffer buffer, byte value) {
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
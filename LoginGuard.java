@@ -0,0 +1,282 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * LoginGuard class limiting customer login attempts
+ * Every attempt first takes a token from its terminal's bucket and then
+ * from its account's bucket; an attempt that finds either bucket empty is
+ * refused before the PIN is looked at. After a run of failed PINs the
+ * account is locked out for a while, separately from the blocked status
+ * that officials set, so the lockout ends on its own.
+ * 
+ * A bucket is a single long holding the time at which it is next full
+ * enough to admit an attempt (the generic cell rate algorithm), so taking
+ * a token is one compare-and-set and refilling costs nothing. Account state
+ * is kept only for accounts with recent attempts and dropped once it has
+ * been idle for the failure window, by a sweep that starts at most once per
+ * sweep interval; an idle account's failure count is forgotten with it. The
+ * sweep retires a state with one compare-and-set on its bucket before
+ * dropping it, so an attempt either lands first and keeps the state alive
+ * or finds it retired and starts over with a fresh one; no attempt's
+ * failure is counted on a state the sweep has already dropped. The
+ * sweep checks at most SWEEP_BATCH accounts per attempt, so no attempt pays
+ * for a scan of every account, and since each attempt adds at most one
+ * account the sweep always keeps up.
+ * A terminal's bucket belongs to its session.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class LoginGuard {
+    /** Attempts an account admits back to back */
+    public static final int ACCOUNT_BURST = 5;
+    /** Time for an account to regain one attempt, in milliseconds */
+    public static final long ACCOUNT_INTERVAL_MILLIS = 2_000L;
+    /** Attempts a terminal admits back to back */
+    public static final int TERMINAL_BURST = 10;
+    /** Time for a terminal to regain one attempt, in milliseconds */
+    public static final long TERMINAL_INTERVAL_MILLIS = 1_000L;
+    /** Failed PINs in a row that lock an account out */
+    public static final int MAX_FAILED_PINS = 3;
+    /** Length of a lockout, in milliseconds */
+    public static final long LOCKOUT_MILLIS = 15 * 60_000L;
+    /** Idle time after which an account's failed PINs are forgotten, in milliseconds */
+    public static final long FAILURE_WINDOW_MILLIS = 15 * 60_000L;
+    
+    private static final long SWEEP_INTERVAL_NANOS = 10_000_000_000L;
+    private static final int SWEEP_BATCH = 64;
+    // The bucket time of a state the sweep has dropped; such a bucket admits nothing
+    private static final long RETIRED = Long.MAX_VALUE;
+    private static final long ORIGIN = System.nanoTime();
+    private static final VarHandle ALLOW_AT;
+    private static final VarHandle FAILURES;
+    private static final VarHandle SWEEPING;
+    
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            ALLOW_AT = lookup.findVarHandle(Bucket.class, "allowAt", long.class);
+            FAILURES = lookup.findVarHandle(AccountState.class, "failures", int.class);
+            SWEEPING = lookup.findVarHandle(LoginGuard.class, "sweeping", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    
+    /**
+     * The outcome of a login attempt
+     */
+    public enum Result {
+        /** The PIN matched */
+        OK,
+        /** The account does not exist or the PIN did not match */
+        INVALID,
+        /** The terminal or account is making attempts too quickly; the PIN was not checked */
+        RATE_LIMITED,
+        /** The account is locked out after failed PINs, this attempt's or earlier ones */
+        LOCKED_OUT
+    }
+    
+    /**
+     * A token bucket; times are nanoseconds since ORIGIN
+     */
+    static class Bucket {
+        private final long interval;
+        private final long tolerance;
+        private volatile long allowAt;
+        
+        Bucket(long intervalMillis, int burst) {
+            this.interval = intervalMillis * 1_000_000L;
+            this.tolerance = (burst - 1) * interval;
+        }
+        
+        /**
+         * Take one token if the bucket has one
+         * 
+         * @param now The current time
+         * @return true if the attempt is admitted
+         */
+        boolean tryAcquire(long now) {
+            while (true) {
+                long current = allowAt;
+                long base = Math.max(current, now);
+                if (base - now > tolerance) {
+                    return false;
+                }
+                if (ALLOW_AT.compareAndSet(this, current, base + interval)) {
+                    return true;
+                }
+            }
+        }
+    }
+    
+    /**
+     * The login bucket of one terminal, kept by its session
+     */
+    public static final class Terminal extends Bucket {
+        /**
+         * Constructor to create a full bucket with the default terminal limits
+         */
+        public Terminal() {
+            super(TERMINAL_INTERVAL_MILLIS, TERMINAL_BURST);
+        }
+    }
+    
+    /**
+     * The login state of one account with recent attempts
+     */
+    private static final class AccountState extends Bucket {
+        private volatile int failures;
+        private volatile long lockedUntil;
+        
+        AccountState() {
+            super(ACCOUNT_INTERVAL_MILLIS, ACCOUNT_BURST);
+        }
+        
+        /**
+         * Retire the state if it can be forgotten
+         * Once idle, the bucket is full again and no lockout is running. An
+         * attempt that takes a token after the bucket time was read changes
+         * it, so the state is then kept.
+         * 
+         * @return true if the state is retired and may be dropped
+         */
+        boolean retire(long now) {
+            long current = super.allowAt;
+            return now - current >= FAILURE_WINDOW_MILLIS * 1_000_000L && lockedUntil - now <= 0
+                   && ALLOW_AT.compareAndSet(this, current, RETIRED);
+        }
+        
+        /**
+         * Check if the sweep has retired the state
+         */
+        boolean retired() {
+            return super.allowAt == RETIRED;
+        }
+    }
+    
+    private final ConcurrentHashMap<String, AccountState> accounts = new ConcurrentHashMap<>();
+    private volatile long nextSweep = SWEEP_INTERVAL_NANOS;
+    // Set while one attempt advances the sweep; the cursor is only used by that attempt
+    private volatile int sweeping;
+    private Iterator<Map.Entry<String, AccountState>> sweepCursor;
+    
+    /**
+     * Check a login attempt against the limits and then the PIN
+     * 
+     * @param account The account, or null if the account number is unknown
+     * @param pin The PIN entered
+     * @param terminal The terminal making the attempt, or null to apply only the account limits
+     * @return The outcome
+     */
+    public Result authenticate(Account account, String pin, Terminal terminal) {
+        return authenticate(account, pin, terminal, System.nanoTime() - ORIGIN);
+    }
+    
+    /**
+     * Check a login attempt at a given time
+     * 
+     * @param now The current time in nanoseconds since ORIGIN
+     */
+    Result authenticate(Account account, String pin, Terminal terminal, long now) {
+        if (terminal != null && !terminal.tryAcquire(now)) {
+            return Result.RATE_LIMITED;
+        }
+        if (account == null) {
+            return Result.INVALID;
+        }
+        sweep(now);
+        AccountState state;
+        while (true) {
+            state = accounts.computeIfAbsent(account.getAccountNumber(), key -> new AccountState());
+            if (state.lockedUntil - now > 0) {
+                return Result.LOCKED_OUT;
+            }
+            if (state.tryAcquire(now)) {
+                break;
+            }
+            if (!state.retired()) {
+                return Result.RATE_LIMITED;
+            }
+            // Swept since it was looked up; the sweep drops it, if it has not already
+            accounts.remove(account.getAccountNumber(), state);
+        }
+        if (account.getPin().equals(pin)) {
+            if (state.failures != 0) {
+                state.failures = 0;
+            }
+            return Result.OK;
+        }
+        if ((int) FAILURES.getAndAdd(state, 1) + 1 >= MAX_FAILED_PINS) {
+            state.lockedUntil = now + LOCKOUT_MILLIS * 1_000_000L;
+            state.failures = 0;
+            return Result.LOCKED_OUT;
+        }
+        return Result.INVALID;
+    }
+    
+    /**
+     * Check if an account is locked out after failed PINs
+     * 
+     * @param accountNumber The account number
+     * @return true while a lockout is running
+     */
+    public boolean isLockedOut(String accountNumber) {
+        AccountState state = accounts.get(accountNumber);
+        return state != null && state.lockedUntil - (System.nanoTime() - ORIGIN) > 0;
+    }
+    
+    /**
+     * End an account's lockout and forget its failed PINs, as when an official unblocks it
+     * 
+     * @param accountNumber The account number
+     */
+    public void clearLockout(String accountNumber) {
+        accounts.remove(accountNumber);
+    }
+    
+    /**
+     * Get the number of accounts with login state
+     * 
+     * @return The number of accounts with recent attempts
+     */
+    public int trackedAccounts() {
+        return accounts.size();
+    }
+    
+    /**
+     * Forget idle account state, SWEEP_BATCH accounts at a time
+     * Once the sweep interval is over, attempts take turns moving a cursor
+     * through the accounts; an attempt that finds another one doing so
+     * skips its turn. The next interval starts when the cursor reaches the end.
+     */
+    private void sweep(long now) {
+        if (now - nextSweep < 0 || !SWEEPING.compareAndSet(this, 0, 1)) {
+            return;
+        }
+        try {
+            if (sweepCursor == null) {
+                if (now - nextSweep < 0) {
+                    // Another attempt finished the sweep since the check above
+                    return;
+                }
+                sweepCursor = accounts.entrySet().iterator();
+            }
+            for (int checked = 0; checked < SWEEP_BATCH && sweepCursor.hasNext(); checked++) {
+                Map.Entry<String, AccountState> entry = sweepCursor.next();
+                if (entry.getValue().retire(now)) {
+                    accounts.remove(entry.getKey(), entry.getValue());
+                }
+            }
+            if (!sweepCursor.hasNext()) {
+                sweepCursor = null;
+                nextSweep = now + SWEEP_INTERVAL_NANOS;
+            }
+        } finally {
+            sweeping = 0;
+        }
+    }
+}
@@ -0,0 +1,439 @@
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics class counting and timing the bank's operations
+ * Each operation (deposits, withdrawals, transfers, logins, and the ATM
+ * withdrawal and deposit flows) keeps a count per outcome, success or the
+ * reason it failed, and a histogram of its latencies. Every operation is
+ * counted, but reading the clock twice costs more than the rest of the
+ * recording, so the cheapest operations (deposits, withdrawals and logins)
+ * time only a random one in SAMPLE_EVERY; the percentiles come from that
+ * sample and the counts stay exact.
+ * 
+ * Recording takes no lock and allocates nothing. An operation's counts and
+ * histogram buckets live in a fixed number of stripes, one long array
+ * each; a thread adds to the stripe chosen by its thread ID with atomic
+ * adds, so threads on different processors rarely touch the same cache
+ * line, and reading the metrics adds the stripes together. Latencies above
+ * about 68 seconds all count in the top bucket, which keeps a stripe at a
+ * fixed 8 KB whatever the load.
+ * 
+ * registerMBeans makes every operation visible over JMX, and dump writes
+ * them all as a text table, which scheduleDump does at a fixed interval.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class Metrics {
+    /** One in this many deposits, withdrawals and logins is timed */
+    public static final int SAMPLE_EVERY = 8;
+    /** What Operation.start returns for an operation that is not timed */
+    public static final long NOT_TIMED = Long.MIN_VALUE;
+    
+    private static final VarHandle CELL = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final long MAX_TRACKED_NANOS = (1L << 36) - 1L;
+    private static final int SUM = Outcome.values().length;
+    private static final int MAX = SUM + 1;
+    private static final int BUCKETS_AT = MAX + 1;
+    private static final int CELLS = BUCKETS_AT + LatencyHistogram.indexOf(MAX_TRACKED_NANOS) + 1;
+    // A power of two at least the number of processors
+    private static final int STRIPES = Math.min(64, Integer.highestOneBit(
+            Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)));
+    
+    /**
+     * The outcome of an operation: success or the reason it failed
+     */
+    public enum Outcome {
+        SUCCESS("success"),
+        INSUFFICIENT_FUNDS("insufficient funds"),
+        LIMIT_EXCEEDED("limit exceeded"),
+        INVALID_PIN("invalid PIN"),
+        INVALID_AMOUNT("invalid amount"),
+        INVALID_ACCOUNT("invalid account"),
+        RATE_LIMITED("rate limited"),
+        LOCKED_OUT("locked out"),
+        CANNOT_DISPENSE("cannot dispense");
+        
+        private final String label;
+        
+        Outcome(String label) {
+            this.label = label;
+        }
+        
+        /**
+         * Get the outcome as shown in dumps and over JMX
+         * 
+         * @return The label
+         */
+        public String getLabel() {
+            return label;
+        }
+    }
+    
+    /**
+     * The view of one operation over JMX; latencies are in microseconds
+     */
+    public interface OperationMXBean {
+        /** @return The number of operations recorded */
+        long getCount();
+        
+        /** @return The number that succeeded */
+        long getSuccesses();
+        
+        /** @return The number that failed, for any reason */
+        long getFailures();
+        
+        /** @return The number that failed for each reason seen, by outcome label */
+        Map<String, Long> getFailuresByReason();
+        
+        /** @return The mean latency */
+        double getMeanMicros();
+        
+        /** @return The median latency */
+        double getP50Micros();
+        
+        /** @return The 99th percentile latency */
+        double getP99Micros();
+        
+        /** @return The 99.9th percentile latency */
+        double getP999Micros();
+        
+        /** @return The largest latency */
+        double getMaxMicros();
+    }
+    
+    /**
+     * The counts and latencies of one operation
+     */
+    public static final class Operation implements OperationMXBean {
+        private final String name;
+        private final Metrics owner;
+        private final int sampleMask;
+        private final long[][] stripes = new long[STRIPES][CELLS];
+        
+        Operation(String name, Metrics owner, int sampleEvery) {
+            this.name = name;
+            this.owner = owner;
+            this.sampleMask = sampleEvery - 1;
+        }
+        
+        /**
+         * Get the operation name
+         * 
+         * @return The name
+         */
+        public String getName() {
+            return name;
+        }
+        
+        /**
+         * Start an operation, reading the clock if this one is to be timed
+         * 
+         * @return The value to pass to record: the System.nanoTime, or NOT_TIMED
+         */
+        public long start() {
+            if (!owner.enabled || (ThreadLocalRandom.current().nextInt() & sampleMask) != 0) {
+                return NOT_TIMED;
+            }
+            return System.nanoTime();
+        }
+        
+        /**
+         * Record one operation that has just finished
+         * 
+         * @param outcome How it ended
+         * @param start The value start returned when it began
+         */
+        public void record(Outcome outcome, long start) {
+            if (!owner.enabled) {
+                return;
+            }
+            long[] cells = stripes[(int) Thread.currentThread().threadId() & (STRIPES - 1)];
+            CELL.getAndAdd(cells, outcome.ordinal(), 1L);
+            if (start == NOT_TIMED) {
+                return;
+            }
+            long elapsed = Math.max(0L, System.nanoTime() - start);
+            CELL.getAndAdd(cells, SUM, elapsed);
+            CELL.getAndAdd(cells, BUCKETS_AT + LatencyHistogram.indexOf(Math.min(elapsed, MAX_TRACKED_NANOS)), 1L);
+            long max = (long) CELL.getOpaque(cells, MAX);
+            while (elapsed > max && !CELL.weakCompareAndSet(cells, MAX, max, elapsed)) {
+                max = (long) CELL.getOpaque(cells, MAX);
+            }
+        }
+        
+        /**
+         * Get the number of operations with an outcome
+         * 
+         * @param outcome The outcome
+         * @return The number recorded so far
+         */
+        public long getCount(Outcome outcome) {
+            long total = 0L;
+            for (long[] cells : stripes) {
+                total += (long) CELL.getOpaque(cells, outcome.ordinal());
+            }
+            return total;
+        }
+        
+        /**
+         * Get the latencies recorded so far, in nanoseconds
+         * Only timed operations are included, so the count may be smaller
+         * than getCount. Operations recorded while the stripes are read may
+         * be partly included.
+         * 
+         * @return A copy of the latency histogram
+         */
+        public LatencyHistogram getLatencies() {
+            LatencyHistogram latencies = new LatencyHistogram();
+            long[] copy = new long[CELLS];
+            for (long[] cells : stripes) {
+                for (int i = 0; i < CELLS; i++) {
+                    copy[i] = (long) CELL.getOpaque(cells, i);
+                }
+                latencies.add(copy, BUCKETS_AT, copy[SUM], copy[MAX]);
+            }
+            return latencies;
+        }
+        
+        @Override
+        public long getCount() {
+            long total = 0L;
+            for (Outcome outcome : Outcome.values()) {
+                total += getCount(outcome);
+            }
+            return total;
+        }
+        
+        @Override
+        public long getSuccesses() {
+            return getCount(Outcome.SUCCESS);
+        }
+        
+        @Override
+        public long getFailures() {
+            return getCount() - getSuccesses();
+        }
+        
+        @Override
+        public Map<String, Long> getFailuresByReason() {
+            Map<String, Long> failures = new LinkedHashMap<>();
+            for (Outcome outcome : Outcome.values()) {
+                long count = getCount(outcome);
+                if (outcome != Outcome.SUCCESS && count > 0) {
+                    failures.put(outcome.getLabel(), count);
+                }
+            }
+            return failures;
+        }
+        
+        @Override
+        public double getMeanMicros() {
+            return getLatencies().getMean() / 1e3;
+        }
+        
+        @Override
+        public double getP50Micros() {
+            return getLatencies().getValueAtPercentile(50) / 1e3;
+        }
+        
+        @Override
+        public double getP99Micros() {
+            return getLatencies().getValueAtPercentile(99) / 1e3;
+        }
+        
+        @Override
+        public double getP999Micros() {
+            return getLatencies().getValueAtPercentile(99.9) / 1e3;
+        }
+        
+        @Override
+        public double getMaxMicros() {
+            return getLatencies().getMax() / 1e3;
+        }
+    }
+    
+    private final Operation deposit = new Operation("deposit", this, SAMPLE_EVERY);
+    private final Operation withdrawal = new Operation("withdrawal", this, SAMPLE_EVERY);
+    private final Operation transfer = new Operation("transfer", this, 1);
+    private final Operation login = new Operation("login", this, SAMPLE_EVERY);
+    private final Operation atmWithdrawal = new Operation("atm.withdrawal", this, 1);
+    private final Operation atmDeposit = new Operation("atm.deposit", this, 1);
+    private final List<Operation> operations = List.of(deposit, withdrawal, transfer, login, atmWithdrawal,
+                                                       atmDeposit);
+    private final List<ObjectName> registered = new ArrayList<>();
+    private volatile boolean enabled = true;
+    
+    /**
+     * Get the metrics of Account.deposit and depositPaise
+     * 
+     * @return The deposit metrics
+     */
+    public Operation getDeposit() {
+        return deposit;
+    }
+    
+    /**
+     * Get the metrics of Account.withdraw and withdrawPaise
+     * 
+     * @return The withdrawal metrics
+     */
+    public Operation getWithdrawal() {
+        return withdrawal;
+    }
+    
+    /**
+     * Get the metrics of Bank.transferMoney
+     * 
+     * @return The transfer metrics
+     */
+    public Operation getTransfer() {
+        return transfer;
+    }
+    
+    /**
+     * Get the metrics of Bank.login and authenticate
+     * 
+     * @return The login metrics
+     */
+    public Operation getLogin() {
+        return login;
+    }
+    
+    /**
+     * Get the metrics of the ATM withdrawal screen, from the customer's last entry to the result
+     * 
+     * @return The ATM withdrawal metrics
+     */
+    public Operation getAtmWithdrawal() {
+        return atmWithdrawal;
+    }
+    
+    /**
+     * Get the metrics of the ATM deposit screen, from the customer's last entry to the result
+     * 
+     * @return The ATM deposit metrics
+     */
+    public Operation getAtmDeposit() {
+        return atmDeposit;
+    }
+    
+    /**
+     * Get all operations, in a fixed order
+     * 
+     * @return The operations
+     */
+    public List<Operation> getOperations() {
+        return operations;
+    }
+    
+    /**
+     * Check if operations are being recorded
+     * 
+     * @return true unless recording was turned off
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Turn recording on or off; what was recorded is kept
+     * 
+     * @param enabled true to record operations
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    /**
+     * Register every operation with the platform MBean server
+     * Each is named "ATM:type=Operation,bank=<bank name>,name=<operation>".
+     * 
+     * @param bankName The name of the bank, to tell banks in one JVM apart
+     * @throws JMException if an operation cannot be registered, for example
+     *         because a bank of the same name already registered it
+     */
+    public synchronized void registerMBeans(String bankName) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Operation operation : operations) {
+            ObjectName name = new ObjectName("ATM:type=Operation,bank=" + ObjectName.quote(bankName)
+                                             + ",name=" + operation.getName());
+            server.registerMBean(operation, name);
+            registered.add(name);
+        }
+    }
+    
+    /**
+     * Remove the MBeans added by registerMBeans
+     * 
+     * @throws JMException if an MBean cannot be removed
+     */
+    public synchronized void unregisterMBeans() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        }
+        registered.clear();
+    }
+    
+    /**
+     * Get all operations as a text table
+     * Latencies are in microseconds; failures are listed by reason.
+     * 
+     * @return The table, one line per operation after a header
+     */
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-16s %10s %8s %10s %10s %10s %10s  %s%n", "Operation", "Count", "Failed",
+                                "p50 us", "p99 us", "p999 us", "max us", "Failures"));
+        for (Operation operation : operations) {
+            LatencyHistogram latencies = operation.getLatencies();
+            long count = operation.getCount();
+            sb.append(String.format("%-16s %10d %8d %10.1f %10.1f %10.1f %10.1f", operation.getName(), count,
+                                    count - operation.getSuccesses(), latencies.getValueAtPercentile(50) / 1e3,
+                                    latencies.getValueAtPercentile(99) / 1e3,
+                                    latencies.getValueAtPercentile(99.9) / 1e3, latencies.getMax() / 1e3));
+            String separator = "  ";
+            for (Map.Entry<String, Long> failure : operation.getFailuresByReason().entrySet()) {
+                sb.append(separator).append(failure.getKey()).append(' ').append(failure.getValue());
+                separator = ", ";
+            }
+            sb.append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Print the dump in the background at a fixed interval
+     * 
+     * @param out The stream to print to
+     * @param interval The time between dumps
+     * @param unit The unit of the interval
+     * @return The scheduler; shut it down to stop dumping
+     */
+    public ScheduledExecutorService scheduleDump(PrintStream out, long interval, TimeUnit unit) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> out.print(dump()), interval, interval, unit);
+        return scheduler;
+    }
+}
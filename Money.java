@@ -0,0 +1,82 @@
+/**
+ * Money class with helpers for fixed-point currency amounts
+ * Balances are kept as a long count of paise internally; rupee
+ * values are only used at the edges (user input and display).
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public final class Money {
+    /** Number of paise in one rupee */
+    public static final long PAISE_PER_RUPEE = 100L;
+    
+    /** Largest rupee amount that can be represented without overflow risk */
+    public static final double MAX_RUPEES = 1_000_000_000_000.0;
+    
+    private Money() {
+    }
+    
+    /**
+     * Check if a rupee amount can be converted to paise
+     * 
+     * @param rupees The amount in rupees
+     * @return true if the amount is finite and within range, false otherwise
+     */
+    public static boolean isValid(double rupees) {
+        return !Double.isNaN(rupees) && Math.abs(rupees) <= MAX_RUPEES;
+    }
+    
+    /**
+     * Convert a rupee amount to paise, rounding to the nearest paisa
+     * 
+     * @param rupees The amount in rupees
+     * @return The amount in paise
+     * @throws IllegalArgumentException if the amount is not valid
+     */
+    public static long toPaise(double rupees) {
+        if (!isValid(rupees)) {
+            throw new IllegalArgumentException("Invalid amount: " + rupees);
+        }
+        return Math.round(rupees * PAISE_PER_RUPEE);
+    }
+    
+    /**
+     * Convert a paise amount to rupees
+     * 
+     * @param paise The amount in paise
+     * @return The amount in rupees
+     */
+    public static double toRupees(long paise) {
+        return paise / (double) PAISE_PER_RUPEE;
+    }
+    
+    /**
+     * Format a paise amount as rupees with exactly two decimals
+     * 
+     * @param paise The amount in paise
+     * @return The formatted amount, e.g. "-1234.05"
+     */
+    public static String format(long paise) {
+        return appendTo(new StringBuilder(24), paise).toString();
+    }
+    
+    /**
+     * Append a paise amount as rupees with exactly two decimals
+     * 
+     * @param sb The builder to append to
+     * @param paise The amount in paise
+     * @return The same builder
+     */
+    public static StringBuilder appendTo(StringBuilder sb, long paise) {
+        if (paise < 0) {
+            sb.append('-');
+        }
+        long abs = Math.abs(paise);
+        long fraction = abs % PAISE_PER_RUPEE;
+        sb.append(abs / PAISE_PER_RUPEE).append('.');
+        if (fraction < 10) {
+            sb.append('0');
+        }
+        return sb.append(fraction);
+    }
+}
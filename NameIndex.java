@@ -0,0 +1,499 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * NameIndex class answering substring searches on account holder names
+ * Every indexed account gets a document number, and each trigram (three
+ * consecutive characters, case folded) of its holder name maps to a sorted
+ * posting list of those numbers. A query of three or more characters
+ * intersects the posting lists of its own trigrams, shortest first, and
+ * only the accounts left are checked for the actual substring. Shorter
+ * queries have no trigrams and fall back to a scan; an empty query matches
+ * every account, as a plain substring test would.
+ * 
+ * Names are case folded once, when they are indexed, and kept back to back
+ * in one character array in document order. Checking the candidates, which
+ * come out of the intersection in document order too, therefore reads that
+ * array front to back instead of chasing each account's own string.
+ * 
+ * Results are ranked: an exact name first, then names starting with the
+ * query, then names with a word starting with it, then any other match;
+ * shorter names come first within each rank, then older accounts.
+ * 
+ * Document numbers are never reused, so posting lists stay sorted by
+ * appending; once more than half the numbers belong to removed accounts
+ * the index is rebuilt. Searches share a read lock, changes take the
+ * write lock. Posting lists are found through an open-addressing table
+ * keyed by the packed trigram, so a lookup boxes nothing.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class NameIndex {
+    private static final int RANK_EXACT = 0;
+    private static final int RANK_PREFIX = 1;
+    private static final int RANK_WORD = 2;
+    private static final int RANK_SUBSTRING = 3;
+    
+    // Stop intersecting once this few candidates are left; checking them directly is cheaper
+    private static final int VERIFY_THRESHOLD = 32;
+    private static final int INITIAL_DOCUMENTS = 1024;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TrigramTable postings = new TrigramTable();
+    private Account[] documents = new Account[INITIAL_DOCUMENTS];
+    // Document d's folded name is names[starts[d]] up to names[starts[d + 1]]
+    private int[] starts = new int[INITIAL_DOCUMENTS + 1];
+    private char[] names = new char[INITIAL_DOCUMENTS * 16];
+    private int documentCount;
+    private int removedCount;
+    
+    /**
+     * A growable sorted list of document numbers
+     */
+    private static final class Postings {
+        int[] ids = new int[2];
+        int size;
+        
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            }
+            ids[size++] = id;
+        }
+        
+        void remove(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+                size--;
+            }
+        }
+    }
+    
+    /**
+     * Posting lists by packed trigram, with linear probing
+     */
+    private static final class TrigramTable {
+        long[] keys = new long[INITIAL_DOCUMENTS];
+        Postings[] values = new Postings[INITIAL_DOCUMENTS];
+        int size;
+        
+        Postings get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = slotOf(key, mask); values[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            return null;
+        }
+        
+        Postings getOrAdd(long key) {
+            Postings list = get(key);
+            if (list != null) {
+                return list;
+            }
+            if (2 * (size + 1) > keys.length) {
+                resize(keys.length * 2);
+            }
+            list = new Postings();
+            put(key, list);
+            size++;
+            return list;
+        }
+        
+        /**
+         * Remove a key, moving later entries of its probe run back into the gap
+         */
+        void remove(long key) {
+            int mask = keys.length - 1;
+            int slot = slotOf(key, mask);
+            while (values[slot] != null && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (values[slot] == null) {
+                return;
+            }
+            size--;
+            for (int next = (slot + 1) & mask; values[next] != null; next = (next + 1) & mask) {
+                int home = slotOf(keys[next], mask);
+                // Move the entry if the gap lies between its home slot and where it sits
+                if (((next - home) & mask) >= ((next - slot) & mask)) {
+                    keys[slot] = keys[next];
+                    values[slot] = values[next];
+                    slot = next;
+                }
+            }
+            values[slot] = null;
+        }
+        
+        void clear() {
+            Arrays.fill(values, null);
+            size = 0;
+        }
+        
+        private void put(long key, Postings list) {
+            int mask = keys.length - 1;
+            int slot = slotOf(key, mask);
+            while (values[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = list;
+        }
+        
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            Postings[] oldValues = values;
+            keys = new long[capacity];
+            values = new Postings[capacity];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+        
+        private static int slotOf(long key, int mask) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+        }
+    }
+    
+    /**
+     * Add an account to the index
+     * 
+     * @param account The account to add
+     */
+    public void add(Account account) {
+        lock.writeLock().lock();
+        try {
+            addLocked(account);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Remove an account from the index
+     * 
+     * @param account The account to remove
+     */
+    public void remove(Account account) {
+        lock.writeLock().lock();
+        try {
+            int id = documentOf(account);
+            if (id < 0) {
+                return;
+            }
+            for (int at = starts[id]; at + 3 <= starts[id + 1]; at++) {
+                long key = trigram(names, at);
+                Postings list = postings.get(key);
+                if (list != null) {
+                    list.remove(id);
+                    if (list.size == 0) {
+                        postings.remove(key);
+                    }
+                }
+            }
+            documents[id] = null;
+            removedCount++;
+            if (removedCount > INITIAL_DOCUMENTS && removedCount > documentCount / 2) {
+                rebuild();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Search for accounts whose holder name contains the query, ignoring case
+     * 
+     * @param query The text to search for; an empty query matches every account
+     * @param limit The most accounts to return
+     * @return The matching accounts, best match first, or an empty list for a null query
+     */
+    public List<Account> search(String query, int limit) {
+        if (query == null || limit <= 0) {
+            return new ArrayList<>();
+        }
+        char[] folded = fold(query);
+        lock.readLock().lock();
+        try {
+            int[] candidates = folded.length >= 3 ? candidates(folded) : null;
+            int total = candidates != null ? candidates.length : documentCount;
+            // Below the limit every match is kept; beyond it a max-heap keeps the best ones
+            long[] ranked = new long[Math.min(limit, Math.min(Math.max(total, 1), INITIAL_DOCUMENTS))];
+            int count = 0;
+            for (int c = 0; c < total; c++) {
+                int id = candidates != null ? candidates[c] : c;
+                if (documents[id] == null) {
+                    continue;
+                }
+                int start = starts[id];
+                int end = starts[id + 1];
+                int at = indexOf(names, start, end, folded);
+                if (at < 0) {
+                    continue;
+                }
+                // Sorting these keys orders by rank, then name length, then document number
+                long key = (long) rankOf(names, start, end, folded, at) << 56
+                        | (long) Math.min(end - start, 0xffffff) << 32 | id;
+                if (count < limit) {
+                    if (count == ranked.length) {
+                        ranked = Arrays.copyOf(ranked, (int) Math.min((long) limit, count * 2L));
+                    }
+                    ranked[count++] = key;
+                    if (count == limit) {
+                        heapify(ranked, count);
+                    }
+                } else if (key < ranked[0]) {
+                    ranked[0] = key;
+                    siftDown(ranked, 0, count);
+                }
+            }
+            Arrays.sort(ranked, 0, count);
+            List<Account> results = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                results.add(documents[(int) ranked[i]]);
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Get the number of accounts in the index
+     * 
+     * @return The number of indexed accounts
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documentCount - removedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Get the number of distinct trigrams in the index
+     * 
+     * @return The number of posting lists
+     */
+    public int trigramCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private void addLocked(Account account) {
+        String name = account.getAccountHolder();
+        if (documentCount == documents.length) {
+            documents = Arrays.copyOf(documents, documentCount + (documentCount >> 1));
+            starts = Arrays.copyOf(starts, documents.length + 1);
+        }
+        int start = starts[documentCount];
+        if (start + name.length() > names.length) {
+            names = Arrays.copyOf(names, Math.max(start + name.length(), names.length + (names.length >> 1)));
+        }
+        for (int i = 0; i < name.length(); i++) {
+            names[start + i] = fold(name.charAt(i));
+        }
+        int id = documentCount++;
+        documents[id] = account;
+        starts[documentCount] = start + name.length();
+        for (int at = start; at + 3 <= starts[documentCount]; at++) {
+            Postings list = postings.getOrAdd(trigram(names, at));
+            // A name repeating a trigram adds its document only once
+            if (list.size == 0 || list.ids[list.size - 1] != id) {
+                list.add(id);
+            }
+        }
+    }
+    
+    /**
+     * Find an account's document number through the postings of its own name
+     * 
+     * @return The document number, or -1 if the account is not indexed
+     */
+    private int documentOf(Account account) {
+        char[] name = fold(account.getAccountHolder());
+        if (name.length >= 3) {
+            for (int id : candidates(name)) {
+                if (documents[id] == account) {
+                    return id;
+                }
+            }
+            return -1;
+        }
+        for (int id = 0; id < documentCount; id++) {
+            if (documents[id] == account) {
+                return id;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Intersect the posting lists of every trigram in the folded query
+     * 
+     * @return The document numbers holding all of them, in order
+     */
+    private int[] candidates(char[] query) {
+        int grams = query.length - 2;
+        Postings[] lists = new Postings[grams];
+        for (int i = 0; i < grams; i++) {
+            Postings list = postings.get(trigram(query, i));
+            if (list == null) {
+                return new int[0];
+            }
+            lists[i] = list;
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        
+        int[] result = Arrays.copyOf(lists[0].ids, lists[0].size);
+        int size = result.length;
+        for (int l = 1; l < lists.length && size > VERIFY_THRESHOLD; l++) {
+            if (lists[l] == lists[l - 1]) {
+                continue;
+            }
+            int[] ids = lists[l].ids;
+            int limit = lists[l].size;
+            int from = 0;
+            int kept = 0;
+            for (int i = 0; i < size && from < limit; i++) {
+                from = gallop(ids, from, limit, result[i]);
+                if (from < limit && ids[from] == result[i]) {
+                    result[kept++] = result[i];
+                }
+            }
+            size = kept;
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+    
+    /**
+     * Find the first index at or after from whose value is not below target
+     * Doubles the step first, so skipping far ahead in a long list is cheap.
+     */
+    private static int gallop(int[] ids, int from, int limit, int target) {
+        int step = 1;
+        int high = from;
+        while (high < limit && ids[high] < target) {
+            from = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        int index = Arrays.binarySearch(ids, from, Math.min(high + 1, limit), target);
+        return index >= 0 ? index : -index - 1;
+    }
+    
+    /**
+     * Renumber the live accounts and rebuild every posting list
+     */
+    private void rebuild() {
+        int live = documentCount - removedCount;
+        Account[] old = documents;
+        int oldCount = documentCount;
+        postings.clear();
+        documents = new Account[Math.max(INITIAL_DOCUMENTS, live)];
+        starts = new int[documents.length + 1];
+        names = new char[Math.max(INITIAL_DOCUMENTS * 16, names.length / 2)];
+        documentCount = 0;
+        removedCount = 0;
+        for (int id = 0; id < oldCount; id++) {
+            if (old[id] != null) {
+                addLocked(old[id]);
+            }
+        }
+    }
+    
+    /**
+     * Restore order on a max-heap of the first count keys
+     */
+    private static void heapify(long[] heap, int count) {
+        for (int i = count / 2 - 1; i >= 0; i--) {
+            siftDown(heap, i, count);
+        }
+    }
+    
+    private static void siftDown(long[] heap, int i, int count) {
+        long key = heap[i];
+        while (2 * i + 1 < count) {
+            int child = 2 * i + 1;
+            if (child + 1 < count && heap[child + 1] > heap[child]) {
+                child++;
+            }
+            if (heap[child] <= key) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = key;
+    }
+    
+    private static int rankOf(char[] text, int start, int end, char[] query, int at) {
+        if (at == start) {
+            return end - start == query.length ? RANK_EXACT : RANK_PREFIX;
+        }
+        // This or a later word may start with the query
+        for (int i = at; i >= 0; i = indexOf(text, i + 1, end, query)) {
+            if (Character.isWhitespace(text[i - 1])) {
+                return RANK_WORD;
+            }
+        }
+        return RANK_SUBSTRING;
+    }
+    
+    /**
+     * Find the folded query in text between start and end
+     * 
+     * @return The index in text, or -1 if not found
+     */
+    private static int indexOf(char[] text, int start, int end, char[] query) {
+        if (query.length == 0) {
+            return start <= end ? start : -1;
+        }
+        char first = query[0];
+        for (int i = start; i + query.length <= end; i++) {
+            if (text[i] != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < query.length && text[i + j] == query[j]) {
+                j++;
+            }
+            if (j == query.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Pack the three characters at index into one key
+     */
+    private static long trigram(char[] text, int index) {
+        return (long) text[index] << 32 | (long) text[index + 1] << 16 | text[index + 2];
+    }
+    
+    private static char[] fold(String text) {
+        char[] folded = new char[text.length()];
+        for (int i = 0; i < folded.length; i++) {
+            folded[i] = fold(text.charAt(i));
+        }
+        return folded;
+    }
+    
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
@@ -0,0 +1,159 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * RemoteShard class reaching a shard in a ShardServer process over loopback
+ * Requests from any number of threads are written to one connection as
+ * they are submitted and answered in whatever order the server finishes
+ * them, matched by request ID, so a caller never waits for another
+ * caller's request. A reader thread completes the futures; if the
+ * connection is lost every outstanding request fails, and a request not
+ * answered within the timeout fails on its own, so a shard process that
+ * hangs cannot hold up its callers for good. A late answer is dropped.
+ * 
+ * The frames are described in ShardServer.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class RemoteShard implements Shard {
+    /** How long a request waits for its answer by default, in milliseconds */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10_000L;
+    
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+    private final Map<Integer, CompletableFuture<Long>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final long timeoutMillis;
+    private volatile IOException failure;
+    
+    private RemoteShard(Socket socket, long timeoutMillis) throws IOException {
+        this.socket = socket;
+        this.timeoutMillis = timeoutMillis;
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    }
+    
+    /**
+     * Connect to a shard process on this machine
+     * 
+     * @param port The port the ShardServer listens on
+     * @return The shard
+     * @throws IOException if the server cannot be reached
+     */
+    public static RemoteShard connect(int port) throws IOException {
+        return connect(port, DEFAULT_TIMEOUT_MILLIS);
+    }
+    
+    /**
+     * Connect to a shard process on this machine with a request timeout
+     * 
+     * @param port The port the ShardServer listens on
+     * @param timeoutMillis How long a request waits for its answer before failing with a TimeoutException
+     * @return The shard
+     * @throws IOException if the server cannot be reached
+     */
+    public static RemoteShard connect(int port, long timeoutMillis) throws IOException {
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+        RemoteShard shard = new RemoteShard(socket, timeoutMillis);
+        Thread reader = new Thread(shard::readResponses, "shard-client-" + port);
+        reader.setDaemon(true);
+        reader.start();
+        return shard;
+    }
+    
+    @Override
+    public CompletableFuture<Long> submit(byte op, long tx, long amount, String a, String b, String c) {
+        int id = nextId.incrementAndGet();
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        pending.put(id, result);
+        result.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+              .whenComplete((value, thrown) -> pending.remove(id, result));
+        try {
+            synchronized (out) {
+                if (failure != null) {
+                    throw failure;
+                }
+                out.writeInt(id);
+                out.writeByte(op);
+                out.writeLong(tx);
+                out.writeLong(amount);
+                out.writeByte((a != null ? 1 : 0) | (b != null ? 2 : 0) | (c != null ? 4 : 0));
+                for (String text : new String[] {a, b, c}) {
+                    if (text != null) {
+                        out.writeUTF(text);
+                    }
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            pending.remove(id);
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+    
+    /**
+     * Close the connection; requests still outstanding fail
+     * 
+     * @throws IOException if the socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+    
+    /**
+     * Complete the futures as responses arrive, until the connection ends
+     */
+    private void readResponses() {
+        IOException cause;
+        try {
+            while (true) {
+                int id = in.readInt();
+                boolean ok = in.readBoolean();
+                CompletableFuture<Long> result = pending.remove(id);
+                if (ok) {
+                    long value = in.readLong();
+                    if (result != null) {
+                        result.complete(value);
+                    }
+                } else {
+                    String message = in.readUTF();
+                    if (result != null) {
+                        result.completeExceptionally(new IllegalStateException(message));
+                    }
+                }
+            }
+        } catch (EOFException e) {
+            cause = new IOException("Shard closed the connection");
+        } catch (IOException e) {
+            cause = e;
+        }
+        synchronized (out) {
+            failure = cause;
+        }
+        for (Integer id : pending.keySet()) {
+            CompletableFuture<Long> result = pending.remove(id);
+            if (result != null) {
+                result.completeExceptionally(cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Shard interface for one partition of a ShardedBank
+ * A shard owns the accounts the ShardRing assigns to it and executes
+ * requests for them one at a time, in the order they arrive. Every request
+ * is an operation code, two numbers and up to three strings, and every
+ * result is a number, so the same requests run on a BankShard in this JVM
+ * or on one in another process through RemoteShard.
+ * 
+ * Transfers between shards use two-phase commit. PREPARE_DEBIT holds the
+ * amount out of the paying account's balance and PREPARE_CREDIT checks the
+ * receiving account; COMMIT then posts both sides and ABORT releases the
+ * hold. Both answer with the transfer's status on the shard afterwards,
+ * so the coordinator can tell a shard that settled the transfer from one
+ * that never prepared it. A shard remembers the outcome of recent
+ * transfers so STATUS can tell a recovering coordinator whether a transfer
+ * was committed anywhere.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public interface Shard extends Closeable {
+    /** Open an account: a = number, b = PIN, c = holder, amount = opening balance; 1 if opened */
+    byte OPEN = 1;
+    /** Balance of account a in paise, or -1 if there is no such account */
+    byte BALANCE = 2;
+    /** Check PIN b of account a; 1 if it matches */
+    byte AUTHENTICATE = 3;
+    /** Deposit amount into account a; 1 if deposited */
+    byte DEPOSIT = 4;
+    /** Withdraw amount from account a; 1 if withdrawn */
+    byte WITHDRAW = 5;
+    /** Transfer amount from account a to account b, both on this shard; 1 if transferred */
+    byte TRANSFER = 6;
+    /** Hold amount out of account a for transfer tx; 1 if held */
+    byte PREPARE_DEBIT = 7;
+    /** Check account a can receive transfer tx of amount; 1 if it can */
+    byte PREPARE_CREDIT = 8;
+    /** Post transfer tx; its STATUS_ value here afterwards, STATUS_UNKNOWN if it was never prepared here */
+    byte COMMIT = 9;
+    /** Release transfer tx; its STATUS_ value here afterwards, STATUS_UNKNOWN if it was never prepared here */
+    byte ABORT = 10;
+    /** What this shard knows of transfer tx: one of the STATUS_ values */
+    byte STATUS = 11;
+    /** The lowest prepared transfer above tx that has waited at least amount milliseconds, or 0 */
+    byte NEXT_IN_DOUBT = 12;
+    /** Total posted balance of the shard in paise */
+    byte TOTAL = 13;
+    
+    /** STATUS result for a transfer the shard has no record of */
+    long STATUS_UNKNOWN = 0L;
+    /** STATUS result for a transfer prepared and waiting for the decision */
+    long STATUS_PREPARED = 1L;
+    /** STATUS result for a committed transfer */
+    long STATUS_COMMITTED = 2L;
+    /** STATUS result for an aborted transfer */
+    long STATUS_ABORTED = 3L;
+    
+    /**
+     * Queue a request for the shard
+     * 
+     * @param op The operation code
+     * @param tx The transfer ID, for the two-phase operations
+     * @param amount The amount in paise, or the operation's number argument
+     * @param a The first string argument, usually an account number, or null
+     * @param b The second string argument, or null
+     * @param c The third string argument, or null
+     * @return The result, completed once the shard has executed the request;
+     *         completed exceptionally if the shard cannot be reached
+     */
+    CompletableFuture<Long> submit(byte op, long tx, long amount, String a, String b, String c);
+}
@@ -0,0 +1,92 @@
+import java.util.Arrays;
+
+/**
+ * ShardRing class assigning account numbers to shards by consistent hashing
+ * Each shard is placed on a ring of 64-bit hashes at VIRTUAL_NODES points,
+ * and an account belongs to the shard at the first point at or after the
+ * hash of its number. With that many points per shard each one owns close
+ * to an equal share of accounts, and going from n to n + 1 shards moves
+ * only about 1 / (n + 1) of the accounts, all of them to the new shard.
+ * 
+ * The ring is immutable; a lookup is a hash of the account number and a
+ * binary search over the sorted points.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class ShardRing {
+    /** Points on the ring per shard */
+    public static final int VIRTUAL_NODES = 128;
+    
+    private final int shards;
+    private final long[] points;
+    private final int[] owners;
+    
+    /**
+     * Constructor to create a ring for a number of shards
+     * 
+     * @param shards The number of shards, from 1 to 65535
+     */
+    public ShardRing(int shards) {
+        if (shards < 1 || shards > 0xFFFF) {
+            throw new IllegalArgumentException("A ring holds 1 to 65535 shards: " + shards);
+        }
+        this.shards = shards;
+        long[] placed = new long[shards * VIRTUAL_NODES];
+        for (int s = 0; s < shards; s++) {
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                // The low bits carry the shard, which is small enough not to disturb the order
+                placed[s * VIRTUAL_NODES + v] = (mix((long) s << 32 | v) & ~0xFFFFL) | s;
+            }
+        }
+        Arrays.sort(placed);
+        this.points = new long[placed.length];
+        this.owners = new int[placed.length];
+        for (int i = 0; i < placed.length; i++) {
+            points[i] = placed[i];
+            owners[i] = (int) (placed[i] & 0xFFFFL);
+        }
+    }
+    
+    /**
+     * Get the number of shards
+     * 
+     * @return The number of shards
+     */
+    public int getShards() {
+        return shards;
+    }
+    
+    /**
+     * Get the shard that owns an account
+     * 
+     * @param accountNumber The account number
+     * @return The shard, from 0 to getShards() - 1
+     */
+    public int shardOf(String accountNumber) {
+        int index = Arrays.binarySearch(points, hash(accountNumber));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+    
+    /**
+     * Hash an account number to a point on the ring
+     * FNV-1a over the characters, then a finalizer that spreads nearby
+     * numbers, such as consecutive account numbers, over the whole ring.
+     */
+    static long hash(String accountNumber) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < accountNumber.length(); i++) {
+            hash = (hash ^ accountNumber.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+    
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+        value = (value ^ (value >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return value ^ (value >>> 33);
+    }
+}
@@ -0,0 +1,221 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * ShardServer class running one shard of a ShardedBank as its own process
+ * Coordinators connect with RemoteShard over loopback. Each connection has
+ * a reader that queues requests to the BankShard as fast as they arrive
+ * and a writer that sends the results as the shard finishes them, writing
+ * every result that is ready with a single flush.
+ * 
+ * A request frame is the request ID (int), the operation (byte), the
+ * transfer ID and amount (two longs), a byte with bit 0, 1 and 2 set for
+ * each of the strings a, b and c present, and the present strings in
+ * modified UTF-8. A response frame is the request ID, true and the result
+ * (long), or the request ID, false and an error message.
+ * 
+ * Usage:
+ *        java [-Datm.journal=shard0.journal] ShardServer port
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class ShardServer implements Closeable {
+    private static final int ACCEPT_BACKLOG = 64;
+    
+    private final BankShard shard;
+    private final ServerSocket serverSocket;
+    
+    /**
+     * One finished request waiting to be written
+     */
+    private static final class Response {
+        final int id;
+        final long value;
+        final String error;
+        
+        Response(int id, long value, String error) {
+            this.id = id;
+            this.value = value;
+            this.error = error;
+        }
+    }
+    
+    /**
+     * Constructor to create a server listening on a local port
+     * 
+     * @param shard The shard the requests act on
+     * @param port The TCP port; 0 picks a free port
+     * @throws IOException if the port cannot be bound
+     */
+    public ShardServer(BankShard shard, int port) throws IOException {
+        this.shard = shard;
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), ACCEPT_BACKLOG);
+    }
+    
+    /**
+     * Get the port the server is listening on
+     * 
+     * @return The local port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+    
+    /**
+     * Accept connections on the calling thread until the server is closed
+     * 
+     * @throws IOException if accepting fails for a reason other than close
+     */
+    public void serve() throws IOException {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                throw e;
+            }
+            socket.setTcpNoDelay(true);
+            Thread.ofVirtual().name("shard-connection").start(() -> runConnection(socket));
+        }
+    }
+    
+    /**
+     * Stop accepting connections; connections already open continue
+     * 
+     * @throws IOException if the listening socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+    
+    /**
+     * Read requests from one coordinator and hand them to the shard
+     * 
+     * @param socket The coordinator connection
+     */
+    private void runConnection(Socket socket) {
+        BlockingQueue<Response> responses = new LinkedBlockingQueue<>();
+        Thread writer;
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            writer = Thread.ofVirtual().name("shard-writer").start(() -> writeResponses(socket, out, responses));
+        } catch (IOException e) {
+            closeQuietly(socket);
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            while (true) {
+                int id = in.readInt();
+                byte op = in.readByte();
+                long tx = in.readLong();
+                long amount = in.readLong();
+                int present = in.readByte();
+                String a = (present & 1) != 0 ? in.readUTF() : null;
+                String b = (present & 2) != 0 ? in.readUTF() : null;
+                String c = (present & 4) != 0 ? in.readUTF() : null;
+                shard.submit(op, tx, amount, a, b, c).whenComplete((value, thrown) -> {
+                    if (thrown == null) {
+                        responses.add(new Response(id, value, null));
+                    } else {
+                        Throwable cause = thrown instanceof CompletionException && thrown.getCause() != null
+                                          ? thrown.getCause() : thrown;
+                        responses.add(new Response(id, 0L, String.valueOf(cause.getMessage())));
+                    }
+                });
+            }
+        } catch (EOFException e) {
+            // The coordinator disconnected
+        } catch (IOException e) {
+            // The connection failed; the coordinator will see it too
+        } finally {
+            writer.interrupt();
+            closeQuietly(socket);
+        }
+    }
+    
+    /**
+     * Write finished requests until the connection ends
+     */
+    private static void writeResponses(Socket socket, DataOutputStream out, BlockingQueue<Response> responses) {
+        List<Response> batch = new ArrayList<>();
+        try {
+            while (true) {
+                batch.add(responses.take());
+                responses.drainTo(batch);
+                for (Response response : batch) {
+                    out.writeInt(response.id);
+                    out.writeBoolean(response.error == null);
+                    if (response.error == null) {
+                        out.writeLong(response.value);
+                    } else {
+                        out.writeUTF(response.error);
+                    }
+                }
+                out.flush();
+                batch.clear();
+            }
+        } catch (InterruptedException | IOException e) {
+            closeQuietly(socket);
+        }
+    }
+    
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+    
+    /**
+     * Main method to run a shard process
+     * If "atm.journal" names a file, the shard's accounts are recovered
+     * from it and every change is journaled to it (durability from
+     * "atm.durability", default GROUP).
+     * 
+     * @param args The port to listen on, default 0 (any free port)
+     */
+    public static void main(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        Bank bank = new Bank("Shard " + port);
+        String journal = System.getProperty("atm.journal");
+        try {
+            if (journal != null) {
+                Journal.Durability durability = Journal.Durability.valueOf(
+                        System.getProperty("atm.durability", "GROUP").toUpperCase());
+                bank.recover(null, Paths.get(journal), durability, Long.getLong("atm.journal.latency", 200L),
+                             Runtime.getRuntime().availableProcessors());
+            }
+            try (ShardServer server = new ShardServer(new BankShard(bank, String.valueOf(port)), port)) {
+                System.out.println("✓ Shard listening on port " + server.getPort() + " with "
+                                   + bank.getTotalAccounts() + " accounts");
+                server.serve();
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("✗ Shard could not start: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,488 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * ShardedBank class spreading accounts over several independent shards
+ * The ShardRing maps every account number to one shard, and operations on
+ * one account go to that shard alone, so with each shard running on its own
+ * thread (BankShard) or in its own process (RemoteShard) throughput grows
+ * with the number of shards instead of queueing behind one Bank.
+ * 
+ * A transfer between two accounts of one shard is an ordinary local
+ * transfer. A transfer between shards uses two-phase commit, with this
+ * class as the coordinator: both shards are asked to prepare at once, the
+ * decision is recorded, and both are told to commit or abort. If the
+ * coordinator fails between the phases, or a shard cannot be reached, the
+ * transfer stays prepared on a shard with its money held. recoverInDoubt
+ * finds such transfers and settles them: committed if any shard committed
+ * it, aborted otherwise (no shard can have committed a transfer that was
+ * never decided). A coordinator that restarts can therefore settle
+ * transfers left behind by the previous one from the shards alone.
+ * 
+ * The decision for a transfer is recorded once, so recovery running
+ * alongside a slow transfer either sees the commit decision or makes the
+ * transfer abort before it can be decided. A decision is kept until every
+ * shard the transfer was prepared on reports it settled as decided; a
+ * shard that cannot be reached is told again by the next recovery run,
+ * and one that reports another outcome, or no record of a transfer it had
+ * prepared, is reported on System.err each run until it is put right.
+ * Given a decision log, decisions are journaled before any shard is told,
+ * so a coordinator restarted on the same log finishes them as decided.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class ShardedBank implements Closeable {
+    /** How long a transfer must have been prepared before recovery treats it as in doubt */
+    public static final long IN_DOUBT_AFTER_MILLIS = 5000L;
+    
+    private static final long DECISION_LOG_LATENCY_MICROS = 200L;
+    
+    private final ShardRing ring;
+    private final List<Shard> shards;
+    // Transfers decided but not yet settled on every shard they were prepared on
+    private final Map<Long, Decision> decisions = new ConcurrentHashMap<>();
+    private final Journal decisionLog;
+    
+    /**
+     * The decision for one transfer between shards
+     */
+    private static final class Decision {
+        final boolean commit;
+        // The shards the transfer was prepared on, or -1 for every shard
+        final int from;
+        final int to;
+        final long decidedAt;
+        // The decision's record in the decision log, or 0 if already durable or not logged
+        final long lsn;
+        
+        Decision(boolean commit, int from, int to, long decidedAt, long lsn) {
+            this.commit = commit;
+            this.from = from;
+            this.to = to;
+            this.decidedAt = decidedAt;
+            this.lsn = lsn;
+        }
+    }
+    
+    /**
+     * Constructor to create a bank over existing shards, keeping decisions in memory
+     * 
+     * @param shards The shards, in ring order; the same list must be used whenever the bank is recreated
+     */
+    public ShardedBank(List<? extends Shard> shards) {
+        this.ring = new ShardRing(shards.size());
+        this.shards = new ArrayList<>(shards);
+        this.decisionLog = null;
+    }
+    
+    /**
+     * Constructor to create a bank over existing shards that journals its decisions
+     * Decisions left unsettled in the log are loaded and sent again by the
+     * next recoverInDoubt. The log is then rewritten to hold only those, so
+     * it does not grow from one start to the next.
+     * 
+     * @param shards The shards, in ring order; the same list must be used whenever the bank is recreated
+     * @param decisionLog The decision log file, created if it does not exist
+     * @throws IOException if the log cannot be read or opened
+     */
+    public ShardedBank(List<? extends Shard> shards, Path decisionLog) throws IOException {
+        this.ring = new ShardRing(shards.size());
+        this.shards = new ArrayList<>(shards);
+        Consumer<Journal.Entry> load = entry -> {
+            if (entry.kind == Journal.DECIDED) {
+                decisions.put(entry.id, new Decision(entry.flag, (int) entry.amount, (int) entry.balance, 0L, 0L));
+            } else if (entry.kind == Journal.FORGOTTEN) {
+                decisions.remove(entry.id);
+            }
+        };
+        Journal.read(Journal.rolledPath(decisionLog), load);
+        Journal.read(decisionLog, load);
+        Journal log = Journal.open(decisionLog, Journal.Durability.GROUP, DECISION_LOG_LATENCY_MICROS);
+        try {
+            log.roll();
+            for (Map.Entry<Long, Decision> entry : decisions.entrySet()) {
+                Decision decision = entry.getValue();
+                log.logDecided(entry.getKey(), decision.commit, decision.from, decision.to);
+            }
+            log.flush();
+            log.deleteRolled();
+        } catch (IOException e) {
+            log.close();
+            throw e;
+        }
+        this.decisionLog = log;
+    }
+    
+    /**
+     * Create a bank whose shards all run in this JVM, each on its own thread
+     * 
+     * @param count The number of shards
+     * @return The bank
+     */
+    public static ShardedBank inProcess(int count) {
+        List<Shard> shards = new ArrayList<>();
+        for (int s = 0; s < count; s++) {
+            shards.add(new BankShard("shard-" + s));
+        }
+        return new ShardedBank(shards);
+    }
+    
+    /**
+     * Create a bank whose shards are ShardServer processes on this machine
+     * 
+     * @param ports The shards' ports, in ring order
+     * @return The bank
+     * @throws IOException if a shard cannot be reached
+     */
+    public static ShardedBank connect(int... ports) throws IOException {
+        return connect(null, ports);
+    }
+    
+    /**
+     * Create a bank whose shards are ShardServer processes on this machine, journaling its decisions
+     * 
+     * @param decisionLog The decision log file, or null to keep decisions in memory
+     * @param ports The shards' ports, in ring order
+     * @return The bank
+     * @throws IOException if a shard cannot be reached or the log cannot be opened
+     */
+    public static ShardedBank connect(Path decisionLog, int... ports) throws IOException {
+        List<Shard> shards = new ArrayList<>();
+        try {
+            for (int port : ports) {
+                shards.add(RemoteShard.connect(port));
+            }
+            return decisionLog == null ? new ShardedBank(shards) : new ShardedBank(shards, decisionLog);
+        } catch (IOException e) {
+            for (Shard shard : shards) {
+                shard.close();
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * Get the number of shards
+     * 
+     * @return The number of shards
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+    
+    /**
+     * Get the shard that owns an account
+     * 
+     * @param accountNumber The account number
+     * @return The shard's position in the ring
+     */
+    public int shardOf(String accountNumber) {
+        return ring.shardOf(accountNumber);
+    }
+    
+    /**
+     * Open an account on the shard that owns its number
+     * 
+     * @param accountNumber The account number
+     * @param pin The PIN
+     * @param accountHolder The name of the account holder
+     * @param initialBalance The opening balance in rupees
+     * @return true if opened, false if the number is taken or the balance is invalid
+     */
+    public boolean addAccount(String accountNumber, String pin, String accountHolder, double initialBalance) {
+        if (!Money.isValid(initialBalance) || initialBalance < 0) {
+            return false;
+        }
+        return call(accountNumber, Shard.OPEN, Money.toPaise(initialBalance), accountNumber, pin,
+                    accountHolder) == 1L;
+    }
+    
+    /**
+     * Get the balance of an account, less any amount held for transfers in progress
+     * 
+     * @param accountNumber The account number
+     * @return The balance in paise, or -1 if there is no such account
+     */
+    public long getBalancePaise(String accountNumber) {
+        return call(accountNumber, Shard.BALANCE, 0L, accountNumber, null, null);
+    }
+    
+    /**
+     * Authenticate a customer with account number and PIN
+     * 
+     * @param accountNumber The account number
+     * @param pin The PIN
+     * @return true if the PIN is right and the account's login limits allow the attempt
+     */
+    public boolean authenticate(String accountNumber, String pin) {
+        return call(accountNumber, Shard.AUTHENTICATE, 0L, accountNumber, pin, null) == 1L;
+    }
+    
+    /**
+     * Deposit money into an account
+     * 
+     * @param accountNumber The account number
+     * @param amount The amount in rupees
+     * @return true if deposited
+     */
+    public boolean deposit(String accountNumber, double amount) {
+        return Money.isValid(amount)
+               && call(accountNumber, Shard.DEPOSIT, Money.toPaise(amount), accountNumber, null, null) == 1L;
+    }
+    
+    /**
+     * Withdraw money from an account
+     * 
+     * @param accountNumber The account number
+     * @param amount The amount in rupees
+     * @return true if withdrawn
+     */
+    public boolean withdraw(String accountNumber, double amount) {
+        return Money.isValid(amount)
+               && call(accountNumber, Shard.WITHDRAW, Money.toPaise(amount), accountNumber, null, null) == 1L;
+    }
+    
+    /**
+     * Transfer money between two accounts, on the same shard or not
+     * 
+     * @param fromAccountNumber The paying account number
+     * @param toAccountNumber The receiving account number
+     * @param amount The amount in rupees
+     * @return true if the transfer was committed
+     */
+    public boolean transferMoney(String fromAccountNumber, String toAccountNumber, double amount) {
+        if (!Money.isValid(amount) || Money.toPaise(amount) <= 0 || fromAccountNumber.equals(toAccountNumber)) {
+            return false;
+        }
+        long paise = Money.toPaise(amount);
+        int from = ring.shardOf(fromAccountNumber);
+        int to = ring.shardOf(toAccountNumber);
+        if (from == to) {
+            return call(fromAccountNumber, Shard.TRANSFER, paise, fromAccountNumber, toAccountNumber, null) == 1L;
+        }
+        
+        long tx = TransactionIdGenerator.nextId();
+        CompletableFuture<Long> debit = shards.get(from).submit(Shard.PREPARE_DEBIT, tx, paise, fromAccountNumber,
+                                                                null, null);
+        CompletableFuture<Long> credit = shards.get(to).submit(Shard.PREPARE_CREDIT, tx, paise, toAccountNumber,
+                                                               null, null);
+        // A shard that cannot be reached votes no
+        boolean prepared = vote(debit) & vote(credit);
+        Decision decision = decide(tx, prepared, from, to);
+        finish(tx, decision);
+        return decision.commit;
+    }
+    
+    /**
+     * Get the total posted balance of all shards
+     * Amounts held for transfers in progress are still counted on the paying
+     * side, so the total does not change while transfers run.
+     * 
+     * @return The total in paise
+     */
+    public long getTotalBalancePaise() {
+        List<CompletableFuture<Long>> totals = new ArrayList<>();
+        for (Shard shard : shards) {
+            totals.add(shard.submit(Shard.TOTAL, 0L, 0L, null, null, null));
+        }
+        long total = 0L;
+        for (CompletableFuture<Long> shardTotal : totals) {
+            total += shardTotal.join();
+        }
+        return total;
+    }
+    
+    /**
+     * Settle the transfers that have been prepared or decided for too long
+     * Decisions not yet settled everywhere, including those loaded from the
+     * decision log, are sent again. Prepared transfers this coordinator
+     * decided are finished as decided. For any other, every shard is asked
+     * what it knows: if one committed it, it is committed everywhere, and
+     * otherwise it is aborted.
+     * 
+     * @param olderThanMillis Only transfers prepared or decided at least this long ago are settled
+     * @return The number of transfers found in doubt, whether or not every shard could be told
+     */
+    public int recoverInDoubt(long olderThanMillis) {
+        int found = 0;
+        long cutoff = System.currentTimeMillis() - olderThanMillis;
+        for (Map.Entry<Long, Decision> entry : decisions.entrySet()) {
+            if (entry.getValue().decidedAt <= cutoff) {
+                finish(entry.getKey(), entry.getValue());
+                found++;
+            }
+        }
+        for (int s = 0; s < shards.size(); s++) {
+            long tx = 0L;
+            while ((tx = shards.get(s).submit(Shard.NEXT_IN_DOUBT, tx, olderThanMillis, null, null, null)
+                                      .join()) != 0L) {
+                Decision decided = decisions.get(tx);
+                if (decided == null) {
+                    boolean committedSomewhere = false;
+                    int first = -1;
+                    int last = -1;
+                    for (int p = 0; p < shards.size(); p++) {
+                        long status = shards.get(p).submit(Shard.STATUS, tx, 0L, null, null, null).join();
+                        if (status != Shard.STATUS_UNKNOWN) {
+                            first = first < 0 ? p : first;
+                            last = p;
+                        }
+                        committedSomewhere |= status == Shard.STATUS_COMMITTED;
+                    }
+                    decided = decide(tx, committedSomewhere, first, last);
+                }
+                finish(tx, decided);
+                found++;
+            }
+        }
+        return found;
+    }
+    
+    /**
+     * Settle in-doubt transfers in the background
+     * Failures are reported on System.err and the next run tries again.
+     * 
+     * @param interval The time between the end of one run and the start of the next
+     * @param unit The unit of the interval
+     * @return The scheduler; shut it down to stop recovery
+     */
+    public ScheduledExecutorService scheduleRecovery(long interval, TimeUnit unit) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "transfer-recovery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                recoverInDoubt(IN_DOUBT_AFTER_MILLIS);
+            } catch (CompletionException e) {
+                System.err.println("Transfer recovery failed: " + e.getCause().getMessage());
+            }
+        }, interval, interval, unit);
+        return scheduler;
+    }
+    
+    /**
+     * Close the connections to the shards, or stop the shards running in this JVM, and the decision log
+     * 
+     * @throws IOException if a connection or the log cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        if (decisionLog != null) {
+            try {
+                decisionLog.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+    
+    /**
+     * Record the decision for a transfer unless one is already recorded
+     * With a decision log, the decision is durable before this returns.
+     * 
+     * @param from The paying shard, or -1 if the shards are not known
+     * @param to The receiving shard, or -1 if the shards are not known
+     * @return The decision recorded first
+     */
+    private Decision decide(long tx, boolean commit, int from, int to) {
+        Decision decision = decisions.computeIfAbsent(tx, key -> new Decision(
+                commit, from, to, System.currentTimeMillis(),
+                decisionLog != null ? decisionLog.logDecided(tx, commit, from, to) : 0L));
+        if (decision.lsn > 0) {
+            decisionLog.awaitDurable(decision.lsn);
+        }
+        return decision;
+    }
+    
+    /**
+     * Send the decision for a transfer and forget it once it is settled
+     * A shard that cannot be reached keeps the transfer prepared, and
+     * recoverInDoubt sends the decision again later. A shard that reports
+     * an outcome other than the decision is reported on System.err and the
+     * decision is kept.
+     * 
+     * @return true if every shard the transfer was prepared on settled it as decided
+     */
+    private boolean finish(long tx, Decision decision) {
+        byte op = decision.commit ? Shard.COMMIT : Shard.ABORT;
+        List<CompletableFuture<Long>> acks = new ArrayList<>();
+        for (int s = 0; s < shards.size(); s++) {
+            boolean participant = decision.from < 0 || s == decision.from || s == decision.to;
+            acks.add(participant ? shards.get(s).submit(op, tx, 0L, null, null, null) : null);
+        }
+        boolean settled = true;
+        for (int s = 0; s < acks.size(); s++) {
+            if (acks.get(s) == null) {
+                continue;
+            }
+            long status;
+            try {
+                status = acks.get(s).join();
+            } catch (CompletionException e) {
+                settled = false;
+                continue;
+            }
+            boolean asDecided = decision.commit ? status == Shard.STATUS_COMMITTED
+                                                : status != Shard.STATUS_COMMITTED;
+            // Told to every shard, the transfer is unknown on those it never involved
+            if (!asDecided && !(decision.from < 0 && status == Shard.STATUS_UNKNOWN)) {
+                settled = false;
+                System.err.println("✗ Transfer " + tx + " was decided " + (decision.commit ? "commit" : "abort")
+                                   + " but shard " + s + " reports it " + statusName(status)
+                                   + "; it must be settled by hand");
+            }
+        }
+        if (settled && decisions.remove(tx, decision) && decisionLog != null) {
+            decisionLog.logForgotten(tx);
+        }
+        return settled;
+    }
+    
+    private static String statusName(long status) {
+        if (status == Shard.STATUS_PREPARED) {
+            return "prepared";
+        } else if (status == Shard.STATUS_COMMITTED) {
+            return "committed";
+        } else if (status == Shard.STATUS_ABORTED) {
+            return "aborted";
+        }
+        return "unknown";
+    }
+    
+    private static boolean vote(CompletableFuture<Long> prepare) {
+        try {
+            return prepare.join() == 1L;
+        } catch (CompletionException e) {
+            return false;
+        }
+    }
+    
+    private long call(String accountNumber, byte op, long amount, String a, String b, String c) {
+        return shards.get(ring.shardOf(accountNumber)).submit(op, 0L, amount, a, b, c).join();
+    }
+}
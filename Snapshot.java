@@ -0,0 +1,394 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot class writing and loading a binary image of the whole bank
+ * A snapshot holds every official and every account with its full history,
+ * plus the journal position it was taken at. Startup loads the snapshot
+ * through memory-mapped segments on several threads and then only replays
+ * the journal tail written after that position.
+ * 
+ * Layout (big-endian):
+ * header  - magic, version, LSN, journal offset, creation time,
+ *           transaction type names, officials, outcomes of the latest
+ *           transfers between shards (ID, committed)
+ * segment - account count, then per account: number, PIN, holder, active,
+ *           balance, last LSN, prepared transfers (ID, signed amount,
+ *           time), entry count and the entries
+ *           (timestamp, amount, balance, ID, type)
+ * trailer - segment count, segment offsets, account count,
+ *           and finally the offset of the trailer itself
+ * 
+ * Each account is captured under its own lock together with the LSN of its
+ * last journal record, so journal records replayed on top of the snapshot
+ * are skipped for the accounts that already contain them. A shard's bank
+ * keeps its prepared transfers and their held money across a snapshot.
+ * Version 1 snapshots, written before shards existed, still load.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public final class Snapshot {
+    private static final int MAGIC = 0x41544D53; // "ATMS"
+    private static final int VERSION = 2;
+    private static final int SEGMENT_ACCOUNTS = 16 * 1024;
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final int ENTRY_BYTES = 4 * Long.BYTES + 1;
+    
+    /**
+     * The state of one account at the moment it was captured
+     */
+    static final class AccountState {
+        String pin;
+        boolean active;
+        long balance;
+        long lastLsn;
+        int historySize;
+        long[] prepared;
+        Account account;
+    }
+    
+    private Snapshot() {
+    }
+    
+    /**
+     * Write a snapshot of the bank to a file, replacing it atomically
+     * The bank stays in use while the snapshot is written.
+     * 
+     * @param bank The bank to capture
+     * @param path The snapshot file
+     * @return The journal position the snapshot covers
+     * @throws IOException if the file cannot be written
+     */
+    public static Journal.Position write(Bank bank, Path path) throws IOException {
+        Journal journal = bank.getJournal();
+        // Rolling moves the records the snapshot will contain out of the journal file
+        Journal.Position position = journal != null ? journal.roll() : new Journal.Position(0L, 0L);
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(channel);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putLong(position.lsn);
+            out.putLong(position.offset);
+            out.putLong(System.currentTimeMillis());
+            
+            int types = TransactionType.count();
+            out.putInt(types);
+            for (int code = 0; code < types; code++) {
+                out.putString(TransactionType.nameOf((byte) code));
+            }
+            
+            List<BankOfficial> officials = bank.getAllOfficials();
+            out.putInt(officials.size());
+            for (BankOfficial official : officials) {
+                out.putString(official.getOfficialId());
+                out.putString(official.getPassword());
+                out.putString(official.getRole());
+                out.putString(official.getName());
+            }
+            
+            Map<Long, Boolean> outcomes = bank.getTransferOutcomes();
+            out.putInt(outcomes.size());
+            for (Map.Entry<Long, Boolean> outcome : outcomes.entrySet()) {
+                out.putLong(outcome.getKey());
+                out.putByte(outcome.getValue() ? 1 : 0);
+            }
+            
+            List<Account> accounts = bank.getAllAccounts();
+            List<Long> segments = new ArrayList<>();
+            AccountState[] states = new AccountState[Math.min(SEGMENT_ACCOUNTS, Math.max(1, accounts.size()))];
+            for (int i = 0; i < states.length; i++) {
+                states[i] = new AccountState();
+            }
+            int written = 0;
+            for (int from = 0; from < accounts.size(); from += SEGMENT_ACCOUNTS) {
+                int to = Math.min(from + SEGMENT_ACCOUNTS, accounts.size());
+                int count = 0;
+                for (int i = from; i < to; i++) {
+                    // Accounts removed since the list was taken are left out
+                    if (accounts.get(i).captureState(states[count])) {
+                        count++;
+                    }
+                }
+                segments.add(out.position());
+                out.putInt(count);
+                for (int i = 0; i < count; i++) {
+                    writeAccount(out, states[i]);
+                    states[i].account = null;
+                }
+                written += count;
+            }
+            
+            long trailer = out.position();
+            out.putInt(segments.size());
+            for (long offset : segments) {
+                out.putLong(offset);
+            }
+            out.putInt(written);
+            out.putLong(trailer);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (journal != null) {
+            journal.deleteRolled();
+        }
+        return position;
+    }
+    
+    /**
+     * Load a snapshot file into an empty bank
+     * 
+     * @param bank The bank to fill
+     * @param path The snapshot file
+     * @param threads The number of threads parsing segments
+     * @return The journal position the snapshot covers
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    public static Journal.Position load(Bank bank, Path path, int threads) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < Long.BYTES) {
+                throw new IOException("Snapshot too short: " + path);
+            }
+            long trailer = map(channel, size - Long.BYTES, Long.BYTES).getLong();
+            if (trailer < 0 || trailer > size - Long.BYTES) {
+                throw new IOException("Corrupt snapshot trailer: " + path);
+            }
+            ByteBuffer in = map(channel, trailer, size - trailer);
+            long[] segments = new long[in.getInt()];
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = in.getLong();
+            }
+            
+            in = map(channel, 0L, segments.length > 0 ? segments[0] : trailer);
+            int version = in.getInt() == MAGIC ? in.getInt() : -1;
+            if (version != 1 && version != VERSION) {
+                throw new IOException("Not a bank snapshot: " + path);
+            }
+            Journal.Position position = new Journal.Position(in.getLong(), in.getLong());
+            in.getLong(); // creation time
+            
+            // Type codes are assigned at run time, so map them by name
+            byte[] codes = new byte[in.getInt()];
+            for (int i = 0; i < codes.length; i++) {
+                codes[i] = TransactionType.codeOf(getString(in));
+            }
+            
+            int officials = in.getInt();
+            for (int i = 0; i < officials; i++) {
+                bank.restoreOfficial(new BankOfficial(getString(in), getString(in), getString(in), getString(in)));
+            }
+            int outcomes = version > 1 ? in.getInt() : 0;
+            for (int i = 0; i < outcomes; i++) {
+                bank.recordTransferOutcome(in.getLong(), in.get() != 0);
+            }
+            
+            ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+            try {
+                List<Future<?>> results = new ArrayList<>();
+                for (int i = 0; i < segments.length; i++) {
+                    long start = segments[i];
+                    long end = i + 1 < segments.length ? segments[i + 1] : trailer;
+                    results.add(pool.submit(() -> {
+                        loadSegment(bank, map(channel, start, end - start), codes, version);
+                        return null;
+                    }));
+                }
+                for (Future<?> result : results) {
+                    result.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while loading snapshot", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Corrupt snapshot: " + path, e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+            return position;
+        }
+    }
+    
+    /**
+     * Write snapshots in the background at a fixed interval
+     * Failures are reported on System.err and the next run tries again.
+     * 
+     * @param bank The bank to capture
+     * @param path The snapshot file
+     * @param interval The time between the end of one snapshot and the start of the next
+     * @param unit The unit of the interval
+     * @return The scheduler; shut it down to stop taking snapshots
+     */
+    public static ScheduledExecutorService schedule(Bank bank, Path path, long interval, TimeUnit unit) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                write(bank, path);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Snapshot to " + path + " failed: " + e.getMessage());
+            }
+        }, interval, interval, unit);
+        return scheduler;
+    }
+    
+    /**
+     * Write one captured account and its history
+     */
+    private static void writeAccount(Output out, AccountState state) throws IOException {
+        Account account = state.account;
+        TransactionLog history = account.getHistory();
+        out.putString(account.getAccountNumber());
+        out.putString(state.pin);
+        out.putString(account.getAccountHolder());
+        out.putByte(state.active ? 1 : 0);
+        out.putLong(state.balance);
+        out.putLong(state.lastLsn);
+        out.putInt(state.prepared.length / 3);
+        for (long value : state.prepared) {
+            out.putLong(value);
+        }
+        out.putInt(state.historySize);
+        for (int i = 0; i < state.historySize; i++) {
+            ByteBuffer buffer = out.reserve(ENTRY_BYTES);
+            buffer.putLong(history.timestampAt(i));
+            buffer.putLong(history.amountAt(i));
+            buffer.putLong(history.balanceAt(i));
+            buffer.putLong(history.idAt(i));
+            buffer.put(history.typeAt(i));
+        }
+    }
+    
+    /**
+     * Rebuild the accounts of one segment and add them to the bank
+     */
+    private static void loadSegment(Bank bank, ByteBuffer in, byte[] codes, int version) {
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            Account account = new Account(getString(in), getString(in), getString(in));
+            boolean active = in.get() != 0;
+            long balance = in.getLong();
+            long lastLsn = in.getLong();
+            long[] prepared = new long[version > 1 ? 3 * in.getInt() : 0];
+            for (int p = 0; p < prepared.length; p++) {
+                prepared[p] = in.getLong();
+            }
+            account.restoreState(active, balance, lastLsn, prepared);
+            TransactionLog history = account.getHistory();
+            int entries = in.getInt();
+            for (int e = 0; e < entries; e++) {
+                long timestamp = in.getLong();
+                long amount = in.getLong();
+                long entryBalance = in.getLong();
+                long id = in.getLong();
+                history.append(codes[in.get()], amount, entryBalance, timestamp, id);
+            }
+            bank.restoreAccount(account);
+        }
+    }
+    
+    /**
+     * Map a read-only region of the snapshot file
+     */
+    private static MappedByteBuffer map(FileChannel channel, long start, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot region too large to map: " + length + " bytes");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+    }
+    
+    /**
+     * Read a length-prefixed UTF-8 string
+     */
+    private static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Buffered writer that keeps track of the file offset
+     */
+    private static final class Output {
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        private long flushed;
+        
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+        
+        long position() {
+            return flushed + buffer.position();
+        }
+        
+        ByteBuffer reserve(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+                if (buffer.capacity() < bytes) {
+                    buffer = ByteBuffer.allocate(bytes);
+                }
+            }
+            return buffer;
+        }
+        
+        void putByte(int value) throws IOException {
+            reserve(1).put((byte) value);
+        }
+        
+        void putInt(int value) throws IOException {
+            reserve(Integer.BYTES).putInt(value);
+        }
+        
+        void putLong(long value) throws IOException {
+            reserve(Long.BYTES).putLong(value);
+        }
+        
+        void putString(String value) throws IOException {
+            if (value == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            reserve(Integer.BYTES + bytes.length).putInt(bytes.length).put(bytes);
+        }
+        
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                flushed += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * StatementGenerator class writing account statements for a period
+ * An account's history is append-only and ordered by time, so the first
+ * and last entries of the period are found by binary search and only the
+ * entries in between are read. Each line is built in one reused
+ * StringBuilder straight from the history columns, copied into a reused
+ * character buffer and written to a buffered writer; no Transaction
+ * objects, intermediate lists or per-line strings are created, so a
+ * statement covering millions of entries runs in the same few kilobytes
+ * of memory as one covering ten.
+ * 
+ * A generator reuses its buffers between statements and is not thread
+ * safe; writeMonthly gives each of its threads its own.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class StatementGenerator {
+    private static final String SEPARATOR = "────────────────────────────────────────────────────────────";
+    private static final String NEW_LINE = System.lineSeparator();
+    private static final int WRITE_BUFFER = 16 * 1024;
+    // Accounts a monthly batch thread claims at a time
+    private static final int BATCH_CLAIM = 64;
+    
+    private final StringBuilder line = new StringBuilder(128);
+    private char[] chars = new char[128];
+    
+    /**
+     * Write the statement of an account for a period to a stream as UTF-8
+     * The stream is flushed but not closed.
+     * 
+     * @param account The account
+     * @param fromMillis The start of the period, included, in epoch milliseconds
+     * @param toMillis The end of the period, excluded, in epoch milliseconds
+     * @param out The stream to write to
+     * @return The number of transactions in the statement
+     * @throws IOException if the stream cannot be written
+     */
+    public int write(Account account, long fromMillis, long toMillis, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITE_BUFFER);
+        int count = write(account, fromMillis, toMillis, writer);
+        writer.flush();
+        return count;
+    }
+    
+    /**
+     * Write the statement of an account for a period
+     * The writer is neither flushed nor closed; callers should pass a
+     * buffered writer, as the statement is written one line at a time.
+     * Transactions recorded while the statement is written are left out.
+     * 
+     * @param account The account
+     * @param fromMillis The start of the period, included, in epoch milliseconds
+     * @param toMillis The end of the period, excluded, in epoch milliseconds
+     * @param out The writer to write to
+     * @return The number of transactions in the statement
+     * @throws IOException if the writer cannot be written
+     */
+    public int write(Account account, long fromMillis, long toMillis, Writer out) throws IOException {
+        LedgerEvents.Statement event = new LedgerEvents.Statement();
+        event.begin();
+        TransactionLog log = account.getHistory();
+        int size = log.size();
+        int first = log.countBefore(fromMillis, size);
+        int end = Math.max(first, log.countBefore(toMillis, size));
+        long opening = first > 0 ? log.balanceAt(first - 1) : 0L;
+        
+        writeLine(out, begin().append("ACCOUNT STATEMENT"));
+        writeLine(out, begin().append("Account Number: ").append(account.getAccountNumber()));
+        writeLine(out, begin().append("Account Holder: ").append(account.getAccountHolder()));
+        StringBuilder period = TimestampFormat.appendDate(begin().append("Period: "), fromMillis).append(" to ");
+        writeLine(out, TimestampFormat.appendDate(period, toMillis - 1L));
+        writeLine(out, Money.appendTo(begin().append("Opening Balance: ₹"), opening));
+        writeLine(out, begin().append(SEPARATOR));
+        
+        long credits = 0L;
+        long debits = 0L;
+        for (int i = first; i < end; i++) {
+            long amount = log.amountAt(i);
+            if (amount > 0) {
+                credits += amount;
+            } else {
+                debits -= amount;
+            }
+            // Same layout as Transaction.appendSummaryTo, read from the columns
+            StringBuilder row = TimestampFormat.appendDateTime(begin(), log.timestampAt(i));
+            row.append(" | ").append(TransactionType.nameOf(log.typeAt(i))).append(" | ");
+            Money.appendTo(row.append(amount > 0 ? "+₹" : "-₹"), Math.abs(amount));
+            writeLine(out, Money.appendTo(row.append(" | Balance: ₹"), log.balanceAt(i)));
+        }
+        if (first == end) {
+            writeLine(out, begin().append("No transactions in this period."));
+        }
+        
+        writeLine(out, begin().append(SEPARATOR));
+        writeLine(out, begin().append("Transactions: ").append(end - first));
+        writeLine(out, Money.appendTo(begin().append("Total Credits: ₹"), credits));
+        writeLine(out, Money.appendTo(begin().append("Total Debits: ₹"), debits));
+        writeLine(out, Money.appendTo(begin().append("Closing Balance: ₹"), end > 0 ? log.balanceAt(end - 1) : 0L));
+        event.finish(account.getAccountNumber(), fromMillis, toMillis, end - first);
+        return end - first;
+    }
+    
+    /**
+     * Write one statement file per account for a calendar month, in parallel
+     * Files are named after the account number and month, for example
+     * "123456789-2024-03.txt". Accounts opened after the month are skipped.
+     * 
+     * @param bank The bank
+     * @param month The month, in the system default time zone
+     * @param directory The directory to write the files to; it must exist
+     * @param threads The number of threads writing statements
+     * @return The number of statements written
+     * @throws IOException if a file cannot be written; the other threads stop early
+     */
+    public static int writeMonthly(Bank bank, YearMonth month, Path directory, int threads) throws IOException {
+        ZoneId zone = ZoneId.systemDefault();
+        long fromMillis = month.atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        long toMillis = month.plusMonths(1).atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        String suffix = "-" + month + ".txt";
+        List<Account> accounts = bank.getAllAccounts();
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger written = new AtomicInteger();
+        IOException[] failure = new IOException[1];
+        
+        Runnable worker = () -> {
+            StatementGenerator generator = new StatementGenerator();
+            try {
+                for (int from = next.getAndAdd(BATCH_CLAIM); from < accounts.size();
+                     from = next.getAndAdd(BATCH_CLAIM)) {
+                    for (int i = from; i < Math.min(from + BATCH_CLAIM, accounts.size()); i++) {
+                        Account account = accounts.get(i);
+                        TransactionLog log = account.getHistory();
+                        if (log.size() == 0 || log.timestampAt(0) >= toMillis) {
+                            continue;
+                        }
+                        Path file = directory.resolve(account.getAccountNumber() + suffix);
+                        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                            generator.write(account, fromMillis, toMillis, out);
+                        }
+                        written.incrementAndGet();
+                    }
+                }
+            } catch (IOException e) {
+                synchronized (failure) {
+                    if (failure[0] == null) {
+                        failure[0] = e;
+                    }
+                }
+                // Make the other threads run out of accounts
+                next.set(accounts.size());
+            }
+        };
+        
+        Thread[] workers = new Thread[Math.max(threads, 1) - 1];
+        for (int t = 0; t < workers.length; t++) {
+            workers[t] = new Thread(worker, "statement-" + t);
+            workers[t].start();
+        }
+        worker.run();
+        for (Thread thread : workers) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while writing statements", e);
+            }
+        }
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+        return written.get();
+    }
+    
+    /**
+     * Clear the line builder for the next line
+     */
+    private StringBuilder begin() {
+        line.setLength(0);
+        return line;
+    }
+    
+    /**
+     * Write a built line and a line separator without creating a String
+     */
+    private void writeLine(Writer out, StringBuilder text) throws IOException {
+        int length = text.length();
+        if (length > chars.length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        text.getChars(0, length, chars, 0);
+        out.write(chars, 0, length);
+        out.write(NEW_LINE);
+    }
+}
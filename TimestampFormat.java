@@ -0,0 +1,171 @@
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+/**
+ * TimestampFormat class rendering epoch-millisecond timestamps as text
+ * Digits are written straight into a StringBuilder without going through
+ * DateTimeFormatter. The calendar date and zone offset are computed once
+ * per local day (and per offset change) and cached, so rendering a long
+ * history costs a few divisions per row and no allocation.
+ * 
+ * All times are shown in the system default time zone.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public final class TimestampFormat {
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    
+    /**
+     * A span of time with a single local date and zone offset
+     */
+    private static final class Window {
+        final long start;
+        final long end;
+        final long localDayStart;
+        final int offsetMillis;
+        final int year;
+        final int month;
+        final int day;
+        
+        Window(long start, long end, long localDayStart, int offsetMillis, LocalDate date) {
+            this.start = start;
+            this.end = end;
+            this.localDayStart = localDayStart;
+            this.offsetMillis = offsetMillis;
+            this.year = date.getYear();
+            this.month = date.getMonthValue();
+            this.day = date.getDayOfMonth();
+        }
+    }
+    
+    private static final ZoneId zone = ZoneId.systemDefault();
+    private static volatile Window cached = windowFor(System.currentTimeMillis());
+    
+    private TimestampFormat() {
+    }
+    
+    /**
+     * Append a timestamp as "dd/MM/yyyy HH:mm"
+     * 
+     * @param sb The builder to append to
+     * @param millis The time in epoch milliseconds
+     * @return The same builder
+     */
+    public static StringBuilder appendDateTime(StringBuilder sb, long millis) {
+        Window w = window(millis);
+        int minuteOfDay = (int) ((millis + w.offsetMillis - w.localDayStart) / 60_000L);
+        appendDate(sb, w);
+        sb.append(' ');
+        append2(sb, minuteOfDay / 60).append(':');
+        return append2(sb, minuteOfDay % 60);
+    }
+    
+    /**
+     * Append a timestamp's date as "dd/MM/yyyy"
+     * 
+     * @param sb The builder to append to
+     * @param millis The time in epoch milliseconds
+     * @return The same builder
+     */
+    public static StringBuilder appendDate(StringBuilder sb, long millis) {
+        return appendDate(sb, window(millis));
+    }
+    
+    /**
+     * Append a timestamp's time as "HH:mm:ss"
+     * 
+     * @param sb The builder to append to
+     * @param millis The time in epoch milliseconds
+     * @return The same builder
+     */
+    public static StringBuilder appendTime(StringBuilder sb, long millis) {
+        Window w = window(millis);
+        int secondOfDay = (int) ((millis + w.offsetMillis - w.localDayStart) / 1000L);
+        append2(sb, secondOfDay / 3600).append(':');
+        append2(sb, secondOfDay / 60 % 60).append(':');
+        return append2(sb, secondOfDay % 60);
+    }
+    
+    /**
+     * Append a timestamp as "yyyyMMddHHmmssSSS", as used in transaction IDs
+     * 
+     * @param sb The builder to append to
+     * @param millis The time in epoch milliseconds
+     * @return The same builder
+     */
+    public static StringBuilder appendCompact(StringBuilder sb, long millis) {
+        Window w = window(millis);
+        int millisOfDay = (int) (millis + w.offsetMillis - w.localDayStart);
+        int secondOfDay = millisOfDay / 1000;
+        sb.append(w.year);
+        append2(sb, w.month);
+        append2(sb, w.day);
+        append2(sb, secondOfDay / 3600);
+        append2(sb, secondOfDay / 60 % 60);
+        append2(sb, secondOfDay % 60);
+        int fraction = millisOfDay % 1000;
+        if (fraction < 100) sb.append('0');
+        if (fraction < 10) sb.append('0');
+        return sb.append(fraction);
+    }
+    
+    private static StringBuilder appendDate(StringBuilder sb, Window w) {
+        append2(sb, w.day).append('/');
+        append2(sb, w.month).append('/');
+        return sb.append(w.year);
+    }
+    
+    private static StringBuilder append2(StringBuilder sb, int value) {
+        return sb.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+    
+    /**
+     * Get the cached window covering a timestamp, computing a new one if needed
+     * 
+     * @param millis The time in epoch milliseconds
+     * @return The window containing the timestamp
+     */
+    private static Window window(long millis) {
+        Window w = cached;
+        if (millis < w.start || millis >= w.end) {
+            w = windowFor(millis);
+            cached = w;
+        }
+        return w;
+    }
+    
+    /**
+     * Compute the local day and zone offset around a timestamp
+     * The window ends at local midnight or at the next offset change,
+     * whichever comes first.
+     * 
+     * @param millis The time in epoch milliseconds
+     * @return A window containing the timestamp
+     */
+    private static Window windowFor(long millis) {
+        ZoneRules rules = zone.getRules();
+        Instant instant = Instant.ofEpochMilli(millis);
+        ZoneOffset offset = rules.getOffset(instant);
+        int offsetMillis = offset.getTotalSeconds() * 1000;
+        long localMillis = millis + offsetMillis;
+        long epochDay = Math.floorDiv(localMillis, MILLIS_PER_DAY);
+        long localDayStart = epochDay * MILLIS_PER_DAY;
+        
+        long start = localDayStart - offsetMillis;
+        long end = start + MILLIS_PER_DAY;
+        ZoneOffsetTransition previous = rules.previousTransition(instant.plusMillis(1));
+        if (previous != null && previous.toEpochSecond() * 1000L > start) {
+            start = previous.toEpochSecond() * 1000L;
+        }
+        ZoneOffsetTransition next = rules.nextTransition(instant);
+        if (next != null && next.toEpochSecond() * 1000L < end) {
+            end = next.toEpochSecond() * 1000L;
+        }
+        return new Window(start, end, localDayStart, offsetMillis, LocalDate.ofEpochDay(epochDay));
+    }
+}
@@ -1,21 +1,22 @@
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.ZoneId;
 
 /**
  * Transaction class representing a bank transaction
  * Records transaction details with timestamp
+ * Accounts keep their history in a TransactionLog; a Transaction is a
+ * lightweight view of one log entry created when the history is read.
  * 
  * @author Prabhu Bhalke
  * @version 1.0
  */
 public class Transaction {
-    private String type;
-    private double amount;
-    private double balance;
-    private LocalDateTime timestamp;
-    private String transactionId;
-    
-    private static int transactionCounter = 1;
+    private byte type;
+    private long amount;
+    private long balance;
+    private long timestamp;
+    private long id;
     
     /**
      * Constructor to create a new transaction
@@ -25,21 +26,68 @@ public class Transaction {
      * @param balance The balance after transaction
      */
     public Transaction(String type, double amount, double balance) {
+        this(TransactionType.codeOf(type), Money.toPaise(amount), Money.toPaise(balance), System.currentTimeMillis(),
+             TransactionIdGenerator.nextId());
+    }
+    
+    /**
+     * Create a new transaction from paise amounts
+     * A named factory rather than a constructor, so a call with whole
+     * numbers such as ("Deposit", 500, 1000) still means rupees.
+     * 
+     * @param type The type of transaction
+     * @param amount The amount involved in paise
+     * @param balance The balance after transaction in paise
+     * @return The transaction
+     */
+    public static Transaction ofPaise(String type, long amount, long balance) {
+        return new Transaction(TransactionType.codeOf(type), amount, balance, System.currentTimeMillis(),
+                               TransactionIdGenerator.nextId());
+    }
+    
+    /**
+     * Constructor to create a view of a stored transaction
+     * 
+     * @param type The transaction type code
+     * @param amount The amount involved in paise
+     * @param balance The balance after transaction in paise
+     * @param timestamp The time of the transaction in epoch milliseconds
+     * @param id The transaction ID
+     */
+    Transaction(byte type, long amount, long balance, long timestamp, long id) {
         this.type = type;
         this.amount = amount;
         this.balance = balance;
-        this.timestamp = LocalDateTime.now();
-        this.transactionId = generateTransactionId();
+        this.timestamp = timestamp;
+        this.id = id;
     }
     
     /**
-     * Generate a unique transaction ID
+     * Render the transaction ID as "TXN" + time + node + sequence
+     * This only runs when the readable ID is asked for; the stored ID is
+     * the 64-bit value from TransactionIdGenerator.
      * 
      * @return The transaction ID
      */
     private String generateTransactionId() {
-        String timestamp = this.timestamp.format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-        return "TXN" + timestamp + String.format("%04d", transactionCounter++);
+        StringBuilder sb = new StringBuilder(28).append("TXN");
+        TimestampFormat.appendCompact(sb, TransactionIdGenerator.timestampOf(id));
+        appendPadded(sb, TransactionIdGenerator.nodeOf(id));
+        appendPadded(sb, TransactionIdGenerator.sequenceOf(id));
+        return sb.toString();
+    }
+    
+    /**
+     * Append a number of up to four digits, zero-padded to four
+     * 
+     * @param sb The builder to append to
+     * @param value The value between 0 and 9999
+     */
+    private static void appendPadded(StringBuilder sb, int value) {
+        if (value < 1000) sb.append('0');
+        if (value < 100) sb.append('0');
+        if (value < 10) sb.append('0');
+        sb.append(value);
     }
     
     /**
@@ -48,6 +96,15 @@ public class Transaction {
      * @return The transaction type
      */
     public String getType() {
+        return TransactionType.nameOf(type);
+    }
+    
+    /**
+     * Get the transaction type code
+     * 
+     * @return The transaction type code
+     */
+    public byte getTypeCode() {
         return type;
     }
     
@@ -57,6 +114,15 @@ public class Transaction {
      * @return The transaction amount
      */
     public double getAmount() {
+        return Money.toRupees(amount);
+    }
+    
+    /**
+     * Get the transaction amount in paise
+     * 
+     * @return The transaction amount in paise
+     */
+    public long getAmountPaise() {
         return amount;
     }
     
@@ -66,6 +132,15 @@ public class Transaction {
      * @return The balance
      */
     public double getBalance() {
+        return Money.toRupees(balance);
+    }
+    
+    /**
+     * Get the balance after transaction in paise
+     * 
+     * @return The balance in paise
+     */
+    public long getBalancePaise() {
         return balance;
     }
     
@@ -75,6 +150,15 @@ public class Transaction {
      * @return The timestamp
      */
     public LocalDateTime getTimestamp() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault());
+    }
+    
+    /**
+     * Get the transaction timestamp in epoch milliseconds
+     * 
+     * @return The timestamp in epoch milliseconds
+     */
+    public long getTimestampMillis() {
         return timestamp;
     }
     
@@ -84,7 +168,16 @@ public class Transaction {
      * @return The transaction ID
      */
     public String getTransactionId() {
-        return transactionId;
+        return generateTransactionId();
+    }
+    
+    /**
+     * Get the numeric transaction ID
+     * 
+     * @return The 64-bit transaction ID
+     */
+    public long getId() {
+        return id;
     }
     
     /**
@@ -93,7 +186,7 @@ public class Transaction {
      * @return Formatted date and time
      */
     public String getDateTime() {
-        return timestamp.format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm"));
+        return TimestampFormat.appendDateTime(new StringBuilder(16), timestamp).toString();
     }
     
     /**
@@ -102,7 +195,7 @@ public class Transaction {
      * @return Formatted date
      */
     public String getDate() {
-        return timestamp.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+        return TimestampFormat.appendDate(new StringBuilder(10), timestamp).toString();
     }
     
     /**
@@ -111,7 +204,7 @@ public class Transaction {
      * @return Formatted time
      */
     public String getTime() {
-        return timestamp.format(DateTimeFormatter.ofPattern("HH:mm:ss"));
+        return TimestampFormat.appendTime(new StringBuilder(8), timestamp).toString();
     }
     
     /**
@@ -138,7 +231,7 @@ public class Transaction {
      * @return The absolute amount
      */
     public double getAbsoluteAmount() {
-        return Math.abs(amount);
+        return Money.toRupees(Math.abs(amount));
     }
     
     /**
@@ -147,11 +240,20 @@ public class Transaction {
      * @return String representation of transaction summary
      */
     public String getTransactionSummary() {
-        String amountStr = isCredit() ? "+₹" : "-₹";
-        amountStr += String.format("%.2f", getAbsoluteAmount());
-        
-        return String.format("%s | %s | %s | Balance: ₹%.2f", 
-                           getDateTime(), type, amountStr, balance);
+        return appendSummaryTo(new StringBuilder(64)).toString();
+    }
+    
+    /**
+     * Append the transaction summary to a builder
+     * Screens that print many transactions reuse one builder for every row.
+     * 
+     * @param sb The builder to append to
+     * @return The same builder
+     */
+    public StringBuilder appendSummaryTo(StringBuilder sb) {
+        TimestampFormat.appendDateTime(sb, timestamp).append(" | ").append(getType()).append(" | ");
+        Money.appendTo(sb.append(isCredit() ? "+₹" : "-₹"), Math.abs(amount));
+        return Money.appendTo(sb.append(" | Balance: ₹"), balance);
     }
     
     /**
@@ -161,12 +263,12 @@ public class Transaction {
      */
     public String getDetailedInfo() {
         StringBuilder info = new StringBuilder();
-        info.append("Transaction ID: ").append(transactionId).append("\n");
-        info.append("Type: ").append(type).append("\n");
-        info.append("Amount: ₹").append(String.format("%.2f", amount)).append("\n");
-        info.append("Balance: ₹").append(String.format("%.2f", balance)).append("\n");
-        info.append("Date: ").append(getDate()).append("\n");
-        info.append("Time: ").append(getTime()).append("\n");
+        info.append("Transaction ID: ").append(getTransactionId()).append("\n");
+        info.append("Type: ").append(getType()).append("\n");
+        Money.appendTo(info.append("Amount: ₹"), amount).append("\n");
+        Money.appendTo(info.append("Balance: ₹"), balance).append("\n");
+        TimestampFormat.appendDate(info.append("Date: "), timestamp).append("\n");
+        TimestampFormat.appendTime(info.append("Time: "), timestamp).append("\n");
         return info.toString();
     }
     
@@ -180,11 +282,11 @@ public class Transaction {
         if (this == obj) return true;
         if (obj == null || getClass() != obj.getClass()) return false;
         Transaction that = (Transaction) obj;
-        return transactionId.equals(that.transactionId);
+        return id == that.id;
     }
     
     @Override
     public int hashCode() {
-        return transactionId.hashCode();
+        return Long.hashCode(id);
     }
 } 
\ No newline at end of file
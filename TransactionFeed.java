@@ -0,0 +1,340 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * TransactionFeed class listing transactions across all accounts, newest first
+ * Each account's history is already in time order, so the feed merges the
+ * histories with a heap holding one cursor per account (a k-way merge) and
+ * produces one transaction at a time; nothing is copied up front.
+ * 
+ * To avoid opening a cursor on every account, the feed keeps an activity
+ * register: for each second, the accounts that recorded a transaction in
+ * it. The merge walks the register from the newest second backwards and
+ * only opens cursors for the accounts active in the seconds it has
+ * reached, so the latest few hundred transactions cost a few hundred
+ * cursors whatever the size of the bank. The register costs at most one
+ * slot per account per second with activity, and only the last
+ * REGISTER_MILLIS are kept: seconds older than that behind the newest
+ * activity are dropped as new seconds start, slots of accounts that left
+ * the bank with them. A window that reaches back past the register opens a
+ * cursor on every account once the register runs out, as a bank without
+ * one would.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class TransactionFeed {
+    /** Width of one activity register bucket in milliseconds */
+    static final long BUCKET_MILLIS = 1000L;
+    /** How far back from the newest activity the register reaches, in milliseconds */
+    public static final long REGISTER_MILLIS = 15 * 60_000L;
+    
+    private final Map<String, Account> accounts;
+    private final ConcurrentSkipListMap<Long, Bucket> buckets = new ConcurrentSkipListMap<>();
+    // The register is complete from this bucket on; older buckets are dropped
+    private volatile long registeredFrom = Long.MIN_VALUE;
+    
+    /**
+     * One transaction in the feed together with its account
+     */
+    public static final class Entry {
+        private final Account account;
+        private final Transaction transaction;
+        
+        Entry(Account account, Transaction transaction) {
+            this.account = account;
+            this.transaction = transaction;
+        }
+        
+        /**
+         * Get the account
+         * 
+         * @return The account the transaction belongs to
+         */
+        public Account getAccount() {
+            return account;
+        }
+        
+        /**
+         * Get the transaction
+         * 
+         * @return The transaction
+         */
+        public Transaction getTransaction() {
+            return transaction;
+        }
+    }
+    
+    /**
+     * The accounts active during one bucket of time
+     */
+    private static final class Bucket {
+        private Account[] accounts = new Account[4];
+        private int size;
+        
+        synchronized void add(Account account) {
+            if (size == accounts.length) {
+                accounts = Arrays.copyOf(accounts, size * 2);
+            }
+            accounts[size++] = account;
+        }
+        
+        synchronized Account[] toArray() {
+            return Arrays.copyOf(accounts, size);
+        }
+    }
+    
+    /**
+     * Position of the merge in one account's history
+     */
+    private static final class Cursor {
+        final Account account;
+        final TransactionLog log;
+        int index;
+        long timestamp;
+        long id;
+        
+        Cursor(Account account, TransactionLog log, int index) {
+            this.account = account;
+            this.log = log;
+            this.index = index;
+            this.timestamp = log.timestampAt(index);
+            this.id = log.idAt(index);
+        }
+    }
+    
+    /**
+     * Constructor to create an empty feed over a bank's accounts
+     * 
+     * @param accounts The bank's accounts by account number
+     */
+    public TransactionFeed(Map<String, Account> accounts) {
+        this.accounts = accounts;
+    }
+    
+    /**
+     * Get the activity bucket of a time
+     * 
+     * @param timestamp The time in epoch milliseconds
+     * @return The bucket number
+     */
+    static long bucketOf(long timestamp) {
+        return Math.floorDiv(timestamp, BUCKET_MILLIS);
+    }
+    
+    /**
+     * Note that an account recorded a transaction in a bucket
+     * Accounts call this once per bucket, under their own lock. Activity
+     * older than the register reaches is not noted.
+     * 
+     * @param account The account
+     * @param bucket The bucket number, see bucketOf
+     */
+    void recordActivity(Account account, long bucket) {
+        if (bucket < registeredFrom) {
+            return;
+        }
+        Bucket active = buckets.get(bucket);
+        if (active == null) {
+            active = buckets.computeIfAbsent(bucket, key -> new Bucket());
+            prune(bucket);
+        }
+        active.add(account);
+    }
+    
+    /**
+     * Drop the buckets more than REGISTER_MILLIS older than a new one
+     * The floor moves before the buckets go, so a reader that finds a
+     * bucket at or above the floor knows none newer has been dropped.
+     */
+    private void prune(long newest) {
+        long cutoff = newest - REGISTER_MILLIS / BUCKET_MILLIS;
+        synchronized (buckets) {
+            if (cutoff <= registeredFrom) {
+                return;
+            }
+            registeredFrom = cutoff;
+        }
+        buckets.headMap(cutoff).clear();
+    }
+    
+    /**
+     * Collect the accounts that recorded a transaction at or after a time
+     * Accounts that have left the bank are skipped.
+     * 
+     * @param fromMillis The time in epoch milliseconds
+     * @param into The set to add the accounts to
+     * @param maxSlots The most register slots to visit
+     * @return false, with into incomplete, if the register holds more slots than that since the time or
+     *         no longer reaches back to it
+     */
+    boolean collectActiveSince(long fromMillis, Set<Account> into, long maxSlots) {
+        if (bucketOf(fromMillis) < registeredFrom) {
+            return false;
+        }
+        long visited = 0L;
+        for (Bucket bucket : buckets.tailMap(bucketOf(fromMillis), true).values()) {
+            Account[] active = bucket.toArray();
+            visited += active.length;
+            if (visited > maxSlots) {
+                return false;
+            }
+            for (Account account : active) {
+                if (accounts.get(account.getAccountNumber()) == account) {
+                    into.add(account);
+                }
+            }
+        }
+        // Buckets dropped while they were being read leave into incomplete
+        return bucketOf(fromMillis) >= registeredFrom;
+    }
+    
+    /**
+     * Get the most recent transactions across the bank
+     * 
+     * @param limit The most transactions to return
+     * @return Up to limit transactions, newest first
+     */
+    public List<Entry> latest(int limit) {
+        return page(Long.MIN_VALUE, Long.MAX_VALUE, null, limit);
+    }
+    
+    /**
+     * Get one page of the transactions in a time window, newest first
+     * To get the next (older) page, pass the last entry of this page.
+     * 
+     * @param fromMillis The earliest time included, in epoch milliseconds
+     * @param toMillis The latest time, excluded, in epoch milliseconds
+     * @param after The last entry already seen, or null for the first page
+     * @param limit The most transactions to return
+     * @return Up to limit transactions, newest first
+     */
+    public List<Entry> page(long fromMillis, long toMillis, Entry after, int limit) {
+        List<Entry> entries = new ArrayList<>(Math.min(Math.max(limit, 0), 1024));
+        Iterator<Entry> feed = iterator(fromMillis, toMillis, after);
+        while (entries.size() < limit && feed.hasNext()) {
+            entries.add(feed.next());
+        }
+        return entries;
+    }
+    
+    /**
+     * Stream the transactions in a time window, newest first
+     * Transactions recorded after the stream reaches an account are not included.
+     * 
+     * @param fromMillis The earliest time included, in epoch milliseconds
+     * @param toMillis The latest time, excluded, in epoch milliseconds
+     * @param after The last entry already seen, or null to start at toMillis
+     * @return An iterator producing one transaction at a time
+     */
+    public Iterator<Entry> iterator(long fromMillis, long toMillis, Entry after) {
+        return new Merge(fromMillis, toMillis, after);
+    }
+    
+    /**
+     * The k-way merge over the histories of the accounts reached so far
+     */
+    private final class Merge implements Iterator<Entry> {
+        private final long from;
+        private final long to;
+        private final Transaction after;
+        private final Iterator<Map.Entry<Long, Bucket>> pending;
+        private final Set<Account> opened = new HashSet<>();
+        // Newest first; transaction IDs break ties between equal timestamps
+        private final PriorityQueue<Cursor> heap = new PriorityQueue<>(
+                (a, b) -> a.timestamp != b.timestamp ? Long.compare(b.timestamp, a.timestamp) : Long.compare(b.id, a.id));
+        // Every transaction at or after this time is already reachable from the heap
+        private long reached = Long.MAX_VALUE;
+        
+        Merge(long fromMillis, long toMillis, Entry after) {
+            this.after = after == null ? null : after.getTransaction();
+            this.from = fromMillis;
+            this.to = this.after == null ? toMillis : Math.min(toMillis, this.after.getTimestampMillis() + 1);
+            if (from >= to) {
+                this.pending = new ConcurrentSkipListMap<Long, Bucket>().entrySet().iterator();
+                this.reached = from;
+            } else {
+                this.pending = buckets.subMap(bucketOf(from), true, bucketOf(to - 1), true)
+                        .descendingMap().entrySet().iterator();
+            }
+        }
+        
+        @Override
+        public boolean hasNext() {
+            fill();
+            return !heap.isEmpty();
+        }
+        
+        @Override
+        public Entry next() {
+            fill();
+            Cursor cursor = heap.poll();
+            if (cursor == null) {
+                throw new NoSuchElementException();
+            }
+            Entry entry = new Entry(cursor.account, cursor.log.get(cursor.index));
+            cursor.index--;
+            if (cursor.index >= 0 && cursor.log.timestampAt(cursor.index) >= from) {
+                cursor.timestamp = cursor.log.timestampAt(cursor.index);
+                cursor.id = cursor.log.idAt(cursor.index);
+                heap.add(cursor);
+            }
+            return entry;
+        }
+        
+        /**
+         * Open cursors for older buckets until the newest cursor is known to be next
+         * Once the buckets run out, or only dropped ones are left, a window
+         * reaching back past the register opens every account not yet opened.
+         */
+        private void fill() {
+            while (reached > from && (heap.isEmpty() || heap.peek().timestamp < reached)) {
+                Map.Entry<Long, Bucket> bucket = pending.hasNext() ? pending.next() : null;
+                long floor = registeredFrom;
+                if (bucket == null || bucket.getKey() < floor) {
+                    reached = from;
+                    if (bucketOf(from) < floor) {
+                        for (Account account : accounts.values()) {
+                            if (opened.add(account)) {
+                                open(account);
+                            }
+                        }
+                    }
+                    return;
+                }
+                reached = Math.max(bucket.getKey() * BUCKET_MILLIS, from);
+                for (Account account : bucket.getValue().toArray()) {
+                    if (opened.add(account) && accounts.get(account.getAccountNumber()) == account) {
+                        open(account);
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Place a cursor on the newest transaction of an account inside the window
+         */
+        private void open(Account account) {
+            TransactionLog log = account.getHistory();
+            int index = log.countBefore(to, log.size()) - 1;
+            if (after != null) {
+                // Skip what the previous page already returned at the same millisecond
+                while (index >= 0 && log.timestampAt(index) == after.getTimestampMillis()
+                        && log.idAt(index) >= after.getId()) {
+                    index--;
+                }
+            }
+            if (index >= 0 && log.timestampAt(index) >= from) {
+                heap.add(new Cursor(account, log, index));
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * TransactionIdGenerator class producing unique 64-bit transaction IDs
+ * IDs are laid out Snowflake-style, from the most significant bit:
+ * 41 bits of milliseconds since 2024-01-01, 10 bits of node id, 4 bits
+ * of stripe and 8 bits of sequence. Each thread draws from one of 16
+ * padded stripes, so generating an ID is a single compare-and-set on a
+ * counter shared with few other threads, with no locks or allocation.
+ * 
+ * When a stripe uses up its 256 sequence numbers within one millisecond
+ * it simply moves on to the next millisecond instead of waiting, so IDs
+ * from one stripe are strictly increasing.
+ * 
+ * The node id comes from the "atm.node.id" system property (0-1023) and
+ * must differ between bank processes that share transaction IDs.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public final class TransactionIdGenerator {
+    /** Start of the ID clock: 2024-01-01T00:00:00Z in epoch milliseconds */
+    public static final long EPOCH = 1704067200000L;
+    
+    private static final int SEQUENCE_BITS = 8;
+    private static final int STRIPE_BITS = 4;
+    private static final int NODE_BITS = 10;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+    private static final int NODE_SHIFT = SEQUENCE_BITS + STRIPE_BITS;
+    private static final int TIME_SHIFT = NODE_SHIFT + NODE_BITS;
+    
+    /** Largest valid node id */
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+    
+    // Each stripe sits 16 longs (128 bytes) apart to avoid false sharing
+    private static final int PADDING = 16;
+    private static final AtomicLongArray stripes = new AtomicLongArray(STRIPES * PADDING);
+    
+    private static final long nodeBits = (long) nodeIdFromProperty() << NODE_SHIFT;
+    
+    private TransactionIdGenerator() {
+    }
+    
+    /**
+     * Generate the next transaction ID
+     * 
+     * @return A positive ID unique across threads and nodes
+     */
+    public static long nextId() {
+        int stripe = (int) (Thread.currentThread().threadId() & (STRIPES - 1));
+        int slot = stripe * PADDING;
+        long now = System.currentTimeMillis() - EPOCH;
+        long current;
+        long next;
+        do {
+            // Each stripe holds (milliseconds << SEQUENCE_BITS | sequence)
+            current = stripes.get(slot);
+            next = (current >>> SEQUENCE_BITS) < now ? now << SEQUENCE_BITS : current + 1;
+        } while (!stripes.compareAndSet(slot, current, next));
+        
+        return (next >>> SEQUENCE_BITS) << TIME_SHIFT
+                | nodeBits
+                | (long) stripe << SEQUENCE_BITS
+                | (next & ((1 << SEQUENCE_BITS) - 1));
+    }
+    
+    /**
+     * Get the time component of an ID
+     * 
+     * @param id The transaction ID
+     * @return The time in epoch milliseconds
+     */
+    public static long timestampOf(long id) {
+        return (id >>> TIME_SHIFT) + EPOCH;
+    }
+    
+    /**
+     * Get the node component of an ID
+     * 
+     * @param id The transaction ID
+     * @return The node id
+     */
+    public static int nodeOf(long id) {
+        return (int) (id >>> NODE_SHIFT) & MAX_NODE_ID;
+    }
+    
+    /**
+     * Get the stripe and sequence components of an ID as one number
+     * 
+     * @param id The transaction ID
+     * @return The sequence within the node and millisecond (0-4095)
+     */
+    public static int sequenceOf(long id) {
+        return (int) id & ((1 << NODE_SHIFT) - 1);
+    }
+    
+    /**
+     * Get the node id configured for this process
+     * 
+     * @return The node id
+     */
+    public static int getNodeId() {
+        return (int) (nodeBits >>> NODE_SHIFT);
+    }
+    
+    /**
+     * Read the node id from the "atm.node.id" system property
+     * 
+     * @return The node id, 0 if the property is not set
+     */
+    private static int nodeIdFromProperty() {
+        int nodeId = Integer.getInteger("atm.node.id", 0);
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("atm.node.id must be between 0 and " + MAX_NODE_ID);
+        }
+        return nodeId;
+    }
+}
@@ -0,0 +1,257 @@
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * TransactionLog class storing an account's transaction history by column
+ * Each entry is kept in parallel primitive arrays (timestamps, amounts,
+ * balances, transaction IDs and a one-byte type code) that grow in
+ * fixed-size chunks, so an entry costs about 33 bytes and appending never
+ * copies existing history. Transaction objects are only created on read.
+ * The first chunk starts small and doubles up to the full chunk size, so
+ * the millions of accounts with a short history stay cheap.
+ * 
+ * There is a single writer at a time (the owning account's lock), while
+ * readers need no lock: an entry becomes visible once the size is published.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class TransactionLog {
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int FIRST_CHUNK_CAPACITY = 4;
+    
+    /**
+     * One block of history entries
+     */
+    private static final class Chunk {
+        final long[] timestamps;
+        final long[] amounts;
+        final long[] balances;
+        final long[] ids;
+        final byte[] types;
+        
+        Chunk(int capacity) {
+            timestamps = new long[capacity];
+            amounts = new long[capacity];
+            balances = new long[capacity];
+            ids = new long[capacity];
+            types = new byte[capacity];
+        }
+        
+        /**
+         * Copy this chunk's first entries into a larger chunk
+         */
+        Chunk grow(int capacity, int count) {
+            Chunk grown = new Chunk(capacity);
+            System.arraycopy(timestamps, 0, grown.timestamps, 0, count);
+            System.arraycopy(amounts, 0, grown.amounts, 0, count);
+            System.arraycopy(balances, 0, grown.balances, 0, count);
+            System.arraycopy(ids, 0, grown.ids, 0, count);
+            System.arraycopy(types, 0, grown.types, 0, count);
+            return grown;
+        }
+    }
+    
+    private volatile Chunk[] chunks = new Chunk[1];
+    private volatile int size;
+    private long lastTimestamp;
+    
+    /**
+     * Append an entry to the log; callers must not append concurrently
+     * Timestamps never go backwards within one log, so the log stays
+     * ordered by time even if the wall clock is adjusted.
+     * 
+     * @param type The transaction type code
+     * @param amount The signed amount in paise
+     * @param balance The balance after the transaction in paise
+     * @param timestamp The time of the transaction in epoch milliseconds
+     * @param id The transaction ID
+     * @return The index of the new entry
+     */
+    public int append(byte type, long amount, long balance, long timestamp, long id) {
+        int index = size;
+        int chunkIndex = index >>> CHUNK_SHIFT;
+        Chunk[] current = chunks;
+        if (chunkIndex == current.length) {
+            Chunk[] grown = new Chunk[current.length * 2];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            current = grown;
+            chunks = grown;
+        }
+        int offset = index & CHUNK_MASK;
+        Chunk chunk = current[chunkIndex];
+        if (chunk == null) {
+            chunk = new Chunk(chunkIndex == 0 ? FIRST_CHUNK_CAPACITY : CHUNK_SIZE);
+            current[chunkIndex] = chunk;
+        } else if (offset == chunk.types.length) {
+            // Only the first chunk is ever smaller than CHUNK_SIZE
+            chunk = chunk.grow(offset * 2, offset);
+            current[chunkIndex] = chunk;
+        }
+        
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+        chunk.timestamps[offset] = lastTimestamp;
+        chunk.amounts[offset] = amount;
+        chunk.balances[offset] = balance;
+        chunk.ids[offset] = id;
+        chunk.types[offset] = type;
+        
+        // Publishing the size makes the entry visible to readers
+        size = index + 1;
+        return index;
+    }
+    
+    /**
+     * Get the number of entries in the log
+     * 
+     * @return The number of entries
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Get a read-only view of a range of entries
+     * The view does not copy anything: the log is append-only, so the
+     * entries it covers never change, and later appends are not visible.
+     * 
+     * @param from The index of the first entry, inclusive
+     * @param to The index of the last entry, exclusive
+     * @return An immutable list backed by the log
+     */
+    public List<Transaction> view(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Range: " + from + "-" + to + ", Size: " + size);
+        }
+        return new View(this, from, to - from);
+    }
+    
+    /**
+     * Immutable list over a fixed range of a log
+     */
+    private static final class View extends AbstractList<Transaction> implements RandomAccess {
+        private final TransactionLog log;
+        private final int offset;
+        private final int length;
+        
+        View(TransactionLog log, int offset, int length) {
+            this.log = log;
+            this.offset = offset;
+            this.length = length;
+        }
+        
+        @Override
+        public Transaction get(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + length);
+            }
+            return log.get(offset + index);
+        }
+        
+        @Override
+        public int size() {
+            return length;
+        }
+    }
+    
+    /**
+     * Get an entry as a Transaction
+     * 
+     * @param index The index of the entry
+     * @return The transaction at that index
+     */
+    public Transaction get(int index) {
+        Chunk chunk = chunk(index);
+        int offset = index & CHUNK_MASK;
+        return new Transaction(chunk.types[offset], chunk.amounts[offset], chunk.balances[offset],
+                               chunk.timestamps[offset], chunk.ids[offset]);
+    }
+    
+    /**
+     * Get the timestamp of an entry
+     * 
+     * @param index The index of the entry
+     * @return The timestamp in epoch milliseconds
+     */
+    public long timestampAt(int index) {
+        return chunk(index).timestamps[index & CHUNK_MASK];
+    }
+    
+    /**
+     * Get the amount of an entry
+     * 
+     * @param index The index of the entry
+     * @return The signed amount in paise
+     */
+    public long amountAt(int index) {
+        return chunk(index).amounts[index & CHUNK_MASK];
+    }
+    
+    /**
+     * Get the balance after an entry
+     * 
+     * @param index The index of the entry
+     * @return The balance in paise
+     */
+    public long balanceAt(int index) {
+        return chunk(index).balances[index & CHUNK_MASK];
+    }
+    
+    /**
+     * Get the transaction ID of an entry
+     * 
+     * @param index The index of the entry
+     * @return The transaction ID
+     */
+    public long idAt(int index) {
+        return chunk(index).ids[index & CHUNK_MASK];
+    }
+    
+    /**
+     * Get the type code of an entry
+     * 
+     * @param index The index of the entry
+     * @return The transaction type code
+     */
+    public byte typeAt(int index) {
+        return chunk(index).types[index & CHUNK_MASK];
+    }
+    
+    /**
+     * Count the entries older than a time
+     * Timestamps never decrease within a log, so this is a binary search.
+     * 
+     * @param timestamp The time in epoch milliseconds
+     * @param count The number of entries to search, at most size()
+     * @return The number of entries among the first count with an earlier timestamp
+     */
+    public int countBefore(long timestamp, int count) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestampAt(mid) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Get the chunk holding a published entry
+     * 
+     * @param index The index of the entry
+     * @return The chunk containing the entry
+     */
+    private Chunk chunk(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return chunks[index >>> CHUNK_SHIFT];
+    }
+}
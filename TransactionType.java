@@ -0,0 +1,94 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * TransactionType class mapping transaction type names to compact codes
+ * The transaction history stores one byte per entry instead of a String;
+ * the well-known types have fixed codes and any other name is assigned
+ * the next free code the first time it is seen.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public final class TransactionType {
+    public static final byte ACCOUNT_CREATED = 0;
+    public static final byte DEPOSIT = 1;
+    public static final byte WITHDRAWAL = 2;
+    public static final byte TRANSFER_IN = 3;
+    public static final byte TRANSFER_OUT = 4;
+    public static final byte PIN_CHANGED = 5;
+    public static final byte BALANCE_INQUIRY = 6;
+    public static final byte STATEMENT_REQUESTED = 7;
+    
+    /** Maximum number of distinct transaction types */
+    public static final int MAX_TYPES = 128;
+    
+    private static final String[] names = new String[MAX_TYPES];
+    private static final Map<String, Byte> codes = new ConcurrentHashMap<>();
+    private static int nextCode = 0;
+    
+    static {
+        register("Account Created");
+        register("Deposit");
+        register("Withdrawal");
+        register("Transfer In");
+        register("Transfer Out");
+        register("PIN Changed");
+        register("Balance Inquiry");
+        register("Statement Requested");
+    }
+    
+    private TransactionType() {
+    }
+    
+    /**
+     * Get the code for a transaction type name, registering it if needed
+     * 
+     * @param name The transaction type name
+     * @return The transaction type code
+     * @throws IllegalStateException if all codes are in use
+     */
+    public static byte codeOf(String name) {
+        Byte code = codes.get(name);
+        return code != null ? code : register(name);
+    }
+    
+    /**
+     * Get the name of a transaction type code
+     * 
+     * @param code The transaction type code
+     * @return The transaction type name
+     */
+    public static String nameOf(byte code) {
+        return names[code];
+    }
+    
+    /**
+     * Get the number of registered transaction types
+     * 
+     * @return The number of registered types
+     */
+    public static synchronized int count() {
+        return nextCode;
+    }
+    
+    /**
+     * Register a transaction type name
+     * 
+     * @param name The transaction type name
+     * @return The code assigned to the name
+     */
+    private static synchronized byte register(String name) {
+        Byte existing = codes.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        if (nextCode >= MAX_TYPES) {
+            throw new IllegalStateException("Too many transaction types: " + name);
+        }
+        byte code = (byte) nextCode++;
+        names[code] = name;
+        codes.put(name, code);
+        return code;
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * TransferInstruction class describing one line of a batch transfer
+ * Used with Bank.transferBatch, which returns one Result per instruction.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class TransferInstruction {
+    /**
+     * The outcome of one instruction in a batch
+     */
+    public enum Result {
+        OK, INSUFFICIENT_FUNDS, UNKNOWN_ACCOUNT, INVALID_AMOUNT, SAME_ACCOUNT
+    }
+    
+    private final String fromAccountNumber;
+    private final String toAccountNumber;
+    private final long amountPaise;
+    
+    /**
+     * Constructor to create a transfer instruction
+     * 
+     * @param fromAccountNumber The source account number
+     * @param toAccountNumber The destination account number
+     * @param amount The amount to transfer in rupees
+     */
+    public TransferInstruction(String fromAccountNumber, String toAccountNumber, double amount) {
+        this(fromAccountNumber, toAccountNumber, Money.isValid(amount) ? Money.toPaise(amount) : -1L);
+    }
+    
+    private TransferInstruction(String fromAccountNumber, String toAccountNumber, long amountPaise) {
+        this.fromAccountNumber = fromAccountNumber;
+        this.toAccountNumber = toAccountNumber;
+        this.amountPaise = amountPaise;
+    }
+    
+    /**
+     * Create a transfer instruction with an amount in paise
+     * 
+     * @param fromAccountNumber The source account number
+     * @param toAccountNumber The destination account number
+     * @param amountPaise The amount to transfer in paise
+     * @return The instruction
+     */
+    public static TransferInstruction ofPaise(String fromAccountNumber, String toAccountNumber, long amountPaise) {
+        return new TransferInstruction(fromAccountNumber, toAccountNumber, amountPaise);
+    }
+    
+    /**
+     * Get the source account number
+     * 
+     * @return The source account number
+     */
+    public String getFromAccountNumber() {
+        return fromAccountNumber;
+    }
+    
+    /**
+     * Get the destination account number
+     * 
+     * @return The destination account number
+     */
+    public String getToAccountNumber() {
+        return toAccountNumber;
+    }
+    
+    /**
+     * Get the amount
+     * 
+     * @return The amount in rupees
+     */
+    public double getAmount() {
+        return Money.toRupees(amountPaise);
+    }
+    
+    /**
+     * Get the amount in paise
+     * 
+     * @return The amount in paise, negative if the rupee amount was invalid
+     */
+    public long getAmountPaise() {
+        return amountPaise;
+    }
+    
+    @Override
+    public String toString() {
+        return fromAccountNumber + " -> " + toAccountNumber + " ₹" + Money.format(amountPaise);
+    }
+}
@@ -0,0 +1,105 @@
+import atm.jmh.Ledger;
+
+/**
+ * JmhLedger class implementing the benchmark Ledger over a real Bank
+ * See atm.jmh.Ledger for why the benchmarks need it.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class JmhLedger implements Ledger {
+    private static final String[] FIRST = {
+        "Aarav", "Vivaan", "Aditya", "Arjun", "Rohan", "Rahul", "Amit", "Sanjay", "Prabhu", "Nikhil",
+        "Ananya", "Diya", "Saanvi", "Anika", "Priya", "Pooja", "Sneha", "Kavya", "Meera", "Neha"
+    };
+    private static final String[] LAST = {
+        "Sharma", "Patil", "Deshmukh", "Kumar", "Reddy", "Nair", "Joshi", "Gupta", "Bhalke", "Rao",
+        "Yadav", "Chandra", "Kamath", "Banerjee", "Iyer", "Menon", "Kulkarni", "Singh", "Das", "Shah"
+    };
+    
+    private Bank bank;
+    private Account[] accounts = new Account[0];
+    private String[] accountNumbers = new String[0];
+    private String[] pins = new String[0];
+    
+    @Override
+    public void open(int count, double openingRupees) {
+        bank = new Bank();
+        accounts = new Account[count];
+        accountNumbers = new String[count];
+        pins = new String[count];
+        for (int i = 0; i < count; i++) {
+            accountNumbers[i] = String.format("%09d", i);
+            pins[i] = String.format("%04d", i % 10_000);
+            String holder = FIRST[i % FIRST.length] + " " + LAST[i / FIRST.length % LAST.length] + " " + i;
+            accounts[i] = new Account(accountNumbers[i], pins[i], holder, openingRupees);
+            bank.addAccount(accounts[i]);
+        }
+    }
+    
+    @Override
+    public int accounts() {
+        return accounts.length;
+    }
+    
+    @Override
+    public boolean deposit(int account, double rupees) {
+        return accounts[account].deposit(rupees);
+    }
+    
+    @Override
+    public boolean withdraw(int account, double rupees) {
+        return accounts[account].withdraw(rupees);
+    }
+    
+    @Override
+    public boolean transfer(int from, int to, double rupees) {
+        return accounts[from].transfer(accounts[to], rupees);
+    }
+    
+    @Override
+    public boolean transferMoney(int from, int to, double rupees) {
+        return bank.transferMoney(accountNumbers[from], accountNumbers[to], rupees);
+    }
+    
+    @Override
+    public boolean authenticate(int account) {
+        return bank.authenticate(accountNumbers[account], pins[account]);
+    }
+    
+    @Override
+    public int searchByName(String query) {
+        return bank.searchAccountsByName(query, AtmSession.MAX_SEARCH_RESULTS).size();
+    }
+    
+    @Override
+    public double totalBalance() {
+        return bank.getTotalBalance();
+    }
+    
+    @Override
+    public void setMetricsEnabled(boolean enabled) {
+        bank.getMetrics().setEnabled(enabled);
+    }
+    
+    @Override
+    public void recordDeposit() {
+        Metrics.Operation deposit = bank.getMetrics().getDeposit();
+        deposit.record(Metrics.Outcome.SUCCESS, deposit.start());
+    }
+    
+    @Override
+    public Object newTransaction(double rupees, double balance) {
+        return new Transaction("Deposit", rupees, balance);
+    }
+    
+    @Override
+    public StringBuilder appendSummary(Object transaction, StringBuilder sb) {
+        return ((Transaction) transaction).appendSummaryTo(sb);
+    }
+    
+    @Override
+    public String detailedInfo(Object transaction) {
+        return ((Transaction) transaction).getDetailedInfo();
+    }
+}
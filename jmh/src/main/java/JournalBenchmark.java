@@ -0,0 +1,75 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * JournalBenchmark class measuring ledger throughput under each durability mode
+ * Every thread deposits into its own account so the numbers reflect the
+ * cost of logging rather than contention on balances.
+ * 
+ * Usage: java -cp jmh/target/benchmarks.jar JournalBenchmark [threads] [opsPerThread] [groupLatencyMicros]
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class JournalBenchmark {
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int opsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        long latencyMicros = args.length > 2 ? Long.parseLong(args[2]) : 200L;
+        
+        System.out.printf("%-8s %10s %12s %14s%n", "Mode", "Ops", "Seconds", "Ops/sec");
+        for (Journal.Durability durability : Journal.Durability.values()) {
+            Path dir = Files.createTempDirectory("journal-bench");
+            Path path = dir.resolve("bank.journal");
+            try {
+                long ops = (long) threads * opsPerThread;
+                double seconds = run(path, durability, latencyMicros, threads, opsPerThread);
+                System.out.printf("%-8s %10d %12.3f %14.0f%n", durability, ops, seconds, ops / seconds);
+            } finally {
+                Files.deleteIfExists(path);
+                Files.deleteIfExists(dir);
+            }
+        }
+    }
+    
+    /**
+     * Run one timed round of deposits against a fresh journaled bank
+     * 
+     * @return The elapsed time in seconds
+     */
+    private static double run(Path path, Journal.Durability durability, long latencyMicros,
+                              int threads, int opsPerThread) throws IOException, InterruptedException {
+        Bank bank = new Bank();
+        bank.openJournal(path, durability, latencyMicros);
+        for (int t = 0; t < threads; t++) {
+            bank.addAccount(new Account(String.format("%09d", t), "0000", "Bench " + t, 0.0));
+        }
+        
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            Account account = bank.getAccount(String.format("%09d", t));
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < opsPerThread; i++) {
+                    account.depositPaise(100L);
+                }
+            });
+            workers[t].start();
+        }
+        
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        bank.closeJournal();
+        return (System.nanoTime() - begin) / 1e9;
+    }
+}
@@ -0,0 +1,166 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LineLoadClient class driving the line protocol over loopback connections
+ * Each connection logs in and then sends its requests in pipelined rounds
+ * (one write per round) and waits for every response. The same load runs
+ * against the NIO LineServer and against a thread-per-connection server
+ * that answers one line at a time, and the requests per second and
+ * microseconds per request are printed for both.
+ * 
+ * Usage: java -cp jmh/target/benchmarks.jar LineLoadClient [connections] [pipeline] [seconds] [loops]
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class LineLoadClient {
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int pipeline = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int loops = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        
+        Bank bank = new Bank();
+        for (int i = 0; i < connections; i++) {
+            bank.addAccount(new Account(String.format("%09d", i), "1234", "Load " + i, 100000.0));
+        }
+        
+        System.out.printf("%-22s %12s %14s %12s%n", "Server", "Requests", "Requests/sec", "us/request");
+        try (LineServer server = new LineServer(bank, 0, loops)) {
+            server.start();
+            report("NIO (" + loops + " loops)", run(server.getPort(), connections, pipeline, seconds), seconds);
+        }
+        try (ServerSocket server = startBlockingServer(bank)) {
+            report("Thread per connection", run(server.getLocalPort(), connections, pipeline, seconds), seconds);
+        }
+    }
+    
+    private static void report(String name, long requests, int seconds) {
+        double perSecond = requests / (double) seconds;
+        System.out.printf("%-22s %12d %14.0f %12.2f%n", name, requests, perSecond, 1e6 / perSecond);
+    }
+    
+    /**
+     * Drive one server for a fixed time
+     * 
+     * @return The number of requests answered
+     */
+    private static long run(int port, int connections, int pipeline, int seconds) throws Exception {
+        LongAdder completed = new LongAdder();
+        CountDownLatch ready = new CountDownLatch(connections);
+        long[] deadline = new long[1];
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] clients = new Thread[connections];
+        for (int c = 0; c < connections; c++) {
+            String accountNumber = String.format("%09d", c);
+            clients[c] = new Thread(() -> {
+                try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                    socket.setTcpNoDelay(true);
+                    OutputStream out = socket.getOutputStream();
+                    InputStream in = socket.getInputStream();
+                    byte[] buffer = new byte[64 * 1024];
+                    out.write(("LOGIN " + accountNumber + " 1234\n").getBytes(StandardCharsets.US_ASCII));
+                    awaitLines(in, buffer, 1);
+                    
+                    StringBuilder round = new StringBuilder();
+                    for (int i = 0; i < pipeline; i++) {
+                        round.append(i % 3 == 0 ? "DEP 1\n" : i % 3 == 1 ? "WDR 1\n" : "BAL\n");
+                    }
+                    byte[] requests = round.toString().getBytes(StandardCharsets.US_ASCII);
+                    ready.countDown();
+                    start.await();
+                    while (System.nanoTime() < deadline[0]) {
+                        out.write(requests);
+                        awaitLines(in, buffer, pipeline);
+                        completed.add(pipeline);
+                    }
+                    out.write("QUIT\n".getBytes(StandardCharsets.US_ASCII));
+                } catch (IOException | InterruptedException e) {
+                    System.err.println("Client failed: " + e);
+                    ready.countDown();
+                }
+            });
+            clients[c].start();
+        }
+        ready.await();
+        deadline[0] = System.nanoTime() + seconds * 1_000_000_000L;
+        start.countDown();
+        for (Thread client : clients) {
+            client.join();
+        }
+        return completed.sum();
+    }
+    
+    /**
+     * Read until the given number of response lines have arrived
+     */
+    private static void awaitLines(InputStream in, byte[] buffer, int lines) throws IOException {
+        while (lines > 0) {
+            int n = in.read(buffer);
+            if (n < 0) {
+                throw new IOException("Server closed the connection");
+            }
+            for (int i = 0; i < n; i++) {
+                if (buffer[i] == '\n') {
+                    lines--;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Start the baseline server: one platform thread per connection,
+     * reading one line and writing one response at a time
+     */
+    private static ServerSocket startBlockingServer(Bank bank) throws IOException {
+        ServerSocket server = new ServerSocket(0, 1024, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(() -> {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    socket.setTcpNoDelay(true);
+                    Thread handler = new Thread(() -> serveBlocking(bank, socket));
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return server;
+    }
+    
+    private static void serveBlocking(Bank bank, Socket socket) {
+        try (socket) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                                                                         StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            LineProtocol protocol = new LineProtocol(bank);
+            StringBuilder response = new StringBuilder();
+            String line;
+            while (!protocol.isClosed() && (line = in.readLine()) != null) {
+                response.setLength(0);
+                protocol.execute(line, response);
+                out.append(response);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // Client went away
+        }
+    }
+}
@@ -0,0 +1,491 @@
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * LoadDriver class putting a synthetic customer workload on the bank
+ * Creates a bank of accounts and runs a mix of balance inquiries,
+ * withdrawals, deposits and transfers from a number of simulated terminals
+ * at once, one thread each. Customers are picked with a Zipfian
+ * distribution, so a few accounts get most of the traffic and contend for
+ * their locks as busy accounts do in a real bank. For each operation it
+ * prints the throughput, the share that failed, and the p50, p99 and p999
+ * latency.
+ * 
+ * In direct mode the terminals call Bank and Account. In atm mode each
+ * terminal runs AtmSession on scripted input that answers whatever prompt
+ * the menus show: a customer logs in, performs a few operations and exits,
+ * and the next customer starts a new session. Latencies then include
+ * drawing the menus and the login limits, and logins refused by the rate
+ * limit are counted as failed logins.
+ * 
+ * Terminals run closed loop by default, starting each operation as soon
+ * as the last one ends. Given a rate, they start operations on a fixed
+ * schedule instead and measure each from its scheduled start, so a stall
+ * counts against every operation that should have started during it, not
+ * only the one that was running.
+ * 
+ * Usage: java -cp jmh/target/benchmarks.jar LoadDriver [accounts] [terminals] [seconds] [mix] [skew] [mode] [rate]
+ * where mix is the inquiry:withdrawal:deposit:transfer weights (40:20:20:20),
+ * skew is the Zipf exponent (0.99, or 0 for uniform), mode is direct or atm,
+ * and rate is operations per second across all terminals (0 for closed loop).
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class LoadDriver {
+    private static final String[] OPERATIONS = {"inquiry", "withdrawal", "deposit", "transfer", "login"};
+    private static final int INQUIRY = 0;
+    private static final int WITHDRAWAL = 1;
+    private static final int DEPOSIT = 2;
+    private static final int TRANSFER = 3;
+    private static final int LOGIN = 4;
+    // Customer menu choice of each operation
+    private static final String[] MENU_CHOICES = {"1", "2", "3", "4"};
+    private static final String PIN = "1234";
+    private static final double OPENING_BALANCE = 100000.0;
+    // Operations a customer performs per ATM session
+    private static final int VISIT_OPERATIONS = 4;
+    private static final int WARM_UP_SECONDS = 2;
+    
+    private static final byte[] MAIN_MENU = prompt("Enter your choice (1-3): ");
+    private static final byte[] CUSTOMER_MENU = prompt("Enter your choice (1-9): ");
+    private static final byte[] ACCOUNT_PROMPT = prompt("Enter Account Number: ");
+    private static final byte[] PIN_PROMPT = prompt("Enter PIN: ");
+    private static final byte[] VERIFY_PROMPT = prompt("Enter PIN for verification: ");
+    private static final byte[] WITHDRAW_PROMPT = prompt("Enter amount to withdraw: ₹");
+    private static final byte[] DEPOSIT_PROMPT = prompt("Enter amount to deposit: ₹");
+    private static final byte[] RECIPIENT_PROMPT = prompt("Enter recipient account number: ");
+    private static final byte[] TRANSFER_PROMPT = prompt("Enter amount to transfer: ₹");
+    
+    private final Bank bank;
+    private final String[] numbers;
+    private final Zipf zipf;
+    private final int[] mix;
+    private final int mixTotal;
+    
+    /**
+     * Account popularity following Zipf's law: the account of rank k is
+     * picked with probability proportional to 1 / k^skew
+     */
+    private static final class Zipf {
+        private final double[] cumulative;
+        private final int[] accountOfRank;
+        
+        Zipf(int accounts, double skew, long seed) {
+            cumulative = new double[accounts];
+            double total = 0.0;
+            for (int k = 0; k < accounts; k++) {
+                total += 1.0 / Math.pow(k + 1, skew);
+                cumulative[k] = total;
+            }
+            for (int k = 0; k < accounts; k++) {
+                cumulative[k] /= total;
+            }
+            cumulative[accounts - 1] = 1.0;
+            // Spread the popular accounts over the bank rather than the first few created
+            accountOfRank = new int[accounts];
+            SplittableRandom random = new SplittableRandom(seed);
+            for (int k = 0; k < accounts; k++) {
+                int j = random.nextInt(k + 1);
+                accountOfRank[k] = accountOfRank[j];
+                accountOfRank[j] = k;
+            }
+        }
+        
+        int next(SplittableRandom random) {
+            int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+            rank = rank < 0 ? -rank - 1 : rank + 1;
+            return accountOfRank[Math.min(rank, accountOfRank.length - 1)];
+        }
+        
+        double busiestShare() {
+            return cumulative[0];
+        }
+    }
+    
+    /**
+     * The counts and latencies of one simulated terminal
+     */
+    private static final class SimulatedTerminal {
+        final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+        final long[] failures = new long[OPERATIONS.length];
+        final SplittableRandom random;
+        // Nanoseconds between scheduled starts, or 0 for closed loop
+        final long interval;
+        long scheduled;
+        
+        SimulatedTerminal(long seed, long interval) {
+            for (int op = 0; op < OPERATIONS.length; op++) {
+                latencies[op] = new LatencyHistogram();
+            }
+            this.random = new SplittableRandom(seed);
+            this.interval = interval;
+            this.scheduled = System.nanoTime();
+        }
+        
+        /**
+         * Wait for the next operation's turn
+         * 
+         * @return The time to measure the operation from
+         */
+        long begin() {
+            if (interval == 0) {
+                return System.nanoTime();
+            }
+            long start = scheduled;
+            scheduled += interval;
+            for (long wait = start - System.nanoTime(); wait > 0; wait = start - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+            return start;
+        }
+        
+        void end(int op, long start, boolean succeeded) {
+            latencies[op].record(System.nanoTime() - start);
+            if (!succeeded) {
+                failures[op]++;
+            }
+        }
+    }
+    
+    /**
+     * A customer at an ATM, answering the session's prompts one line at a time
+     * The session flushes its output before every read, so the last bytes
+     * written are always the prompt being answered.
+     */
+    private final class ScriptedCustomer extends InputStream {
+        private final SimulatedTerminal terminal;
+        private final long deadline;
+        private byte[] shown = new byte[0];
+        private int shownEnd;
+        private byte[] line = new byte[0];
+        private int position;
+        private boolean visiting;
+        private boolean failed;
+        private int customer;
+        private int visitLeft;
+        private int operation = -1;
+        private long started;
+        
+        final OutputStream screen = new OutputStream() {
+            @Override
+            public void write(int b) {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+            
+            @Override
+            public void write(byte[] b, int off, int len) {
+                shown = b;
+                shownEnd = off + len;
+                // "✗" starts every error message
+                for (int i = off + 2; i < shownEnd; i++) {
+                    if (b[i] == (byte) 0x97 && b[i - 1] == (byte) 0x9C && b[i - 2] == (byte) 0xE2) {
+                        failed = true;
+                    }
+                }
+            }
+        };
+        
+        ScriptedCustomer(SimulatedTerminal terminal, long deadline) {
+            this.terminal = terminal;
+            this.deadline = deadline;
+        }
+        
+        /**
+         * Run ATM sessions until the deadline, one customer visit each
+         */
+        void run() {
+            while (System.nanoTime() < deadline) {
+                visiting = false;
+                new AtmSession(bank, this, screen).run();
+            }
+        }
+        
+        @Override
+        public int read() {
+            if (position == line.length) {
+                answer();
+            }
+            return line[position++] & 0xFF;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (position == line.length) {
+                answer();
+            }
+            int n = Math.min(len, line.length - position);
+            System.arraycopy(line, position, b, off, n);
+            position += n;
+            return n;
+        }
+        
+        /**
+         * Choose the next line from the prompt on the screen
+         */
+        private void answer() {
+            if (shows(MAIN_MENU)) {
+                if (operation == LOGIN) {
+                    // Back at the main menu: the login was refused
+                    finish(false);
+                }
+                if (visiting || System.nanoTime() >= deadline) {
+                    say("3");
+                    return;
+                }
+                visiting = true;
+                customer = zipf.next(terminal.random);
+                visitLeft = VISIT_OPERATIONS;
+                start(LOGIN);
+                say("1");
+            } else if (shows(CUSTOMER_MENU)) {
+                if (operation >= 0) {
+                    finish(!failed);
+                }
+                if (visitLeft == 0 || System.nanoTime() >= deadline) {
+                    say("9");
+                    return;
+                }
+                visitLeft--;
+                int op = nextOperation(terminal.random);
+                start(op);
+                say(MENU_CHOICES[op]);
+            } else if (shows(ACCOUNT_PROMPT)) {
+                say(numbers[customer]);
+            } else if (shows(PIN_PROMPT) || shows(VERIFY_PROMPT)) {
+                say(PIN);
+            } else if (shows(WITHDRAW_PROMPT) || shows(DEPOSIT_PROMPT) || shows(TRANSFER_PROMPT)) {
+                say(Integer.toString(nextAmount(terminal.random)));
+            } else if (shows(RECIPIENT_PROMPT)) {
+                say(numbers[nextOtherThan(customer, terminal.random)]);
+            } else {
+                int from = Math.max(0, shownEnd - 80);
+                throw new IllegalStateException("Unexpected prompt: "
+                        + new String(shown, from, shownEnd - from, StandardCharsets.UTF_8));
+            }
+        }
+        
+        private void start(int op) {
+            operation = op;
+            failed = false;
+            started = terminal.begin();
+        }
+        
+        private void finish(boolean succeeded) {
+            terminal.end(operation, started, succeeded);
+            operation = -1;
+        }
+        
+        private boolean shows(byte[] prompt) {
+            return shownEnd >= prompt.length
+                    && Arrays.equals(shown, shownEnd - prompt.length, shownEnd, prompt, 0, prompt.length);
+        }
+        
+        private void say(String text) {
+            line = (text + "\n").getBytes(StandardCharsets.UTF_8);
+            position = 0;
+        }
+    }
+    
+    /**
+     * Constructor to create a driver over a bank of loaded accounts
+     * 
+     * @param bank The bank
+     * @param numbers The account numbers, all with PIN 1234
+     * @param skew The Zipf exponent of account popularity
+     * @param mix The weights of inquiries, withdrawals, deposits and transfers
+     */
+    LoadDriver(Bank bank, String[] numbers, double skew, int[] mix) {
+        this.bank = bank;
+        this.numbers = numbers;
+        this.zipf = new Zipf(numbers.length, skew, 42L);
+        this.mix = mix;
+        int total = 0;
+        for (int weight : mix) {
+            total += weight;
+        }
+        this.mixTotal = total;
+    }
+    
+    public static void main(String[] args) throws InterruptedException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int terminals = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        String mixText = args.length > 3 ? args[3] : "40:20:20:20";
+        int[] mix = parseMix(mixText);
+        double skew = args.length > 4 ? Double.parseDouble(args[4]) : 0.99;
+        boolean atm = args.length > 5 && args[5].equalsIgnoreCase("atm");
+        double rate = args.length > 6 ? Double.parseDouble(args[6]) : 0.0;
+        if (accounts < 2 || terminals < 1 || seconds < 1 || skew < 0 || rate < 0) {
+            throw new IllegalArgumentException("Need at least 2 accounts, 1 terminal and 1 second");
+        }
+        
+        Bank bank = new Bank();
+        String[] numbers = new String[accounts];
+        for (int i = 0; i < accounts; i++) {
+            numbers[i] = String.format("%09d", i);
+            bank.addAccount(new Account(numbers[i], PIN, "Customer " + i, OPENING_BALANCE));
+        }
+        LoadDriver driver = new LoadDriver(bank, numbers, skew, mix);
+        System.out.printf("%d accounts, %d terminals, %s mode, mix %s, skew %.2f (busiest account %.2f%% of picks), %s%n",
+                          accounts, terminals, atm ? "atm" : "direct", mixText, skew, 100.0 * driver.zipf.busiestShare(),
+                          rate > 0 ? String.format("%.0f ops/sec scheduled", rate) : "closed loop");
+        
+        // The first round warms up the JIT and is not reported
+        driver.run(terminals, Math.min(WARM_UP_SECONDS, seconds), rate, atm);
+        long begin = System.nanoTime();
+        SimulatedTerminal[] results = driver.run(terminals, seconds, rate, atm);
+        report(results, (System.nanoTime() - begin) / 1e9);
+    }
+    
+    /**
+     * Run the workload from a number of terminals for a fixed time
+     * 
+     * @return The terminals, with their counts and latencies
+     */
+    SimulatedTerminal[] run(int terminals, int seconds, double rate, boolean atm) throws InterruptedException {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        long interval = rate > 0 ? (long) (terminals * 1e9 / rate) : 0L;
+        SimulatedTerminal[] results = new SimulatedTerminal[terminals];
+        Thread[] threads = new Thread[terminals];
+        for (int t = 0; t < terminals; t++) {
+            SimulatedTerminal terminal = new SimulatedTerminal(1000L + t, interval);
+            results[t] = terminal;
+            threads[t] = new Thread(() -> {
+                if (atm) {
+                    new ScriptedCustomer(terminal, deadline).run();
+                } else {
+                    runDirect(terminal, deadline);
+                }
+            }, "terminal-" + t);
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return results;
+    }
+    
+    /**
+     * Call Bank and Account directly until the deadline
+     */
+    private void runDirect(SimulatedTerminal terminal, long deadline) {
+        SplittableRandom random = terminal.random;
+        while (System.nanoTime() < deadline) {
+            int op = nextOperation(random);
+            int customer = zipf.next(random);
+            int other = op == TRANSFER ? nextOtherThan(customer, random) : customer;
+            int amount = nextAmount(random);
+            long start = terminal.begin();
+            boolean succeeded;
+            switch (op) {
+                case INQUIRY:
+                    succeeded = bank.getAccount(numbers[customer]).getBalancePaise() >= 0;
+                    break;
+                case WITHDRAWAL:
+                    succeeded = bank.getAccount(numbers[customer]).withdraw(amount);
+                    break;
+                case DEPOSIT:
+                    succeeded = bank.getAccount(numbers[customer]).deposit(amount);
+                    break;
+                default:
+                    succeeded = bank.transferMoney(numbers[customer], numbers[other], amount);
+            }
+            terminal.end(op, start, succeeded);
+        }
+    }
+    
+    private int nextOperation(SplittableRandom random) {
+        int pick = random.nextInt(mixTotal);
+        for (int op = 0; op < mix.length; op++) {
+            pick -= mix[op];
+            if (pick < 0) {
+                return op;
+            }
+        }
+        return mix.length - 1;
+    }
+    
+    private int nextOtherThan(int customer, SplittableRandom random) {
+        int other = zipf.next(random);
+        while (other == customer) {
+            other = zipf.next(random);
+        }
+        return other;
+    }
+    
+    /**
+     * Pick an amount in ATM notes, from ₹100 to ₹5,000
+     */
+    private static int nextAmount(SplittableRandom random) {
+        return 100 * (1 + random.nextInt(50));
+    }
+    
+    /**
+     * Print one line per operation and a total, from all terminals added together
+     */
+    private static void report(SimulatedTerminal[] terminals, double seconds) {
+        System.out.printf("%-12s %10s %9s %12s %10s %10s %10s %10s%n", "Operation", "Count", "Failed %",
+                          "Ops/sec", "p50 us", "p99 us", "p999 us", "max us");
+        LatencyHistogram all = new LatencyHistogram();
+        long allFailures = 0L;
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            LatencyHistogram latencies = new LatencyHistogram();
+            long failures = 0L;
+            for (SimulatedTerminal terminal : terminals) {
+                latencies.add(terminal.latencies[op]);
+                failures += terminal.failures[op];
+            }
+            if (latencies.getCount() > 0) {
+                printRow(OPERATIONS[op], latencies, failures, seconds);
+                all.add(latencies);
+                allFailures += failures;
+            }
+        }
+        printRow("all", all, allFailures, seconds);
+    }
+    
+    private static void printRow(String name, LatencyHistogram latencies, long failures, double seconds) {
+        long count = latencies.getCount();
+        System.out.printf("%-12s %10d %9.2f %12.0f %10.1f %10.1f %10.1f %10.1f%n", name, count,
+                          count == 0 ? 0.0 : 100.0 * failures / count, count / seconds,
+                          latencies.getValueAtPercentile(50) / 1e3, latencies.getValueAtPercentile(99) / 1e3,
+                          latencies.getValueAtPercentile(99.9) / 1e3, latencies.getMax() / 1e3);
+    }
+    
+    /**
+     * Parse the inquiry:withdrawal:deposit:transfer weights
+     */
+    private static int[] parseMix(String text) {
+        String[] parts = text.split(":");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Mix must be inquiry:withdrawal:deposit:transfer, got " + text);
+        }
+        int[] mix = new int[4];
+        int total = 0;
+        for (int op = 0; op < 4; op++) {
+            mix[op] = Integer.parseInt(parts[op].trim());
+            if (mix[op] < 0) {
+                throw new IllegalArgumentException("Mix weights cannot be negative: " + text);
+            }
+            total += mix[op];
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("Mix weights cannot all be zero: " + text);
+        }
+        return mix;
+    }
+    
+    private static byte[] prompt(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,133 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * LoginAttackBenchmark class measuring customer logins during a PIN-guessing attack
+ * Legitimate customers log in at a steady pace from many terminals and the
+ * time each login takes is recorded. Attacker threads meanwhile try wrong
+ * PINs on random accounts as fast as they can, either from a few fixed
+ * terminals or from a new terminal for every attempt (as a botnet would).
+ * Each scenario starts with a fresh bank, and prints the legitimate login
+ * latency and success rate, how many attacker attempts had their PIN
+ * checked, and how many accounts ended up locked out.
+ * 
+ * Usage: java -cp jmh/target/benchmarks.jar LoginAttackBenchmark [accounts] [seconds] [attackers]
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class LoginAttackBenchmark {
+    private static final int CUSTOMER_THREADS = 2;
+    private static final long CUSTOMER_PACE_NANOS = 1_000_000L;
+    private static final int TERMINALS_PER_CUSTOMER_THREAD = 4096;
+    
+    public static void main(String[] args) throws InterruptedException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int attackers = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        
+        System.out.printf("%-20s %10s %8s %9s %9s %14s %12s %8s%n", "Scenario", "Logins", "OK %", "p50 us",
+                          "p99 us", "Attack tries", "PIN checked", "Locked");
+        // The first round warms up the JIT and is not reported
+        run("warm-up", accounts, 1, attackers, false, false);
+        run("no attack", accounts, seconds, 0, false, true);
+        run("fixed terminals", accounts, seconds, attackers, false, true);
+        run("new terminal each", accounts, seconds, attackers, true, true);
+    }
+    
+    private static void run(String label, int accounts, int seconds, int attackers, boolean rotate, boolean report)
+            throws InterruptedException {
+        Bank bank = new Bank();
+        for (int i = 0; i < accounts; i++) {
+            bank.addAccount(new Account(accountNumber(i), pinOf(i), "Customer " + i, 1000.0));
+        }
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        LongAdder ok = new LongAdder();
+        LongAdder attempts = new LongAdder();
+        LongAdder checked = new LongAdder();
+        long[][] samples = new long[CUSTOMER_THREADS][];
+        int[] counts = new int[CUSTOMER_THREADS];
+        
+        Thread[] threads = new Thread[CUSTOMER_THREADS + attackers];
+        for (int c = 0; c < CUSTOMER_THREADS; c++) {
+            int slot = c;
+            samples[slot] = new long[(int) (seconds * 1_000_000_000L / CUSTOMER_PACE_NANOS) + 1];
+            threads[c] = new Thread(() -> {
+                Random random = new Random(slot);
+                LoginGuard.Terminal[] terminals = new LoginGuard.Terminal[TERMINALS_PER_CUSTOMER_THREAD];
+                for (int t = 0; t < terminals.length; t++) {
+                    terminals[t] = new LoginGuard.Terminal();
+                }
+                long next = System.nanoTime();
+                while (next < deadline && counts[slot] < samples[slot].length) {
+                    LockSupport.parkNanos(next - System.nanoTime());
+                    int account = random.nextInt(accounts);
+                    long start = System.nanoTime();
+                    LoginGuard.Result result = bank.login(accountNumber(account), pinOf(account),
+                                                          terminals[counts[slot] % terminals.length]);
+                    samples[slot][counts[slot]++] = System.nanoTime() - start;
+                    if (result == LoginGuard.Result.OK) {
+                        ok.increment();
+                    }
+                    next += CUSTOMER_PACE_NANOS;
+                }
+            });
+        }
+        for (int a = 0; a < attackers; a++) {
+            int seed = 1000 + a;
+            threads[CUSTOMER_THREADS + a] = new Thread(() -> {
+                Random random = new Random(seed);
+                LoginGuard.Terminal terminal = new LoginGuard.Terminal();
+                while (System.nanoTime() < deadline) {
+                    int account = random.nextInt(accounts);
+                    String guess = String.format("%04d", (Integer.parseInt(pinOf(account)) + 1 + random.nextInt(9998)) % 10000);
+                    LoginGuard.Result result = bank.login(accountNumber(account), guess,
+                                                          rotate ? new LoginGuard.Terminal() : terminal);
+                    attempts.increment();
+                    if (result == LoginGuard.Result.INVALID || result == LoginGuard.Result.LOCKED_OUT) {
+                        checked.increment();
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        int locked = 0;
+        for (int i = 0; i < accounts; i++) {
+            if (bank.getLoginGuard().isLockedOut(accountNumber(i))) {
+                locked++;
+            }
+        }
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        long[] all = new long[total];
+        int at = 0;
+        for (int c = 0; c < CUSTOMER_THREADS; c++) {
+            System.arraycopy(samples[c], 0, all, at, counts[c]);
+            at += counts[c];
+        }
+        Arrays.sort(all);
+        if (report && total > 0) {
+            System.out.printf("%-20s %10d %8.2f %9.1f %9.1f %14d %12d %8d%n", label, total, 100.0 * ok.sum() / total,
+                              all[total / 2] / 1e3, all[(int) (total * 0.99)] / 1e3, attempts.sum(), checked.sum(),
+                              locked);
+        }
+    }
+    
+    private static String accountNumber(int i) {
+        return String.format("%09d", i);
+    }
+    
+    private static String pinOf(int i) {
+        return String.format("%04d", i * 7919 % 10000);
+    }
+}
@@ -0,0 +1,113 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * NameSearchBenchmark class measuring holder name search latency
+ * Indexes generated Indian-style names, then times each query through the
+ * trigram index (with the ATM's result limit) and through the old scan
+ * that lowercases every name. Only the index and bare accounts are built,
+ * without a Bank and opening transactions, so ten million accounts fit in
+ * a 4 GB heap; the holder names repeat, as the 200,000 first and last name
+ * pairs are shared.
+ * 
+ * Usage: java -cp jmh/target/benchmarks.jar NameSearchBenchmark [accounts] [repeats]
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class NameSearchBenchmark {
+    private static final String[] FIRST = {
+        "Aarav", "Vivaan", "Aditya", "Vihaan", "Arjun", "Sai", "Reyansh", "Ayaan", "Krishna", "Ishaan",
+        "Rohan", "Rahul", "Amit", "Sanjay", "Vikram", "Suresh", "Ramesh", "Mahesh", "Prabhu", "Nikhil",
+        "Ananya", "Diya", "Aadhya", "Saanvi", "Pari", "Anika", "Navya", "Myra", "Sara", "Ira",
+        "Priya", "Pooja", "Sneha", "Kavya", "Lakshmi", "Meera", "Neha", "Deepa", "Sunita", "Asha"
+    };
+    private static final String[] SYLLABLES = {
+        "sha", "rma", "pa", "til", "de", "sai", "ku", "mar", "red", "dy", "na", "ir", "jo", "shi", "gu",
+        "pta", "bha", "lke", "ra", "o", "ya", "dav", "cha", "ndra", "ka", "mat", "the", "ng", "ba", "nerj"
+    };
+    
+    public static void main(String[] args) {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int repeats = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        
+        Random random = new Random(7);
+        String[] surnames = new String[5000];
+        for (int i = 0; i < surnames.length; i++) {
+            StringBuilder surname = new StringBuilder();
+            int parts = 2 + random.nextInt(3);
+            for (int p = 0; p < parts; p++) {
+                surname.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            surname.setCharAt(0, Character.toUpperCase(surname.charAt(0)));
+            surnames[i] = surname.toString();
+        }
+        
+        String[][] holders = new String[FIRST.length][surnames.length];
+        Account[] all = new Account[accounts];
+        for (int i = 0; i < accounts; i++) {
+            // Skewed surnames: a few are very common, most are rare
+            int first = random.nextInt(FIRST.length);
+            int surname = (int) (surnames.length * Math.pow(random.nextDouble(), 3));
+            if (holders[first][surname] == null) {
+                holders[first][surname] = FIRST[first] + " " + surnames[surname];
+            }
+            all[i] = new Account(Integer.toString(100_000_000 + i), "0000", holders[first][surname]);
+        }
+        
+        long begin = System.nanoTime();
+        NameIndex index = new NameIndex();
+        for (Account account : all) {
+            index.add(account);
+        }
+        double indexSeconds = (System.nanoTime() - begin) / 1e9;
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        System.out.printf("%d accounts indexed in %.1f s, %d trigrams, heap in use %d MB%n", accounts, indexSeconds,
+                          index.trigramCount(), (runtime.totalMemory() - runtime.freeMemory()) >> 20);
+        
+        String[] queries = {
+            FIRST[0] + " " + surnames[0], surnames[0], surnames[surnames.length - 1],
+            surnames[surnames.length / 2].substring(1, 5), "Prabhu", "kumar", "ram", "zzq", "a"
+        };
+        System.out.printf("%-22s %9s %10s %10s %10s %12s%n", "Query", "Matches", "p50 us", "p99 us", "max us",
+                          "scan us");
+        for (String query : queries) {
+            int matches = index.search(query, Integer.MAX_VALUE).size();
+            long[] samples = new long[repeats];
+            for (int r = 0; r < repeats; r++) {
+                long start = System.nanoTime();
+                index.search(query, AtmSession.MAX_SEARCH_RESULTS);
+                samples[r] = System.nanoTime() - start;
+            }
+            Arrays.sort(samples);
+            
+            int scans = Math.max(1, Math.min(5, 5_000_000 / Math.max(1, accounts)));
+            long start = System.nanoTime();
+            for (int r = 0; r < scans; r++) {
+                scan(all, query);
+            }
+            double scanMicros = (System.nanoTime() - start) / 1e3 / scans;
+            
+            System.out.printf("%-22s %9d %10.1f %10.1f %10.1f %12.0f%n", query, matches,
+                              samples[repeats / 2] / 1e3, samples[repeats * 99 / 100] / 1e3,
+                              samples[repeats - 1] / 1e3, scanMicros);
+        }
+    }
+    
+    /**
+     * The search as it was before the index: lowercase and test every holder name
+     */
+    private static List<Account> scan(Account[] accounts, String name) {
+        List<Account> matchingAccounts = new ArrayList<>();
+        String searchName = name.toLowerCase();
+        for (Account account : accounts) {
+            if (account.getAccountHolder().toLowerCase().contains(searchName)) {
+                matchingAccounts.add(account);
+            }
+        }
+        return matchingAccounts;
+    }
+}
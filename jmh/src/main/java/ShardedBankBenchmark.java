@@ -0,0 +1,158 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * ShardedBankBenchmark class measuring how ShardedBank throughput grows with shards
+ * The same mix of transfers runs against 1, 2, 4, ... shards, with a given
+ * share of the transfers crossing shards (two-phase commit) and the rest
+ * staying on one shard. Many callers submit at once so every shard always
+ * has work queued. After each run the bank total must be unchanged and no
+ * transfer may be left in doubt.
+ * 
+ * With "process" the shards are ShardServer processes started by the
+ * benchmark and reached over loopback; otherwise they are threads in this
+ * JVM. Shards can only run side by side on as many cores as the machine
+ * has, so the scaling is only meaningful up to the core count.
+ * 
+ * Usage: java -cp jmh/target/benchmarks.jar ShardedBankBenchmark [accounts] [transfers] [crossShardPercent] [maxShards] [process]
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class ShardedBankBenchmark {
+    private static final int CALLERS = 256;
+    private static final double OPENING_BALANCE = 100000.0;
+    
+    public static void main(String[] args) throws Exception {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int transfers = args.length > 1 ? Integer.parseInt(args[1]) : 400_000;
+        int crossPercent = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int maxShards = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        boolean processes = args.length > 4 && args[4].equals("process");
+        
+        System.out.println("Cores: " + Runtime.getRuntime().availableProcessors() + ", " + transfers
+                           + " transfers, " + crossPercent + "% across shards, shards in "
+                           + (processes ? "separate processes" : "this JVM"));
+        System.out.printf("%-7s %10s %16s %10s %10s%n", "Shards", "Seconds", "Transfers/sec", "Committed", "Speedup");
+        // The first single-shard run warms up the JIT and is not reported
+        List<Integer> rounds = new ArrayList<>(List.of(1));
+        for (int shards = 1; shards <= maxShards; shards *= 2) {
+            rounds.add(shards);
+        }
+        double baseline = 0.0;
+        for (int round = 0; round < rounds.size(); round++) {
+            int shards = rounds.get(round);
+            List<Process> servers = new ArrayList<>();
+            try (ShardedBank bank = processes ? startProcesses(shards, servers) : ShardedBank.inProcess(shards)) {
+                String[][] byShard = openAccounts(bank, accounts);
+                long total = bank.getTotalBalancePaise();
+                
+                long begin = System.nanoTime();
+                long committed = run(bank, byShard, transfers, crossPercent);
+                double seconds = (System.nanoTime() - begin) / 1e9;
+                
+                if (bank.getTotalBalancePaise() != total || bank.recoverInDoubt(0L) != 0) {
+                    System.out.println("MISMATCH: money created or lost, or transfers left in doubt");
+                }
+                if (round > 0) {
+                    double rate = transfers / seconds;
+                    baseline = shards == 1 ? rate : baseline;
+                    System.out.printf("%-7d %10.3f %16.0f %10d %9.2fx%n", shards, seconds, rate, committed,
+                                      rate / baseline);
+                }
+            } finally {
+                for (Process server : servers) {
+                    server.destroy();
+                    server.waitFor();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Open the accounts and group their numbers by the shard that owns them
+     */
+    private static String[][] openAccounts(ShardedBank bank, int accounts) {
+        List<List<String>> owned = new ArrayList<>();
+        for (int s = 0; s < bank.getShardCount(); s++) {
+            owned.add(new ArrayList<>());
+        }
+        for (int i = 0; i < accounts; i++) {
+            String accountNumber = String.format("%09d", i);
+            bank.addAccount(accountNumber, "0000", "Holder " + i, OPENING_BALANCE);
+            owned.get(bank.shardOf(accountNumber)).add(accountNumber);
+        }
+        String[][] byShard = new String[owned.size()][];
+        for (int s = 0; s < byShard.length; s++) {
+            byShard[s] = owned.get(s).toArray(new String[0]);
+        }
+        return byShard;
+    }
+    
+    /**
+     * Run the transfers from CALLERS threads at once
+     * 
+     * @return The number of transfers committed
+     */
+    private static long run(ShardedBank bank, String[][] byShard, int transfers, int crossPercent)
+            throws Exception {
+        int shards = byShard.length;
+        List<Future<Long>> callers = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int t = 0; t < CALLERS; t++) {
+                int share = transfers / CALLERS + (t < transfers % CALLERS ? 1 : 0);
+                long seed = 42L + t;
+                callers.add(executor.submit(() -> {
+                    SplittableRandom random = new SplittableRandom(seed);
+                    long committed = 0L;
+                    for (int i = 0; i < share; i++) {
+                        int from = random.nextInt(shards);
+                        int to = shards > 1 && random.nextInt(100) < crossPercent
+                                 ? (from + 1 + random.nextInt(shards - 1)) % shards : from;
+                        String payer = byShard[from][random.nextInt(byShard[from].length)];
+                        String payee = byShard[to][random.nextInt(byShard[to].length)];
+                        if (bank.transferMoney(payer, payee, 1 + random.nextInt(500))) {
+                            committed++;
+                        }
+                    }
+                    return committed;
+                }));
+            }
+            long committed = 0L;
+            for (Future<Long> caller : callers) {
+                committed += caller.get();
+            }
+            return committed;
+        }
+    }
+    
+    /**
+     * Start one ShardServer process per shard with this JVM's java and class path
+     */
+    private static ShardedBank startProcesses(int shards, List<Process> servers) throws IOException {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        int[] ports = new int[shards];
+        for (int s = 0; s < shards; s++) {
+            Process server = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "ShardServer", "0")
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            servers.add(server);
+            BufferedReader out = new BufferedReader(new InputStreamReader(server.getInputStream(),
+                                                                          StandardCharsets.UTF_8));
+            String line = out.readLine();
+            if (line == null || !line.contains("listening on port ")) {
+                throw new IOException("Shard process did not start: " + line);
+            }
+            ports[s] = Integer.parseInt(line.replaceAll(".*listening on port (\\d+).*", "$1"));
+        }
+        return ShardedBank.connect(ports);
+    }
+}
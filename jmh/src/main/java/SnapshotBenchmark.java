@@ -0,0 +1,61 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * SnapshotBenchmark class measuring startup time from a snapshot plus journal tail
+ * Builds a journaled bank with the requested number of accounts, writes a
+ * snapshot, applies a tail of deposits that only the journal holds, and
+ * then times how long a fresh bank takes to recover from both.
+ * 
+ * Usage: java -cp jmh/target/benchmarks.jar SnapshotBenchmark [accounts] [tailDeposits] [threads]
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class SnapshotBenchmark {
+    public static void main(String[] args) throws Exception {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int tail = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        
+        Path dir = Files.createTempDirectory("snapshot-bench");
+        Path journal = dir.resolve("bank.journal");
+        Path snapshot = dir.resolve("bank.snapshot");
+        try {
+            Bank bank = new Bank();
+            bank.openJournal(journal, Journal.Durability.ASYNC, 0L);
+            for (int i = 0; i < accounts; i++) {
+                bank.addAccount(new Account(String.format("%09d", i), "0000", "Customer " + i, 1000.0));
+            }
+            
+            long begin = System.nanoTime();
+            Snapshot.write(bank, snapshot);
+            double writeSeconds = (System.nanoTime() - begin) / 1e9;
+            
+            for (int i = 0; i < tail; i++) {
+                bank.getAccount(String.format("%09d", i % accounts)).depositPaise(100L);
+            }
+            long expected = bank.getTotalBalancePaise();
+            bank.closeJournal();
+            bank = null;
+            System.gc();
+            
+            begin = System.nanoTime();
+            Bank recovered = new Bank();
+            long replayed = recovered.recover(snapshot, journal, Journal.Durability.ASYNC, 0L, threads);
+            double recoverSeconds = (System.nanoTime() - begin) / 1e9;
+            recovered.closeJournal();
+            
+            System.out.printf("Accounts            %,d%n", recovered.getTotalAccounts());
+            System.out.printf("Snapshot size       %,d bytes%n", Files.size(snapshot));
+            System.out.printf("Snapshot write      %.3f s%n", writeSeconds);
+            System.out.printf("Journal tail        %,d records%n", replayed);
+            System.out.printf("Recovery (%d thr)    %.3f s%n", threads, recoverSeconds);
+            System.out.printf("Balances match      %b%n", recovered.getTotalBalancePaise() == expected);
+        } finally {
+            Files.deleteIfExists(snapshot);
+            Files.deleteIfExists(journal);
+            Files.deleteIfExists(dir);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.Random;
+
+/**
+ * StatementBenchmark class timing StatementGenerator
+ * Builds one account with a long history spread over a year and times a
+ * full statement and a one-month statement written to a discarding
+ * writer, with the bytes the writing thread allocated for each, which stay
+ * the same however long the history is. Then writes a month's statement
+ * files for a bank of accounts, on one thread and on all processors.
+ * 
+ * Usage: java -cp jmh/target/benchmarks.jar StatementBenchmark [historyEntries] [accounts] [entriesPerAccount]
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class StatementBenchmark {
+    private static final YearMonth MONTH = YearMonth.of(2024, 6);
+    
+    /**
+     * A writer that counts characters and keeps nothing
+     */
+    private static final class DiscardWriter extends Writer {
+        long written;
+        
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            written += length;
+        }
+        
+        @Override
+        public void write(String text) {
+            written += text.length();
+        }
+        
+        @Override
+        public void flush() {
+        }
+        
+        @Override
+        public void close() {
+        }
+    }
+    
+    public static void main(String[] args) throws IOException {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int accounts = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int entriesPerAccount = args.length > 2 ? Integer.parseInt(args[2]) : 365;
+        
+        ZoneId zone = ZoneId.systemDefault();
+        long yearStart = YearMonth.of(2024, 1).atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        long yearEnd = YearMonth.of(2025, 1).atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        long monthStart = MONTH.atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        long monthEnd = MONTH.plusMonths(1).atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        Random random = new Random(11);
+        
+        Account big = createAccount("900000000", entries, yearStart, yearEnd, random);
+        StatementGenerator generator = new StatementGenerator();
+        System.out.printf("%-14s %12s %12s %10s %14s%n", "Statement", "Lines", "Chars", "ms", "Allocated KB");
+        // The first round warms up the JIT and is not reported
+        for (int round = 0; round < 3; round++) {
+            time(generator, big, "full", Long.MIN_VALUE, Long.MAX_VALUE, round > 0);
+            time(generator, big, "one month", monthStart, monthEnd, round > 0);
+        }
+        
+        Bank bank = new Bank();
+        for (int i = 0; i < accounts; i++) {
+            bank.addAccount(createAccount(String.format("%09d", i), entriesPerAccount, yearStart, yearEnd, random));
+        }
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%n%-14s %12s %10s %16s%n", "Monthly batch", "Statements", "Seconds", "Statements/sec");
+        for (int threads : new int[] {1, processors}) {
+            Path dir = Files.createTempDirectory("statements");
+            try {
+                long begin = System.nanoTime();
+                int written = StatementGenerator.writeMonthly(bank, MONTH, dir, threads);
+                double seconds = (System.nanoTime() - begin) / 1e9;
+                System.out.printf("%-14s %12d %10.2f %16.0f%n", threads + " threads", written, seconds,
+                                  written / seconds);
+            } finally {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                    for (Path file : files) {
+                        Files.delete(file);
+                    }
+                }
+                Files.delete(dir);
+            }
+        }
+    }
+    
+    private static void time(StatementGenerator generator, Account account, String label, long fromMillis,
+                             long toMillis, boolean report) throws IOException {
+        DiscardWriter out = new DiscardWriter();
+        long allocated = allocatedBytes();
+        long begin = System.nanoTime();
+        int lines = generator.write(account, fromMillis, toMillis, out);
+        double millis = (System.nanoTime() - begin) / 1e6;
+        allocated = allocatedBytes() - allocated;
+        if (report) {
+            System.out.printf("%-14s %12d %12d %10.1f %14.1f%n", label, lines, out.written, millis,
+                              allocated / 1024.0);
+        }
+    }
+    
+    /**
+     * Get the bytes allocated so far by this thread, or 0 if the JVM cannot tell
+     */
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads) {
+            return threads.getCurrentThreadAllocatedBytes();
+        }
+        return 0L;
+    }
+    
+    /**
+     * Create an account with a history of deposits and withdrawals spread evenly over a time span
+     */
+    private static Account createAccount(String accountNumber, int entries, long from, long to, Random random) {
+        Account account = new Account(accountNumber, "0000", "Holder " + accountNumber);
+        long step = Math.max(1L, (to - from) / Math.max(entries, 1));
+        account.replayPost(0L, TransactionType.ACCOUNT_CREATED, 1_000_000L, from, TransactionIdGenerator.nextId());
+        for (int i = 1; i < entries; i++) {
+            long amount = 100L + random.nextInt(100_000);
+            boolean deposit = random.nextBoolean() || account.getBalancePaise() < amount;
+            account.replayPost(0L, deposit ? TransactionType.DEPOSIT : TransactionType.WITHDRAWAL,
+                               deposit ? amount : -amount, from + i * step, TransactionIdGenerator.nextId());
+        }
+        return account;
+    }
+}
@@ -0,0 +1,103 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * TransferBatchBenchmark class comparing Bank.transferBatch with a transferMoney loop
+ * Two identical banks run the same payment file, one instruction at a time
+ * and as a single batch. The results and final balances must match, and
+ * the instructions per second are printed for both, in memory and with a
+ * journal.
+ * 
+ * Usage: java -cp jmh/target/benchmarks.jar TransferBatchBenchmark [accounts] [instructions] [groupLatencyMicros]
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public class TransferBatchBenchmark {
+    public static void main(String[] args) throws Exception {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int instructions = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        long latencyMicros = args.length > 2 ? Long.parseLong(args[2]) : 200L;
+        
+        // A payroll-style file: a few payers, many payees, some payers running dry
+        Random random = new Random(42);
+        List<TransferInstruction> file = new ArrayList<>(instructions);
+        for (int i = 0; i < instructions; i++) {
+            String from = String.format("%09d", random.nextInt(Math.max(1, accounts / 20)));
+            String to = String.format("%09d", random.nextInt(accounts));
+            file.add(TransferInstruction.ofPaise(from, to, 100L + random.nextInt(10_000)));
+        }
+        
+        System.out.printf("%-10s %-8s %12s %16s%n", "Journal", "Mode", "Seconds", "Transfers/sec");
+        // The first in-memory round warms up the JIT and is not reported
+        Journal.Durability[] rounds = {null, null, Journal.Durability.GROUP};
+        for (int round = 0; round < rounds.length; round++) {
+            Journal.Durability durability = rounds[round];
+            String label = durability == null ? "none" : durability.name();
+            Path dir = Files.createTempDirectory("batch-bench");
+            try {
+                Bank loopBank = createBank(accounts, durability, dir.resolve("loop.journal"), latencyMicros);
+                long begin = System.nanoTime();
+                List<TransferInstruction.Result> loopResults = new ArrayList<>(instructions);
+                for (TransferInstruction instruction : file) {
+                    boolean ok = loopBank.transferMoney(instruction.getFromAccountNumber(),
+                                                        instruction.getToAccountNumber(), instruction.getAmount());
+                    loopResults.add(ok ? TransferInstruction.Result.OK
+                                    : instruction.getFromAccountNumber().equals(instruction.getToAccountNumber())
+                                    ? TransferInstruction.Result.SAME_ACCOUNT
+                                    : TransferInstruction.Result.INSUFFICIENT_FUNDS);
+                }
+                double loopSeconds = (System.nanoTime() - begin) / 1e9;
+                
+                Bank batchBank = createBank(accounts, durability, dir.resolve("batch.journal"), latencyMicros);
+                begin = System.nanoTime();
+                List<TransferInstruction.Result> batchResults = batchBank.transferBatch(file);
+                double batchSeconds = (System.nanoTime() - begin) / 1e9;
+                
+                if (round > 0) {
+                    System.out.printf("%-10s %-8s %12.3f %16.0f%n", label, "loop", loopSeconds, instructions / loopSeconds);
+                    System.out.printf("%-10s %-8s %12.3f %16.0f%n", label, "batch", batchSeconds,
+                                      instructions / batchSeconds);
+                }
+                if (!loopResults.equals(batchResults) || !sameBalances(loopBank, batchBank, accounts)) {
+                    System.out.println("MISMATCH between loop and batch results");
+                }
+                loopBank.closeJournal();
+                batchBank.closeJournal();
+            } finally {
+                Files.deleteIfExists(dir.resolve("loop.journal"));
+                Files.deleteIfExists(dir.resolve("batch.journal"));
+                Files.deleteIfExists(dir);
+            }
+        }
+    }
+    
+    private static Bank createBank(int accounts, Journal.Durability durability, Path journal, long latencyMicros)
+            throws Exception {
+        Bank bank = new Bank();
+        if (durability != null) {
+            bank.openJournal(journal, durability, latencyMicros);
+        }
+        int payers = Math.max(1, accounts / 20);
+        for (int i = 0; i < accounts; i++) {
+            double opening = i < payers ? 100000.0 : 1000.0;
+            bank.addAccount(new Account(String.format("%09d", i), "0000", "Payee " + i, opening));
+        }
+        return bank;
+    }
+    
+    private static boolean sameBalances(Bank first, Bank second, int accounts) {
+        for (int i = 0; i < accounts; i++) {
+            String accountNumber = String.format("%09d", i);
+            Account a = first.getAccount(accountNumber);
+            Account b = second.getAccount(accountNumber);
+            if (a.getBalancePaise() != b.getBalancePaise() || a.transactionCount() != b.transactionCount()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,41 @@
+package atm.jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * AccountBenchmark class timing deposits, withdrawals and transfers on single accounts
+ * Every operation picks random accounts, so with few accounts and several
+ * threads (-t) the operations contend on the same account locks.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class AccountBenchmark {
+    @Benchmark
+    public boolean deposit(BankState bank, Cursor cursor) {
+        return bank.ledger.deposit(cursor.next(bank.accounts), 100.0);
+    }
+    
+    @Benchmark
+    public boolean withdraw(BankState bank, Cursor cursor) {
+        return bank.ledger.withdraw(cursor.next(bank.accounts), 1.0);
+    }
+    
+    @Benchmark
+    public boolean transfer(BankState bank, Cursor cursor) {
+        int from = cursor.next(bank.accounts);
+        return bank.ledger.transfer(from, cursor.nextOther(bank.accounts, from), 1.0);
+    }
+}
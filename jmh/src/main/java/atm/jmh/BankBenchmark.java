@@ -0,0 +1,51 @@
+package atm.jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * BankBenchmark class timing the Bank operations that look accounts up
+ * Logins use each account's correct PIN; once an account has used up its
+ * login burst, Bank.authenticate refuses it by rate without checking the
+ * PIN, so at high rates this measures the login limits as much as the
+ * PIN check. Name searches cycle through a common surname, a rarer one
+ * and a short fragment.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class BankBenchmark {
+    private static final String[] QUERIES = {"Sharma", "Kulkarni 1", "ya"};
+    
+    @Benchmark
+    public boolean transferMoney(BankState bank, Cursor cursor) {
+        int from = cursor.next(bank.accounts);
+        return bank.ledger.transferMoney(from, cursor.nextOther(bank.accounts, from), 1.0);
+    }
+    
+    @Benchmark
+    public boolean authenticate(BankState bank, Cursor cursor) {
+        return bank.ledger.authenticate(cursor.next(bank.accounts));
+    }
+    
+    @Benchmark
+    public int searchAccountsByName(BankState bank, Cursor cursor) {
+        return bank.ledger.searchByName(QUERIES[cursor.next(QUERIES.length)]);
+    }
+    
+    @Benchmark
+    public double getTotalBalance(BankState bank) {
+        return bank.ledger.totalBalance();
+    }
+}
@@ -0,0 +1,38 @@
+package atm.jmh;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * BankState class holding the bank shared by every benchmark thread
+ * The bank is built once per fork, before measuring starts, so building it
+ * does not count towards the bytes per operation reported by -prof gc.
+ * Account histories grow through the run as they would in a live bank.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+public class BankState {
+    /** Opening balance of each account, in rupees; enough that withdrawals never run dry */
+    public static final double OPENING_RUPEES = 10_000_000.0;
+    
+    @Param({"1000", "100000"})
+    public int accounts;
+    
+    public Ledger ledger;
+    
+    /**
+     * Build the bank
+     */
+    @Setup(Level.Trial)
+    public void open() {
+        if (ledger == null) {
+            ledger = Ledger.create();
+        }
+        ledger.open(accounts, OPENING_RUPEES);
+    }
+}
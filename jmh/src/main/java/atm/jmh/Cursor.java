@@ -0,0 +1,42 @@
+package atm.jmh;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cursor class picking accounts for one benchmark thread
+ * A xorshift generator spreads the operations uniformly over the accounts
+ * without the shared state of java.util.Random.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+@State(Scope.Thread)
+public class Cursor {
+    private long seed = System.nanoTime() | 1L;
+    
+    /**
+     * Get a random account
+     * 
+     * @param accounts The number of accounts
+     * @return An account number from 0 to accounts - 1
+     */
+    public int next(int accounts) {
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+        return (int) ((seed >>> 1) % accounts);
+    }
+    
+    /**
+     * Get a random account other than the given one
+     * 
+     * @param accounts The number of accounts, at least 2
+     * @param other The account to avoid
+     * @return An account number from 0 to accounts - 1
+     */
+    public int nextOther(int accounts, int other) {
+        int account = next(accounts - 1);
+        return account >= other ? account + 1 : account;
+    }
+}
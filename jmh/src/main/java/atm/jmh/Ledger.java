@@ -0,0 +1,143 @@
+package atm.jmh;
+
+/**
+ * Ledger interface giving the benchmarks access to the application
+ * The application classes live in the default package, which classes in
+ * a named package (as JMH requires for benchmarks) cannot refer to. The
+ * default-package class JmhLedger implements this interface over a real
+ * Bank, and the benchmarks load it by name. It is the only implementation,
+ * so the JIT inlines these calls and they cost nothing in the results.
+ * 
+ * Accounts are numbered from 0 to accounts() - 1.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+public interface Ledger {
+    /**
+     * Create the ledger implementation
+     * 
+     * @return A new, empty ledger
+     */
+    static Ledger create() {
+        try {
+            return (Ledger) Class.forName("JmhLedger").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("JmhLedger is missing from the benchmark jar", e);
+        }
+    }
+    
+    /**
+     * Replace the bank with a new one holding the given number of accounts
+     * 
+     * @param accounts The number of accounts
+     * @param openingRupees The opening balance of each account
+     */
+    void open(int accounts, double openingRupees);
+    
+    /**
+     * Get the number of accounts
+     * 
+     * @return The number of accounts
+     */
+    int accounts();
+    
+    /**
+     * Deposit through Account.deposit
+     * 
+     * @param account The account
+     * @param rupees The amount
+     * @return true if deposited
+     */
+    boolean deposit(int account, double rupees);
+    
+    /**
+     * Withdraw through Account.withdraw
+     * 
+     * @param account The account
+     * @param rupees The amount
+     * @return true if withdrawn
+     */
+    boolean withdraw(int account, double rupees);
+    
+    /**
+     * Transfer through Account.transfer
+     * 
+     * @param from The paying account
+     * @param to The receiving account
+     * @param rupees The amount
+     * @return true if transferred
+     */
+    boolean transfer(int from, int to, double rupees);
+    
+    /**
+     * Transfer through Bank.transferMoney, which looks both accounts up
+     * 
+     * @param from The paying account
+     * @param to The receiving account
+     * @param rupees The amount
+     * @return true if transferred
+     */
+    boolean transferMoney(int from, int to, double rupees);
+    
+    /**
+     * Log in through Bank.authenticate with the account's PIN
+     * 
+     * @param account The account
+     * @return true if the login was accepted
+     */
+    boolean authenticate(int account);
+    
+    /**
+     * Search through Bank.searchAccountsByName with the ATM's result limit
+     * 
+     * @param query The name or part of a name
+     * @return The number of accounts found
+     */
+    int searchByName(String query);
+    
+    /**
+     * Get the total through Bank.getTotalBalance
+     * 
+     * @return The total balance in rupees
+     */
+    double totalBalance();
+    
+    /**
+     * Turn the bank's operation metrics on or off
+     * 
+     * @param enabled true to record operations
+     */
+    void setMetricsEnabled(boolean enabled);
+    
+    /**
+     * Start and record one successful deposit in the bank's metrics, as Account.deposit does
+     */
+    void recordDeposit();
+    
+    /**
+     * Construct a Transaction
+     * 
+     * @param rupees The amount
+     * @param balance The balance after the transaction
+     * @return The transaction
+     */
+    Object newTransaction(double rupees, double balance);
+    
+    /**
+     * Format through Transaction.appendSummaryTo, as the history screens do
+     * 
+     * @param transaction A transaction from newTransaction
+     * @param sb The builder to append to
+     * @return The same builder
+     */
+    StringBuilder appendSummary(Object transaction, StringBuilder sb);
+    
+    /**
+     * Format through Transaction.getDetailedInfo
+     * 
+     * @param transaction A transaction from newTransaction
+     * @return The detailed description
+     */
+    String detailedInfo(Object transaction);
+}
@@ -0,0 +1,42 @@
+package atm.jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * MetricsBenchmark class timing the cost of the operation metrics
+ * record is what the metrics add to every deposit: deciding whether to
+ * time it, and counting its outcome and, if timed, its latency. The deposit
+ * and withdraw benchmarks run the whole operation with the metrics on and
+ * off, although their own variation is larger than the difference.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class MetricsBenchmark {
+    @Benchmark
+    public void record(MetricsState bank) {
+        bank.ledger.recordDeposit();
+    }
+    
+    @Benchmark
+    public boolean deposit(MetricsState bank, Cursor cursor) {
+        return bank.ledger.deposit(cursor.next(MetricsState.ACCOUNTS), 100.0);
+    }
+    
+    @Benchmark
+    public boolean withdraw(MetricsState bank, Cursor cursor) {
+        return bank.ledger.withdraw(cursor.next(MetricsState.ACCOUNTS), 1.0);
+    }
+}
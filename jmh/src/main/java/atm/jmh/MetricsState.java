@@ -0,0 +1,38 @@
+package atm.jmh;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * MetricsState class holding a bank with its operation metrics on or off
+ * The bank is small, so that a deposit's own cost varies as little as
+ * possible and the difference the metrics make shows through.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+public class MetricsState {
+    /** Number of accounts in the bank */
+    public static final int ACCOUNTS = 1000;
+    
+    @Param({"true", "false"})
+    public boolean metrics;
+    
+    public Ledger ledger;
+    
+    /**
+     * Build the bank and set its metrics
+     */
+    @Setup(Level.Trial)
+    public void open() {
+        if (ledger == null) {
+            ledger = Ledger.create();
+        }
+        ledger.open(ACCOUNTS, BankState.OPENING_RUPEES);
+        ledger.setMetricsEnabled(metrics);
+    }
+}
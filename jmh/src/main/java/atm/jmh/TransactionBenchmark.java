@@ -0,0 +1,56 @@
+package atm.jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * TransactionBenchmark class timing Transaction construction and formatting
+ * Construction includes generating the transaction ID. The summary is
+ * appended to one reused builder, as the history screens do; the detailed
+ * view builds a new string each time.
+ * 
+ * @author Prabhu Bhalke
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class TransactionBenchmark {
+    private Ledger ledger;
+    private Object transaction;
+    private final StringBuilder line = new StringBuilder(128);
+    
+    @Setup
+    public void setUp() {
+        ledger = Ledger.create();
+        transaction = ledger.newTransaction(2500.75, 10_250.50);
+    }
+    
+    @Benchmark
+    public Object construct() {
+        return ledger.newTransaction(2500.75, 10_250.50);
+    }
+    
+    @Benchmark
+    public StringBuilder appendSummary() {
+        line.setLength(0);
+        return ledger.appendSummary(transaction, line);
+    }
+    
+    @Benchmark
+    public String detailedInfo() {
+        return ledger.detailedInfo(transaction);
+    }
+}